@@ -0,0 +1,77 @@
+package net.tylerwade.benchmarks;
+
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.chunk.FastStartChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code createValidRange} with the default chunk size policy and with the stateful
+ * {@link FastStartChunkSizePolicy}, for open-ended, explicit and suffix ranges.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CreateValidRangeBenchmark {
+
+	private static final long FILE_SIZE = 500L * 1024 * 1024;
+
+	private LocalContentStreamAdapter defaultPolicyAdapter;
+	private LocalContentStreamAdapter fastStartAdapter;
+
+	private final StreamContentRequest openEnded = request(new Range(10L * 1024 * 1024, null));
+	private final StreamContentRequest explicit = request(new Range(10L * 1024 * 1024, 12L * 1024 * 1024));
+	private final StreamContentRequest suffix = request(Range.suffix(64 * 1024));
+
+	@Setup
+	public void setup() {
+		defaultPolicyAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader());
+		fastStartAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader());
+		fastStartAdapter.setChunkSizePolicy(new FastStartChunkSizePolicy());
+	}
+
+	@Benchmark
+	public Range defaultPolicyOpenEnded() {
+		return defaultPolicyAdapter.createValidRange(openEnded, FILE_SIZE);
+	}
+
+	@Benchmark
+	public Range defaultPolicyExplicit() {
+		return defaultPolicyAdapter.createValidRange(explicit, FILE_SIZE);
+	}
+
+	@Benchmark
+	public Range defaultPolicySuffix() {
+		return defaultPolicyAdapter.createValidRange(suffix, FILE_SIZE);
+	}
+
+	@Benchmark
+	public Range fastStartOpenEnded() {
+		return fastStartAdapter.createValidRange(openEnded, FILE_SIZE);
+	}
+
+	private static StreamContentRequest request(Range range) {
+		return StreamContentRequest.builder()
+				.key("movie.mp4")
+				.clientId("203.0.113.7")
+				.range(range)
+				.build();
+	}
+
+}
@@ -0,0 +1,108 @@
+package net.tylerwade.benchmarks;
+
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ServiceClientConfiguration;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * An in-memory {@code S3Client} answering {@code HeadObject} and ranged {@code GetObject} requests after an
+ * injectable latency, so the adapter can be measured without the network. Every other operation throws
+ * {@code UnsupportedOperationException}.
+ */
+public class FakeS3Client implements S3Client {
+
+	private static final Instant LAST_MODIFIED = Instant.parse("2015-10-21T07:28:00Z");
+
+	private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+	private final long latencyNanos;
+
+	/**
+	 * @param latency the time each request waits before it is answered, like the round trip to S3
+	 */
+	public FakeS3Client(Duration latency) {
+		this.latencyNanos = latency.toNanos();
+	}
+
+	public void putObject(String key, byte[] bytes) {
+		objects.put(key, bytes);
+	}
+
+	@Override
+	public HeadObjectResponse headObject(HeadObjectRequest request) {
+		byte[] bytes = find(request.key());
+		await();
+		return HeadObjectResponse.builder()
+				.contentType("video/mp4")
+				.contentLength((long) bytes.length)
+				.eTag("\"" + Integer.toHexString(bytes.length) + "\"")
+				.lastModified(LAST_MODIFIED)
+				.build();
+	}
+
+	@Override
+	public ResponseInputStream<GetObjectResponse> getObject(GetObjectRequest request) {
+		byte[] bytes = find(request.key());
+
+		int start = 0;
+		int end = bytes.length - 1;
+		String range = request.range();
+		if (range != null && range.startsWith("bytes=")) {
+			int dash = range.indexOf('-');
+			start = Integer.parseInt(range, 6, dash, 10);
+			if (dash + 1 < range.length()) {
+				end = Math.min(end, Integer.parseInt(range, dash + 1, range.length(), 10));
+			}
+		}
+		await();
+
+		GetObjectResponse response = GetObjectResponse.builder()
+				.contentType("video/mp4")
+				.contentLength((long) end - start + 1)
+				.build();
+		return new ResponseInputStream<>(response,
+				AbortableInputStream.create(new ByteArrayInputStream(bytes, start, end - start + 1)));
+	}
+
+	@Override
+	public String serviceName() {
+		return SERVICE_NAME;
+	}
+
+	@Override
+	public S3ServiceClientConfiguration serviceClientConfiguration() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void close() {
+		objects.clear();
+	}
+
+	private byte[] find(String key) {
+		byte[] bytes = objects.get(key);
+		if (bytes == null) {
+			throw NoSuchKeyException.builder().message("The specified key does not exist.").statusCode(404).build();
+		}
+		return bytes;
+	}
+
+	private void await() {
+		if (latencyNanos > 0) {
+			LockSupport.parkNanos(latencyNanos);
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+package net.tylerwade.benchmarks;
+
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Measures {@code LocalContentStreamAdapter.loadContent} reading 1 MiB chunks through the buffered path, for
+ * several buffer sizes. Each operation reads one chunk, so with {@code -prof gc} the {@code gc.alloc.rate.norm}
+ * column is the allocation per MiB served.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LocalLoadContentBenchmark {
+
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final int FILE_SIZE = 64 * CHUNK_SIZE;
+	private static final String KEY = "benchmark.bin";
+
+	@Param({"8192", "65536", "262144"})
+	public int bufferSize;
+
+	private Path directory;
+	private URLClassLoader classLoader;
+	private LocalContentStreamAdapter contentStreamAdapter;
+	private int chunk;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("video-streaming-benchmark");
+		Path videos = Files.createDirectory(directory.resolve("videos"));
+		byte[] bytes = new byte[FILE_SIZE];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		Files.write(videos.resolve(KEY), bytes);
+
+		// The adapter resolves keys on the classpath, so the temporary directory is made a classpath root.
+		classLoader = new URLClassLoader(new URL[]{directory.toUri().toURL()});
+		contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(classLoader), "videos");
+		contentStreamAdapter.setZeroCopyEnabled(false);
+		contentStreamAdapter.setBufferSize(bufferSize);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		classLoader.close();
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	@Benchmark
+	public long loadChunk() {
+		// Sequential chunks, like a player streaming the file.
+		long start = (long) (chunk++ % (FILE_SIZE / CHUNK_SIZE)) * CHUNK_SIZE;
+		StreamContentRequest request = new StreamContentRequest(KEY, new Range(start, start + CHUNK_SIZE - 1));
+
+		return contentStreamAdapter.loadContent(request)
+				.flatMapMany(content -> content.getContent())
+				.map(buffer -> {
+					int count = buffer.readableByteCount();
+					DataBufferUtils.release(buffer);
+					return (long) count;
+				})
+				.reduce(0L, Long::sum)
+				.block();
+	}
+
+}
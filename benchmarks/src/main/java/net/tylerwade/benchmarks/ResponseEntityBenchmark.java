@@ -0,0 +1,77 @@
+package net.tylerwade.benchmarks;
+
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the header construction of {@link StreamedContent#toResponseEntity()} for partial, multipart and
+ * not modified content. The content itself is never subscribed to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseEntityBenchmark {
+
+	private final StreamedContentMetadata metadata = StreamedContentMetadata.builder()
+			.key("movie.mp4")
+			.contentType("video/mp4")
+			.fileSize(21657943L)
+			.eTag("\"5f3c1a2b-14a7a57\"")
+			.lastModified(Instant.parse("2015-10-21T07:28:00Z"))
+			.build();
+
+	private final StreamedContent partial = StreamedContent.builder()
+			.key("movie.mp4")
+			.metadata(metadata)
+			.content(Flux.empty())
+			.contentLength(1024L * 1024)
+			.range(new Range(1048576L, 2097151L))
+			.build();
+
+	private final StreamedContent multipart = StreamedContent.builder()
+			.key("movie.mp4")
+			.metadata(metadata)
+			.content(Flux.empty())
+			.contentLength(2440L)
+			.multipartBoundary("9f86d081884c7d65")
+			.ranges(List.of(new Range(0L, 999L), new Range(21656943L, 21657942L)))
+			.build();
+
+	private final StreamedContent notModified = StreamedContent.notModified(metadata);
+
+	@Benchmark
+	public ResponseEntity<Flux<DataBuffer>> partialContent() {
+		return partial.toResponseEntity();
+	}
+
+	@Benchmark
+	public ResponseEntity<Flux<DataBuffer>> multipartContent() {
+		return multipart.toResponseEntity();
+	}
+
+	@Benchmark
+	public ResponseEntity<Flux<DataBuffer>> notModifiedContent() {
+		return notModified.toResponseEntity();
+	}
+
+}
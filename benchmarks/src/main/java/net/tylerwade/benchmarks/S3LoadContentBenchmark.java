@@ -0,0 +1,88 @@
+package net.tylerwade.benchmarks;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentMetadataCache;
+import net.tylerwade.springbootvideostreaming.adapter.S3ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code S3ContentStreamAdapter.loadContent} reading 1 MiB chunks from a {@link FakeS3Client}, with and
+ * without request latency and a metadata cache. Runs with several threads, so the latency shows how the
+ * adapter's blocking calls on {@code boundedElastic} behave under concurrency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class S3LoadContentBenchmark {
+
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final int FILE_SIZE = 32 * CHUNK_SIZE;
+	private static final String KEY = "movie.mp4";
+
+	@Param({"0", "5"})
+	public int latencyMillis;
+
+	@Param({"false", "true"})
+	public boolean metadataCache;
+
+	private FakeS3Client s3Client;
+	private S3ContentStreamAdapter contentStreamAdapter;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		byte[] bytes = new byte[FILE_SIZE];
+		ThreadLocalRandom.current().nextBytes(bytes);
+		s3Client = new FakeS3Client(Duration.ofMillis(latencyMillis));
+		s3Client.putObject(KEY, bytes);
+
+		contentStreamAdapter = metadataCache
+				? new S3ContentStreamAdapter(s3Client, "benchmark-bucket", new ContentMetadataCache())
+				: new S3ContentStreamAdapter(s3Client, "benchmark-bucket");
+		contentStreamAdapter.setBufferSize(64 * 1024);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		s3Client.close();
+	}
+
+	@Benchmark
+	public long loadChunk() {
+		long start = (long) ThreadLocalRandom.current().nextInt(FILE_SIZE / CHUNK_SIZE) * CHUNK_SIZE;
+		StreamContentRequest request = new StreamContentRequest(KEY, new Range(start, start + CHUNK_SIZE - 1));
+
+		return contentStreamAdapter.loadContent(request)
+				.flatMapMany(content -> content.getContent())
+				.map(buffer -> {
+					int count = buffer.readableByteCount();
+					DataBufferUtils.release(buffer);
+					return (long) count;
+				})
+				.reduce(0L, Long::sum)
+				.block();
+	}
+
+}
@@ -6,8 +6,10 @@ import net.tylerwade.springbootvideostreaming.model.Range;
 import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
 import net.tylerwade.springbootvideostreaming.model.StreamedContent;
 import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.web.RangeHeaderParser;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestHeader;
@@ -17,6 +19,7 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.util.List;
 
 @RestController
@@ -46,48 +49,36 @@ public class VideoController {
 	// You can visit http://localhost:8080/api/v1/videos/park.mp4 in your browser and notice that the video automatically
 	// will play and stream.
 	//
-	// Range header should be parsed to a Range object.
+	// Range header should be parsed to Range objects, RangeHeaderParser does this for you. A header with several
+	// ranges (e.g. bytes=0-99,-500) is answered with a single multipart/byteranges response.
 	// Modern browsers will automatically send the Range header when used with HTML's <video> tag.
 	// For more information check here:
 	// https://developer.mozilla.org/en-US/docs/Web/HTTP/Reference/Headers/Range
+	//
+	// The client ID tells viewers apart, so chunk sizes can grow for each of them. Reporting every served chunk
+	// with chunkServed lets the adapter's ChunkSizePolicy see the client's progress.
+	//
+	// Don't need anything custom? Set video-streaming.endpoint.enabled=true and the library serves
+	// /videos/{key} for you.
 	@GetMapping("/{key}")
 	public Mono<ResponseEntity<Flux<DataBuffer>>> getVideoContent(@PathVariable String key,
-																  @RequestHeader(value = "Range", required = false) String rangeHeader) {
-		Range range = parseRangeHeader(rangeHeader);
+																  @RequestHeader(value = "Range", required = false) String rangeHeader,
+																  ServerHttpRequest request) {
+		List<Range> ranges = RangeHeaderParser.parse(rangeHeader);
+		InetSocketAddress remoteAddress = request.getRemoteAddress();
 
 		StreamContentRequest contentRequest = StreamContentRequest
 				.builder()
 				.key(key)
-				.range(range)
+				.ranges(ranges)
+				.clientId(remoteAddress == null ? null : remoteAddress.getHostString())
 				.build();
 
 		// Load the content.
 		// You can use .toResponseEntity() to directly convert to response entity, or you may use however needed.
 		return contentStreamAdapter.loadContent(contentRequest)
+				.doOnNext(content -> contentStreamAdapter.chunkServed(contentRequest, content))
 				.map(StreamedContent::toResponseEntity);
 	}
 
-	private static Range parseRangeHeader(String rangeHeader) {
-		if (rangeHeader == null || !rangeHeader.contains("=")) {
-			return new Range(0L, null);
-		}
-
-		String[] parts = rangeHeader.split("=", 2);
-		String[] rangeValues = parts[1].split("-", 2);
-
-		Long start = parseLongOrNull(rangeValues[0]);
-		Long end = (rangeValues.length > 1) ? parseLongOrNull(rangeValues[1]) : null;
-
-		return new Range(start != null ? start : 0L, end);
-	}
-
-	private static Long parseLongOrNull(String value) {
-		try {
-			return (value == null || value.isBlank()) ? null : Long.parseLong(value.trim());
-		} catch (NumberFormatException e) {
-			return null;
-		}
-	}
-
-
 }
\ No newline at end of file
@@ -0,0 +1,89 @@
+package net.tylerwade.loadtest;
+
+import net.tylerwade.springbootvideostreaming.adapter.CachingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.CoalescingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.PrefetchingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3AsyncContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3ContentStreamAdapter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+
+@Configuration
+public class ContentAdapterConfig {
+
+	private static final StaticCredentialsProvider CREDENTIALS =
+			StaticCredentialsProvider.create(AwsBasicCredentials.create("load-test", "load-test"));
+
+	@Bean
+	public LoadTestVideos loadTestVideos(LoadTestProperties properties) {
+		return new LoadTestVideos(properties.getVideoCount(), Math.toIntExact(properties.getVideoSize().toBytes()));
+	}
+
+	@Bean
+	public ContentStreamAdapter contentStreamAdapter(LoadTestProperties properties, LoadTestVideos videos,
+													 ObjectProvider<S3Client> s3Client, ObjectProvider<S3AsyncClient> s3AsyncClient) throws IOException {
+		ContentStreamAdapter adapter = switch (properties.getAdapter()) {
+			case LOCAL -> new FileSystemContentStreamAdapter(videos.writeToDirectory());
+			case S3 -> new S3ContentStreamAdapter(s3Client.getObject(), FakeS3Server.BUCKET);
+			case S3_ASYNC -> new S3AsyncContentStreamAdapter(s3AsyncClient.getObject(), FakeS3Server.BUCKET);
+		};
+		for (LoadTestProperties.Decorator decorator : properties.getDecorators()) {
+			adapter = switch (decorator) {
+				case CACHING -> new CachingContentStreamAdapter(adapter);
+				case PREFETCHING -> new PrefetchingContentStreamAdapter(adapter);
+				case COALESCING -> new CoalescingContentStreamAdapter(adapter);
+			};
+		}
+		return adapter;
+	}
+
+	// The S3 beans are lazy, so only the adapter under test starts a fake S3 server and a client.
+
+	@Bean
+	@Lazy
+	public FakeS3Server fakeS3Server(LoadTestProperties properties, LoadTestVideos videos) throws IOException {
+		return new FakeS3Server(videos, properties.getS3().getLatency(), properties.getS3().getBandwidth().toBytes());
+	}
+
+	@Bean
+	@Lazy
+	public S3Client s3Client(LoadTestProperties properties, FakeS3Server fakeS3Server) {
+		return S3Client.builder()
+				.endpointOverride(fakeS3Server.getEndpoint())
+				.forcePathStyle(true)
+				.region(Region.US_EAST_1)
+				.credentialsProvider(CREDENTIALS)
+				.httpClientBuilder(ApacheHttpClient.builder()
+						.maxConnections(properties.getPlayers())
+						.connectionAcquisitionTimeout(properties.getRequestTimeout()))
+				.build();
+	}
+
+	@Bean
+	@Lazy
+	public S3AsyncClient s3AsyncClient(LoadTestProperties properties, FakeS3Server fakeS3Server) {
+		return S3AsyncClient.builder()
+				.endpointOverride(fakeS3Server.getEndpoint())
+				.forcePathStyle(true)
+				.region(Region.US_EAST_1)
+				.credentialsProvider(CREDENTIALS)
+				.httpClientBuilder(NettyNioAsyncHttpClient.builder()
+						.maxConcurrency(properties.getPlayers())
+						.connectionAcquisitionTimeout(properties.getRequestTimeout()))
+				.build();
+	}
+
+}
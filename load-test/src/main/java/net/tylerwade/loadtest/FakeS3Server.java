@@ -0,0 +1,140 @@
+package net.tylerwade.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A local stand-in for S3. It answers path-style {@code HeadObject} and ranged {@code GetObject} requests for the
+ * load test's videos, after waiting the configured latency and sending no faster than the configured bandwidth
+ * per connection.
+ */
+public class FakeS3Server implements AutoCloseable {
+
+	public static final String BUCKET = "load-test";
+
+	private static final int WRITE_SIZE = 64 * 1024;
+
+	private final LoadTestVideos videos;
+	private final long latencyNanos;
+	private final long bytesPerSecond;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final String eTag;
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder bytesSent = new LongAdder();
+
+	/**
+	 * @param videos         the videos served
+	 * @param latency        the time waited before answering a request
+	 * @param bytesPerSecond the bytes per second sent per connection, or 0 for no limit
+	 */
+	public FakeS3Server(LoadTestVideos videos, Duration latency, long bytesPerSecond) throws IOException {
+		this.videos = videos;
+		this.latencyNanos = latency.toNanos();
+		this.bytesPerSecond = bytesPerSecond;
+		this.eTag = "\"" + Integer.toHexString(videos.getContent().length) + "\"";
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 4096);
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "fake-s3-worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server.createContext("/", this::handle);
+		this.server.setExecutor(executor);
+		this.server.start();
+	}
+
+	public URI getEndpoint() {
+		return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+	}
+
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	public long getBytesSent() {
+		return bytesSent.sum();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			requests.increment();
+			if (latencyNanos > 0) {
+				LockSupport.parkNanos(latencyNanos);
+			}
+
+			String prefix = "/" + BUCKET + "/";
+			String path = exchange.getRequestURI().getPath();
+			if (!path.startsWith(prefix) || !videos.getKeys().contains(path.substring(prefix.length()))) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+
+			byte[] content = videos.getContent();
+			exchange.getResponseHeaders().set("Content-Type", "video/mp4");
+			exchange.getResponseHeaders().set("ETag", eTag);
+			exchange.getResponseHeaders().set("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				exchange.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+				exchange.sendResponseHeaders(200, -1);
+				return;
+			}
+
+			int start = 0;
+			int end = content.length - 1;
+			String range = exchange.getRequestHeaders().getFirst("Range");
+			if (range != null && range.startsWith("bytes=")) {
+				String[] bounds = range.substring("bytes=".length()).split("-", 2);
+				start = Integer.parseInt(bounds[0]);
+				if (!bounds[1].isEmpty()) {
+					end = (int) Math.min(end, Long.parseLong(bounds[1]));
+				}
+				exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + content.length);
+			}
+
+			int length = end - start + 1;
+			exchange.sendResponseHeaders(range != null ? 206 : 200, length);
+			try (OutputStream body = exchange.getResponseBody()) {
+				write(body, content, start, length);
+			} catch (IOException e) {
+				// The adapter cancelled the download.
+			}
+		}
+	}
+
+	private void write(OutputStream body, byte[] content, int offset, int length) throws IOException {
+		long started = System.nanoTime();
+		int written = 0;
+		while (written < length) {
+			int size = Math.min(WRITE_SIZE, length - written);
+			body.write(content, offset + written, size);
+			written += size;
+			bytesSent.add(size);
+			if (bytesPerSecond > 0) {
+				long due = started + written * 1_000_000_000L / bytesPerSecond;
+				long wait = due - System.nanoTime();
+				if (wait > 0) {
+					LockSupport.parkNanos(wait);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,101 @@
+package net.tylerwade.loadtest;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The measurements of all players. Only requests started while {@link #isRecording()} are recorded, so the ramp
+ * up does not skew the results.
+ */
+public class LoadTestMetrics {
+
+	private final LongAdder requests = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+	private final LongAdder bytes = new LongAdder();
+	private final LongAdder seeks = new LongAdder();
+	private final LongAdder stalls = new LongAdder();
+	private final LongAdder stallNanos = new LongAdder();
+	private final LongAdder mediaNanos = new LongAdder();
+
+	private long[] timesToFirstByte = new long[4096];
+	private int timeToFirstByteCount;
+
+	private volatile boolean recording;
+
+	public boolean isRecording() {
+		return recording;
+	}
+
+	public void setRecording(boolean recording) {
+		this.recording = recording;
+	}
+
+	public void recordRequest(long timeToFirstByteNanos, long byteCount, long mediaNanos) {
+		requests.increment();
+		bytes.add(byteCount);
+		this.mediaNanos.add(mediaNanos);
+		synchronized (this) {
+			if (timeToFirstByteCount == timesToFirstByte.length) {
+				timesToFirstByte = Arrays.copyOf(timesToFirstByte, timesToFirstByte.length * 2);
+			}
+			timesToFirstByte[timeToFirstByteCount++] = timeToFirstByteNanos;
+		}
+	}
+
+	public void recordError() {
+		errors.increment();
+	}
+
+	public void recordSeek() {
+		seeks.increment();
+	}
+
+	public void recordStall(long nanos) {
+		stalls.increment();
+		stallNanos.add(nanos);
+	}
+
+	public long getRequestCount() {
+		return requests.sum();
+	}
+
+	public long getErrorCount() {
+		return errors.sum();
+	}
+
+	public long getByteCount() {
+		return bytes.sum();
+	}
+
+	public long getSeekCount() {
+		return seeks.sum();
+	}
+
+	public long getStallCount() {
+		return stalls.sum();
+	}
+
+	/**
+	 * @return the time players spent stalled, relative to the media time they downloaded and the time stalled
+	 */
+	public double getStallRatio() {
+		long stalled = stallNanos.sum();
+		long total = stalled + mediaNanos.sum();
+		return total == 0 ? 0 : (double) stalled / total;
+	}
+
+	/**
+	 * @param percentile between 0 and 100
+	 * @return the time to first byte at the percentile in nanoseconds, or 0 if nothing was recorded
+	 */
+	public synchronized long getTimeToFirstByte(double percentile) {
+		if (timeToFirstByteCount == 0) {
+			return 0;
+		}
+		long[] sorted = Arrays.copyOf(timesToFirstByte, timeToFirstByteCount);
+		Arrays.sort(sorted);
+		int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+}
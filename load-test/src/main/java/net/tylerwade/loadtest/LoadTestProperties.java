@@ -0,0 +1,100 @@
+package net.tylerwade.loadtest;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@ConfigurationProperties("load-test")
+public class LoadTestProperties {
+
+	/**
+	 * The adapter the videos are streamed from.
+	 */
+	private Adapter adapter = Adapter.S3_ASYNC;
+
+	/**
+	 * Decorators wrapped around the adapter, innermost first.
+	 */
+	private List<Decorator> decorators = new ArrayList<>();
+
+	/**
+	 * The number of simulated players.
+	 */
+	private int players = 1000;
+
+	/**
+	 * The players are started evenly spread over this time.
+	 */
+	private Duration rampUp = Duration.ofSeconds(10);
+
+	/**
+	 * How long the players keep watching after the ramp up. Only this time is measured.
+	 */
+	private Duration duration = Duration.ofSeconds(60);
+
+	/**
+	 * The bitrate of the videos in bits per second. The players play back at this rate.
+	 */
+	private long bitrate = 5_000_000;
+
+	/**
+	 * The media time a player requests at once, like a segment of an adaptive streaming player.
+	 */
+	private Duration segmentDuration = Duration.ofSeconds(4);
+
+	/**
+	 * Players stop downloading once this much media time is buffered ahead of the playhead.
+	 */
+	private Duration bufferAhead = Duration.ofSeconds(30);
+
+	/**
+	 * The probability a player seeks to a random position instead of requesting the next segment.
+	 */
+	private double seekProbability = 0.05;
+
+	/**
+	 * Requests taking longer than this count as errors.
+	 */
+	private Duration requestTimeout = Duration.ofSeconds(30);
+
+	/**
+	 * The number of videos. Every video has the same content.
+	 */
+	private int videoCount = 8;
+
+	/**
+	 * The size of every video.
+	 */
+	private DataSize videoSize = DataSize.ofMegabytes(64);
+
+	private S3 s3 = new S3();
+
+	@Data
+	public static class S3 {
+
+		/**
+		 * The time the fake S3 server waits before answering a request.
+		 */
+		private Duration latency = Duration.ofMillis(20);
+
+		/**
+		 * The bytes per second the fake S3 server sends per connection, or 0 for no limit.
+		 */
+		private DataSize bandwidth = DataSize.ofMegabytes(50);
+
+	}
+
+	public enum Adapter {
+		LOCAL, S3, S3_ASYNC
+	}
+
+	public enum Decorator {
+		CACHING, PREFETCHING, COALESCING
+	}
+
+}
@@ -0,0 +1,114 @@
+package net.tylerwade.loadtest;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Runs the load test once the server is up: starts the players over the ramp up, measures for the configured
+ * duration and prints the report.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LoadTestRunner implements ApplicationRunner {
+
+	private static final long MIB = 1024 * 1024;
+
+	private final LoadTestProperties properties;
+	private final LoadTestVideos videos;
+	private final ContentStreamAdapter contentStreamAdapter;
+	private final ObjectProvider<FakeS3Server> fakeS3Server;
+	private final Environment environment;
+
+	@Override
+	public void run(ApplicationArguments args) {
+		int port = environment.getRequiredProperty("local.server.port", Integer.class);
+		int players = properties.getPlayers();
+		log.info("Starting {} players against {} on port {}", players, contentStreamAdapter.getClass().getSimpleName(), port);
+
+		// The players run on their own event loops, so they do not compete with the server for its threads.
+		ConnectionProvider connectionProvider = ConnectionProvider.builder("players")
+				.maxConnections(players)
+				.pendingAcquireMaxCount(-1)
+				.build();
+		LoopResources loopResources = LoopResources.create("player", Math.max(2, Runtime.getRuntime().availableProcessors() / 2), true);
+		HttpClient httpClient = HttpClient.create(connectionProvider)
+				.runOn(loopResources)
+				.baseUrl("http://127.0.0.1:" + port);
+
+		LoadTestMetrics metrics = new LoadTestMetrics();
+		long rampUpNanos = properties.getRampUp().toNanos();
+		long deadline = System.nanoTime() + rampUpNanos + properties.getDuration().toNanos();
+
+		ResourceMonitor monitor = new ResourceMonitor();
+		Mono<Void> measure = Mono.delay(properties.getRampUp())
+				.doOnNext(ignored -> {
+					log.info("Ramp up finished, measuring for {}", properties.getDuration());
+					metrics.setRecording(true);
+					monitor.start(250);
+				})
+				.then();
+
+		try {
+			Flux.range(0, players)
+					.flatMap(i -> Mono.delay(Duration.ofNanos(rampUpNanos * i / players))
+							.then(new Player(httpClient, clientAddress(i), videos, metrics, properties).play(deadline)), players)
+					.mergeWith(measure)
+					.blockLast();
+		} finally {
+			metrics.setRecording(false);
+			monitor.close();
+			connectionProvider.dispose();
+			loopResources.dispose();
+		}
+
+		report(metrics, monitor);
+	}
+
+	private void report(LoadTestMetrics metrics, ResourceMonitor monitor) {
+		double seconds = properties.getDuration().toMillis() / 1000.0;
+		StringBuilder report = new StringBuilder("\n")
+				.append(String.format("Adapter:             %s%s%n", properties.getAdapter(),
+						properties.getDecorators().isEmpty() ? "" : " " + properties.getDecorators()))
+				.append(String.format("Players:             %d at %.1f Mbit/s, %d videos of %d MiB%n", properties.getPlayers(),
+						properties.getBitrate() / 1e6, videos.getKeys().size(), videos.getSize() / MIB))
+				.append(String.format("Requests:            %d (%.0f/s), %d errors, %d seeks%n", metrics.getRequestCount(),
+						metrics.getRequestCount() / seconds, metrics.getErrorCount(), metrics.getSeekCount()))
+				.append(String.format("Throughput:          %.1f MiB/s%n", metrics.getByteCount() / seconds / MIB))
+				.append(String.format("Time to first byte:  p50 %.1f ms, p99 %.1f ms%n",
+						metrics.getTimeToFirstByte(50) / 1e6, metrics.getTimeToFirstByte(99) / 1e6))
+				.append(String.format("Stalls:              %d, %.2f%% of playback time%n", metrics.getStallCount(),
+						metrics.getStallRatio() * 100))
+				.append(String.format("Peak heap:           %d MiB%n", monitor.getPeakHeap() / MIB))
+				.append(String.format("Peak direct memory:  %d MiB buffer pool, %d MiB Netty pooled allocator%n",
+						monitor.getPeakDirectBufferPool() / MIB, monitor.getPeakNettyDirect() / MIB))
+				.append(String.format("Peak threads:        %d%n", monitor.getPeakThreadCount()));
+		for (Map.Entry<String, Integer> threads : monitor.getThreadsAtPeak().entrySet()) {
+			report.append(String.format("  %-40s %d%n", threads.getKey(), threads.getValue()));
+		}
+		if (properties.getAdapter() != LoadTestProperties.Adapter.LOCAL) {
+			FakeS3Server s3 = fakeS3Server.getObject();
+			report.append(String.format("Fake S3 (whole run): %d requests, %d MiB sent%n", s3.getRequestCount(), s3.getBytesSent() / MIB));
+		}
+		log.info("Load test finished{}", report);
+	}
+
+	private static String clientAddress(int player) {
+		return "10." + (player >> 16 & 0xFF) + "." + (player >> 8 & 0xFF) + "." + (player & 0xFF);
+	}
+
+}
@@ -0,0 +1,70 @@
+package net.tylerwade.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * The videos of a load test. All videos share one random content, so a large catalog costs the memory of a
+ * single video.
+ */
+public class LoadTestVideos implements AutoCloseable {
+
+	private final List<String> keys = new ArrayList<>();
+	private final byte[] content;
+	private Path directory;
+
+	public LoadTestVideos(int videoCount, int videoSize) {
+		this.content = new byte[videoSize];
+		new Random(42).nextBytes(content);
+		for (int i = 0; i < videoCount; i++) {
+			keys.add(String.format("video-%03d.mp4", i));
+		}
+	}
+
+	public List<String> getKeys() {
+		return keys;
+	}
+
+	public byte[] getContent() {
+		return content;
+	}
+
+	public long getSize() {
+		return content.length;
+	}
+
+	/**
+	 * Writes every video to a temporary directory, once.
+	 *
+	 * @return the directory
+	 */
+	public synchronized Path writeToDirectory() throws IOException {
+		if (directory == null) {
+			directory = Files.createTempDirectory("load-test-videos");
+			for (String key : keys) {
+				Files.write(directory.resolve(key), content);
+			}
+		}
+		return directory;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (directory == null) {
+			return;
+		}
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+				Files.deleteIfExists(file);
+			}
+		}
+		directory = null;
+	}
+
+}
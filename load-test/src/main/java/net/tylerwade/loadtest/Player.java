@@ -0,0 +1,161 @@
+package net.tylerwade.loadtest;
+
+import io.netty.buffer.ByteBuf;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A simulated video player. It requests a video segment by segment with {@code Range} requests, keeps at most
+ * {@link LoadTestProperties#getBufferAhead()} of media buffered, sometimes seeks to a random position and starts
+ * another video at the end of one.
+ * <p>
+ * Playback starts when the first segment after starting a video or seeking arrives. A segment arriving after the
+ * playhead caught up with the downloaded media is a stall; startup and seek delays are not.
+ */
+public class Player {
+
+	private final HttpClient httpClient;
+	private final List<String> keys;
+	private final long videoSize;
+	private final LoadTestMetrics metrics;
+
+	private final long bitrate;
+	private final long segmentBytes;
+	private final long bufferAheadNanos;
+	private final double seekProbability;
+	private final Duration requestTimeout;
+
+	private String key;
+	private long position;
+	private long downloadedNanos;
+	private long playStartNanos;
+	private long stalledNanos;
+	private long firstByteNanos;
+
+	/**
+	 * @param httpClient    the client, with the server as base URL
+	 * @param clientAddress the address sent as {@code X-Forwarded-For}
+	 */
+	public Player(HttpClient httpClient, String clientAddress, LoadTestVideos videos, LoadTestMetrics metrics,
+				  LoadTestProperties properties) {
+		this.httpClient = httpClient.headers(headers -> headers.set("X-Forwarded-For", clientAddress));
+		this.keys = videos.getKeys();
+		this.videoSize = videos.getSize();
+		this.metrics = metrics;
+		this.bitrate = properties.getBitrate();
+		this.segmentBytes = Math.max(1, properties.getBitrate() / 8 * properties.getSegmentDuration().toMillis() / 1000);
+		this.bufferAheadNanos = properties.getBufferAhead().toNanos();
+		this.seekProbability = properties.getSeekProbability();
+		this.requestTimeout = properties.getRequestTimeout();
+	}
+
+	/**
+	 * @param deadlineNanos the {@link System#nanoTime()} the player stops at
+	 * @return a {@code Mono} playing videos until the deadline
+	 */
+	public Mono<Void> play(long deadlineNanos) {
+		return Mono.defer(() -> {
+			start(randomKey(), 0);
+			return Mono.defer(this::nextSegment)
+					.repeat(() -> System.nanoTime() < deadlineNanos)
+					.then();
+		});
+	}
+
+	private Mono<Void> nextSegment() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		if (position >= videoSize) {
+			start(randomKey(), 0);
+		} else if (playStartNanos >= 0 && random.nextDouble() < seekProbability) {
+			if (metrics.isRecording()) {
+				metrics.recordSeek();
+			}
+			start(key, random.nextLong(videoSize));
+		}
+
+		long ahead = downloadedNanos - playhead(System.nanoTime());
+		Mono<Void> fetch = Mono.defer(this::fetchSegment);
+		return ahead > bufferAheadNanos ? Mono.delay(Duration.ofNanos(ahead - bufferAheadNanos)).then(fetch) : fetch;
+	}
+
+	private Mono<Void> fetchSegment() {
+		boolean recording = metrics.isRecording();
+		long end = Math.min(position + segmentBytes, videoSize) - 1;
+		long started = System.nanoTime();
+		firstByteNanos = 0;
+
+		return httpClient
+				.headers(headers -> headers.set("Range", "bytes=" + position + "-" + end))
+				.get()
+				.uri("/videos/" + key)
+				.response((response, body) -> {
+					if (response.status().code() != 206) {
+						return body.then(Mono.error(new IllegalStateException("Unexpected status " + response.status())));
+					}
+					return body
+							.map(this::firstByte)
+							.reduce(0L, Long::sum);
+				})
+				.next()
+				.timeout(requestTimeout)
+				.doOnNext(bytes -> received(started, bytes, recording))
+				.then()
+				.onErrorResume(e -> {
+					if (recording) {
+						metrics.recordError();
+					}
+					// Start over like a player would after an error, instead of hammering a failing server.
+					start(key, position);
+					return Mono.delay(Duration.ofSeconds(1)).then();
+				});
+	}
+
+	private long firstByte(ByteBuf buffer) {
+		if (firstByteNanos == 0) {
+			firstByteNanos = System.nanoTime();
+		}
+		return buffer.readableBytes();
+	}
+
+	private void received(long startedNanos, long bytes, boolean recording) {
+		long now = System.nanoTime();
+		long mediaNanos = bytes * 8 * 1_000_000_000L / bitrate;
+		if (playStartNanos < 0) {
+			playStartNanos = now;
+		} else {
+			long played = now - playStartNanos - stalledNanos;
+			if (played > downloadedNanos) {
+				stalledNanos += played - downloadedNanos;
+				if (recording) {
+					metrics.recordStall(played - downloadedNanos);
+				}
+			}
+		}
+		downloadedNanos += mediaNanos;
+		position += bytes;
+		if (recording) {
+			metrics.recordRequest((firstByteNanos == 0 ? now : firstByteNanos) - startedNanos, bytes, mediaNanos);
+		}
+	}
+
+	private long playhead(long now) {
+		return playStartNanos < 0 ? 0 : Math.min(downloadedNanos, now - playStartNanos - stalledNanos);
+	}
+
+	private void start(String key, long position) {
+		this.key = key;
+		this.position = position;
+		this.downloadedNanos = 0;
+		this.playStartNanos = -1;
+		this.stalledNanos = 0;
+	}
+
+	private String randomKey() {
+		return keys.get(ThreadLocalRandom.current().nextInt(keys.size()));
+	}
+
+}
@@ -0,0 +1,105 @@
+package net.tylerwade.loadtest;
+
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the heap, direct memory and threads of the JVM while the load test runs and keeps the peaks.
+ * <p>
+ * Direct memory is sampled twice: the JDK's {@code direct} buffer pool, and the direct memory of Netty's pooled
+ * allocator, which Reactor Netty and the async S3 client allocate from. Depending on whether Netty may allocate
+ * direct buffers without a cleaner, the allocator's memory is part of the buffer pool or not.
+ */
+public class ResourceMonitor implements AutoCloseable {
+
+	private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final BufferPoolMXBean directBufferPool = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+			.filter(pool -> "direct".equals(pool.getName()))
+			.findFirst()
+			.orElse(null);
+
+	private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "resource-monitor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private ScheduledFuture<?> sampling;
+
+	private volatile long peakHeap;
+	private volatile long peakDirectBufferPool;
+	private volatile long peakNettyDirect;
+	private volatile Map<String, Integer> threadsAtPeak = Map.of();
+
+	/**
+	 * Resets the peaks and samples every {@code intervalMillis} until {@link #close()}.
+	 */
+	public synchronized void start(long intervalMillis) {
+		peakHeap = 0;
+		peakDirectBufferPool = 0;
+		peakNettyDirect = 0;
+		threads.resetPeakThreadCount();
+		sampling = sampler.scheduleAtFixedRate(this::sample, 0, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public long getPeakHeap() {
+		return peakHeap;
+	}
+
+	public long getPeakDirectBufferPool() {
+		return peakDirectBufferPool;
+	}
+
+	public long getPeakNettyDirect() {
+		return peakNettyDirect;
+	}
+
+	public int getPeakThreadCount() {
+		return threads.getPeakThreadCount();
+	}
+
+	/**
+	 * @return the live threads when the most threads were seen, counted by name with trailing numbers removed
+	 */
+	public Map<String, Integer> getThreadsAtPeak() {
+		return threadsAtPeak;
+	}
+
+	@Override
+	public synchronized void close() {
+		if (sampling != null) {
+			sampling.cancel(false);
+			sample();
+		}
+		sampler.shutdownNow();
+	}
+
+	private void sample() {
+		peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+		if (directBufferPool != null) {
+			peakDirectBufferPool = Math.max(peakDirectBufferPool, directBufferPool.getMemoryUsed());
+		}
+		peakNettyDirect = Math.max(peakNettyDirect, PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory());
+
+		int liveThreads = threads.getThreadCount();
+		if (liveThreads >= threadsAtPeak.values().stream().mapToInt(Integer::intValue).sum()) {
+			Map<String, Integer> byName = new TreeMap<>();
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				byName.merge(thread.getName().replaceAll("([-#_ ]?\\d+)+$", ""), 1, Integer::sum);
+			}
+			threadsAtPeak = byName;
+		}
+	}
+
+}
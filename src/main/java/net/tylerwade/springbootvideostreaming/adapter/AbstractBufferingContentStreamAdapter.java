@@ -0,0 +1,64 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Base class of the adapters that read content into buffers they allocate, holding the factory and the size of
+ * those buffers, and the cache of the MP4 indexes of their content.
+ * <p>
+ * Buffers come from {@link DefaultDataBufferFactory#sharedInstance} until a factory is set, so the adapters do not
+ * depend on a particular server. {@link net.tylerwade.springbootvideostreaming.config.AutoConfig} sets the
+ * application's {@code DataBufferFactory} bean, by default the pooled direct buffers Reactor Netty writes
+ * responses with, so streaming does not allocate a heap buffer per read.
+ */
+public abstract class AbstractBufferingContentStreamAdapter implements ContentStreamAdapter {
+
+	private DataBufferFactory dataBufferFactory = DefaultDataBufferFactory.sharedInstance;
+	private int bufferSize = DEFAULT_BUFFER_SIZE;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+
+	/**
+	 * Sets the factory of the buffers content is read into.
+	 *
+	 * @param dataBufferFactory the buffer factory, by default {@link DefaultDataBufferFactory#sharedInstance}
+	 */
+	public void setDataBufferFactory(DataBufferFactory dataBufferFactory) {
+		this.dataBufferFactory = dataBufferFactory;
+	}
+
+	public DataBufferFactory getDataBufferFactory() {
+		return dataBufferFactory;
+	}
+
+	/**
+	 * Sets the size of the buffers content is read into. Larger buffers mean fewer reads and writes per chunk.
+	 *
+	 * @param bufferSize the buffer size in bytes, by default 8KB
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize < 1) {
+			throw new IllegalArgumentException("bufferSize must be at least 1.");
+		}
+		this.bufferSize = bufferSize;
+	}
+
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	/**
+	 * @return the size of the buffers to read content of the given length into, no larger than the content
+	 */
+	protected int readBufferSize(long contentLength) {
+		return (int) Math.max(1, Math.min(bufferSize, contentLength));
+	}
+}
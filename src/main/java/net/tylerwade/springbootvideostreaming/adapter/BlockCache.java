@@ -0,0 +1,154 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache of content blocks held in direct (off-heap) buffers, used by the
+ * {@link CachingContentStreamAdapter}.
+ * <p>
+ * Eviction follows W-TinyLFU: new blocks enter a small LRU window. Blocks leaving the window are only admitted
+ * to the main LRU region if they have been accessed more often than the block they would evict, according to a
+ * {@link FrequencySketch}. A scan over content nobody watches twice therefore only churns the window and leaves
+ * the popular blocks in the main region alone.
+ */
+class BlockCache {
+
+	private final long maxWindowBytes;
+	private final long maxMainBytes;
+
+	private final Map<BlockKey, Block> window = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<BlockKey, Block> main = new LinkedHashMap<>(16, 0.75f, true);
+	private final FrequencySketch sketch;
+
+	private long windowBytes;
+	private long mainBytes;
+	private long rejections;
+
+	/**
+	 * @param maxBytes  the total size of all cached blocks
+	 * @param blockSize the size of a block, used to size the window and the frequency sketch
+	 */
+	BlockCache(long maxBytes, int blockSize) {
+		this.maxWindowBytes = Math.max(blockSize, maxBytes / 100);
+		this.maxMainBytes = Math.max(0, maxBytes - maxWindowBytes);
+		this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBytes / blockSize)));
+	}
+
+	/**
+	 * Records an access of the block and returns it if it is cached.
+	 */
+	synchronized Block get(BlockKey key) {
+		sketch.increment(key);
+		Block block = window.get(key);
+		return block != null ? block : main.get(key);
+	}
+
+	/**
+	 * Adds a block to the window. It may later be rejected by the admission policy.
+	 */
+	synchronized void put(BlockKey key, Block block) {
+		if (window.containsKey(key) || main.containsKey(key)) {
+			return;
+		}
+
+		window.put(key, block);
+		windowBytes += block.size();
+
+		Iterator<Map.Entry<BlockKey, Block>> eldest = window.entrySet().iterator();
+		while (windowBytes > maxWindowBytes && eldest.hasNext()) {
+			Map.Entry<BlockKey, Block> candidate = eldest.next();
+			eldest.remove();
+			windowBytes -= candidate.getValue().size();
+			admit(candidate.getKey(), candidate.getValue());
+		}
+	}
+
+	private void admit(BlockKey key, Block block) {
+		int candidateFrequency = sketch.frequency(key);
+
+		// Find the victims first, so a rejected candidate does not evict anything.
+		int victimCount = 0;
+		long freedBytes = 0;
+		Iterator<Map.Entry<BlockKey, Block>> victims = main.entrySet().iterator();
+		while (mainBytes - freedBytes + block.size() > maxMainBytes) {
+			if (!victims.hasNext()) {
+				rejections++;
+				return;
+			}
+			Map.Entry<BlockKey, Block> victim = victims.next();
+			if (sketch.frequency(victim.getKey()) >= candidateFrequency) {
+				rejections++;
+				return;
+			}
+			victimCount++;
+			freedBytes += victim.getValue().size();
+		}
+
+		victims = main.entrySet().iterator();
+		for (int i = 0; i < victimCount; i++) {
+			victims.next();
+			victims.remove();
+		}
+		mainBytes -= freedBytes;
+
+		main.put(key, block);
+		mainBytes += block.size();
+	}
+
+	/**
+	 * Removes all blocks of the given content.
+	 */
+	synchronized void invalidate(String key) {
+		window.entrySet().removeIf(entry -> {
+			if (entry.getKey().key().equals(key)) {
+				windowBytes -= entry.getValue().size();
+				return true;
+			}
+			return false;
+		});
+		main.entrySet().removeIf(entry -> {
+			if (entry.getKey().key().equals(key)) {
+				mainBytes -= entry.getValue().size();
+				return true;
+			}
+			return false;
+		});
+	}
+
+	synchronized void invalidateAll() {
+		window.clear();
+		main.clear();
+		windowBytes = 0;
+		mainBytes = 0;
+	}
+
+	synchronized long getCachedBytes() {
+		return windowBytes + mainBytes;
+	}
+
+	synchronized int size() {
+		return window.size() + main.size();
+	}
+
+	synchronized long getRejectionCount() {
+		return rejections;
+	}
+
+	record BlockKey(String key, long index) {
+	}
+
+	/**
+	 * A cached block, the data is a read-only view of a direct buffer and is shared by all readers.
+	 */
+	record Block(ByteBuffer data, StreamedContentMetadata metadata) {
+
+		int size() {
+			return data.capacity();
+		}
+	}
+}
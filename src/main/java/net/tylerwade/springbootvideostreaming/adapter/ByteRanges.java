@@ -0,0 +1,248 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Resolves the ranges of a multi-range request and assembles them into a {@code multipart/byteranges} body.
+ * Used by {@link ContentStreamAdapter#loadMultipartContent(StreamContentRequest)}.
+ */
+final class ByteRanges {
+
+	/**
+	 * Ranges separated by at most this many bytes are merged into one part. A part's headers are about as long,
+	 * so sending the gap costs less than a second request to the backend.
+	 */
+	static final long MERGE_GAP = 80;
+
+	/**
+	 * Parts separated by at most this many bytes are read from the backend with a single request, as long as they
+	 * fit into the adapter's maximum chunk size together; the bytes between them are read and dropped. Reading a
+	 * gap of this size costs less than another request to the backend.
+	 */
+	static final long FETCH_GAP = 64 * 1024;
+
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	private ByteRanges() {
+	}
+
+	/**
+	 * Resolves the requested ranges against the size of the content. Unsatisfiable ranges are dropped, the
+	 * others are limited by the adapter's chunk size, sorted, and merged if they overlap or are less than
+	 * {@link #MERGE_GAP} bytes apart, as long as the merged range stays within the adapter's maximum chunk size.
+	 *
+	 * @return the ranges to send, in ascending order
+	 */
+	static List<Range> resolve(ContentStreamAdapter contentStreamAdapter, StreamContentRequest contentRequest, long fileSize) {
+		List<Range> requested = requestedRanges(contentRequest);
+		List<Range> resolved = new ArrayList<>(requested.size());
+		for (Range range : requested) {
+			if (!isSatisfiable(range, fileSize)) {
+				continue;
+			}
+			resolved.add(contentStreamAdapter.createValidRange(partRequest(contentRequest, range), fileSize));
+		}
+		resolved.sort(Comparator.comparing(Range::getStart));
+
+		long maxChunkSize = contentStreamAdapter.getMaxChunkSize();
+		List<Range> merged = new ArrayList<>(resolved.size());
+		for (Range range : resolved) {
+			Range last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && range.getStart() <= last.getEnd() + 1 + MERGE_GAP) {
+				long end = Math.max(last.getEnd(), range.getEnd());
+				if (end - last.getStart() + 1 <= maxChunkSize) {
+					last.setEnd(end);
+					continue;
+				}
+			}
+			merged.add(new Range(range.getStart(), range.getEnd()));
+		}
+		return merged;
+	}
+
+	/**
+	 * Assembles the parts into a {@code multipart/byteranges} body. The parts are loaded from the adapter once the
+	 * body is subscribed to, one after the other, with one single-range request per group of nearby parts, see
+	 * {@link #FETCH_GAP}.
+	 */
+	static StreamedContent multipart(ContentStreamAdapter contentStreamAdapter, StreamContentRequest contentRequest,
+									 StreamedContentMetadata metadata, List<Range> parts) {
+		String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong() | Long.MIN_VALUE);
+		String contentType = metadata.getContentType() != null ? metadata.getContentType() : DEFAULT_CONTENT_TYPE;
+
+		List<byte[]> partHeaders = new ArrayList<>(parts.size());
+		long contentLength = 0;
+		for (Range part : parts) {
+			byte[] partHeader = partHeader(boundary, contentType, part, metadata.getFileSize(), partHeaders.isEmpty());
+			partHeaders.add(partHeader);
+			contentLength += partHeader.length + part.getEnd() - part.getStart() + 1;
+		}
+		byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+		contentLength += closing.length;
+
+		List<int[]> groups = fetchGroups(parts, contentStreamAdapter.getMaxChunkSize());
+		Flux<DataBuffer> content = Flux.fromIterable(groups)
+				.concatMap(group -> groupContent(contentStreamAdapter, contentRequest, parts, partHeaders, group[0], group[1]))
+				.concatWith(Mono.fromSupplier(() -> wrap(closing)))
+				.doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+
+		return StreamedContent.builder()
+				.key(contentRequest.getKey())
+				.metadata(metadata)
+				.content(content)
+				.contentLength(contentLength)
+				.multipartBoundary(boundary)
+				.ranges(List.copyOf(parts))
+				.build();
+	}
+
+	/**
+	 * Groups consecutive parts that are at most {@link #FETCH_GAP} bytes apart and span at most
+	 * {@code maxChunkSize} bytes together.
+	 *
+	 * @return the index of the first part and the index after the last part of every group
+	 */
+	static List<int[]> fetchGroups(List<Range> parts, long maxChunkSize) {
+		List<int[]> groups = new ArrayList<>();
+		int first = 0;
+		for (int i = 1; i <= parts.size(); i++) {
+			if (i == parts.size()
+					|| parts.get(i).getStart() - parts.get(i - 1).getEnd() - 1 > FETCH_GAP
+					|| parts.get(i).getEnd() - parts.get(first).getStart() + 1 > maxChunkSize) {
+				groups.add(new int[]{first, i});
+				first = i;
+			}
+		}
+		return groups;
+	}
+
+	/**
+	 * Loads the parts from {@code from} (inclusive) to {@code to} (exclusive) with one request for the range
+	 * spanning them, and emits every part's header followed by its bytes.
+	 */
+	private static Flux<DataBuffer> groupContent(ContentStreamAdapter contentStreamAdapter, StreamContentRequest contentRequest,
+												 List<Range> parts, List<byte[]> partHeaders, int from, int to) {
+		if (to - from == 1) {
+			return Mono.fromSupplier(() -> wrap(partHeaders.get(from)))
+					.concatWith(contentStreamAdapter.loadContent(partRequest(contentRequest, parts.get(from)))
+							.flatMapMany(StreamedContent::getContent));
+		}
+
+		Range span = new Range(parts.get(from).getStart(), parts.get(to - 1).getEnd());
+		return Flux.defer(() -> {
+			PartSplitter splitter = new PartSplitter(parts.subList(from, to), partHeaders.subList(from, to), span.getStart());
+			return contentStreamAdapter.loadContent(partRequest(contentRequest, span))
+					.flatMapMany(StreamedContent::getContent)
+					.concatMapIterable(splitter::split);
+		});
+	}
+
+	/**
+	 * @return the ranges of a multi-range request, or the single range of any other request
+	 */
+	static List<Range> requestedRanges(StreamContentRequest contentRequest) {
+		return contentRequest.isMultiRange() ? contentRequest.getRanges() : List.of(contentRequest.getRange());
+	}
+
+	static boolean isSatisfiable(Range range, long fileSize) {
+		if (range.isSuffix()) {
+			return range.getSuffixLength() > 0 && fileSize > 0;
+		}
+		long start = range.getStart() != null ? range.getStart() : 0;
+		return start < fileSize && (range.getEnd() == null || range.getEnd() >= start);
+	}
+
+	private static StreamContentRequest partRequest(StreamContentRequest contentRequest, Range range) {
+		return StreamContentRequest.builder()
+				.key(contentRequest.getKey())
+				.clientId(contentRequest.getClientId())
+				.range(range)
+				.build();
+	}
+
+	private static byte[] partHeader(String boundary, String contentType, Range part, long fileSize, boolean first) {
+		StringBuilder header = new StringBuilder(96);
+		if (!first) {
+			header.append("\r\n");
+		}
+		header.append("--").append(boundary)
+				.append("\r\nContent-Type: ").append(contentType)
+				.append("\r\nContent-Range: bytes ").append(part.getStart()).append('-').append(part.getEnd())
+				.append('/').append(fileSize)
+				.append("\r\n\r\n");
+		return header.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+	private static DataBuffer wrap(byte[] bytes) {
+		return DefaultDataBufferFactory.sharedInstance.wrap(bytes);
+	}
+
+	/**
+	 * Splits the content of a range spanning several parts into the parts, inserting each part's header before
+	 * its first byte and dropping the bytes between the parts. The parts are retained slices of the content's
+	 * buffers, nothing is copied.
+	 */
+	private static final class PartSplitter {
+
+		private final List<Range> parts;
+		private final List<byte[]> partHeaders;
+
+		private long position;
+		private int part;
+
+		private PartSplitter(List<Range> parts, List<byte[]> partHeaders, long start) {
+			this.parts = parts;
+			this.partHeaders = partHeaders;
+			this.position = start;
+		}
+
+		@SuppressWarnings("deprecation") // retainedSlice is the only way to share a pooled buffer without copying
+		private List<DataBuffer> split(DataBuffer buffer) {
+			List<DataBuffer> split = new ArrayList<>(2);
+			try {
+				int offset = buffer.readPosition();
+				int remaining = buffer.readableByteCount();
+				while (remaining > 0 && part < parts.size()) {
+					Range range = parts.get(part);
+					if (position < range.getStart()) {
+						int gap = (int) Math.min(remaining, range.getStart() - position);
+						offset += gap;
+						remaining -= gap;
+						position += gap;
+						continue;
+					}
+					if (position == range.getStart()) {
+						split.add(wrap(partHeaders.get(part)));
+					}
+
+					int length = (int) Math.min(remaining, range.getEnd() - position + 1);
+					split.add(buffer.retainedSlice(offset, length));
+					offset += length;
+					remaining -= length;
+					position += length;
+					if (position > range.getEnd()) {
+						part++;
+					}
+				}
+			} finally {
+				DataBufferUtils.release(buffer);
+			}
+			return split;
+		}
+	}
+
+}
@@ -0,0 +1,401 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code CachingContentStreamAdapter} decorates another {@code ContentStreamAdapter} with an in-memory cache
+ * of content blocks.
+ * <p>
+ * Content is cached in fixed-size blocks aligned to multiples of the block size, so any requested range can be
+ * assembled from the blocks it overlaps. Blocks that are not cached are fetched from the delegate in as few
+ * requests as possible; cached blocks never hit the delegate again. The blocks are held off-heap in direct
+ * buffers, bounded by a total size, and admitted with a W-TinyLFU policy so that a one-off scan does not evict
+ * the blocks of popular content (see {@link BlockCache}).
+ * <p>
+ * The metadata of a content is cached for the metadata time-to-live. Once it has expired, the next request asks
+ * the delegate whether the content changed with a conditional {@code If-None-Match} request, which adapters
+ * answer without reading content. If the content changed, its cached blocks are dropped and fetched again. Call
+ * {@link #invalidate(String)} to drop replaced content right away.
+ * <p>
+ * Requests for content that is not cached pass their {@code If-None-Match} and {@code If-Modified-Since}
+ * preconditions on to the delegate, so a revalidation is answered before any block is fetched.
+ */
+public class CachingContentStreamAdapter implements ContentStreamAdapter {
+
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024; // 256KB
+	public static final long DEFAULT_MAX_CACHE_BYTES = 512L * 1024 * 1024; // 512MB
+	public static final Duration DEFAULT_METADATA_TTL = Duration.ofSeconds(30);
+
+	private final ContentStreamAdapter delegate;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final int blockSize;
+	private final int maxBlocksPerFetch;
+	private final BlockCache blockCache;
+	private final ContentMetadataCache metadataCache;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param delegate      the adapter blocks are loaded from
+	 * @param blockSize     the size of a cached block, at most the delegate's max chunk size
+	 * @param maxCacheBytes the total size of all cached blocks
+	 * @param metadataTtl   how long cached content is served before the delegate is asked whether it changed
+	 */
+	public CachingContentStreamAdapter(ContentStreamAdapter delegate, int blockSize, long maxCacheBytes, Duration metadataTtl) {
+		if (blockSize < 1 || blockSize > delegate.getMaxChunkSize()) {
+			throw new IllegalArgumentException("blockSize must be between 1 and the delegate's max chunk size.");
+		}
+		if (maxCacheBytes < blockSize) {
+			throw new IllegalArgumentException("maxCacheBytes must be at least the block size.");
+		}
+		this.delegate = delegate;
+		this.blockSize = blockSize;
+		this.maxBlocksPerFetch = (int) (delegate.getMaxChunkSize() / blockSize);
+		this.blockCache = new BlockCache(maxCacheBytes, blockSize);
+		this.metadataCache = new ContentMetadataCache(ContentMetadataCache.DEFAULT_MAX_ENTRIES, metadataTtl, true);
+	}
+
+	public CachingContentStreamAdapter(ContentStreamAdapter delegate, int blockSize, long maxCacheBytes) {
+		this(delegate, blockSize, maxCacheBytes, DEFAULT_METADATA_TTL);
+	}
+
+	public CachingContentStreamAdapter(ContentStreamAdapter delegate) {
+		this(delegate, DEFAULT_BLOCK_SIZE, DEFAULT_MAX_CACHE_BYTES);
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		if (contentRequest.isMultiRange() || contentRequest.isSuffixRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
+		return Mono.defer(() -> {
+			String key = contentRequest.getKey();
+			Range requestedRange = contentRequest.getRange();
+			long start = requestedRange == null || requestedRange.getStart() == null ? 0L : requestedRange.getStart();
+			long firstIndex = start / blockSize;
+
+			BlockCache.Block first = lookup(key, firstIndex);
+			if (first == null) {
+				return loadUncached(contentRequest, start, firstIndex);
+			}
+
+			// Served from the cache while the metadata is fresh, or once the delegate confirms it has not changed.
+			return metadataCache.getAsync(key, this::revalidateMetadata)
+					.flatMap(metadata -> {
+						if (!isSameVersion(first.metadata(), metadata)) {
+							blockCache.invalidate(key);
+							return loadUncached(contentRequest, start, firstIndex);
+						}
+						Map<Long, BlockCache.Block> resolved = new HashMap<>();
+						resolved.put(firstIndex, first);
+						return Mono.just(toStreamedContent(contentRequest, first.metadata(), resolved));
+					});
+		});
+	}
+
+	/**
+	 * Loads content whose first block is not cached, fetching the first run of missing blocks together with the
+	 * metadata. The request's preconditions are passed on, so the delegate answers them before reading content.
+	 */
+	private Mono<StreamedContent> loadUncached(StreamContentRequest contentRequest, long start, long firstIndex) {
+		String key = contentRequest.getKey();
+		Range requestedRange = contentRequest.getRange();
+
+		// Blocks looked up or fetched while loading the metadata, so they are not looked up twice.
+		Map<Long, BlockCache.Block> resolved = new HashMap<>();
+
+		// The file size is not known yet, so fetch the blocks up to the requested or largest possible end. The
+		// delegate limits the fetch to the end of the file.
+		long requestedEnd = requestedRange == null || requestedRange.getEnd() == null
+				? Long.MAX_VALUE
+				: requestedRange.getEnd();
+		long lastIndex = Math.min(requestedEnd, start + getMaxChunkSize() - 1) / blockSize;
+		long runEnd = firstIndex;
+		while (runEnd < lastIndex && runEnd - firstIndex + 1 < maxBlocksPerFetch) {
+			BlockCache.Block next = lookup(key, runEnd + 1);
+			if (next != null) {
+				resolved.put(runEnd + 1, next);
+				break;
+			}
+			runEnd++;
+		}
+
+		StreamContentRequest fetchRequest = StreamContentRequest.builder()
+				.key(key)
+				.range(new Range(firstIndex * blockSize, (runEnd + 1) * blockSize - 1))
+				.ifNoneMatch(contentRequest.getIfNoneMatch())
+				.ifModifiedSince(contentRequest.getIfModifiedSince())
+				.build();
+		return fetchBlocks(fetchRequest)
+				.map(fetched -> {
+					fetched.blocks().forEach((index, data) -> resolved.put(index, new BlockCache.Block(data, fetched.metadata())));
+					return toStreamedContent(contentRequest, fetched.metadata(), resolved);
+				});
+	}
+
+	private StreamedContent toStreamedContent(StreamContentRequest contentRequest, StreamedContentMetadata metadata, Map<Long, BlockCache.Block> resolved) {
+		if (isNotModified(contentRequest, metadata)) {
+			return StreamedContent.notModified(metadata);
+		}
+		if (isRangeNotSatisfiable(contentRequest, metadata)) {
+			return StreamedContent.rangeNotSatisfiable(metadata);
+		}
+
+		Range validRange = createValidRange(contentRequest, metadata);
+		Long contentLength = validRange.getEnd() - validRange.getStart() + 1;
+
+		return StreamedContent.builder()
+				.key(contentRequest.getKey())
+				.metadata(metadata)
+				.content(readBlocks(contentRequest.getKey(), validRange, metadata, resolved))
+				.contentLength(contentLength)
+				.range(validRange)
+				.build();
+	}
+
+	private Flux<DataBuffer> readBlocks(String key, Range range, StreamedContentMetadata metadata, Map<Long, BlockCache.Block> resolved) {
+		long firstIndex = range.getStart() / blockSize;
+		long lastIndex = range.getEnd() / blockSize;
+
+		return Flux.defer(() -> {
+			// Group the blocks into cached blocks and runs of missing blocks fetched with a single request. Cached
+			// blocks of another version of the content count as missing.
+			Map<Long, BlockCache.Block> found = new HashMap<>(resolved);
+			List<Mono<Map<Long, ByteBuffer>>> segments = new ArrayList<>();
+			long index = firstIndex;
+			while (index <= lastIndex) {
+				BlockCache.Block cached = found.containsKey(index) ? found.get(index) : lookup(key, index);
+				if (cached != null && isSameVersion(cached.metadata(), metadata)) {
+					segments.add(Mono.just(Map.of(index, cached.data())));
+					index++;
+					continue;
+				}
+
+				long runStart = index;
+				while (index < lastIndex && index - runStart + 1 < maxBlocksPerFetch && !found.containsKey(index + 1)) {
+					BlockCache.Block next = lookup(key, index + 1);
+					if (next != null) {
+						found.put(index + 1, next);
+						break;
+					}
+					index++;
+				}
+				long runEnd = index++;
+				Range runRange = new Range(runStart * blockSize, (runEnd + 1) * blockSize - 1);
+				segments.add(fetchBlocks(new StreamContentRequest(key, runRange)).map(FetchedBlocks::blocks));
+			}
+
+			return Flux.fromIterable(segments)
+					.concatMap(segment -> segment)
+					.concatMapIterable(blocks -> blocks.entrySet().stream()
+							.sorted(Map.Entry.comparingByKey())
+							.filter(block -> block.getKey() >= firstIndex && block.getKey() <= lastIndex)
+							.map(block -> slice(block.getKey(), block.getValue(), range))
+							.toList());
+		});
+	}
+
+	private DataBuffer slice(long index, ByteBuffer block, Range range) {
+		long blockStart = index * blockSize;
+		int from = (int) (Math.max(range.getStart(), blockStart) - blockStart);
+		int to = (int) (Math.min(range.getEnd() + 1, blockStart + block.capacity()) - blockStart);
+		return DefaultDataBufferFactory.sharedInstance.wrap(block.slice(from, to - from));
+	}
+
+	/**
+	 * Fetches the blocks of the request's block-aligned range from the delegate with one request and caches them,
+	 * together with the metadata. Nothing is fetched if the delegate answers the request's preconditions with
+	 * Not Modified.
+	 */
+	private Mono<FetchedBlocks> fetchBlocks(StreamContentRequest fetchRequest) {
+		String key = fetchRequest.getKey();
+
+		return delegate.loadContent(fetchRequest)
+				.doOnNext(content -> metadataCache.put(key, new ContentMetadataCache.LoadedMetadata(content.getMetadata(), content.getMetadata().getETag())))
+				.flatMap(content -> content.isNotModified() || content.isRangeNotSatisfiable()
+						? Mono.just(new FetchedBlocks(content.getMetadata(), Map.of()))
+						: DataBufferUtils.join(content.getContent())
+						.map(joined -> {
+							Map<Long, ByteBuffer> blocks = new HashMap<>();
+							try {
+								long index = content.getRange().getStart() / blockSize;
+								while (joined.readableByteCount() > 0) {
+									int length = Math.min(blockSize, joined.readableByteCount());
+									ByteBuffer data = ByteBuffer.allocateDirect(length);
+									joined.toByteBuffer(joined.readPosition(), data, 0, length);
+									joined.readPosition(joined.readPosition() + length);
+
+									// A delegate may end the chunk early; only complete blocks (or the last one of the file) are cached.
+									ByteBuffer block = data.asReadOnlyBuffer();
+									if (length == blockSize || index * blockSize + length == content.getMetadata().getFileSize()) {
+										blockCache.put(new BlockCache.BlockKey(key, index), new BlockCache.Block(block, content.getMetadata()));
+									}
+									blocks.put(index++, block);
+									misses.increment();
+								}
+							} finally {
+								DataBufferUtils.release(joined);
+							}
+							return new FetchedBlocks(content.getMetadata(), blocks);
+						}));
+	}
+
+	/**
+	 * Loads the metadata of expired content with a conditional request for its first byte. The delegate answers
+	 * the precondition before reading content, and the content of a changed version is never subscribed to.
+	 */
+	private Mono<ContentMetadataCache.LoadedMetadata> revalidateMetadata(String key, String currentETag) {
+		StreamContentRequest request = StreamContentRequest.builder()
+				.key(key)
+				.range(new Range(0L, 0L))
+				.ifNoneMatch(currentETag)
+				.build();
+
+		return delegate.loadContent(request)
+				.filter(content -> !content.isNotModified())
+				.map(content -> new ContentMetadataCache.LoadedMetadata(content.getMetadata(), content.getMetadata().getETag()));
+	}
+
+	private static boolean isSameVersion(StreamedContentMetadata cached, StreamedContentMetadata current) {
+		return Objects.equals(cached.getETag(), current.getETag())
+				&& Objects.equals(cached.getLastModified(), current.getLastModified())
+				&& Objects.equals(cached.getFileSize(), current.getFileSize());
+	}
+
+	private BlockCache.Block lookup(String key, long index) {
+		BlockCache.Block block = blockCache.get(new BlockCache.BlockKey(key, index));
+		if (block != null) {
+			hits.increment();
+		}
+		return block;
+	}
+
+	/**
+	 * Removes all cached blocks and the metadata of the given content, e.g. after it has been replaced.
+	 *
+	 * @param key the key of the content to invalidate
+	 */
+	public void invalidate(String key) {
+		blockCache.invalidate(key);
+		metadataCache.invalidate(key);
+	}
+
+	/**
+	 * Removes all cached blocks and metadata.
+	 */
+	public void invalidateAll() {
+		blockCache.invalidateAll();
+		metadataCache.invalidateAll();
+	}
+
+	/**
+	 * @return the number of blocks served from the cache
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of blocks fetched from the delegate
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of fetched blocks the admission policy did not keep in favour of more popular blocks
+	 */
+	public long getRejectionCount() {
+		return blockCache.getRejectionCount();
+	}
+
+	/**
+	 * @return the total size of all cached blocks in bytes
+	 */
+	public long getCachedBytes() {
+		return blockCache.getCachedBytes();
+	}
+
+	/**
+	 * @return the number of cached blocks
+	 */
+	public int getCachedBlockCount() {
+		return blockCache.size();
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		return delegate.getContentMetadata(key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return delegate.streamContentMetadata(prefix);
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return delegate.listContentMetadata(prefix, continuationToken, maxKeys);
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	private record FetchedBlocks(StreamedContentMetadata metadata, Map<Long, ByteBuffer> blocks) {
+	}
+}
@@ -0,0 +1,124 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * The metadata of every key of a catalog, held in memory by the {@link IndexedContentStreamAdapter}.
+ * <p>
+ * Lookups by key go to a hash map; sorted, prefix and paged queries go to a skip list of the same entries.
+ * Both maps are updated together, so a query may briefly see an entry a lookup does not, but never a torn entry.
+ * <p>
+ * A full listing is applied with {@link #beginSweep()}, {@link #put} for every listed entry and
+ * {@link #endSweep()}, which removes every key that was not put since the sweep began.
+ */
+class CatalogIndex {
+
+	private final Map<String, StreamedContentMetadata> byKey = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListMap<String, StreamedContentMetadata> sorted = new ConcurrentSkipListMap<>();
+
+	private volatile Set<String> swept;
+
+	StreamedContentMetadata get(String key) {
+		return byKey.get(key);
+	}
+
+	/**
+	 * @return {@code true} if the entry was added or differs from the indexed one
+	 */
+	boolean put(StreamedContentMetadata metadata) {
+		String key = metadata.getKey();
+		Set<String> sweep = swept;
+		if (sweep != null) {
+			sweep.add(key);
+		}
+
+		StreamedContentMetadata previous = byKey.put(key, metadata);
+		sorted.put(key, metadata);
+		return !metadata.equals(previous);
+	}
+
+	/**
+	 * @return {@code true} if the key was indexed
+	 */
+	boolean remove(String key) {
+		sorted.remove(key);
+		return byKey.remove(key) != null;
+	}
+
+	int size() {
+		return byKey.size();
+	}
+
+	void beginSweep() {
+		swept = ConcurrentHashMap.newKeySet();
+	}
+
+	/**
+	 * Ends the sweep without removing keys, e.g. because the listing failed part way.
+	 */
+	void abortSweep() {
+		swept = null;
+	}
+
+	/**
+	 * @return the number of keys removed
+	 */
+	int endSweep() {
+		Set<String> sweep = swept;
+		swept = null;
+		if (sweep == null) {
+			return 0;
+		}
+
+		int removed = 0;
+		for (String key : sorted.keySet()) {
+			if (!sweep.contains(key) && remove(key)) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * @param prefix the prefix of the keys, or {@code null} for all keys
+	 * @return a live view of the entries with the prefix, in ascending key order
+	 */
+	Collection<StreamedContentMetadata> entries(String prefix) {
+		return withPrefix(prefix).values();
+	}
+
+	ContentMetadataPage page(String prefix, String continuationToken, int maxKeys) {
+		NavigableMap<String, StreamedContentMetadata> entries = withPrefix(prefix);
+		if (continuationToken != null) {
+			entries = entries.tailMap(continuationToken, false);
+		}
+
+		List<StreamedContentMetadata> page = new ArrayList<>(Math.min(maxKeys + 1, 64));
+		for (StreamedContentMetadata metadata : entries.values()) {
+			page.add(metadata);
+			if (page.size() > maxKeys) {
+				break;
+			}
+		}
+		return ContentMetadataPage.of(page, maxKeys);
+	}
+
+	private NavigableMap<String, StreamedContentMetadata> withPrefix(String prefix) {
+		if (prefix == null || prefix.isEmpty()) {
+			return sorted;
+		}
+		// Keys with the prefix sort before the prefix followed by the largest char, unless that char follows it.
+		return sorted.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+	}
+
+}
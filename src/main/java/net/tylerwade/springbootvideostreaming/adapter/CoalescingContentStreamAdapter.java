@@ -0,0 +1,276 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code CoalescingContentStreamAdapter} decorates another {@code ContentStreamAdapter}, typically an S3
+ * adapter, so that concurrent {@code loadContent} calls for the same key and range share a single upstream fetch.
+ * <p>
+ * When a popular video starts, many clients request the same first chunk at nearly the same time. The first call
+ * starts a fetch from the delegate; every call for the same key and range that arrives while it is in flight joins
+ * it. Each joined caller receives all bytes of the chunk, including the ones fetched before it joined.
+ * <p>
+ * The buffers of the delegate, e.g. pooled direct buffers, are shared without copying: every subscriber receives
+ * a retained slice of each buffer with its own read position and releases only its slices. The buffers
+ * themselves are released once the last subscriber has finished. The upstream fetch is only cancelled when the
+ * last subscriber cancels. Content subscribed to after every earlier subscriber has finished is fetched again.
+ * <p>
+ * A fetch can be joined until it completes, fails, is cancelled, or is older than the join timeout.
+ */
+public class CoalescingContentStreamAdapter implements ContentStreamAdapter, Closeable {
+
+	public static final Duration DEFAULT_JOIN_TIMEOUT = Duration.ofSeconds(30);
+
+	private final ContentStreamAdapter delegate;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final long joinTimeoutNanos;
+
+	private final Map<FlightKey, Flight> flights = new ConcurrentHashMap<>();
+
+	private final LongAdder fetches = new LongAdder();
+	private final LongAdder coalesced = new LongAdder();
+
+	private final Disposable staleEviction;
+
+	/**
+	 * @param delegate    the adapter content is loaded from
+	 * @param joinTimeout how long after it started a fetch can be joined by other calls
+	 */
+	public CoalescingContentStreamAdapter(ContentStreamAdapter delegate, Duration joinTimeout) {
+		this.delegate = delegate;
+		this.joinTimeoutNanos = joinTimeout.toNanos();
+
+		// Fetches whose content is never subscribed to would otherwise stay joinable forever.
+		long sweepInterval = Math.max(1, joinTimeout.toMillis() / 2);
+		this.staleEviction = Schedulers.parallel().schedulePeriodically(
+				this::evictStaleFlights, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public CoalescingContentStreamAdapter(ContentStreamAdapter delegate) {
+		this(delegate, DEFAULT_JOIN_TIMEOUT);
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		if (contentRequest.isMultiRange() || contentRequest.isSuffixRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
+		return Mono.defer(() -> {
+			Range range = contentRequest.getRange();
+			FlightKey flightKey = new FlightKey(contentRequest.getKey(),
+					range == null ? null : range.getStart(),
+					range == null ? null : range.getEnd(),
+					contentRequest.getIfNoneMatch(),
+					contentRequest.getIfModifiedSince(),
+					contentRequest.getIfRange());
+
+			Flight flight = flights.get(flightKey);
+			if (flight != null && !flight.isStale()) {
+				coalesced.increment();
+			} else {
+				Flight newFlight = new Flight(flightKey, contentRequest);
+				flight = flights.merge(flightKey, newFlight, (current, created) -> current.isStale() ? created : current);
+				if (flight == newFlight) {
+					fetches.increment();
+				} else {
+					coalesced.increment();
+				}
+			}
+
+			Flight joined = flight;
+			return joined.content.map(shared -> StreamedContent.builder()
+					.key(shared.content().getKey())
+					.metadata(shared.content().getMetadata())
+					.content(shared.data() == null ? null : Flux.defer(() -> joined.join()
+							? shared.data().map(CoalescingContentStreamAdapter::retainedSlice).doFinally(signal -> joined.leave())
+							: delegate.loadContent(contentRequest).flatMapMany(StreamedContent::getContent)))
+					.contentLength(shared.content().getContentLength())
+					.range(shared.content().getRange())
+					.notModified(shared.content().isNotModified())
+					.rangeNotSatisfiable(shared.content().isRangeNotSatisfiable())
+					.multipartBoundary(shared.content().getMultipartBoundary())
+					.ranges(shared.content().getRanges())
+					.build());
+		});
+	}
+
+	/**
+	 * Stops new calls from joining fetches that are older than the join timeout. This also runs periodically in
+	 * the background.
+	 */
+	public void evictStaleFlights() {
+		flights.values().removeIf(Flight::isStale);
+	}
+
+	/**
+	 * @return the number of fetches started on the delegate
+	 */
+	public long getFetchCount() {
+		return fetches.sum();
+	}
+
+	/**
+	 * @return the number of {@code loadContent} calls that joined a fetch already in flight
+	 */
+	public long getCoalescedCount() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * @return the number of fetches that can currently be joined
+	 */
+	public int getInFlightCount() {
+		return flights.size();
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		return delegate.getContentMetadata(key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return delegate.streamContentMetadata(prefix);
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return delegate.listContentMetadata(prefix, continuationToken, maxKeys);
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	@Override
+	public void close() {
+		staleEviction.dispose();
+		flights.clear();
+	}
+
+	@SuppressWarnings("deprecation")
+	private static DataBuffer retainedSlice(DataBuffer buffer) {
+		return buffer.retainedSlice(buffer.readPosition(), buffer.readableByteCount());
+	}
+
+	// Requests with different preconditions may get different responses, so they never share a fetch.
+	private record FlightKey(String key, Long start, Long end, String ifNoneMatch, Instant ifModifiedSince, String ifRange) {
+	}
+
+	private record SharedContent(StreamedContent content, Flux<DataBuffer> data) {
+	}
+
+	private final class Flight {
+
+		private final long createdNanos = System.nanoTime();
+		private final Mono<SharedContent> content;
+
+		// The delegate's buffers, released once the last subscriber has left.
+		private final List<DataBuffer> buffers = new ArrayList<>();
+		private int subscribers;
+		private boolean released;
+
+		private Flight(FlightKey flightKey, StreamContentRequest contentRequest) {
+			// The data is replayed to every subscriber. It is fetched when the first subscriber subscribes and
+			// cancelled when the last one cancels; once it terminates the fetch can no longer be joined.
+			this.content = delegate.loadContent(contentRequest)
+					.map(loaded -> new SharedContent(loaded, loaded.getContent() == null ? null : loaded.getContent()
+							.doOnNext(this::hold)
+							.doOnTerminate(() -> flights.remove(flightKey, this))
+							.doOnCancel(() -> flights.remove(flightKey, this))
+							.replay()
+							.refCount()))
+					.doOnError(e -> flights.remove(flightKey, this))
+					.cache();
+		}
+
+		private boolean isStale() {
+			return System.nanoTime() - createdNanos >= joinTimeoutNanos;
+		}
+
+		private synchronized void hold(DataBuffer buffer) {
+			if (released) {
+				DataBufferUtils.release(buffer);
+			} else {
+				buffers.add(buffer);
+			}
+		}
+
+		/**
+		 * Registers a subscriber of the shared data.
+		 *
+		 * @return {@code false} if the shared buffers have already been released
+		 */
+		private synchronized boolean join() {
+			if (released) {
+				return false;
+			}
+			subscribers++;
+			return true;
+		}
+
+		private void leave() {
+			List<DataBuffer> toRelease;
+			synchronized (this) {
+				if (--subscribers > 0) {
+					return;
+				}
+				released = true;
+				toRelease = new ArrayList<>(buffers);
+				buffers.clear();
+			}
+			toRelease.forEach(DataBufferUtils::release);
+		}
+	}
+}
@@ -0,0 +1,336 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ContentMetadataCache} class is a bounded, concurrent cache of {@code StreamedContentMetadata}
+ * that sits in front of an adapter's metadata lookups, e.g. the {@code headObject} call of the
+ * {@link S3ContentStreamAdapter}. Without it every range request pays for a metadata round-trip before the
+ * content itself can be fetched.
+ * <p>
+ * Entries expire after the configured time-to-live. When revalidation is enabled and the expired entry has an
+ * ETag, the loader is asked to revalidate it (e.g. with a conditional {@code If-None-Match} request) and the
+ * entry is kept if it has not changed. Concurrent lookups of a key that is missing or expired share one load,
+ * so a burst of requests for a new video costs a single round-trip.
+ * <p>
+ * Entries are held in a {@code ConcurrentHashMap}, so hits take no lock. When the cache is full, entries are
+ * evicted in approximate LRU order with the CLOCK algorithm: a hit only marks its entry as used, and an entry
+ * that was used since eviction last passed it gets a second chance instead of being evicted.
+ */
+public class ContentMetadataCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+	public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+	private final int maxEntries;
+	private final long ttlNanos;
+	private final boolean revalidate;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<StreamedContentMetadata>> loads = new ConcurrentHashMap<>();
+
+	// The entries in the order eviction passes them. Entries that were replaced or invalidated are skipped.
+	private final Queue<Entry> clock = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger clockSize = new AtomicInteger();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder revalidations = new LongAdder();
+
+	/**
+	 * @param maxEntries the maximum number of cached entries
+	 * @param ttl        how long an entry is served without asking the backend
+	 * @param revalidate whether expired entries with an ETag are revalidated instead of reloaded
+	 */
+	public ContentMetadataCache(int maxEntries, Duration ttl, boolean revalidate) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be at least 1.");
+		}
+		this.maxEntries = maxEntries;
+		this.ttlNanos = ttl.toNanos();
+		this.revalidate = revalidate;
+	}
+
+	public ContentMetadataCache() {
+		this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL, true);
+	}
+
+	/**
+	 * Returns the cached metadata for the given key, loading or revalidating it with the loader if the key is
+	 * not cached or its entry has expired. If another thread is already loading the key, its result is awaited.
+	 *
+	 * @param key    the key of the content
+	 * @param loader loads the metadata from the backend
+	 * @return the metadata for the key
+	 */
+	public StreamedContentMetadata get(String key, MetadataLoader loader) {
+		long now = System.nanoTime();
+		Entry entry = entries.get(key);
+		if (entry != null && now < entry.expiresAt) {
+			return hit(entry);
+		}
+
+		CompletableFuture<StreamedContentMetadata> load = new CompletableFuture<>();
+		CompletableFuture<StreamedContentMetadata> inFlight = loads.putIfAbsent(key, load);
+		if (inFlight != null) {
+			hits.increment();
+			return join(inFlight);
+		}
+
+		try {
+			StreamedContentMetadata metadata = load(key, entry, loader, now);
+			loads.remove(key, load);
+			load.complete(metadata);
+			return metadata;
+		} catch (RuntimeException e) {
+			loads.remove(key, load);
+			load.completeExceptionally(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Non-blocking variant of {@link #get(String, MetadataLoader)} for adapters built on asynchronous clients.
+	 * A load is not cancelled when the subscriber that started it cancels, so its result is still cached and
+	 * handed to the other subscribers waiting for it.
+	 *
+	 * @param key    the key of the content
+	 * @param loader loads the metadata from the backend, completing empty if the given ETag is still current
+	 * @return the metadata for the key
+	 */
+	public Mono<StreamedContentMetadata> getAsync(String key, AsyncMetadataLoader loader) {
+		return Mono.defer(() -> {
+			long now = System.nanoTime();
+			Entry entry = entries.get(key);
+			if (entry != null && now < entry.expiresAt) {
+				return Mono.just(hit(entry));
+			}
+
+			CompletableFuture<StreamedContentMetadata> load = new CompletableFuture<>();
+			CompletableFuture<StreamedContentMetadata> inFlight = loads.putIfAbsent(key, load);
+			if (inFlight != null) {
+				hits.increment();
+				return Mono.fromFuture(inFlight, true);
+			}
+
+			// The load is removed before it completes, so lookups after it see the cached entry.
+			loadAsync(key, entry, loader, now).subscribe(
+					metadata -> {
+						loads.remove(key, load);
+						load.complete(metadata);
+					},
+					e -> {
+						loads.remove(key, load);
+						load.completeExceptionally(e);
+					},
+					() -> {
+						loads.remove(key, load);
+						load.complete(null);
+					});
+			return Mono.fromFuture(load, true);
+		});
+	}
+
+	private StreamedContentMetadata load(String key, Entry entry, MetadataLoader loader, long now) {
+		if (entry != null && revalidate && entry.eTag != null) {
+			revalidations.increment();
+			LoadedMetadata loaded = loader.load(key, entry.eTag);
+			if (loaded == null) {
+				// Not modified, serve the cached metadata for another TTL.
+				hits.increment();
+				entry.expiresAt = now + ttlNanos;
+				return entry.metadata;
+			}
+			misses.increment();
+			return put(key, loaded, now);
+		}
+
+		misses.increment();
+		return put(key, loader.load(key, null), now);
+	}
+
+	private Mono<StreamedContentMetadata> loadAsync(String key, Entry entry, AsyncMetadataLoader loader, long now) {
+		if (entry != null && revalidate && entry.eTag != null) {
+			return loader.load(key, entry.eTag)
+					.doOnSubscribe(subscription -> revalidations.increment())
+					.map(loaded -> {
+						misses.increment();
+						return put(key, loaded, now);
+					})
+					.switchIfEmpty(Mono.fromSupplier(() -> {
+						hits.increment();
+						entry.expiresAt = now + ttlNanos;
+						return entry.metadata;
+					}));
+		}
+
+		return loader.load(key, null)
+				.doOnSubscribe(subscription -> misses.increment())
+				.map(loaded -> put(key, loaded, now));
+	}
+
+	/**
+	 * Caches metadata the caller loaded itself, e.g. together with content, replacing any entry for the key.
+	 */
+	void put(String key, LoadedMetadata loaded) {
+		put(key, loaded, System.nanoTime());
+	}
+
+	/**
+	 * Removes the cached metadata for the given key, e.g. after the content has been replaced.
+	 */
+	public void invalidate(String key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes all cached metadata.
+	 */
+	public void invalidateAll() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of lookups served from the cache, including entries that were revalidated as unchanged
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that loaded the metadata from the backend
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of conditional revalidations of expired entries
+	 */
+	public long getRevalidationCount() {
+		return revalidations.sum();
+	}
+
+	private StreamedContentMetadata hit(Entry entry) {
+		hits.increment();
+		if (!entry.used) {
+			entry.used = true;
+		}
+		return entry.metadata;
+	}
+
+	private StreamedContentMetadata put(String key, LoadedMetadata loaded, long now) {
+		Entry entry = new Entry(key, loaded.metadata(), loaded.eTag(), now + ttlNanos);
+		entries.put(key, entry);
+		clock.add(entry);
+		clockSize.incrementAndGet();
+		evictOverflow();
+		return loaded.metadata();
+	}
+
+	/**
+	 * Evicts entries until the cache is within its bounds, giving entries that were used since they were last
+	 * passed a second chance. Also drops the replaced and invalidated entries from the clock once they make up
+	 * half of it.
+	 */
+	private void evictOverflow() {
+		int passes = clockSize.get() * 2;
+		while ((entries.size() > maxEntries || clockSize.get() > 2 * Math.max(entries.size(), maxEntries)) && passes-- > 0) {
+			Entry entry = clock.poll();
+			if (entry == null) {
+				return;
+			}
+			clockSize.decrementAndGet();
+			if (entries.get(entry.key) != entry) {
+				continue;
+			}
+			if (entry.used || entries.size() <= maxEntries) {
+				entry.used = false;
+				clock.add(entry);
+				clockSize.incrementAndGet();
+			} else {
+				entries.remove(entry.key, entry);
+			}
+		}
+	}
+
+	private static StreamedContentMetadata join(CompletableFuture<StreamedContentMetadata> load) {
+		try {
+			return load.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Loads metadata from the backend.
+	 */
+	@FunctionalInterface
+	public interface MetadataLoader {
+
+		/**
+		 * @param key         the key of the content
+		 * @param currentETag the ETag of the cached entry to revalidate, or {@code null} for an unconditional load
+		 * @return the loaded metadata, or {@code null} if {@code currentETag} is still current
+		 */
+		LoadedMetadata load(String key, String currentETag);
+	}
+
+	/**
+	 * Loads metadata from the backend without blocking.
+	 */
+	@FunctionalInterface
+	public interface AsyncMetadataLoader {
+
+		/**
+		 * @param key         the key of the content
+		 * @param currentETag the ETag of the cached entry to revalidate, or {@code null} for an unconditional load
+		 * @return the loaded metadata, or an empty {@code Mono} if {@code currentETag} is still current
+		 */
+		Mono<LoadedMetadata> load(String key, String currentETag);
+	}
+
+	/**
+	 * Metadata loaded from the backend together with its ETag, which may be {@code null}.
+	 */
+	public record LoadedMetadata(StreamedContentMetadata metadata, String eTag) {
+	}
+
+	/**
+	 * A cached entry. New entries start as used, so they are not evicted before eviction has passed them once.
+	 */
+	private static final class Entry {
+
+		private final String key;
+		private final StreamedContentMetadata metadata;
+		private final String eTag;
+		private volatile long expiresAt;
+		private volatile boolean used = true;
+
+		private Entry(String key, StreamedContentMetadata metadata, String eTag, long expiresAt) {
+			this.key = key;
+			this.metadata = metadata;
+			this.eTag = eTag;
+			this.expiresAt = expiresAt;
+		}
+
+	}
+}
@@ -1,12 +1,28 @@
 package net.tylerwade.springbootvideostreaming.adapter;
 
+import net.tylerwade.springbootvideostreaming.chunk.ChunkRequest;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.media.MediaTypes;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
 import net.tylerwade.springbootvideostreaming.model.Range;
 import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
 import net.tylerwade.springbootvideostreaming.model.StreamedContent;
 import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4FormatException;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Parser;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
 import java.util.List;
 
 /**
@@ -21,9 +37,25 @@ public interface ContentStreamAdapter {
 
 	long MAX_CHUNK_SIZE = 1024 * 1024L; // 1MB
 
+	/**
+	 * Multi-range requests with more ranges than this are answered as if no range had been requested. A client
+	 * asking for many tiny ranges gains nothing over the whole content and costs the server one part each.
+	 */
+	int MAX_RANGES = 100;
+
+	/**
+	 * The default size of the buffers content is read into.
+	 */
+	int DEFAULT_BUFFER_SIZE = 8 * 1024; // 8KB
+
 	/**
 	 * Loads a segment of content as specified by the given {@code StreamContentRequest}.
 	 * The content is retrieved based on the resource key and the specified range for streaming.
+	 * <p>
+	 * Loading content does not change the state of the {@linkplain #getChunkSizePolicy() chunk size policy}.
+	 * Callers that serve the content set {@link StreamContentRequest#getClientId()} and report it with
+	 * {@link #chunkServed(StreamContentRequest, StreamedContent)}, as the built-in endpoint does, otherwise a
+	 * policy such as {@code FastStartChunkSizePolicy} cannot follow the client and keeps its initial chunk size.
 	 *
 	 * @param contentRequest the request containing the key to identify the content
 	 *                       and the range of bytes to be streamed.
@@ -54,6 +86,75 @@ public interface ContentStreamAdapter {
 	 */
 	List<StreamedContentMetadata> getAllContentMetadata() throws IOException;
 
+	/**
+	 * Streams the metadata of all content whose key starts with the given prefix, in ascending key order.
+	 * Unlike {@link #getAllContentMetadata()} nothing is collected: the adapters list their backend as the
+	 * entries are requested, so the first entries arrive before the whole catalog is listed, and cancelling
+	 * stops the listing.
+	 * <p>
+	 * The default implementation filters and sorts {@link #getAllContentMetadata()}.
+	 *
+	 * @param prefix the prefix of the keys, or {@code null} for all content
+	 * @return the metadata in ascending key order
+	 */
+	default Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return Mono.fromCallable(this::getAllContentMetadata)
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMapIterable(metadataList -> metadataList.stream()
+						.filter(metadata -> prefix == null || metadata.getKey().startsWith(prefix))
+						.sorted(Comparator.comparing(StreamedContentMetadata::getKey))
+						.toList());
+	}
+
+	/**
+	 * Lists one page of the metadata of the content whose key starts with the given prefix, in ascending key
+	 * order. Pass the {@link ContentMetadataPage#getNextContinuationToken()} of a page to list the next one.
+	 * <p>
+	 * The default implementation skips ahead in {@link #streamContentMetadata(String)}; the adapters list only
+	 * the requested page from their backend.
+	 *
+	 * @param prefix the prefix of the keys, or {@code null} for all content
+	 * @param continuationToken the token of the previous page, or {@code null} for the first page
+	 * @param maxKeys the largest number of entries on the page, limited to {@link ContentMetadataPage#MAX_KEYS}
+	 * @return the page
+	 */
+	default Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		int pageSize = ContentMetadataPage.pageSize(maxKeys);
+		return streamContentMetadata(prefix)
+				.skipWhile(metadata -> continuationToken != null && metadata.getKey().compareTo(continuationToken) <= 0)
+				.take(pageSize + 1L)
+				.collectList()
+				.map(entries -> ContentMetadataPage.of(entries, pageSize));
+	}
+
+	/**
+	 * Returns the keyframe index of the MP4 content with the given key. The index is built from the content's
+	 * {@code moov} box, which is read with range requests through this adapter.
+	 * <p>
+	 * The default implementation builds the index on every call. The adapters of this library keep the indexes
+	 * of their content in an {@link Mp4IndexCache} of their own until the content's ETag or size changes.
+	 *
+	 * @param key the key of the MP4 content
+	 * @return the index, or an {@link Mp4FormatException} if the content cannot be indexed
+	 */
+	default Mono<Mp4Index> loadMp4Index(String key) {
+		return Mp4Parser.parse(this, key);
+	}
+
+	/**
+	 * Loads the MP4 content with the given key from a playback position: the bytes from the keyframe at or before
+	 * the position up to the next keyframe, as found by {@link #loadMp4Index(String)}. Once the index is cached,
+	 * seeking costs a single range request. The range is limited to the maximum chunk size like any other.
+	 *
+	 * @param key the key of the MP4 content
+	 * @param position the playback position
+	 * @return the content starting at the keyframe
+	 */
+	default Mono<StreamedContent> loadContentAt(String key, Duration position) {
+		return loadMp4Index(key)
+				.flatMap(index -> loadContent(new StreamContentRequest(key, index.keyframeRange(position))));
+	}
+
 	/**
 	 * Creates a valid range object based on the requested range and the size of the file.
 	 * This method ensures that the returned range adheres to constraints such as the maximum
@@ -66,38 +167,283 @@ public interface ContentStreamAdapter {
 	 * @return a {@code Range} object representing the validated range
 	 */
 	default Range createValidRange(Range requestedRange, Long fileSize) {
-		if (requestedRange == null) {
-			requestedRange = new Range(0L, fileSize - 1L);
-		}
+		return createValidRange(new StreamContentRequest(null, requestedRange), fileSize);
+	}
+
+	/**
+	 * Creates a valid range for the given request. Open-ended ranges (and requests without a range) end where
+	 * the adapter's {@link ChunkSizePolicy} decides; ranges with an explicit end are limited to the policy's
+	 * maximum chunk size. Suffix ranges start the given number of bytes before the end of the content. The key
+	 * and client of the request are passed to the policy.
+	 * <p>
+	 * This method has no side effects, it may be called any number of times for a request. The policy learns
+	 * about the chunk once it is served, see {@link #chunkServed(StreamContentRequest, StreamedContent)}.
+	 *
+	 * @param contentRequest the request containing the key, client and requested range
+	 * @param fileSize the size of the file in bytes, used to enforce range boundaries
+	 * @return a {@code Range} object representing the validated range
+	 */
+	default Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		Range requestedRange = contentRequest.getRange();
+		ChunkSizePolicy chunkSizePolicy = getChunkSizePolicy();
 
-		Long start = requestedRange.getStart() == null ? 0L : requestedRange.getStart();
-		Long end = requestedRange.getEnd();
+		Long start;
+		Long end;
+		if (requestedRange != null && requestedRange.isSuffix()) {
+			start = Math.max(0L, fileSize - requestedRange.getSuffixLength());
+			end = fileSize - 1;
+		} else {
+			start = requestedRange == null || requestedRange.getStart() == null ? 0L : requestedRange.getStart();
+			end = requestedRange == null ? null : requestedRange.getEnd();
+		}
 
-		if (end == null || end - start + 1 > MAX_CHUNK_SIZE) {
-			end = Math.min(start + MAX_CHUNK_SIZE - 1, fileSize - 1);
+		if (end == null) {
+			long chunkSize = chunkSizePolicy.chunkSize(new ChunkRequest(contentRequest.getKey(), contentRequest.getClientId(), start, fileSize));
+			end = Math.min(start + chunkSize - 1, fileSize - 1);
+		} else {
+			// A range ending beyond the content ends with the content.
+			end = Math.min(end, fileSize - 1);
+			if (end - start + 1 > chunkSizePolicy.getMaxChunkSize()) {
+				end = start + chunkSizePolicy.getMaxChunkSize() - 1;
+			}
 		}
 
 		return new Range(start, end);
 	}
 
 	/**
-	 * Extracts the content type of a given file based on its file extension.
-	 * If the file name contains a valid extension, the method generates a MIME
-	 * type in the format "video/{extension}". If no extension is found, the method
-	 * defaults to "application/octet-stream".
+	 * Tells the chunk size policy that the given content was served for the request, so it can size the client's
+	 * next chunk, e.g. let a {@link net.tylerwade.springbootvideostreaming.chunk.FastStartChunkSizePolicy} grow.
+	 * Only open-ended single-range requests (and requests without a range) are reported.
+	 * <p>
+	 * The {@link net.tylerwade.springbootvideostreaming.web.ContentStreamHandler} calls this once per response.
+	 * Applications serving the result of {@link #loadContent(StreamContentRequest)} themselves call it in the same
+	 * way; decorators never do, so a chunk is reported once however many adapters it passed through.
+	 *
+	 * @param contentRequest the request the content was loaded for
+	 * @param content the served content
+	 */
+	default void chunkServed(StreamContentRequest contentRequest, StreamedContent content) {
+		Range requestedRange = contentRequest.getRange();
+		if (content.getRange() == null || content.getMetadata() == null || contentRequest.isMultiRange()
+				|| (requestedRange != null && (requestedRange.isSuffix() || requestedRange.getEnd() != null))) {
+			return;
+		}
+		Range servedRange = content.getRange();
+		getChunkSizePolicy().chunkServed(new ChunkRequest(contentRequest.getKey(), contentRequest.getClientId(),
+				servedRange.getStart(), content.getMetadata().getFileSize()), servedRange.getEnd() - servedRange.getStart() + 1);
+	}
+
+	/**
+	 * Loads a request for multiple ranges as a single {@code multipart/byteranges} response. Adapters call this
+	 * from {@code loadContent} for requests where {@link StreamContentRequest#isMultiRange()} is {@code true}.
+	 * Decorators that look at the start of the range also call it for
+	 * {@linkplain StreamContentRequest#isSuffixRange() suffix ranges}, which are resolved into a regular range.
+	 * <p>
+	 * The ranges are resolved against the content's size, unsatisfiable ones are dropped, and overlapping or
+	 * nearly adjacent ranges are merged, so each part is read from the backend with one {@code loadContent}
+	 * call, and nearby parts are read from the backend with a single {@code loadContent} call for the range
+	 * spanning them. If only one range remains, it is loaded as a regular single-range response; if none remains,
+	 * the result is {@link StreamedContent#rangeNotSatisfiable(StreamedContentMetadata)}. Requests with more than
+	 * {@link #MAX_RANGES} ranges are loaded as if they had no range.
+	 *
+	 * <p>
+	 * The metadata is read with the blocking {@link #getContentMetadata(String)} on the bounded elastic
+	 * scheduler. Adapters that can load metadata without blocking override this method and pass the metadata to
+	 * {@link #loadMultipartContent(StreamContentRequest, StreamedContentMetadata)}.
+	 *
+	 * @param contentRequest the request containing the key and ranges
+	 * @return the multipart content, or single-range content if the ranges merged into one
+	 */
+	default Mono<StreamedContent> loadMultipartContent(StreamContentRequest contentRequest) {
+		return Mono.fromCallable(() -> getContentMetadata(contentRequest.getKey()))
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMap(metadata -> loadMultipartContent(contentRequest, metadata));
+	}
+
+	/**
+	 * Loads a request for multiple ranges as described for {@link #loadMultipartContent(StreamContentRequest)},
+	 * with metadata the caller already loaded.
+	 *
+	 * @param contentRequest the request containing the key and ranges
+	 * @param metadata the metadata of the content's current version
+	 * @return the multipart content, or single-range content if the ranges merged into one
+	 */
+	default Mono<StreamedContent> loadMultipartContent(StreamContentRequest contentRequest, StreamedContentMetadata metadata) {
+		if (isNotModified(contentRequest, metadata)) {
+			return Mono.just(StreamedContent.notModified(metadata));
+		}
+
+		StreamContentRequest.StreamContentRequestBuilder singleRequest = StreamContentRequest.builder()
+				.key(contentRequest.getKey())
+				.clientId(contentRequest.getClientId());
+		if ((contentRequest.getIfRange() != null && !ifRangeMatches(contentRequest.getIfRange(), metadata))
+				|| ByteRanges.requestedRanges(contentRequest).size() > MAX_RANGES) {
+			return loadContent(singleRequest.build());
+		}
+
+		List<Range> parts = ByteRanges.resolve(this, contentRequest, metadata.getFileSize());
+		if (parts.isEmpty()) {
+			return Mono.just(StreamedContent.rangeNotSatisfiable(metadata));
+		}
+		if (parts.size() == 1) {
+			return loadContent(singleRequest.range(parts.get(0)).build());
+		}
+		return Mono.just(ByteRanges.multipart(this, contentRequest, metadata, parts));
+	}
+
+	/**
+	 * Creates a valid range for the given request and content. If the request has an {@code If-Range}
+	 * precondition that does not match the content's current version, the requested range is ignored and the
+	 * content is returned from the start, as for a request without a range.
+	 *
+	 * @param contentRequest the request containing the key, client, range and preconditions
+	 * @param metadata the metadata of the content's current version
+	 * @return a {@code Range} object representing the validated range
+	 */
+	default Range createValidRange(StreamContentRequest contentRequest, StreamedContentMetadata metadata) {
+		if (contentRequest.getRange() != null && contentRequest.getIfRange() != null
+				&& !ifRangeMatches(contentRequest.getIfRange(), metadata)) {
+			contentRequest = StreamContentRequest.builder()
+					.key(contentRequest.getKey())
+					.clientId(contentRequest.getClientId())
+					.build();
+		}
+		return createValidRange(contentRequest, metadata.getFileSize());
+	}
+
+	/**
+	 * Checks whether the request's range lies beyond the end of the content. Adapters call this after
+	 * {@link #isNotModified(StreamContentRequest, StreamedContentMetadata)} and return
+	 * {@link StreamedContent#rangeNotSatisfiable(StreamedContentMetadata)} if it returns {@code true}.
+	 * <p>
+	 * A range ignored because of a non-matching {@code If-Range} is always satisfiable.
+	 *
+	 * @param contentRequest the request containing the range and preconditions
+	 * @param metadata the metadata of the content's current version
+	 * @return {@code true} if the range starts at or after the end of the content
+	 */
+	default boolean isRangeNotSatisfiable(StreamContentRequest contentRequest, StreamedContentMetadata metadata) {
+		Range range = contentRequest.getRange();
+		if (range == null || contentRequest.isMultiRange()
+				|| (contentRequest.getIfRange() != null && !ifRangeMatches(contentRequest.getIfRange(), metadata))) {
+			return false;
+		}
+		return !ByteRanges.isSatisfiable(range, metadata.getFileSize());
+	}
+
+	/**
+	 * Evaluates the {@code If-None-Match} and {@code If-Modified-Since} preconditions of the request against the
+	 * content's current version. Adapters call this before reading any content and return
+	 * {@link StreamedContent#notModified(StreamedContentMetadata)} if it returns {@code true}.
+	 * <p>
+	 * {@code If-None-Match} uses the weak comparison; {@code If-Modified-Since} is only evaluated if
+	 * {@code If-None-Match} is absent.
+	 *
+	 * @param contentRequest the request containing the preconditions
+	 * @param metadata the metadata of the content's current version
+	 * @return {@code true} if the client's copy is current
+	 */
+	default boolean isNotModified(StreamContentRequest contentRequest, StreamedContentMetadata metadata) {
+		if (contentRequest.getIfNoneMatch() != null) {
+			return anyETagMatches(contentRequest.getIfNoneMatch(), metadata.getETag());
+		}
+
+		Instant ifModifiedSince = contentRequest.getIfModifiedSince();
+		return ifModifiedSince != null && metadata.getLastModified() != null
+				&& metadata.getLastModified().getEpochSecond() <= ifModifiedSince.getEpochSecond();
+	}
+
+	/**
+	 * Generates a strong ETag from the size and last modified time of a file, in the same form as nginx.
+	 *
+	 * @param fileSize the size of the file in bytes
+	 * @param lastModified when the file was last modified, may be {@code null}
+	 * @return the quoted ETag, or {@code null} if the last modified time is unknown
+	 */
+	default String generateETag(Long fileSize, Instant lastModified) {
+		if (lastModified == null) {
+			return null;
+		}
+		return "\"" + Long.toHexString(lastModified.getEpochSecond()) + "-" + Long.toHexString(fileSize) + "\"";
+	}
+
+	/**
+	 * Returns the policy deciding the size of the chunks returned for open-ended range requests. Defaults to
+	 * fixed chunks of {@code MAX_CHUNK_SIZE}.
+	 *
+	 * @return the chunk size policy of this adapter
+	 */
+	default ChunkSizePolicy getChunkSizePolicy() {
+		return ChunkSizePolicy.DEFAULT;
+	}
+
+	/**
+	 * Extracts the content type of a given file based on its file extension, e.g. "video/x-matroska" for
+	 * ".mkv". If the extension is missing or unknown, the method defaults to "application/octet-stream".
+	 * A {@code ProbingContentStreamAdapter} corrects the type from the content's magic bytes.
 	 *
 	 * @param fileName the name of the file, potentially including an extension
 	 * @return a string representing the MIME type of the file based on its extension,
-	 *         or "application/octet-stream" if no valid extension is present
+	 *         or "application/octet-stream" if no known extension is present
 	 */
 	default String extractContentType(String fileName) {
-		return fileName.contains(".")
-				? "video/" + fileName.substring(fileName.lastIndexOf(".") + 1)
-				: "application/octet-stream";
+		return MediaTypes.forFileName(fileName);
 	}
 
 
+	/**
+	 * @return the largest chunk returned by {@code loadContent}, as decided by the chunk size policy
+	 */
 	default long getMaxChunkSize() {
-		return MAX_CHUNK_SIZE;
+		return getChunkSizePolicy().getMaxChunkSize();
+	}
+
+	/**
+	 * Weak comparison of the entity tags of an {@code If-None-Match} header with the given ETag.
+	 */
+	private static boolean anyETagMatches(String header, String eTag) {
+		if (header.trim().equals("*")) {
+			return true;
+		}
+		if (eTag == null) {
+			return false;
+		}
+
+		String opaqueTag = eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+		int start = header.indexOf('"');
+		while (start >= 0) {
+			int end = header.indexOf('"', start + 1);
+			if (end < 0) {
+				return false;
+			}
+			if (header.substring(start, end + 1).equals(opaqueTag)) {
+				return true;
+			}
+			start = header.indexOf('"', end + 1);
+		}
+		return false;
+	}
+
+	/**
+	 * Evaluates an {@code If-Range} header: an entity tag must be strongly equal to the ETag, a date must equal
+	 * the last modified time.
+	 */
+	private static boolean ifRangeMatches(String ifRange, StreamedContentMetadata metadata) {
+		String value = ifRange.trim();
+		if (value.startsWith("\"") || value.startsWith("W/")) {
+			String eTag = metadata.getETag();
+			return !value.startsWith("W/") && eTag != null && !eTag.startsWith("W/") && value.equals(eTag);
+		}
+
+		if (metadata.getLastModified() == null) {
+			return false;
+		}
+		try {
+			Instant date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+			return date.getEpochSecond() == metadata.getLastModified().getEpochSecond();
+		} catch (DateTimeParseException e) {
+			return false;
+		}
 	}
-}
\ No newline at end of file
+}
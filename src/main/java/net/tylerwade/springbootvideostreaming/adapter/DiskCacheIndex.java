@@ -0,0 +1,447 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * The index of the {@link DiskCachingContentStreamAdapter}, tracking which blocks of which content are stored in
+ * the cache directory.
+ * <p>
+ * Every cached content is a sparse data file holding the blocks that have been fetched at their original offsets,
+ * and an index file holding its metadata and a bitmap of the present blocks. Index files are rewritten atomically
+ * whenever blocks are added and read back on startup, so the cache survives restarts. The data file is synced to
+ * disk before the bitmap that marks its blocks present is written, so after a crash the bitmap never claims blocks
+ * that were lost. When the size of all present blocks exceeds the budget, the least recently used contents are
+ * deleted.
+ * <p>
+ * Readers and writers of a data file hold a lease on its entry while they access it, see {@link #lease(Entry)}.
+ * The files of a removed entry are deleted once its last lease has been released, so content that is being read
+ * or sent from its path is not deleted under it. Files are deleted on the {@link Schedulers#boundedElastic()}
+ * scheduler, never while holding the index lock.
+ */
+@Slf4j
+class DiskCacheIndex {
+
+	private static final int MAGIC = 0x56444332; // "VDC2"
+	private static final String DATA_SUFFIX = ".data";
+	private static final String INDEX_SUFFIX = ".idx";
+
+	private final Path directory;
+	private final int blockSize;
+	private final long maxBytes;
+
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long cachedBytes;
+	private boolean closed;
+
+	DiskCacheIndex(Path directory, int blockSize, long maxBytes) throws IOException {
+		this.directory = directory;
+		this.blockSize = blockSize;
+		this.maxBytes = maxBytes;
+
+		Files.createDirectories(directory);
+		load();
+	}
+
+	/**
+	 * Returns the entry of the given content and marks it as recently used.
+	 */
+	synchronized Entry get(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			entry.lastAccessMillis = System.currentTimeMillis();
+		}
+		return entry;
+	}
+
+	/**
+	 * Returns the entry of the given content, replacing it if the content's size or ETag changed, and leases it
+	 * for writing. The lease must be released with {@link #release(Entry)}.
+	 */
+	synchronized Entry getOrCreate(String key, StreamedContentMetadata metadata) {
+		Entry entry = get(key);
+		if (entry != null && isSameVersion(entry.metadata, metadata)) {
+			entry.leases++;
+			return entry;
+		}
+		if (entry != null) {
+			remove(entry);
+		}
+
+		// A new generation of the files, so a fetch still writing to a replaced entry cannot touch the new one.
+		String id = fileId(key) + "-" + Long.toHexString(System.nanoTime());
+		entry = new Entry(key, metadata, directory.resolve(id + DATA_SUFFIX), directory.resolve(id + INDEX_SUFFIX), new BitSet());
+		entry.lastAccessMillis = System.currentTimeMillis();
+		entry.leases++;
+		entries.put(key, entry);
+		return entry;
+	}
+
+	/**
+	 * Leases the entry's data file unless it has been deleted. A removed entry can still be leased until its files
+	 * are deleted. The file is not deleted before the lease has been released with {@link #release(Entry)}.
+	 *
+	 * @return whether the lease was acquired
+	 */
+	synchronized boolean lease(Entry entry) {
+		if (entry.deleted) {
+			return false;
+		}
+		entry.leases++;
+		return true;
+	}
+
+	/**
+	 * Releases a lease acquired with {@link #lease(Entry)} or {@link #getOrCreate(String, StreamedContentMetadata)},
+	 * deleting the entry's files if it was removed and this was its last lease.
+	 */
+	synchronized void release(Entry entry) {
+		entry.leases--;
+		if (entry.removed && entry.leases == 0) {
+			deleteFiles(entry);
+		}
+	}
+
+	/**
+	 * @return whether all blocks overlapping the inclusive range are present
+	 */
+	synchronized boolean isPresent(Entry entry, long start, long end) {
+		if (entry.removed || start < 0 || end >= entry.metadata.getFileSize() || start > end) {
+			return false;
+		}
+		int first = (int) (start / blockSize);
+		int last = (int) (end / blockSize);
+		int missing = entry.blocks.nextClearBit(first);
+		return missing > last;
+	}
+
+	/**
+	 * Marks the blocks completely covered by the written bytes from {@code start} (inclusive) to {@code end}
+	 * (exclusive) as present, evicts least recently used content if the cache is over budget and persists the
+	 * entry's index file.
+	 */
+	void markPresent(Entry entry, long start, long end) {
+		long fileSize = entry.metadata.getFileSize();
+		int first = (int) ((start + blockSize - 1) / blockSize);
+		// The last block of a content is shorter than the block size, it is complete when the file end was written.
+		int last = end >= fileSize ? (int) ((fileSize - 1) / blockSize) : (int) (end / blockSize) - 1;
+		if (first > last) {
+			return;
+		}
+
+		synchronized (this) {
+			if (entry.removed) {
+				return;
+			}
+			for (int index = first; index <= last; index++) {
+				if (!entry.blocks.get(index)) {
+					entry.blocks.set(index);
+					long length = Math.min(blockSize, fileSize - (long) index * blockSize);
+					entry.presentBytes += length;
+					cachedBytes += length;
+				}
+			}
+			evictOverflow(entry);
+		}
+
+		Schedulers.boundedElastic().schedule(() -> persist(entry));
+	}
+
+	synchronized void invalidate(String key) {
+		Entry entry = entries.get(key);
+		if (entry != null) {
+			remove(entry);
+		}
+	}
+
+	synchronized void invalidateAll() {
+		new ArrayList<>(entries.values()).forEach(this::remove);
+	}
+
+	synchronized long getCachedBytes() {
+		return cachedBytes;
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	private void evictOverflow(Entry current) {
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (cachedBytes > maxBytes && eldest.hasNext()) {
+			Entry entry = eldest.next();
+			if (entry == current) {
+				continue;
+			}
+			eldest.remove();
+			delete(entry);
+		}
+	}
+
+	private void remove(Entry entry) {
+		entries.remove(entry.key, entry);
+		delete(entry);
+	}
+
+	private void delete(Entry entry) {
+		entry.removed = true;
+		cachedBytes -= entry.presentBytes;
+		if (entry.leases == 0) {
+			deleteFiles(entry);
+		}
+	}
+
+	private void deleteFiles(Entry entry) {
+		Schedulers.boundedElastic().schedule(() -> {
+			// Waits for an index file that is being written, later writes see the entry removed.
+			synchronized (entry) {
+				// The entry may have been leased again since it was removed; its last release deletes the files then.
+				synchronized (this) {
+					if (entry.deleted || entry.leases > 0) {
+						return;
+					}
+					entry.deleted = true;
+				}
+				try {
+					Files.deleteIfExists(entry.indexFile);
+					Files.deleteIfExists(entry.dataFile);
+				} catch (IOException e) {
+					log.warn("Failed to delete cached content {}.", entry.dataFile, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the index files of all entries and stops writing them in the background, e.g. before shutting down.
+	 */
+	void close() {
+		List<Entry> snapshot;
+		synchronized (this) {
+			closed = true;
+			snapshot = new ArrayList<>(entries.values());
+		}
+		for (Entry entry : snapshot) {
+			synchronized (entry) {
+				writeIndexFile(entry);
+			}
+		}
+	}
+
+	private void persist(Entry entry) {
+		// Concurrent writes of the same entry would share the temporary file.
+		synchronized (entry) {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+			}
+			writeIndexFile(entry);
+		}
+	}
+
+	private void writeIndexFile(Entry entry) {
+		BitSet blocks;
+		long lastAccessMillis;
+		synchronized (this) {
+			if (entry.removed) {
+				return;
+			}
+			blocks = (BitSet) entry.blocks.clone();
+			lastAccessMillis = entry.lastAccessMillis;
+		}
+
+		// Blocks written through the page cache are only marked present on disk once they are on disk themselves.
+		try (FileChannel dataChannel = FileChannel.open(entry.dataFile, StandardOpenOption.WRITE)) {
+			dataChannel.force(false);
+		} catch (NoSuchFileException e) {
+			// Nothing has been written yet.
+			return;
+		} catch (IOException e) {
+			log.warn("Failed to sync cached content {}, its index is not persisted.", entry.dataFile, e);
+			return;
+		}
+
+		Path tempFile = entry.indexFile.resolveSibling(entry.indexFile.getFileName() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(blockSize);
+				out.writeUTF(entry.key);
+				out.writeUTF(entry.metadata.getContentType() == null ? "" : entry.metadata.getContentType());
+				out.writeLong(entry.metadata.getFileSize());
+				out.writeUTF(entry.metadata.getETag() == null ? "" : entry.metadata.getETag());
+				out.writeLong(entry.metadata.getLastModified() == null ? -1 : entry.metadata.getLastModified().toEpochMilli());
+				out.writeLong(lastAccessMillis);
+
+				long[] words = blocks.toLongArray();
+				out.writeInt(words.length);
+				for (long word : words) {
+					out.writeLong(word);
+				}
+			}
+
+			try {
+				Files.move(tempFile, entry.indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tempFile, entry.indexFile, StandardCopyOption.REPLACE_EXISTING);
+			}
+
+			// The entry may have been evicted while the index file was written.
+			synchronized (this) {
+				if (entry.removed) {
+					Files.deleteIfExists(entry.indexFile);
+				}
+			}
+		} catch (IOException e) {
+			log.warn("Failed to persist disk cache index {}.", entry.indexFile, e);
+		}
+	}
+
+	private void load() throws IOException {
+		List<Entry> loaded = new ArrayList<>();
+
+		try (DirectoryStream<Path> indexFiles = Files.newDirectoryStream(directory, "*" + INDEX_SUFFIX)) {
+			for (Path indexFile : indexFiles) {
+				String name = indexFile.getFileName().toString();
+				Path dataFile = directory.resolve(name.substring(0, name.length() - INDEX_SUFFIX.length()) + DATA_SUFFIX);
+
+				Entry entry = read(indexFile, dataFile);
+				if (entry == null || !Files.exists(dataFile)) {
+					log.debug("Discarding disk cache entry {}.", indexFile);
+					Files.deleteIfExists(indexFile);
+					Files.deleteIfExists(dataFile);
+					continue;
+				}
+				loaded.add(entry);
+			}
+		}
+
+		// Data files without an index file belong to entries removed while they were leased before a restart.
+		try (DirectoryStream<Path> dataFiles = Files.newDirectoryStream(directory, "*" + DATA_SUFFIX)) {
+			for (Path dataFile : dataFiles) {
+				String name = dataFile.getFileName().toString();
+				if (!Files.exists(directory.resolve(name.substring(0, name.length() - DATA_SUFFIX.length()) + INDEX_SUFFIX))) {
+					log.debug("Discarding disk cache data file {}.", dataFile);
+					Files.deleteIfExists(dataFile);
+				}
+			}
+		}
+
+		// Restore the LRU order, least recently used first.
+		loaded.sort(Comparator.comparingLong(entry -> entry.lastAccessMillis));
+		for (Entry entry : loaded) {
+			entries.put(entry.key, entry);
+			cachedBytes += entry.presentBytes;
+		}
+		evictOverflow(null);
+	}
+
+	private Entry read(Path indexFile, Path dataFile) {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile)))) {
+			if (in.readInt() != MAGIC || in.readInt() != blockSize) {
+				return null;
+			}
+
+			String key = in.readUTF();
+			String contentType = in.readUTF();
+			long fileSize = in.readLong();
+			String eTag = in.readUTF();
+			long lastModified = in.readLong();
+			long lastAccessMillis = in.readLong();
+			long[] words = new long[in.readInt()];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = in.readLong();
+			}
+
+			StreamedContentMetadata metadata = StreamedContentMetadata.builder()
+					.key(key)
+					.contentType(contentType.isEmpty() ? null : contentType)
+					.fileSize(fileSize)
+					.eTag(eTag.isEmpty() ? null : eTag)
+					.lastModified(lastModified < 0 ? null : Instant.ofEpochMilli(lastModified))
+					.build();
+
+			Entry entry = new Entry(key, metadata, dataFile, indexFile, BitSet.valueOf(words));
+			entry.lastAccessMillis = lastAccessMillis;
+			entry.blocks.stream().forEach(index -> entry.presentBytes += Math.min(blockSize, fileSize - (long) index * blockSize));
+			return entry;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static boolean isSameVersion(StreamedContentMetadata cached, StreamedContentMetadata current) {
+		if (!cached.getFileSize().equals(current.getFileSize())) {
+			return false;
+		}
+		return cached.getETag() == null || current.getETag() == null || cached.getETag().equals(current.getETag());
+	}
+
+	private static String fileId(String key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	static final class Entry {
+
+		private final String key;
+		private final StreamedContentMetadata metadata;
+		private final Path dataFile;
+		private final Path indexFile;
+		private final BitSet blocks;
+
+		private long presentBytes;
+		private long lastAccessMillis;
+		private boolean removed;
+		private boolean deleted;
+		private int leases;
+
+		private Entry(String key, StreamedContentMetadata metadata, Path dataFile, Path indexFile, BitSet blocks) {
+			this.key = key;
+			this.metadata = metadata;
+			this.dataFile = dataFile;
+			this.indexFile = indexFile;
+			this.blocks = blocks;
+		}
+
+		StreamedContentMetadata getMetadata() {
+			return metadata;
+		}
+
+		Path getDataFile() {
+			return dataFile;
+		}
+	}
+}
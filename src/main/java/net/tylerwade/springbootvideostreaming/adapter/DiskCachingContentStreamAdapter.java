@@ -0,0 +1,296 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code DiskCachingContentStreamAdapter} decorates another {@code ContentStreamAdapter}, typically the
+ * {@link S3ContentStreamAdapter}, with a cache on local disk.
+ * <p>
+ * Content fetched from the delegate is written to a sparse file in the cache directory while it is streamed to
+ * the client, and the blocks it completely covers are recorded in a presence bitmap. Later requests for ranges
+ * whose blocks are all present are served from the local file, as a {@link FileRegionContent} while zero-copy is
+ * enabled, instead of going back to the delegate. The index survives restarts, and the least recently used
+ * content is deleted once the cached blocks exceed the configured size.
+ * <p>
+ * Cached content is not revalidated. Call {@link #invalidate(String)} when content is replaced; content whose size or
+ * ETag changed is replaced automatically on its next fetch.
+ */
+@Slf4j
+public class DiskCachingContentStreamAdapter extends AbstractBufferingContentStreamAdapter implements Closeable {
+
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024; // 256KB
+
+	private final ContentStreamAdapter delegate;
+	private final DiskCacheIndex index;
+
+	private boolean zeroCopyEnabled = true;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param delegate  the adapter content is fetched from
+	 * @param directory the cache directory, created if it does not exist
+	 * @param maxBytes  the total size of all cached blocks
+	 * @param blockSize the granularity in which presence is tracked; changing it discards the existing cache
+	 * @throws IOException if the cache directory cannot be created or read
+	 */
+	public DiskCachingContentStreamAdapter(ContentStreamAdapter delegate, Path directory, long maxBytes, int blockSize) throws IOException {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("blockSize must be at least 1.");
+		}
+		this.delegate = delegate;
+		this.index = new DiskCacheIndex(directory.toAbsolutePath().normalize(), blockSize, maxBytes);
+	}
+
+	public DiskCachingContentStreamAdapter(ContentStreamAdapter delegate, Path directory, long maxBytes) throws IOException {
+		this(delegate, directory, maxBytes, DEFAULT_BLOCK_SIZE);
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		if (contentRequest.isMultiRange() || contentRequest.isSuffixRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
+		return Mono.defer(() -> {
+			DiskCacheIndex.Entry entry = index.get(contentRequest.getKey());
+			if (entry != null) {
+				if (isNotModified(contentRequest, entry.getMetadata())) {
+					hits.increment();
+					return Mono.just(StreamedContent.notModified(entry.getMetadata()));
+				}
+				if (isRangeNotSatisfiable(contentRequest, entry.getMetadata())) {
+					return Mono.just(StreamedContent.rangeNotSatisfiable(entry.getMetadata()));
+				}
+
+				Range validRange = createValidRange(contentRequest, entry.getMetadata());
+				if (index.isPresent(entry, validRange.getStart(), validRange.getEnd())) {
+					hits.increment();
+					return Mono.just(readCached(contentRequest.getKey(), entry, validRange));
+				}
+			}
+
+			misses.increment();
+			return delegate.loadContent(contentRequest)
+					.map(content -> {
+						if (content.isNotModified() || content.isRangeNotSatisfiable()) {
+							return content;
+						}
+
+						// The entry is leased for writing only once the content is subscribed to.
+						Flux<DataBuffer> body = Flux.defer(() -> writeThrough(
+								index.getOrCreate(contentRequest.getKey(), content.getMetadata()),
+								content.getRange().getStart(),
+								content.getContent()));
+
+						return StreamedContent.builder()
+								.key(content.getKey())
+								.metadata(content.getMetadata())
+								.content(body)
+								.contentLength(content.getContentLength())
+								.range(content.getRange())
+								.build();
+					});
+		});
+	}
+
+	/**
+	 * Reads the range from the entry's data file. The entry is leased when the content or its zero-copy write is
+	 * subscribed to, and released when it terminates or is cancelled, so content that is never written holds no
+	 * lease. If the entry's files were deleted before then, the content is read from the delegate, and a zero-copy
+	 * write fails.
+	 */
+	private StreamedContent readCached(String key, DiskCacheIndex.Entry entry, Range range) {
+		Path dataFile = entry.getDataFile();
+		long start = range.getStart();
+		long contentLength = range.getEnd() - range.getStart() + 1;
+
+		Flux<DataBuffer> content = Flux.defer(() -> {
+			if (!index.lease(entry)) {
+				return delegate.loadContent(new StreamContentRequest(key, range))
+						.flatMapMany(StreamedContent::getContent);
+			}
+			return DataBufferUtils.takeUntilByteCount(
+							DataBufferUtils.readAsynchronousFileChannel(
+									() -> AsynchronousFileChannel.open(dataFile, StandardOpenOption.READ),
+									start,
+									getDataBufferFactory(),
+									readBufferSize(contentLength)
+							),
+							contentLength)
+					.doFinally(signal -> index.release(entry));
+		});
+
+		return StreamedContent.builder()
+				.key(key)
+				.metadata(entry.getMetadata())
+				.content(zeroCopyEnabled
+						? new FileRegionContent(dataFile, start, contentLength, content)
+								.transform(content, write -> Mono.defer(() -> index.lease(entry)
+										? write.doFinally(signal -> index.release(entry))
+										: Mono.error(new IllegalStateException("Cached content " + key + " was deleted before it was sent."))))
+						: content)
+				.contentLength(contentLength)
+				.range(range)
+				.build();
+	}
+
+	/**
+	 * Writes the content to the entry's data file at its position while passing it on. The entry has been leased
+	 * by {@link DiskCacheIndex#getOrCreate(String, StreamedContentMetadata)}. The blocks covered by the written
+	 * bytes are marked as present and the lease is released when the content completes, fails or is cancelled.
+	 */
+	private Flux<DataBuffer> writeThrough(DiskCacheIndex.Entry entry, long start, Flux<DataBuffer> content) {
+		AtomicLong written = new AtomicLong();
+		AtomicBoolean leased = new AtomicBoolean(true);
+		Runnable complete = () -> {
+			if (leased.compareAndSet(true, false)) {
+				index.markPresent(entry, start, start + written.get());
+				index.release(entry);
+			}
+		};
+
+		// The blocks are marked before the completion is passed on, so the next request already sees them.
+		return Flux.using(
+						() -> AsynchronousFileChannel.open(entry.getDataFile(),
+								StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.SPARSE),
+						channel -> DataBufferUtils.write(content, channel, start)
+								.doOnNext(buffer -> written.addAndGet(buffer.readableByteCount())),
+						channel -> {
+							try {
+								channel.close();
+							} catch (IOException e) {
+								log.debug("Failed to close {}.", entry.getDataFile(), e);
+							}
+						})
+				.doOnTerminate(complete)
+				.doOnCancel(complete);
+	}
+
+	/**
+	 * Deletes the cached blocks of the given content, e.g. after it has been replaced.
+	 *
+	 * @param key the key of the content to invalidate
+	 */
+	public void invalidate(String key) {
+		index.invalidate(key);
+	}
+
+	/**
+	 * Deletes all cached content.
+	 */
+	public void invalidateAll() {
+		index.invalidateAll();
+	}
+
+	/**
+	 * @return the number of {@code loadContent} calls served from disk
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of {@code loadContent} calls passed to the delegate
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the total size of all cached blocks in bytes
+	 */
+	public long getCachedBytes() {
+		return index.getCachedBytes();
+	}
+
+	/**
+	 * @return the number of contents with cached blocks
+	 */
+	public int getCachedContentCount() {
+		return index.size();
+	}
+
+	/**
+	 * Enables or disables returning cached content as a {@link FileRegionContent}.
+	 *
+	 * @param zeroCopyEnabled whether cached ranges may be sent without copying them through user space
+	 */
+	public void setZeroCopyEnabled(boolean zeroCopyEnabled) {
+		this.zeroCopyEnabled = zeroCopyEnabled;
+	}
+
+	public boolean isZeroCopyEnabled() {
+		return zeroCopyEnabled;
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		return delegate.getContentMetadata(key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return delegate.streamContentMetadata(prefix);
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return delegate.listContentMetadata(prefix, continuationToken, maxKeys);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	/**
+	 * Writes the index of every cached content, so the cache is complete after a restart.
+	 */
+	@Override
+	public void close() {
+		index.close();
+	}
+}
@@ -0,0 +1,309 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.FastStartLayout;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4FormatException;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code FastStartContentStreamAdapter} decorates another {@code ContentStreamAdapter} so MP4 files whose
+ * {@code moov} box follows the media data are served as if they were optimized for streaming ("fast start").
+ * <p>
+ * Without the {@code moov} box a player cannot start playback, so for such files browsers first request the
+ * end of the file, then its start again. This adapter serves a virtual view of the file instead, in which the
+ * {@code moov} box precedes the media data (see {@link FastStartLayout}). The view has the same size as the
+ * file, and the stored file is never rewritten: the relocated {@code moov} box is served from memory and every
+ * other requested byte is mapped onto a range of the file and loaded from the delegate.
+ * <p>
+ * The layout of a file is probed with range requests on its first {@code loadContent} and cached per key until
+ * the content's ETag or size changes. Content that is not MP4, or already starts with its {@code moov} box, is
+ * passed through unchanged, and once that is known its requests go straight to the delegate. MP4 indexes are
+ * built from the view and cached by this adapter, apart from the indexes of the stored files.
+ * <p>
+ * The view is a different representation than the stored file, so it has its own validators: its ETag is
+ * derived from the file's (see {@link #viewETag(String)}) and it has no last modified time, which could not
+ * tell the view from the file in an {@code If-Range} precondition. {@code getContentMetadata} returns the
+ * view's metadata once the file's layout has been probed; listings return the metadata of the stored files.
+ */
+@Slf4j
+public class FastStartContentStreamAdapter implements ContentStreamAdapter {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1_000;
+	public static final String VIEW_ETAG_SUFFIX = "-faststart";
+
+	private static final Set<String> MP4_CONTENT_TYPES = Set.of("video/mp4", "video/m4v", "video/x-m4v", "video/quicktime", "video/mov");
+
+	private final ContentStreamAdapter delegate;
+	private final int maxEntries;
+
+	private final Map<String, Entry> layouts = new ConcurrentHashMap<>();
+	private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+	private final Mp4IndexCache indexCache;
+
+	private final LongAdder relocatedRequests = new LongAdder();
+
+	/**
+	 * @param delegate   the adapter the files are loaded from
+	 * @param maxEntries the maximum number of cached layouts; a layout holds the file's {@code moov} box
+	 */
+	public FastStartContentStreamAdapter(ContentStreamAdapter delegate, int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be at least 1.");
+		}
+		this.delegate = delegate;
+		this.maxEntries = maxEntries;
+		this.indexCache = new Mp4IndexCache(maxEntries);
+	}
+
+	public FastStartContentStreamAdapter(ContentStreamAdapter delegate) {
+		this(delegate, DEFAULT_MAX_ENTRIES);
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		String key = contentRequest.getKey();
+		Entry entry = layouts.get(key);
+		if (entry != null && Boolean.FALSE.equals(entry.relocated)) {
+			// Content served unchanged only costs the delegate's own metadata lookup. A change of the content is
+			// noticed from the metadata of the response, and probed again on the next request.
+			return delegate.loadContent(contentRequest)
+					.doOnNext(content -> {
+						if (content.getMetadata() != null && !entry.version.equals(version(content.getMetadata()))) {
+							remove(key, entry);
+						}
+					});
+		}
+
+		return Mono.fromCallable(() -> delegate.getContentMetadata(key))
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMap(metadata -> layout(key, metadata)
+						.flatMap(layout -> layout.isPresent()
+								? loadFastStartContent(contentRequest, viewMetadata(metadata), layout.get())
+								: delegate.loadContent(contentRequest)));
+	}
+
+	/**
+	 * Returns the ETag of the fast start view of a file with the given ETag: the file's ETag with
+	 * {@value #VIEW_ETAG_SUFFIX} appended inside its quotes. It changes with the file's ETag, and never equals
+	 * the ETag of a stored file, so caches and {@code If-Range} preconditions do not mix bytes of both.
+	 *
+	 * @param eTag the ETag of the file, including its quotes, or {@code null}
+	 * @return the ETag of the view, or {@code null} if the file has none
+	 */
+	public static String viewETag(String eTag) {
+		if (eTag == null || eTag.length() < 2 || !eTag.endsWith("\"")) {
+			return null;
+		}
+		return eTag.substring(0, eTag.length() - 1) + VIEW_ETAG_SUFFIX + "\"";
+	}
+
+	private static StreamedContentMetadata viewMetadata(StreamedContentMetadata metadata) {
+		return StreamedContentMetadata.builder()
+				.key(metadata.getKey())
+				.contentType(metadata.getContentType())
+				.fileSize(metadata.getFileSize())
+				.eTag(viewETag(metadata.getETag()))
+				.mediaInfo(metadata.getMediaInfo())
+				.build();
+	}
+
+	/**
+	 * Returns the index of the view, built from the view's bytes and cached by this adapter, since its keyframes
+	 * are at other offsets than the file's.
+	 */
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return indexCache.get(this, key);
+	}
+
+	private Mono<StreamedContent> loadFastStartContent(StreamContentRequest contentRequest, StreamedContentMetadata metadata, FastStartLayout layout) {
+		if (contentRequest.isMultiRange() || contentRequest.isSuffixRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+		if (isNotModified(contentRequest, metadata)) {
+			return Mono.just(StreamedContent.notModified(metadata));
+		}
+		if (isRangeNotSatisfiable(contentRequest, metadata)) {
+			return Mono.just(StreamedContent.rangeNotSatisfiable(metadata));
+		}
+
+		relocatedRequests.increment();
+		String key = contentRequest.getKey();
+		Range validRange = createValidRange(contentRequest, metadata);
+		Flux<DataBuffer> content = Flux.fromIterable(layout.pieces(validRange.getStart(), validRange.getEnd()))
+				.concatMap(piece -> piece.bytes() != null
+						? Mono.<DataBuffer>fromSupplier(() -> DefaultDataBufferFactory.sharedInstance.wrap(piece.bytes().duplicate()))
+						: delegate.loadContent(new StreamContentRequest(key, piece.fileRange()))
+								.flatMapMany(StreamedContent::getContent));
+
+		return Mono.just(StreamedContent.builder()
+				.key(key)
+				.metadata(metadata)
+				.content(content)
+				.contentLength(validRange.getEnd() - validRange.getStart() + 1)
+				.range(validRange)
+				.build());
+	}
+
+	/**
+	 * Returns the cached layout of the content, probing it if the content is MP4 and has not been probed since
+	 * its last change.
+	 */
+	private Mono<Optional<FastStartLayout>> layout(String key, StreamedContentMetadata metadata) {
+		String version = version(metadata);
+		Entry entry = layouts.get(key);
+		if (entry == null || !entry.version.equals(version)) {
+			if (metadata.getContentType() == null || !MP4_CONTENT_TYPES.contains(metadata.getContentType())) {
+				entry = new Entry(version, Mono.just(Optional.empty()));
+				entry.relocated = false;
+			} else {
+				entry = new Entry(version, FastStartLayout.detect(delegate, key, metadata.getFileSize())
+						.map(Optional::of)
+						.defaultIfEmpty(Optional.empty())
+						.onErrorResume(Mp4FormatException.class, e -> {
+							log.debug("Serving {} unchanged, it is not an MP4 file: {}", key, e.getMessage());
+							return Mono.just(Optional.empty());
+						})
+						.cache());
+			}
+			if (layouts.put(key, entry) == null) {
+				insertionOrder.add(key);
+				evictOverflow();
+			}
+		}
+
+		Entry probed = entry;
+		return probed.layout
+				.doOnNext(layout -> probed.relocated = layout.isPresent())
+				// Errors reading the file are not cached, the next request probes again.
+				.doOnError(e -> remove(key, probed));
+	}
+
+	private void remove(String key, Entry entry) {
+		if (layouts.remove(key, entry)) {
+			insertionOrder.remove(key);
+		}
+	}
+
+	private static String version(StreamedContentMetadata metadata) {
+		return metadata.getETag() + "/" + metadata.getFileSize();
+	}
+
+	private void evictOverflow() {
+		while (layouts.size() > maxEntries) {
+			String eldest = insertionOrder.poll();
+			if (eldest == null) {
+				return;
+			}
+			layouts.remove(eldest);
+		}
+	}
+
+	/**
+	 * Removes the cached layout and index for the given key, e.g. after the content has been replaced.
+	 */
+	public void invalidate(String key) {
+		if (layouts.remove(key) != null) {
+			insertionOrder.remove(key);
+		}
+		indexCache.invalidate(key);
+	}
+
+	/**
+	 * @return the number of requests served from a fast start view
+	 */
+	public long getRelocatedRequestCount() {
+		return relocatedRequests.sum();
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	/**
+	 * Returns the metadata of the view if the content's current version has been probed and is served from one,
+	 * otherwise the delegate's.
+	 */
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		StreamedContentMetadata metadata = delegate.getContentMetadata(key);
+		Entry entry = metadata == null ? null : layouts.get(key);
+		return entry != null && Boolean.TRUE.equals(entry.relocated) && entry.version.equals(version(metadata))
+				? viewMetadata(metadata)
+				: metadata;
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return delegate.streamContentMetadata(prefix);
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return delegate.listContentMetadata(prefix, continuationToken, maxKeys);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	public ContentStreamAdapter getDelegate() {
+		return delegate;
+	}
+
+	private static final class Entry {
+
+		private final String version;
+		private final Mono<Optional<FastStartLayout>> layout;
+
+		/**
+		 * Whether the content is served from a view, or {@code null} until its layout has been probed.
+		 */
+		private volatile Boolean relocated;
+
+		private Entry(String version, Mono<Optional<FastStartLayout>> layout) {
+			this.version = version;
+			this.layout = layout;
+		}
+	}
+
+}
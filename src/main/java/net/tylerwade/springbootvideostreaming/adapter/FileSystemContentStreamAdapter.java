@@ -0,0 +1,433 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SynchronousSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.MissingResourceException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The {@code FileSystemContentStreamAdapter} class implements the {@code ContentStreamAdapter} interface
+ * and streams content from an arbitrary directory on the file system, such as a mounted media volume.
+ * <p>
+ * Content is read with positional reads on an {@code AsynchronousFileChannel}. Open channels are kept in a
+ * bounded LRU cache together with the file size and last modified time, so the many range requests a seeking
+ * player sends for the same file reuse one open file instead of reopening and re-stating it every time.
+ * The cached attributes are compared with the file at most once per second (see
+ * {@link #setRevalidateInterval(Duration)}), so a replaced file is reopened and served with its new validators.
+ * Cached channels are closed when they are evicted or have been idle for longer than the idle timeout.
+ * <p>
+ * Zero-copy is disabled by default: a {@link FileRegionContent} is sent by path, so {@code sendfile} would open
+ * the file again for every request and bypass the cache of open channels. Enable it with
+ * {@link #setZeroCopyEnabled(boolean)} where the copy through user space costs more than the {@code open}.
+ * <p>
+ * Frequently watched content can be served from memory mapped windows instead, see
+ * {@link #enableMemoryMapping(Predicate, long)}.
+ */
+@Slf4j
+public class FileSystemContentStreamAdapter extends AbstractBufferingContentStreamAdapter implements Closeable {
+
+	public static final int DEFAULT_MAX_OPEN_FILES = 256;
+	public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(60);
+
+	private final Path directory;
+
+	private final OpenFileCache openFileCache;
+
+	private final Disposable idleEviction;
+
+	private boolean zeroCopyEnabled = false;
+
+	private ChunkSizePolicy chunkSizePolicy = ChunkSizePolicy.DEFAULT;
+
+	private MappedRegionCache mappedRegionCache;
+
+	private Predicate<String> mappedKeys = key -> false;
+
+	private final DataBufferFactory mappedBufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+
+	public FileSystemContentStreamAdapter(Path directory, int maxOpenFiles, Duration idleTimeout) {
+		this.directory = directory.toAbsolutePath().normalize();
+		this.openFileCache = new OpenFileCache(maxOpenFiles, idleTimeout, this::invalidateMappedRegions);
+
+		long sweepInterval = Math.max(1, idleTimeout.toMillis() / 2);
+		this.idleEviction = Schedulers.parallel().schedulePeriodically(
+				openFileCache::evictIdle, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public FileSystemContentStreamAdapter(Path directory) {
+		this(directory, DEFAULT_MAX_OPEN_FILES, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	public FileSystemContentStreamAdapter(String directory) {
+		this(Path.of(directory));
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		if (contentRequest.isMultiRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
+		String key = contentRequest.getKey();
+
+		return Mono.fromCallable(() -> getContentMetadata(key))
+				.subscribeOn(Schedulers.boundedElastic())
+				.map(metadata -> {
+					if (isNotModified(contentRequest, metadata)) {
+						return StreamedContent.notModified(metadata);
+					}
+					if (isRangeNotSatisfiable(contentRequest, metadata)) {
+						return StreamedContent.rangeNotSatisfiable(metadata);
+					}
+
+					Range validRange = createValidRange(contentRequest, metadata);
+					Long contentLength = validRange.getEnd() - validRange.getStart() + 1;
+
+					Flux<DataBuffer> content = mappedKeys.test(key)
+							? readMappedContent(key, metadata.getFileSize(), validRange.getStart(), contentLength)
+							: readContent(key, validRange.getStart(), contentLength);
+
+					return StreamedContent.builder()
+							.key(key)
+							.metadata(metadata)
+							.content(content)
+							.contentLength(contentLength)
+							.range(validRange)
+							.build();
+				});
+	}
+
+	private Flux<DataBuffer> readContent(String key, Long start, Long contentLength) {
+		Path path = resolve(key);
+
+		// The lease on the cached channel is taken when the content is subscribed to and released when the
+		// read completes, fails or is cancelled (Spring closes the channel view, which releases the lease).
+		Flux<DataBuffer> content = DataBufferUtils.takeUntilByteCount(
+				DataBufferUtils.readAsynchronousFileChannel(
+						() -> openFileCache.acquire(key, path).leasedChannel(),
+						start,
+						getDataBufferFactory(),
+						readBufferSize(contentLength)
+				),
+				contentLength);
+
+		if (zeroCopyEnabled) {
+			return new FileRegionContent(path, start, contentLength, content);
+		}
+
+		return content;
+	}
+
+	private Flux<DataBuffer> readMappedContent(String key, long fileSize, long start, long contentLength) {
+		Path path = resolve(key);
+		MappedRegionCache cache = mappedRegionCache;
+		long end = start + contentLength;
+
+		// Each buffer is a view of a mapped window, ranges spanning several windows emit one buffer per window.
+		// The Netty buffer factory wraps the view without copying it when it is written to the response.
+		// Mapping a window opens the file, so windows are looked up off the event loop.
+		return Flux.<DataBuffer, Long>generate(() -> start, (position, sink) -> {
+			if (position >= end) {
+				sink.complete();
+				return position;
+			}
+
+			long windowIndex = position / cache.getWindowSize();
+			try {
+				ByteBuffer window = cache.window(key, path, fileSize, windowIndex);
+				int offset = (int) (position - windowIndex * cache.getWindowSize());
+				int length = (int) Math.min(end - position, window.capacity() - offset);
+
+				sink.next(mappedBufferFactory.wrap(window.slice(offset, length)));
+				return position + length;
+			} catch (IOException e) {
+				sink.error(e);
+				return position;
+			}
+		}).subscribeOn(Schedulers.boundedElastic());
+	}
+
+	@Override
+	public Long getContentSize(String key) throws MissingResourceException, IOException {
+		return getContentMetadata(key).getFileSize();
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws MissingResourceException, IOException {
+		OpenFileCache.OpenFile openFile = acquire(key);
+		try {
+			Instant lastModified = Instant.ofEpochMilli(openFile.getLastModified());
+
+			return StreamedContentMetadata.builder()
+					.key(key)
+					.contentType(extractContentType(key))
+					.fileSize(openFile.getSize())
+					.eTag(generateETag(openFile.getSize(), lastModified))
+					.lastModified(lastModified)
+					.build();
+		} finally {
+			openFile.release();
+		}
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		List<StreamedContentMetadata> metadataList = new ArrayList<>();
+
+		try (Stream<Path> paths = Files.list(directory)) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				if (!attributes.isRegularFile()) {
+					continue;
+				}
+
+				String fileName = path.getFileName().toString();
+				Instant lastModified = attributes.lastModifiedTime().toInstant();
+				metadataList.add(StreamedContentMetadata.builder()
+						.key(fileName)
+						.contentType(extractContentType(fileName))
+						.fileSize(attributes.size())
+						.eTag(generateETag(attributes.size(), lastModified))
+						.lastModified(lastModified)
+						.build());
+			}
+		}
+
+		return metadataList;
+	}
+
+	/**
+	 * Lists and sorts only the file names up front. The attributes of a file are read when its metadata is
+	 * requested, so listing a page of a large directory costs one {@code stat} per entry on the page.
+	 */
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return listFileNames(prefix, null).handle(this::readMetadata);
+	}
+
+	/**
+	 * Skips the file names up to the continuation token before reading any attributes, so only the files on the
+	 * page are {@code stat}ed.
+	 */
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		int pageSize = ContentMetadataPage.pageSize(maxKeys);
+		return listFileNames(prefix, continuationToken)
+				.<StreamedContentMetadata>handle(this::readMetadata)
+				.take(pageSize + 1L)
+				.collectList()
+				.map(entries -> ContentMetadataPage.of(entries, pageSize));
+	}
+
+	private Flux<String> listFileNames(String prefix, String startAfter) {
+		return Flux.using(() -> Files.list(directory),
+						paths -> Flux.fromIterable(paths
+								.map(path -> path.getFileName().toString())
+								.filter(fileName -> prefix == null || fileName.startsWith(prefix))
+								.filter(fileName -> startAfter == null || fileName.compareTo(startAfter) > 0)
+								.sorted()
+								.toList()))
+				.subscribeOn(Schedulers.boundedElastic());
+	}
+
+	private void readMetadata(String fileName, SynchronousSink<StreamedContentMetadata> sink) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(directory.resolve(fileName), BasicFileAttributes.class);
+			if (attributes.isRegularFile()) {
+				Instant lastModified = attributes.lastModifiedTime().toInstant();
+				sink.next(StreamedContentMetadata.builder()
+						.key(fileName)
+						.contentType(extractContentType(fileName))
+						.fileSize(attributes.size())
+						.eTag(generateETag(attributes.size(), lastModified))
+						.lastModified(lastModified)
+						.build());
+			}
+		} catch (NoSuchFileException e) {
+			// Deleted since it was listed.
+		} catch (IOException e) {
+			sink.error(e);
+		}
+	}
+
+	/**
+	 * Closes and removes the cached channel for the given key, e.g. after the file has been replaced.
+	 *
+	 * @param key the key of the content to invalidate
+	 */
+	public void invalidate(String key) {
+		openFileCache.invalidate(key);
+		invalidateMappedRegions(key);
+	}
+
+	private void invalidateMappedRegions(String key) {
+		if (mappedRegionCache != null) {
+			mappedRegionCache.invalidate(key);
+		}
+	}
+
+	/**
+	 * Sets how long the size and last modified time of an open file are trusted before they are compared with
+	 * the file on disk. Lower intervals pick up replaced files sooner at the cost of a {@code stat} per interval
+	 * and file.
+	 *
+	 * @param revalidateInterval the interval, by default 1 second
+	 */
+	public void setRevalidateInterval(Duration revalidateInterval) {
+		openFileCache.setRevalidateInterval(revalidateInterval);
+	}
+
+	/**
+	 * Closes every cached channel that has been idle for longer than the idle timeout. This also runs
+	 * periodically in the background.
+	 */
+	public void evictIdleFiles() {
+		openFileCache.evictIdle();
+	}
+
+	/**
+	 * @return the number of files currently held open by the cache
+	 */
+	public int getOpenFileCount() {
+		return openFileCache.size();
+	}
+
+	/**
+	 * Serves the keys matching {@code mappedKeys} from memory mapped windows of 64 MB. The read syscall and
+	 * the copy into heap buffers are skipped for these keys; the data is written to the socket straight
+	 * from the mapped pages. Mapped keys do not use the zero-copy file region path.
+	 * <p>
+	 * Windows are mapped lazily and the least recently used windows are dropped once the total size of the
+	 * cached windows exceeds {@code maxMappedBytes}. A dropped window is only unmapped when the garbage collector
+	 * collects it, so the mapped address space can temporarily exceed the budget by
+	 * {@link #getUnmappingBytes()}. Only map files that are not modified in place while being served.
+	 *
+	 * @param mappedKeys     selects the content to map, e.g. the keys of the most watched titles
+	 * @param maxMappedBytes the budget for the total size of all mapped windows
+	 */
+	public void enableMemoryMapping(Predicate<String> mappedKeys, long maxMappedBytes) {
+		enableMemoryMapping(mappedKeys, maxMappedBytes, MappedRegionCache.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Like {@link #enableMemoryMapping(Predicate, long)} with a custom window size.
+	 *
+	 * @param mappedKeys     selects the content to map
+	 * @param maxMappedBytes the budget for the total size of all mapped windows
+	 * @param windowSize     the size of each mapped window in bytes
+	 */
+	public void enableMemoryMapping(Predicate<String> mappedKeys, long maxMappedBytes, int windowSize) {
+		this.mappedRegionCache = new MappedRegionCache(maxMappedBytes, windowSize);
+		this.mappedKeys = mappedKeys;
+	}
+
+	public void disableMemoryMapping() {
+		this.mappedKeys = key -> false;
+		this.mappedRegionCache = null;
+	}
+
+	/**
+	 * @return the total size of all currently mapped windows in bytes
+	 */
+	public long getMappedBytes() {
+		return mappedRegionCache == null ? 0L : mappedRegionCache.getMappedBytes();
+	}
+
+	/**
+	 * @return the total size of the windows dropped from the cache that are still mapped until the garbage
+	 *         collector releases them
+	 */
+	public long getUnmappingBytes() {
+		return mappedRegionCache == null ? 0L : mappedRegionCache.getUnmappingBytes();
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Enables or disables returning content as a {@link FileRegionContent}. Disabled by default, because the
+	 * region is sent by path and the file is opened again for every request instead of using the cached channel.
+	 *
+	 * @param zeroCopyEnabled whether ranges may be sent without copying them through user space
+	 */
+	public void setZeroCopyEnabled(boolean zeroCopyEnabled) {
+		this.zeroCopyEnabled = zeroCopyEnabled;
+	}
+
+	public boolean isZeroCopyEnabled() {
+		return zeroCopyEnabled;
+	}
+
+	/**
+	 * Sets the policy deciding how large the chunks returned for open-ended range requests are.
+	 *
+	 * @param chunkSizePolicy the chunk size policy, e.g. a {@code FastStartChunkSizePolicy}
+	 */
+	public void setChunkSizePolicy(ChunkSizePolicy chunkSizePolicy) {
+		this.chunkSizePolicy = chunkSizePolicy;
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return chunkSizePolicy;
+	}
+
+	@Override
+	public void close() {
+		idleEviction.dispose();
+		openFileCache.close();
+	}
+
+	private OpenFileCache.OpenFile acquire(String key) throws MissingResourceException, IOException {
+		try {
+			return openFileCache.acquire(key, resolve(key));
+		} catch (NoSuchFileException e) {
+			throw missingResource(key);
+		}
+	}
+
+	private Path resolve(String key) throws MissingResourceException {
+		Path path = directory.resolve(key).normalize();
+		// Reject keys such as "../secret" that resolve outside the directory.
+		if (!path.startsWith(directory) || path.equals(directory)) {
+			throw missingResource(key);
+		}
+		return path;
+	}
+
+	private MissingResourceException missingResource(String key) {
+		return new MissingResourceException(String.format("Resource with key '%s' does not exist.", key), this.getClass().toString(), key);
+	}
+
+}
@@ -0,0 +1,88 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+/**
+ * A count-min sketch of 4 bit counters estimating how often a key has been accessed, used by the
+ * {@link BlockCache} to decide whether a new block is worth evicting an older one for (TinyLFU admission).
+ * <p>
+ * All counters are halved once the number of recorded accesses reaches ten times the width of the sketch, so
+ * the estimates follow the recent popularity of a key instead of its popularity since startup.
+ * <p>
+ * Not thread-safe, callers synchronize.
+ */
+class FrequencySketch {
+
+	private static final int DEPTH = 4;
+	private static final int MAX_COUNT = 15;
+	private static final int MIN_WIDTH = 1024;
+	private static final long[] SEEDS = {
+			0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+	};
+
+	private final byte[][] counters;
+	private final int mask;
+	private final int sampleSize;
+	private int size;
+
+	/**
+	 * @param expectedEntries the number of keys expected to be tracked, determines the width of the sketch
+	 */
+	FrequencySketch(int expectedEntries) {
+		// Small caches still see many distinct keys, a minimum width keeps their estimates from colliding.
+		int width = Integer.highestOneBit(Math.max(MIN_WIDTH, expectedEntries - 1) << 1);
+		this.counters = new byte[DEPTH][width];
+		this.mask = width - 1;
+		this.sampleSize = 10 * width;
+	}
+
+	/**
+	 * Records an access of the key.
+	 */
+	void increment(Object key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int row = 0; row < DEPTH; row++) {
+			int index = indexOf(hash, row);
+			if (counters[row][index] < MAX_COUNT) {
+				counters[row][index]++;
+				added = true;
+			}
+		}
+
+		if (added && ++size >= sampleSize) {
+			reset();
+		}
+	}
+
+	/**
+	 * @return the estimated number of recent accesses of the key, at most 15
+	 */
+	int frequency(Object key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int row = 0; row < DEPTH; row++) {
+			frequency = Math.min(frequency, counters[row][indexOf(hash, row)]);
+		}
+		return frequency;
+	}
+
+	private void reset() {
+		for (byte[] row : counters) {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = (byte) (row[i] >>> 1);
+			}
+		}
+		size /= 2;
+	}
+
+	private int indexOf(int hash, int row) {
+		long index = (hash + SEEDS[row]) * SEEDS[row];
+		index += index >>> 32;
+		return (int) index & mask;
+	}
+
+	private static int spread(int hash) {
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+		return (hash >>> 16) ^ hash;
+	}
+}
@@ -0,0 +1,355 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The {@code IndexedContentStreamAdapter} decorates another {@code ContentStreamAdapter} with an in-memory index
+ * of its catalog, so metadata lookups and listings do not reach the backend on the request path.
+ * <p>
+ * The index is built in the background when the adapter is created, from the delegate's
+ * {@link ContentStreamAdapter#streamContentMetadata(String)}. It is kept current by listing the catalog again
+ * every refresh interval, which adds new and changed entries and removes deleted ones. For a
+ * {@link FileSystemContentStreamAdapter} the directory is also watched with a {@code WatchService}, so files
+ * are indexed as soon as they are created, modified or deleted; the delegate's cached channel of a changed file
+ * is invalidated at the same time.
+ * <p>
+ * Once the index is {@linkplain #ready() ready}:
+ * <ul>
+ *     <li>{@code getContentMetadata} and {@code getContentSize} are hash map lookups. Keys not in the index are
+ *     looked up from the delegate and indexed, so content added since the last refresh is found. Keys the
+ *     delegate does not have either are remembered for {@code missTtl}, so requests for them throw a
+ *     {@code MissingResourceException} without reaching the backend. The remembered misses are forgotten when
+ *     the index is refreshed or the key is indexed.</li>
+ *     <li>{@code getAllContentMetadata}, {@code streamContentMetadata} and {@code listContentMetadata} are
+ *     answered from a sorted skip list.</li>
+ * </ul>
+ * Until then, every call goes to the delegate. Content is always loaded by the delegate.
+ */
+@Slf4j
+public class IndexedContentStreamAdapter implements ContentStreamAdapter, Closeable {
+
+	public static final Duration DEFAULT_REFRESH_INTERVAL = Duration.ofMinutes(5);
+	public static final Duration DEFAULT_MISS_TTL = Duration.ofSeconds(10);
+
+	// Bounds the memory of requests for random keys, the least recently missed keys are forgotten first.
+	private static final int MAX_MISSES = 10_000;
+
+	private final ContentStreamAdapter delegate;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final CatalogIndex index = new CatalogIndex();
+	private final long missTtlNanos;
+	private final Map<String, Long> misses = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > MAX_MISSES;
+		}
+	});
+
+	private final Sinks.Empty<Void> ready = Sinks.empty();
+	private volatile boolean indexed;
+
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+	private final Disposable periodicRefresh;
+
+	private WatchService watchService;
+
+	/**
+	 * @param delegate        the adapter content and metadata are loaded from
+	 * @param refreshInterval how often the catalog is listed again, or {@code Duration.ZERO} to only build the
+	 *                        index once (and keep it current by watching, for a file system adapter)
+	 * @param missTtl         how long a key that is neither indexed nor found by the delegate is reported missing
+	 *                        without asking the delegate again, or {@code Duration.ZERO} to always ask
+	 */
+	public IndexedContentStreamAdapter(ContentStreamAdapter delegate, Duration refreshInterval, Duration missTtl) {
+		this.delegate = delegate;
+		this.missTtlNanos = Math.max(0, missTtl.toNanos());
+
+		if (delegate instanceof FileSystemContentStreamAdapter fileSystemAdapter) {
+			watch(fileSystemAdapter);
+		}
+
+		refresh().subscribe(null, e -> log.warn("Failed to build the catalog index, retrying on the next refresh.", e));
+		this.periodicRefresh = refreshInterval.isZero() || refreshInterval.isNegative()
+				? Disposables.disposed()
+				: Flux.interval(refreshInterval, refreshInterval)
+						.onBackpressureDrop()
+						.concatMap(tick -> refresh()
+								.onErrorResume(e -> {
+									log.warn("Failed to refresh the catalog index.", e);
+									return Mono.empty();
+								}))
+						.subscribe();
+	}
+
+	public IndexedContentStreamAdapter(ContentStreamAdapter delegate, Duration refreshInterval) {
+		this(delegate, refreshInterval, DEFAULT_MISS_TTL);
+	}
+
+	public IndexedContentStreamAdapter(ContentStreamAdapter delegate) {
+		this(delegate, DEFAULT_REFRESH_INTERVAL);
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		return delegate.loadContent(contentRequest);
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return getContentMetadata(key).getFileSize();
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		if (indexed) {
+			StreamedContentMetadata metadata = index.get(key);
+			if (metadata != null) {
+				return metadata;
+			}
+			if (isRecentMiss(key)) {
+				throw missingResource(key);
+			}
+		}
+
+		StreamedContentMetadata metadata;
+		try {
+			metadata = delegate.getContentMetadata(key);
+		} catch (MissingResourceException e) {
+			if (indexed && missTtlNanos > 0) {
+				misses.put(key, System.nanoTime() + missTtlNanos);
+			}
+			throw e;
+		}
+		if (indexed && metadata != null) {
+			index.put(metadata);
+		}
+		return metadata;
+	}
+
+	private boolean isRecentMiss(String key) {
+		Long expiresNanos = misses.get(key);
+		if (expiresNanos == null) {
+			return false;
+		}
+		if (expiresNanos - System.nanoTime() > 0) {
+			return true;
+		}
+		misses.remove(key);
+		return false;
+	}
+
+	private MissingResourceException missingResource(String key) {
+		return new MissingResourceException(String.format("Resource with key '%s' does not exist.", key), this.getClass().toString(), key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return indexed ? List.copyOf(index.entries(null)) : delegate.getAllContentMetadata();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return Flux.defer(() -> indexed
+				? Flux.fromIterable(index.entries(prefix))
+				: delegate.streamContentMetadata(prefix));
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		int pageSize = ContentMetadataPage.pageSize(maxKeys);
+		return Mono.defer(() -> indexed
+				? Mono.just(index.page(prefix, continuationToken, pageSize))
+				: delegate.listContentMetadata(prefix, continuationToken, pageSize));
+	}
+
+	/**
+	 * Lists the whole catalog from the delegate and applies the differences to the index. Does nothing if a
+	 * refresh is already running.
+	 *
+	 * @return a {@code Mono} completing when the index is current
+	 */
+	public Mono<Void> refresh() {
+		return Mono.defer(() -> {
+			if (!refreshing.compareAndSet(false, true)) {
+				return Mono.empty();
+			}
+
+			index.beginSweep();
+			long[] changed = new long[1];
+			return delegate.streamContentMetadata(null)
+					.doOnNext(metadata -> {
+						if (index.put(metadata)) {
+							changed[0]++;
+						}
+					})
+					.then(Mono.fromRunnable(() -> {
+						int removed = index.endSweep();
+						misses.clear();
+						log.debug("Refreshed the catalog index: {} keys, {} added or changed, {} removed.",
+								index.size(), changed[0], removed);
+						indexed = true;
+					}))
+					.doOnError(e -> index.abortSweep())
+					.doOnCancel(index::abortSweep)
+					.doFinally(signal -> {
+						// Released before signalling readiness, so a refresh requested once ready is not skipped.
+						refreshing.set(false);
+						if (indexed) {
+							ready.tryEmitEmpty();
+						}
+					})
+					.then();
+		});
+	}
+
+	/**
+	 * @return a {@code Mono} completing once the index has been built
+	 */
+	public Mono<Void> ready() {
+		return ready.asMono();
+	}
+
+	public boolean isReady() {
+		return indexed;
+	}
+
+	/**
+	 * @return the number of keys in the index
+	 */
+	public int getIndexedKeyCount() {
+		return index.size();
+	}
+
+	public ContentStreamAdapter getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	/**
+	 * Stops refreshing and watching. The delegate is not closed.
+	 */
+	@Override
+	public void close() {
+		periodicRefresh.dispose();
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				log.debug("Failed to close the catalog watch service.", e);
+			}
+		}
+	}
+
+	private void watch(FileSystemContentStreamAdapter fileSystemAdapter) {
+		Path directory = fileSystemAdapter.getDirectory();
+		try {
+			watchService = directory.getFileSystem().newWatchService();
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException | UnsupportedOperationException e) {
+			log.warn("Cannot watch {}, the catalog index is only refreshed periodically.", directory, e);
+			watchService = null;
+			return;
+		}
+
+		Thread watcher = new Thread(() -> processEvents(fileSystemAdapter, watchService), "catalog-index-watch");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	private void processEvents(FileSystemContentStreamAdapter fileSystemAdapter, WatchService watchService) {
+		try {
+			while (true) {
+				WatchKey watchKey = watchService.take();
+				for (WatchEvent<?> event : watchKey.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						// Events were lost, only a full listing brings the index up to date.
+						refresh().subscribeOn(Schedulers.boundedElastic())
+								.subscribe(null, e -> log.warn("Failed to refresh the catalog index.", e));
+						continue;
+					}
+
+					String key = event.context().toString();
+					fileSystemAdapter.invalidate(key);
+					if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+						index.remove(key);
+					} else {
+						reindex(key);
+					}
+				}
+				if (!watchKey.reset()) {
+					log.warn("{} can no longer be watched, the catalog index is only refreshed periodically.",
+							fileSystemAdapter.getDirectory());
+					return;
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			// Closed by close().
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void reindex(String key) {
+		try {
+			StreamedContentMetadata metadata = delegate.getContentMetadata(key);
+			if (metadata != null) {
+				index.put(metadata);
+				misses.remove(key);
+			}
+		} catch (MissingResourceException | IOException e) {
+			// Deleted again or not a regular file.
+			index.remove(key);
+		}
+	}
+
+}
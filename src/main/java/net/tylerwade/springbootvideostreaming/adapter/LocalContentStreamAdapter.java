@@ -1,5 +1,9 @@
 package net.tylerwade.springbootvideostreaming.adapter;
 
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
 import net.tylerwade.springbootvideostreaming.model.Range;
 import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
 import net.tylerwade.springbootvideostreaming.model.StreamedContent;
@@ -8,14 +12,17 @@ import org.springframework.core.io.Resource;
 import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.util.StringUtils;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.io.IOException;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.MissingResourceException;
 
@@ -27,8 +34,13 @@ import java.util.MissingResourceException;
  * <p>
  * This implementation uses a {@code ResourceLoader} to load resources and manages a directory of
  * resources, defaulting to "classpath:videos" if no directory is specified.
+ * <p>
+ * When zero-copy is enabled (the default) and a resource is a real file on disk, the content is returned
+ * as a {@link FileRegionContent} so it can be sent straight from the file to the socket. Resources that are
+ * not files (e.g. classpath resources inside a jar) always use the buffered read.
  */
-public class LocalContentStreamAdapter implements ContentStreamAdapter {
+@Slf4j
+public class LocalContentStreamAdapter extends AbstractBufferingContentStreamAdapter {
 
 	private final ResourceLoader resourceLoader;
 
@@ -37,6 +49,10 @@ public class LocalContentStreamAdapter implements ContentStreamAdapter {
 	 */
 	private final String videosDirectory;
 
+	private boolean zeroCopyEnabled = true;
+
+	private ChunkSizePolicy chunkSizePolicy = ChunkSizePolicy.DEFAULT;
+
 	public LocalContentStreamAdapter(ResourceLoader resourceLoader, String videosDirectory) {
 		this.resourceLoader = resourceLoader;
 		this.videosDirectory = "classpath:" + videosDirectory;
@@ -49,23 +65,28 @@ public class LocalContentStreamAdapter implements ContentStreamAdapter {
 
 	@Override
 	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) throws MissingResourceException {
+		if (contentRequest.isMultiRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
 		return Mono.fromCallable(() -> loadResource(contentRequest.getKey()))
 				.subscribeOn(Schedulers.boundedElastic())
 				.flatMap(resource -> {
-					return Mono.fromCallable(resource::contentLength)
+					return Mono.fromCallable(() -> createMetadata(resource.getFilename(), resource))
 							.subscribeOn(Schedulers.boundedElastic())
-							.map(fileSize -> {
-								Range validRange = createValidRange(contentRequest.getRange(), fileSize);
+							.map(metadata -> {
+								if (isNotModified(contentRequest, metadata)) {
+									return StreamedContent.notModified(metadata);
+								}
+								if (isRangeNotSatisfiable(contentRequest, metadata)) {
+									return StreamedContent.rangeNotSatisfiable(metadata);
+								}
+
+								Range validRange = createValidRange(contentRequest, metadata);
 								Long contentLength = validRange.getEnd() - validRange.getStart() + 1;
 
 								Flux<DataBuffer> content = readContent(resource, validRange.getStart(), contentLength);
 
-								StreamedContentMetadata metadata = StreamedContentMetadata.builder()
-										.key(resource.getFilename())
-										.contentType(extractContentType(contentRequest.getKey()))
-										.fileSize(fileSize)
-										.build();
-
 								return StreamedContent.builder()
 										.key(resource.getFilename())
 										.metadata(metadata)
@@ -78,11 +99,51 @@ public class LocalContentStreamAdapter implements ContentStreamAdapter {
 	}
 
 	private Flux<DataBuffer> readContent(Resource videoResource, Long start, Long contentLength) {
-		return DataBufferUtils.read(videoResource,
-				start,
-				new DefaultDataBufferFactory(),
-				8192 // 8 KB
-		).take(contentLength);
+		// Stop reading at exactly contentLength bytes, the last buffer is split at the range end.
+		Flux<DataBuffer> content = DataBufferUtils.takeUntilByteCount(
+				DataBufferUtils.read(videoResource,
+						start,
+						getDataBufferFactory(),
+						readBufferSize(contentLength)
+				),
+				contentLength);
+
+		if (zeroCopyEnabled && videoResource.isFile()) {
+			try {
+				return new FileRegionContent(videoResource.getFile().toPath(), start, contentLength, content);
+			} catch (IOException e) {
+				log.debug("Resource {} is not accessible as a file, using buffered read.", videoResource, e);
+			}
+		}
+
+		return content;
+	}
+
+	/**
+	 * Enables or disables returning file-backed content as a {@link FileRegionContent}.
+	 *
+	 * @param zeroCopyEnabled whether ranges of files on disk may be sent without copying them through user space
+	 */
+	public void setZeroCopyEnabled(boolean zeroCopyEnabled) {
+		this.zeroCopyEnabled = zeroCopyEnabled;
+	}
+
+	public boolean isZeroCopyEnabled() {
+		return zeroCopyEnabled;
+	}
+
+	/**
+	 * Sets the policy deciding how large the chunks returned for open-ended range requests are.
+	 *
+	 * @param chunkSizePolicy the chunk size policy, e.g. a {@code FastStartChunkSizePolicy}
+	 */
+	public void setChunkSizePolicy(ChunkSizePolicy chunkSizePolicy) {
+		this.chunkSizePolicy = chunkSizePolicy;
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return chunkSizePolicy;
 	}
 
 	@Override
@@ -92,13 +153,7 @@ public class LocalContentStreamAdapter implements ContentStreamAdapter {
 
 	@Override
 	public StreamedContentMetadata getContentMetadata(String key) throws MissingResourceException, IOException {
-		Resource resource = loadResource(key);
-
-		return StreamedContentMetadata.builder()
-				.key(key)
-				.contentType(extractContentType(key))
-				.fileSize(resource.contentLength())
-				.build();
+		return createMetadata(key, loadResource(key));
 	}
 
 	@Override
@@ -115,24 +170,84 @@ public class LocalContentStreamAdapter implements ContentStreamAdapter {
 				continue;
 			}
 
-			StreamedContentMetadata metadata = StreamedContentMetadata.builder()
-					.key(fileName)
-					.contentType(extractContentType(fileName))
-					.fileSize(resource.contentLength())
-					.build();
-
-			metadataList.add(metadata);
+			metadataList.add(createMetadata(fileName, resource));
 		}
 
 		return metadataList;
 	}
 
+	/**
+	 * Resolves the resources once, then reads the size and last modified time of each resource only when its
+	 * metadata is requested, so listing a page costs one lookup per entry on the page.
+	 */
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return listResources(prefix, null)
+				.concatMap(resource -> Mono.fromCallable(() -> createMetadata(resource.getFilename(), resource)));
+	}
+
+	/**
+	 * Skips the resources up to the continuation token by name, so only the resources on the page are looked up.
+	 */
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		int pageSize = ContentMetadataPage.pageSize(maxKeys);
+		return listResources(prefix, continuationToken)
+				.take(pageSize + 1L)
+				.concatMap(resource -> Mono.fromCallable(() -> createMetadata(resource.getFilename(), resource)))
+				.collectList()
+				.map(entries -> ContentMetadataPage.of(entries, pageSize));
+	}
+
+	private Flux<Resource> listResources(String prefix, String startAfter) {
+		return Mono.fromCallable(() -> new PathMatchingResourcePatternResolver().getResources(videosDirectory + "/*"))
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMapIterable(resources -> Arrays.stream(resources)
+						.filter(resource -> resource.getFilename() != null
+								&& (prefix == null || resource.getFilename().startsWith(prefix))
+								&& (startAfter == null || resource.getFilename().compareTo(startAfter) > 0))
+						.sorted(Comparator.comparing(Resource::getFilename))
+						.toList());
+	}
+
+	private StreamedContentMetadata createMetadata(String key, Resource resource) throws IOException {
+		long fileSize = resource.contentLength();
+		Instant lastModified = lastModified(resource);
+
+		return StreamedContentMetadata.builder()
+				.key(key)
+				.contentType(extractContentType(key))
+				.fileSize(fileSize)
+				.eTag(generateETag(fileSize, lastModified))
+				.lastModified(lastModified)
+				.build();
+	}
+
+	private Instant lastModified(Resource resource) {
+		try {
+			long lastModified = resource.lastModified();
+			return lastModified > 0 ? Instant.ofEpochMilli(lastModified) : null;
+		} catch (IOException e) {
+			log.debug("Last modified time of {} is not available.", resource, e);
+			return null;
+		}
+	}
+
 	private Resource loadResource(String key) throws MissingResourceException {
-		Resource resource = resourceLoader.getResource(videosDirectory + "/" + key);
+		String location = StringUtils.cleanPath(videosDirectory + "/" + key);
+		// Reject keys such as "../application.properties" that resolve outside the directory.
+		if (!location.startsWith(StringUtils.cleanPath(videosDirectory) + "/")) {
+			throw missingResource(key);
+		}
+		Resource resource = resourceLoader.getResource(location);
 		if (!resource.exists()) {
-			throw new MissingResourceException(String.format("Resource with key '%s' does not exist.", key), this.getClass().toString(), key);
+			throw missingResource(key);
 		}
 		return resource;
 	}
 
+	private MissingResourceException missingResource(String key) {
+		return new MissingResourceException(String.format("Resource with key '%s' does not exist.", key), this.getClass().toString(), key);
+	}
+
 }
\ No newline at end of file
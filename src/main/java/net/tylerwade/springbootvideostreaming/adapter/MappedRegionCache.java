@@ -0,0 +1,153 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of read-only memory mapped windows of files, bounded by the total number of mapped bytes.
+ * <p>
+ * Files are mapped lazily in fixed size windows (64 MB by default), so only the parts of a file that are
+ * actually requested are mapped and files larger than 2 GB can be served. When the total size of the mapped
+ * windows exceeds the budget, the least recently used windows are dropped from the cache.
+ * <p>
+ * Java 17 offers no supported way to unmap a {@code MappedByteBuffer} explicitly, so a dropped window is
+ * unmapped by the garbage collector once no buffer handed out for it is referenced anymore. This also
+ * guarantees that a window is never unmapped while a response is still writing from it. The budget therefore
+ * bounds the windows held by the cache, not the address space actually mapped: dropped windows stay mapped
+ * until they are collected, see {@link #getUnmappingBytes()}. Mapped pages are backed by the page cache and
+ * count against neither the heap nor the direct memory limit.
+ * <p>
+ * Mapping a window opens the file and may block, so {@link #window(String, Path, long, long)} must not be
+ * called on an event loop thread.
+ */
+class MappedRegionCache {
+
+	static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024; // 64MB
+
+	private static final Cleaner UNMAPPED = Cleaner.create();
+
+	private final long maxMappedBytes;
+	private final int windowSize;
+
+	private final LinkedHashMap<WindowKey, Window> windows = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long mappedBytes;
+
+	private final AtomicLong unmappingBytes = new AtomicLong();
+
+	MappedRegionCache(long maxMappedBytes, int windowSize) {
+		if (windowSize < 1 || maxMappedBytes < windowSize) {
+			throw new IllegalArgumentException("maxMappedBytes must be at least one window of " + windowSize + " bytes.");
+		}
+		this.maxMappedBytes = maxMappedBytes;
+		this.windowSize = windowSize;
+	}
+
+	int getWindowSize() {
+		return windowSize;
+	}
+
+	/**
+	 * Returns the mapped window with the given index, mapping it if it is not cached. The returned buffer
+	 * is shared and must only be used through {@code slice} or {@code duplicate} views.
+	 */
+	ByteBuffer window(String key, Path path, long fileSize, long windowIndex) throws IOException {
+		WindowKey windowKey = new WindowKey(key, windowIndex);
+
+		synchronized (this) {
+			Window cached = windows.get(windowKey);
+			if (cached != null) {
+				return cached.buffer();
+			}
+		}
+
+		// Map outside the lock, the mapping stays valid after the channel is closed.
+		long position = windowIndex * windowSize;
+		long size = Math.min(windowSize, fileSize - position);
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		}
+
+		Window window = new Window(mapped, new AtomicBoolean());
+		synchronized (this) {
+			Window cached = windows.get(windowKey);
+			if (cached != null) {
+				return cached.buffer();
+			}
+			windows.put(windowKey, window);
+			mappedBytes += mapped.capacity();
+			evictOverBudget();
+		}
+
+		// Counts a dropped window as unmapping until the garbage collector has released its mapping.
+		AtomicBoolean dropped = window.dropped();
+		int capacity = mapped.capacity();
+		UNMAPPED.register(mapped, () -> {
+			if (dropped.get()) {
+				unmappingBytes.addAndGet(-capacity);
+			}
+		});
+		return mapped;
+	}
+
+	/**
+	 * Drops every window of the given key.
+	 */
+	synchronized void invalidate(String key) {
+		Iterator<Map.Entry<WindowKey, Window>> iterator = windows.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<WindowKey, Window> entry = iterator.next();
+			if (entry.getKey().key().equals(key)) {
+				drop(entry.getValue());
+				iterator.remove();
+			}
+		}
+	}
+
+	synchronized long getMappedBytes() {
+		return mappedBytes;
+	}
+
+	/**
+	 * @return the size of the windows dropped from the cache that the garbage collector has not unmapped yet
+	 */
+	long getUnmappingBytes() {
+		return unmappingBytes.get();
+	}
+
+	synchronized int getWindowCount() {
+		return windows.size();
+	}
+
+	private void evictOverBudget() {
+		Iterator<Window> iterator = windows.values().iterator();
+		while (mappedBytes > maxMappedBytes && iterator.hasNext()) {
+			drop(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	private void drop(Window window) {
+		int capacity = window.buffer().capacity();
+		mappedBytes -= capacity;
+		unmappingBytes.addAndGet(capacity);
+		window.dropped().set(true);
+	}
+
+	private record WindowKey(String key, long index) {
+	}
+
+	private record Window(MappedByteBuffer buffer, AtomicBoolean dropped) {
+	}
+}
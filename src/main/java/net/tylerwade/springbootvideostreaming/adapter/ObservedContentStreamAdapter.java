@@ -0,0 +1,360 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ObservedContentStreamAdapter} decorates another {@code ContentStreamAdapter} with Micrometer
+ * observations. With a {@code MeterRegistry} behind the {@code ObservationRegistry} (e.g. Spring Boot Actuator),
+ * each observation becomes a timer and a long task timer of active observations:
+ * <ul>
+ *     <li>{@value #LOAD_OBSERVATION}: from {@code loadContent} until the content is ready to be sent, i.e. the
+ *     metadata lookup and the conditional request checks. Tagged with the {@code outcome}, which is
+ *     {@code not_modified} or {@code range_not_satisfiable} for responses without a body.</li>
+ *     <li>{@value #STREAM_OBSERVATION}: from the subscription of the body until its last byte was written, or
+ *     the client cancelled. Tagged with the {@code outcome} and a {@code range.size} bucket; its long task timer
+ *     counts the active streams.</li>
+ *     <li>{@value #FIRST_BYTE_OBSERVATION}: from the subscription of the body until its first byte was
+ *     emitted.</li>
+ *     <li>{@value #METADATA_OBSERVATION}: the metadata methods, tagged with the {@code operation}. Streamed
+ *     listings are observed until they complete or are cancelled.</li>
+ * </ul>
+ * The stream observations only start when the body is subscribed, so content that is loaded but never sent,
+ * e.g. because the client disconnected first, does not leave an active stream behind.
+ * <p>
+ * All observations are tagged with the simple class name of the delegate as {@code adapter}. They measure the
+ * calls made on the delegate, so wrapping a caching or coalescing decorator includes its hits. To measure the
+ * latency of the requests made to S3, wrap the S3 adapter itself and decorate the wrapper. Bytes served, active
+ * and cancelled streams are counted by the adapter and registered as meters by {@link #bindTo(MeterRegistry)}.
+ * <p>
+ * Registered automatically by {@link net.tylerwade.springbootvideostreaming.config.AutoConfig} for every bean
+ * declared as a {@code ContentStreamAdapter} if the application has an {@code ObservationRegistry} or a
+ * {@code MeterRegistry}.
+ */
+public class ObservedContentStreamAdapter implements ContentStreamAdapter, MeterBinder, AutoCloseable {
+
+	public static final String LOAD_OBSERVATION = "video.streaming.load";
+	public static final String STREAM_OBSERVATION = "video.streaming.stream";
+	public static final String FIRST_BYTE_OBSERVATION = "video.streaming.first-byte";
+	public static final String METADATA_OBSERVATION = "video.streaming.metadata";
+
+	public static final String BYTES_SERVED_METER = "video.streaming.bytes.served";
+	public static final String ACTIVE_STREAMS_METER = "video.streaming.streams.active";
+	public static final String CANCELLED_STREAMS_METER = "video.streaming.streams.cancelled";
+
+	public static final String ADAPTER = "adapter";
+	public static final String OUTCOME = "outcome";
+	public static final String RANGE_SIZE = "range.size";
+	public static final String OPERATION = "operation";
+
+	public static final String OUTCOME_COMPLETED = "completed";
+	public static final String OUTCOME_CANCELLED = "cancelled";
+	public static final String OUTCOME_ERROR = "error";
+	public static final String OUTCOME_NOT_MODIFIED = "not_modified";
+	public static final String OUTCOME_RANGE_NOT_SATISFIABLE = "range_not_satisfiable";
+
+	private static final long[] RANGE_SIZE_BUCKETS = {64 * 1024, 256 * 1024, 1024 * 1024, 4 * 1024 * 1024, 16 * 1024 * 1024};
+	private static final String[] RANGE_SIZE_NAMES = {"64KiB", "256KiB", "1MiB", "4MiB", "16MiB", "larger"};
+
+	private final ContentStreamAdapter delegate;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final ObservationRegistry observationRegistry;
+	private final String adapterName;
+
+	private final LongAdder bytesServed = new LongAdder();
+	private final LongAdder activeStreams = new LongAdder();
+	private final LongAdder cancelledStreams = new LongAdder();
+
+	/**
+	 * @param delegate            the adapter content is loaded from
+	 * @param observationRegistry the registry the observations are reported to
+	 */
+	public ObservedContentStreamAdapter(ContentStreamAdapter delegate, ObservationRegistry observationRegistry) {
+		this.delegate = delegate;
+		this.observationRegistry = observationRegistry;
+		this.adapterName = delegate.getClass().getSimpleName();
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		return Mono.defer(() -> {
+			Observation load = Observation.createNotStarted(LOAD_OBSERVATION, observationRegistry)
+					.lowCardinalityKeyValue(ADAPTER, adapterName)
+					.highCardinalityKeyValue("key", String.valueOf(contentRequest.getKey()))
+					.start();
+			return delegate.loadContent(contentRequest)
+					.doOnSuccess(content -> load.lowCardinalityKeyValue(OUTCOME, loadOutcome(content)).stop())
+					.doOnError(error -> load.lowCardinalityKeyValue(OUTCOME, OUTCOME_ERROR).error(error).stop())
+					.doOnCancel(() -> load.lowCardinalityKeyValue(OUTCOME, OUTCOME_CANCELLED).stop())
+					.map(content -> observe(contentRequest.getKey(), content));
+		});
+	}
+
+	private static String loadOutcome(StreamedContent content) {
+		if (content != null && content.isNotModified()) {
+			return OUTCOME_NOT_MODIFIED;
+		}
+		if (content != null && content.isRangeNotSatisfiable()) {
+			return OUTCOME_RANGE_NOT_SATISFIABLE;
+		}
+		return OUTCOME_COMPLETED;
+	}
+
+	/**
+	 * Observes the body of the content from the moment it is subscribed, or its region written with zero-copy.
+	 */
+	private StreamedContent observe(String key, StreamedContent content) {
+		if (content.getContent() == null || content.isNotModified() || content.isRangeNotSatisfiable()) {
+			// The response has no body, its content is never subscribed to.
+			return content;
+		}
+
+		String rangeSize = rangeSizeBucket(content.getContentLength());
+		Flux<DataBuffer> body = content.getContent();
+		Flux<DataBuffer> observed = Flux.defer(() -> {
+			StreamObservation stream = new StreamObservation(key, rangeSize);
+			return body
+					.doOnNext(buffer -> {
+						stream.firstByteSeen();
+						bytesServed.add(buffer.readableByteCount());
+					})
+					.doOnComplete(stream::complete)
+					.doOnError(stream::error)
+					.doOnCancel(stream::cancel);
+		});
+		if (body instanceof FileRegionContent region) {
+			observed = region.transform(observed, write -> Mono.defer(() -> {
+				StreamObservation stream = new StreamObservation(key, rangeSize);
+				return write
+						.doOnSubscribe(subscription -> stream.firstByteSeen())
+						.doOnSuccess(done -> {
+							bytesServed.add(region.getCount());
+							stream.complete();
+						})
+						.doOnError(stream::error)
+						.doOnCancel(stream::cancel);
+			}));
+		}
+
+		return StreamedContent.builder()
+				.key(content.getKey())
+				.metadata(content.getMetadata())
+				.content(observed)
+				.contentLength(content.getContentLength())
+				.range(content.getRange())
+				.multipartBoundary(content.getMultipartBoundary())
+				.ranges(content.getRanges())
+				.build();
+	}
+
+	/**
+	 * Registers the bytes served, active and cancelled streams as meters, tagged with the {@code adapter}.
+	 */
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		FunctionCounter.builder(BYTES_SERVED_METER, bytesServed, LongAdder::sum)
+				.description("Bytes emitted or written with zero-copy to clients")
+				.baseUnit("bytes")
+				.tag(ADAPTER, adapterName)
+				.register(registry);
+		Gauge.builder(ACTIVE_STREAMS_METER, activeStreams, LongAdder::sum)
+				.description("Streams whose body is being sent")
+				.tag(ADAPTER, adapterName)
+				.register(registry);
+		FunctionCounter.builder(CANCELLED_STREAMS_METER, cancelledStreams, LongAdder::sum)
+				.description("Streams cancelled by the client before their last byte")
+				.tag(ADAPTER, adapterName)
+				.register(registry);
+	}
+
+	/**
+	 * @return the number of bytes emitted or written with zero-copy to clients
+	 */
+	public long getBytesServed() {
+		return bytesServed.sum();
+	}
+
+	/**
+	 * @return the number of streams whose body was subscribed but not yet completed, failed or cancelled
+	 */
+	public long getActiveStreamCount() {
+		return activeStreams.sum();
+	}
+
+	/**
+	 * @return the number of streams cancelled by the client before their last byte
+	 */
+	public long getCancelledStreamCount() {
+		return cancelledStreams.sum();
+	}
+
+	public ContentStreamAdapter getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return metadataObservation("getContentSize").observeChecked(() -> delegate.getContentSize(key));
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		return metadataObservation("getContentMetadata").observeChecked(() -> delegate.getContentMetadata(key));
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return metadataObservation("getAllContentMetadata").observeChecked(delegate::getAllContentMetadata);
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return Flux.defer(() -> {
+			Observation observation = metadataObservation("streamContentMetadata").start();
+			return delegate.streamContentMetadata(prefix)
+					.doOnError(observation::error)
+					.doFinally(signal -> observation.stop());
+		});
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return Mono.defer(() -> {
+			Observation observation = metadataObservation("listContentMetadata").start();
+			return delegate.listContentMetadata(prefix, continuationToken, maxKeys)
+					.doOnError(observation::error)
+					.doFinally(signal -> observation.stop());
+		});
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	/**
+	 * Closes the delegate if it holds resources, so wrapping a bean does not keep it from being closed.
+	 */
+	@Override
+	public void close() throws Exception {
+		if (delegate instanceof AutoCloseable closeable) {
+			closeable.close();
+		}
+	}
+
+	private Observation metadataObservation(String operation) {
+		return Observation.createNotStarted(METADATA_OBSERVATION, observationRegistry)
+				.lowCardinalityKeyValue(ADAPTER, adapterName)
+				.lowCardinalityKeyValue(OPERATION, operation);
+	}
+
+	private static String rangeSizeBucket(long contentLength) {
+		for (int i = 0; i < RANGE_SIZE_BUCKETS.length; i++) {
+			if (contentLength <= RANGE_SIZE_BUCKETS[i]) {
+				return RANGE_SIZE_NAMES[i];
+			}
+		}
+		return RANGE_SIZE_NAMES[RANGE_SIZE_NAMES.length - 1];
+	}
+
+	/**
+	 * The observations of a single subscription of a body. Every path ends it exactly once.
+	 */
+	private final class StreamObservation {
+
+		private final Observation stream;
+		private final Observation firstByte;
+		private final AtomicBoolean firstByteSeen = new AtomicBoolean();
+		private final AtomicBoolean finished = new AtomicBoolean();
+
+		private StreamObservation(String key, String rangeSize) {
+			this.stream = Observation.createNotStarted(STREAM_OBSERVATION, observationRegistry)
+					.lowCardinalityKeyValue(ADAPTER, adapterName)
+					.lowCardinalityKeyValue(RANGE_SIZE, rangeSize)
+					.highCardinalityKeyValue("key", String.valueOf(key))
+					.start();
+			this.firstByte = Observation.createNotStarted(FIRST_BYTE_OBSERVATION, observationRegistry)
+					.lowCardinalityKeyValue(ADAPTER, adapterName)
+					.start();
+			activeStreams.increment();
+		}
+
+		private void firstByteSeen() {
+			if (firstByteSeen.compareAndSet(false, true)) {
+				firstByte.lowCardinalityKeyValue(OUTCOME, OUTCOME_COMPLETED).stop();
+			}
+		}
+
+		private void complete() {
+			finish(OUTCOME_COMPLETED, null);
+		}
+
+		private void cancel() {
+			if (finish(OUTCOME_CANCELLED, null)) {
+				cancelledStreams.increment();
+			}
+		}
+
+		private void error(Throwable error) {
+			finish(OUTCOME_ERROR, error);
+		}
+
+		/**
+		 * @return {@code true} if this call ended the stream
+		 */
+		private boolean finish(String outcome, Throwable error) {
+			if (!finished.compareAndSet(false, true)) {
+				return false;
+			}
+			activeStreams.decrement();
+			if (firstByteSeen.compareAndSet(false, true)) {
+				if (error != null) {
+					firstByte.error(error);
+				}
+				firstByte.lowCardinalityKeyValue(OUTCOME, outcome).stop();
+			}
+			if (error != null) {
+				stream.error(error);
+			}
+			stream.lowCardinalityKeyValue(OUTCOME, outcome).stop();
+			return true;
+		}
+	}
+
+}
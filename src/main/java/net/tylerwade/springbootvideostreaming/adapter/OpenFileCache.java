@@ -0,0 +1,393 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * A bounded LRU cache of open, read-only {@code AsynchronousFileChannel}s keyed by content key.
+ * <p>
+ * Each cached entry holds the channel together with the file size and last modified time read when
+ * the file was opened, so repeated range requests for the same file need no {@code open} call and at most one
+ * {@code stat} per revalidation interval. A file whose size, last modified time or file key (the inode on
+ * Unix) has changed since it was opened is reopened, so a replaced file is served in its new version. Channels
+ * are handed out as leases; an entry that is evicted (because the cache is full, the file has changed or the
+ * entry has been idle for longer than the idle timeout, see {@link #evictIdle()}) is closed once its last lease
+ * is released.
+ */
+@Slf4j
+class OpenFileCache implements Closeable {
+
+	public static final Duration DEFAULT_REVALIDATE_INTERVAL = Duration.ofSeconds(1);
+
+	private final int maxOpenFiles;
+	private final long idleTimeoutNanos;
+	private final Consumer<String> changeListener;
+	private volatile long revalidateNanos = DEFAULT_REVALIDATE_INTERVAL.toNanos();
+
+	private final LinkedHashMap<String, OpenFile> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+
+	private boolean closed;
+
+	/**
+	 * @param changeListener called with the key of a file found to have changed since it was opened
+	 */
+	OpenFileCache(int maxOpenFiles, Duration idleTimeout, Consumer<String> changeListener) {
+		if (maxOpenFiles < 1) {
+			throw new IllegalArgumentException("maxOpenFiles must be at least 1.");
+		}
+		this.maxOpenFiles = maxOpenFiles;
+		this.idleTimeoutNanos = idleTimeout.toNanos();
+		this.changeListener = changeListener;
+	}
+
+	/**
+	 * Sets how long the attributes of a cached file are trusted before they are compared with the file's
+	 * current attributes.
+	 */
+	void setRevalidateInterval(Duration revalidateInterval) {
+		this.revalidateNanos = revalidateInterval.toNanos();
+	}
+
+	/**
+	 * Acquires a lease on the open file for the given key, opening the file if it is not cached or has changed
+	 * since it was opened. The returned {@code OpenFile} must be released with {@link OpenFile#release()}.
+	 */
+	OpenFile acquire(String key, Path path) throws IOException {
+		List<OpenFile> toClose = new ArrayList<>();
+		try {
+			OpenFile cached;
+			boolean revalidate;
+			synchronized (this) {
+				ensureOpen();
+				cached = openFiles.get(key);
+				if (cached == null) {
+					revalidate = false;
+				} else {
+					long now = System.nanoTime();
+					revalidate = now - cached.checkedNanos >= revalidateNanos;
+					if (!revalidate) {
+						return cached.lease();
+					}
+					// Concurrent requests keep using the entry while this one checks the file.
+					cached.checkedNanos = now;
+					cached.lease();
+				}
+			}
+
+			if (revalidate) {
+				if (cached.matches(path)) {
+					return cached;
+				}
+				cached.release();
+				synchronized (this) {
+					if (openFiles.remove(key, cached) && cached.markEvicted()) {
+						toClose.add(cached);
+					}
+				}
+				changeListener.accept(key);
+			}
+
+			// Open outside the lock so a slow open does not block requests for other files.
+			OpenFile opened = open(path);
+
+			synchronized (this) {
+				OpenFile current = openFiles.get(key);
+				if (closed || current != null) {
+					// The cache was closed or another request opened the same file concurrently.
+					toClose.add(opened);
+					ensureOpen();
+					return current.lease();
+				}
+
+				openFiles.put(key, opened);
+				collectOverflow(toClose);
+				return opened.lease();
+			}
+		} finally {
+			toClose.forEach(OpenFile::closeChannel);
+		}
+	}
+
+	/**
+	 * Removes the entry for the given key, closing its channel once it is no longer leased.
+	 */
+	void invalidate(String key) {
+		OpenFile removed;
+		synchronized (this) {
+			removed = openFiles.remove(key);
+			if (removed == null || !removed.markEvicted()) {
+				return;
+			}
+		}
+		removed.closeChannel();
+	}
+
+	/**
+	 * Closes every entry that has not been used within the idle timeout. The owner of the cache calls this
+	 * periodically, so acquiring a file never scans the cache.
+	 */
+	void evictIdle() {
+		List<OpenFile> toClose = new ArrayList<>();
+		synchronized (this) {
+			collectIdle(System.nanoTime(), toClose);
+		}
+		toClose.forEach(OpenFile::closeChannel);
+	}
+
+	synchronized int size() {
+		return openFiles.size();
+	}
+
+	@Override
+	public void close() {
+		List<OpenFile> toClose = new ArrayList<>();
+		synchronized (this) {
+			closed = true;
+			for (OpenFile openFile : openFiles.values()) {
+				if (openFile.markEvicted()) {
+					toClose.add(openFile);
+				}
+			}
+			openFiles.clear();
+		}
+		toClose.forEach(OpenFile::closeChannel);
+	}
+
+	private void ensureOpen() {
+		if (closed) {
+			throw new IllegalStateException("OpenFileCache is closed.");
+		}
+	}
+
+	private void collectIdle(long now, List<OpenFile> toClose) {
+		Iterator<OpenFile> iterator = openFiles.values().iterator();
+		while (iterator.hasNext()) {
+			OpenFile openFile = iterator.next();
+			if (openFile.leases > 0 || now - openFile.lastAccessNanos < idleTimeoutNanos) {
+				continue;
+			}
+			iterator.remove();
+			if (openFile.markEvicted()) {
+				toClose.add(openFile);
+			}
+		}
+	}
+
+	private void collectOverflow(List<OpenFile> toClose) {
+		Iterator<Map.Entry<String, OpenFile>> iterator = openFiles.entrySet().iterator();
+		while (openFiles.size() > maxOpenFiles && iterator.hasNext()) {
+			OpenFile eldest = iterator.next().getValue();
+			iterator.remove();
+			if (eldest.markEvicted()) {
+				toClose.add(eldest);
+			}
+		}
+	}
+
+	private OpenFile open(Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		if (!attributes.isRegularFile()) {
+			throw new NoSuchFileException(path.toString(), null, "Not a regular file.");
+		}
+		AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+		return new OpenFile(path, channel, attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+	}
+
+	/**
+	 * An open file and the attributes read when it was opened.
+	 */
+	final class OpenFile {
+
+		private final Path path;
+		private final AsynchronousFileChannel channel;
+		private final long size;
+		private final long lastModified;
+		private final Object fileKey;
+
+		private int leases;
+		private boolean evicted;
+		private long lastAccessNanos = System.nanoTime();
+		private long checkedNanos = lastAccessNanos;
+
+		private OpenFile(Path path, AsynchronousFileChannel channel, long size, long lastModified, Object fileKey) {
+			this.path = path;
+			this.channel = channel;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.fileKey = fileKey;
+		}
+
+		/**
+		 * @return {@code true} if the file at the given path is still the file that was opened, unchanged
+		 */
+		private boolean matches(Path path) {
+			try {
+				BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+				return attributes.isRegularFile() && attributes.size() == size
+						&& attributes.lastModifiedTime().toMillis() == lastModified
+						&& Objects.equals(attributes.fileKey(), fileKey);
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		Path getPath() {
+			return path;
+		}
+
+		long getSize() {
+			return size;
+		}
+
+		long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Returns a view of the cached channel whose {@code close()} releases this lease instead of closing
+		 * the underlying channel. The view is intended to be handed to a single reader.
+		 */
+		AsynchronousFileChannel leasedChannel() {
+			return new LeasedFileChannel(this);
+		}
+
+		/**
+		 * Adds a lease. Must be called while holding the cache lock.
+		 */
+		private OpenFile lease() {
+			leases++;
+			lastAccessNanos = System.nanoTime();
+			return this;
+		}
+
+		/**
+		 * Releases a lease acquired through {@link OpenFileCache#acquire(String, Path)}.
+		 */
+		void release() {
+			boolean close;
+			synchronized (OpenFileCache.this) {
+				leases--;
+				lastAccessNanos = System.nanoTime();
+				close = evicted && leases == 0;
+			}
+			if (close) {
+				closeChannel();
+			}
+		}
+
+		/**
+		 * Marks the entry as evicted and returns {@code true} if the channel can be closed right away.
+		 * Must be called while holding the cache lock.
+		 */
+		private boolean markEvicted() {
+			evicted = true;
+			return leases == 0;
+		}
+
+		private void closeChannel() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				log.warn("Failed to close file channel for {}.", path, e);
+			}
+		}
+	}
+
+	/**
+	 * A read-only view of a cached channel. Closing the view releases the lease it was created from.
+	 */
+	private static final class LeasedFileChannel extends AsynchronousFileChannel {
+
+		private final OpenFile openFile;
+		private final AsynchronousFileChannel delegate;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private LeasedFileChannel(OpenFile openFile) {
+			this.openFile = openFile;
+			this.delegate = openFile.channel;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return delegate.size();
+		}
+
+		@Override
+		public AsynchronousFileChannel truncate(long size) {
+			throw new UnsupportedOperationException("Cached file channels are read-only.");
+		}
+
+		@Override
+		public void force(boolean metaData) throws IOException {
+			delegate.force(metaData);
+		}
+
+		@Override
+		public <A> void lock(long position, long size, boolean shared, A attachment, CompletionHandler<FileLock, ? super A> handler) {
+			delegate.lock(position, size, shared, attachment, handler);
+		}
+
+		@Override
+		public Future<FileLock> lock(long position, long size, boolean shared) {
+			return delegate.lock(position, size, shared);
+		}
+
+		@Override
+		public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+			return delegate.tryLock(position, size, shared);
+		}
+
+		@Override
+		public <A> void read(ByteBuffer dst, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+			delegate.read(dst, position, attachment, handler);
+		}
+
+		@Override
+		public Future<Integer> read(ByteBuffer dst, long position) {
+			return delegate.read(dst, position);
+		}
+
+		@Override
+		public <A> void write(ByteBuffer src, long position, A attachment, CompletionHandler<Integer, ? super A> handler) {
+			throw new UnsupportedOperationException("Cached file channels are read-only.");
+		}
+
+		@Override
+		public Future<Integer> write(ByteBuffer src, long position) {
+			throw new UnsupportedOperationException("Cached file channels are read-only.");
+		}
+
+		@Override
+		public boolean isOpen() {
+			return !released.get() && delegate.isOpen();
+		}
+
+		@Override
+		public void close() {
+			if (released.compareAndSet(false, true)) {
+				openFile.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import net.tylerwade.springbootvideostreaming.model.MediaInfo;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import net.tylerwade.springbootvideostreaming.pacing.BandwidthPacer;
+import net.tylerwade.springbootvideostreaming.pacing.TokenBucket;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * The {@code PacingContentStreamAdapter} decorates another {@code ContentStreamAdapter} so the content it returns
+ * is sent no faster than the viewer needs it, instead of as fast as the socket accepts.
+ * <p>
+ * Every stream is limited to {@code bitrateFactor} times the bitrate of its video, after an initial burst of
+ * {@code initialBurst} of playback that fills the player's buffer. The bitrate is taken from the content's
+ * {@link MediaInfo}, so the delegate should be a {@link ProbingContentStreamAdapter}; content of unknown bitrate
+ * is limited to {@code defaultBytesPerSecond}, or not at all if it is 0. All streams additionally share the
+ * global egress budget of the {@link BandwidthPacer}, if it has one.
+ * <p>
+ * A stream is the content with a key requested by one client, see {@link StreamContentRequest#getClientId()},
+ * so a player's range requests share one bucket and the initial burst is granted once per stream. Requests
+ * without a client ID are paced each on their own. The buckets of the least recently started streams are
+ * dropped once more than {@code maxStreams} are tracked. Content sent with zero-copy is paced region by
+ * region, before the region is written.
+ */
+public class PacingContentStreamAdapter implements ContentStreamAdapter, Closeable {
+
+	public static final double DEFAULT_BITRATE_FACTOR = 1.5;
+	public static final Duration DEFAULT_INITIAL_BURST = Duration.ofSeconds(10);
+	public static final int DEFAULT_MAX_STREAMS = 10_000;
+
+	private final ContentStreamAdapter delegate;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final BandwidthPacer pacer;
+	private final double bitrateFactor;
+	private final Duration initialBurst;
+	private final long defaultBytesPerSecond;
+	private final int maxStreams;
+	private final boolean ownsPacer;
+
+	private final Map<StreamKey, TokenBucket> streams = new ConcurrentHashMap<>();
+	private final Queue<StreamKey> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * @param delegate              the adapter the content is loaded from
+	 * @param pacer                 the pacer holding the global egress budget, shared with other adapters if
+	 *                              they serve from the same network interface
+	 * @param bitrateFactor         the rate of a stream relative to the bitrate of its video, at least 1
+	 * @param initialBurst          the playback time sent at once when a stream starts
+	 * @param defaultBytesPerSecond the rate of streams of unknown bitrate, or 0 to only apply the global budget
+	 * @param maxStreams            the number of streams whose bucket is tracked
+	 */
+	public PacingContentStreamAdapter(ContentStreamAdapter delegate, BandwidthPacer pacer, double bitrateFactor,
+									  Duration initialBurst, long defaultBytesPerSecond, int maxStreams) {
+		this(delegate, pacer, bitrateFactor, initialBurst, defaultBytesPerSecond, maxStreams, false);
+	}
+
+	/**
+	 * @param delegate             the adapter the content is loaded from
+	 * @param globalBytesPerSecond the egress budget of all streams, or 0 for none
+	 */
+	public PacingContentStreamAdapter(ContentStreamAdapter delegate, long globalBytesPerSecond) {
+		this(delegate, new BandwidthPacer(globalBytesPerSecond > 0
+						? new TokenBucket(globalBytesPerSecond, globalBytesPerSecond / 10)
+						: null),
+				DEFAULT_BITRATE_FACTOR, DEFAULT_INITIAL_BURST, 0, DEFAULT_MAX_STREAMS, true);
+	}
+
+	private PacingContentStreamAdapter(ContentStreamAdapter delegate, BandwidthPacer pacer, double bitrateFactor,
+									   Duration initialBurst, long defaultBytesPerSecond, int maxStreams, boolean ownsPacer) {
+		if (bitrateFactor < 1) {
+			throw new IllegalArgumentException("bitrateFactor must be at least 1.");
+		}
+		if (defaultBytesPerSecond < 0) {
+			throw new IllegalArgumentException("defaultBytesPerSecond must not be negative.");
+		}
+		if (maxStreams < 1) {
+			throw new IllegalArgumentException("maxStreams must be at least 1.");
+		}
+		this.delegate = delegate;
+		this.pacer = pacer;
+		this.bitrateFactor = bitrateFactor;
+		this.initialBurst = initialBurst;
+		this.defaultBytesPerSecond = defaultBytesPerSecond;
+		this.maxStreams = maxStreams;
+		this.ownsPacer = ownsPacer;
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		return delegate.loadContent(contentRequest)
+				.doOnNext(content -> {
+					if (content.getContent() == null || content.isNotModified() || content.isRangeNotSatisfiable()) {
+						return;
+					}
+					TokenBucket bucket = streamBucket(contentRequest, content.getMetadata());
+					if (bucket == null && pacer.getGlobalBucket() == null) {
+						return;
+					}
+
+					Flux<DataBuffer> paced = pacer.pace(content.getContent(), bucket);
+					if (content.getContent() instanceof FileRegionContent region) {
+						paced = region.transform(paced, write -> pacer.acquire(bucket, region.getCount()).then(write));
+					}
+					content.setContent(paced);
+				});
+	}
+
+	/**
+	 * Returns the bucket of the stream the request belongs to, creating it on the stream's first request.
+	 *
+	 * @return the bucket, or {@code null} if the stream's rate is not limited
+	 */
+	private TokenBucket streamBucket(StreamContentRequest contentRequest, StreamedContentMetadata metadata) {
+		MediaInfo mediaInfo = metadata == null ? null : metadata.getMediaInfo();
+		long bytesPerSecond = mediaInfo != null && mediaInfo.getBitrate() != null && mediaInfo.getBitrate() > 0
+				? (long) Math.ceil(mediaInfo.getBitrate() / 8.0 * bitrateFactor)
+				: defaultBytesPerSecond;
+		if (bytesPerSecond <= 0) {
+			return null;
+		}
+
+		long burstBytes = (long) (bytesPerSecond / bitrateFactor * initialBurst.toMillis() / 1000.0);
+		if (contentRequest.getClientId() == null) {
+			return new TokenBucket(bytesPerSecond, burstBytes);
+		}
+
+		StreamKey streamKey = new StreamKey(contentRequest.getKey(), contentRequest.getClientId());
+		TokenBucket bucket = streams.get(streamKey);
+		if (bucket == null || bucket.getBytesPerSecond() != bytesPerSecond) {
+			bucket = new TokenBucket(bytesPerSecond, burstBytes);
+			if (streams.put(streamKey, bucket) == null) {
+				insertionOrder.add(streamKey);
+				evictOverflow();
+			}
+		}
+		return bucket;
+	}
+
+	private void evictOverflow() {
+		while (streams.size() > maxStreams) {
+			StreamKey eldest = insertionOrder.poll();
+			if (eldest == null) {
+				return;
+			}
+			streams.remove(eldest);
+		}
+	}
+
+	/**
+	 * @return the number of streams whose bucket is tracked
+	 */
+	public int getTrackedStreamCount() {
+		return streams.size();
+	}
+
+	public BandwidthPacer getPacer() {
+		return pacer;
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		return delegate.getContentMetadata(key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return delegate.streamContentMetadata(prefix);
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return delegate.listContentMetadata(prefix, continuationToken, maxKeys);
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	public ContentStreamAdapter getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * Closes the pacer if it was created by this adapter. A pacer passed to the constructor is closed by its
+	 * owner.
+	 */
+	@Override
+	public void close() {
+		if (ownsPacer) {
+			pacer.close();
+		}
+	}
+
+	private record StreamKey(String key, String clientId) {
+		private StreamKey {
+			Objects.requireNonNull(key);
+		}
+	}
+
+}
@@ -0,0 +1,402 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkRequest;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code PrefetchingContentStreamAdapter} decorates another {@code ContentStreamAdapter}, typically an S3
+ * adapter, with sequential read-ahead.
+ * <p>
+ * Browsers play video by requesting one chunk after the other. When a client requests the chunk that directly
+ * follows its previous one, the next chunks of the content are fetched in the background and held in memory,
+ * so the following {@code loadContent} calls are served without waiting for the backend. Clients are told
+ * apart by {@link StreamContentRequest#getClientId()}.
+ * <p>
+ * Prefetched chunks are held in the buffers the delegate read them into, e.g. pooled direct buffers, and are
+ * replayed without copying. They count against a memory budget; no prefetch is started while the budget is
+ * exhausted. Chunks and playback state that have not been used within the idle timeout are evicted, and the bytes of
+ * evicted chunks that were never served are reported as wasted.
+ */
+@Slf4j
+public class PrefetchingContentStreamAdapter implements ContentStreamAdapter, Closeable {
+
+	public static final int DEFAULT_PREFETCH_DEPTH = 2;
+	public static final long DEFAULT_MAX_BUFFERED_BYTES = 256L * 1024 * 1024; // 256MB
+	public static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofSeconds(30);
+
+	private final ContentStreamAdapter delegate;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final int prefetchDepth;
+	private final long maxBufferedBytes;
+	private final long idleTimeoutNanos;
+
+	private final Map<ChunkKey, PrefetchedChunk> chunks = new ConcurrentHashMap<>();
+	private final Map<StreamKey, PlaybackState> playbackStates = new ConcurrentHashMap<>();
+	private final AtomicLong bufferedBytes = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder prefetchedBytes = new LongAdder();
+	private final LongAdder wastedBytes = new LongAdder();
+
+	private final Disposable idleEviction;
+
+	/**
+	 * @param delegate         the adapter chunks are loaded from
+	 * @param prefetchDepth    the number of chunks to read ahead of a sequential client
+	 * @param maxBufferedBytes the memory budget for all prefetched chunks
+	 * @param idleTimeout      how long unused chunks and playback state are kept
+	 */
+	public PrefetchingContentStreamAdapter(ContentStreamAdapter delegate, int prefetchDepth, long maxBufferedBytes, Duration idleTimeout) {
+		this.delegate = delegate;
+		this.prefetchDepth = prefetchDepth;
+		this.maxBufferedBytes = maxBufferedBytes;
+		this.idleTimeoutNanos = idleTimeout.toNanos();
+
+		long sweepInterval = Math.max(1, idleTimeout.toMillis() / 2);
+		this.idleEviction = Schedulers.parallel().schedulePeriodically(
+				this::evictIdle, sweepInterval, sweepInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public PrefetchingContentStreamAdapter(ContentStreamAdapter delegate) {
+		this(delegate, DEFAULT_PREFETCH_DEPTH, DEFAULT_MAX_BUFFERED_BYTES, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		if (contentRequest.isMultiRange() || contentRequest.isSuffixRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
+		return Mono.defer(() -> {
+			Range requestedRange = contentRequest.getRange();
+			long start = requestedRange == null || requestedRange.getStart() == null ? 0L : requestedRange.getStart();
+			PrefetchedChunk chunk = chunks.get(new ChunkKey(contentRequest.getKey(), start));
+
+			// Conditional requests are answered by the delegate, which knows the content's current version.
+			if (chunk != null && !isConditional(contentRequest) && covers(chunk, contentRequest)) {
+				hits.increment();
+				// A failed prefetch has already removed the chunk and returned its bytes to the budget.
+				return chunk.data
+						.map(buffers -> toStreamedContent(chunk, buffers, contentRequest))
+						.onErrorResume(e -> delegate.loadContent(contentRequest))
+						.doOnNext(content -> onServed(contentRequest, content));
+			}
+
+			misses.increment();
+			return delegate.loadContent(contentRequest)
+					.doOnNext(content -> onServed(contentRequest, content));
+		});
+	}
+
+	/**
+	 * Records the served range and starts read-ahead if the client is playing sequentially.
+	 */
+	private void onServed(StreamContentRequest contentRequest, StreamedContent content) {
+		if (content.isNotModified() || content.isRangeNotSatisfiable()) {
+			return;
+		}
+
+		StreamKey streamKey = new StreamKey(contentRequest.getKey(), contentRequest.getClientId());
+		PlaybackState state = playbackStates.computeIfAbsent(streamKey, key -> new PlaybackState());
+
+		boolean sequential;
+		synchronized (state) {
+			sequential = state.lastEnd >= 0 && content.getRange().getStart() == state.lastEnd + 1;
+			state.lastEnd = content.getRange().getEnd();
+			state.lastAccessNanos = System.nanoTime();
+		}
+
+		if (sequential) {
+			prefetch(contentRequest, content.getMetadata(), content.getRange());
+		}
+	}
+
+	private void prefetch(StreamContentRequest contentRequest, StreamedContentMetadata metadata, Range servedRange) {
+		ChunkSizePolicy chunkSizePolicy = delegate.getChunkSizePolicy();
+		long fileSize = metadata.getFileSize();
+		long start = servedRange.getEnd() + 1;
+		long previousChunkSize = servedRange.getEnd() - servedRange.getStart() + 1;
+		for (int i = 0; i < prefetchDepth && start < fileSize; i++) {
+			// Sized like the client's next requests will be, without changing the policy's state for the client.
+			long chunkSize = chunkSizePolicy.nextChunkSize(
+					new ChunkRequest(contentRequest.getKey(), contentRequest.getClientId(), start, fileSize), previousChunkSize);
+			Range range = new Range(start, Math.min(start + chunkSize - 1, fileSize - 1));
+			long length = range.getEnd() - range.getStart() + 1;
+			ChunkKey chunkKey = new ChunkKey(contentRequest.getKey(), start);
+			previousChunkSize = chunkSize;
+			start = range.getEnd() + 1;
+
+			if (chunks.containsKey(chunkKey)) {
+				continue;
+			}
+			if (bufferedBytes.addAndGet(length) > maxBufferedBytes) {
+				bufferedBytes.addAndGet(-length);
+				return;
+			}
+
+			PrefetchedChunk chunk = new PrefetchedChunk(chunkKey, metadata, range, length);
+			StreamContentRequest prefetchRequest = StreamContentRequest.builder()
+					.key(contentRequest.getKey())
+					.clientId(contentRequest.getClientId())
+					.range(range)
+					.build();
+
+			chunk.data = delegate.loadContent(prefetchRequest)
+					.flatMap(content -> content.getContent().collectList())
+					.doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+					.doOnNext(buffers -> prefetchedBytes.add(byteCount(buffers)))
+					.doOnError(e -> {
+						log.debug("Failed to prefetch {} {}.", contentRequest.getKey(), range, e);
+						if (chunks.remove(chunkKey, chunk)) {
+							bufferedBytes.addAndGet(-length);
+						}
+					})
+					.cache();
+
+			// The chunk is only published once its data is set, a concurrent request may pick it up right away.
+			if (chunks.putIfAbsent(chunkKey, chunk) != null) {
+				bufferedBytes.addAndGet(-length);
+				continue;
+			}
+			chunk.data.subscribe(buffers -> {}, e -> {});
+		}
+	}
+
+	private StreamedContent toStreamedContent(PrefetchedChunk chunk, List<DataBuffer> buffers, StreamContentRequest contentRequest) {
+		// The chunk stays in the map until its content is subscribed to, so content that is never written, e.g.
+		// for a HEAD request or a client that disconnected, is evicted and released like any unused chunk. If
+		// another request took the chunk first, or it was evicted meanwhile, the range is read from the delegate.
+		Flux<DataBuffer> content = Flux.defer(() -> {
+			if (!chunks.remove(chunk.key, chunk)) {
+				return delegate.loadContent(StreamContentRequest.builder()
+								.key(contentRequest.getKey())
+								.clientId(contentRequest.getClientId())
+								.range(chunk.range)
+								.build())
+						.flatMapMany(StreamedContent::getContent);
+			}
+			bufferedBytes.addAndGet(-chunk.reservedBytes);
+
+			// The buffers are handed over one by one; those not emitted when the content is cancelled are released.
+			return Flux.generate(() -> 0, (index, sink) -> {
+				if (index < buffers.size()) {
+					sink.next(buffers.get(index));
+				} else {
+					sink.complete();
+				}
+				return index + 1;
+			}, index -> buffers.subList(Math.min(index, buffers.size()), buffers.size()).forEach(DataBufferUtils::release));
+		});
+
+		return StreamedContent.builder()
+				.key(chunk.key.key())
+				.metadata(chunk.metadata)
+				.content(content)
+				.contentLength(byteCount(buffers))
+				.range(chunk.range)
+				.build();
+	}
+
+	private static long byteCount(List<DataBuffer> buffers) {
+		long byteCount = 0;
+		for (DataBuffer buffer : buffers) {
+			byteCount += buffer.readableByteCount();
+		}
+		return byteCount;
+	}
+
+	private static boolean isConditional(StreamContentRequest contentRequest) {
+		return contentRequest.getIfNoneMatch() != null
+				|| contentRequest.getIfModifiedSince() != null
+				|| contentRequest.getIfRange() != null;
+	}
+
+	private boolean covers(PrefetchedChunk chunk, StreamContentRequest contentRequest) {
+		// Only a chunk with exactly the range the delegate would serve is a valid answer. A request ending before
+		// the chunk's end, e.g. a part of a multipart response, must not receive the longer chunk.
+		return chunk.range.equals(delegate.createValidRange(contentRequest, chunk.metadata.getFileSize()));
+	}
+
+	/**
+	 * Evicts prefetched chunks and playback state that have not been used within the idle timeout. This also
+	 * runs periodically in the background.
+	 */
+	public void evictIdle() {
+		long now = System.nanoTime();
+
+		chunks.values().forEach(chunk -> {
+			if (now - chunk.createdNanos >= idleTimeoutNanos && chunks.remove(chunk.key, chunk)) {
+				discard(chunk);
+			}
+		});
+		playbackStates.entrySet().removeIf(entry -> {
+			synchronized (entry.getValue()) {
+				return now - entry.getValue().lastAccessNanos >= idleTimeoutNanos;
+			}
+		});
+	}
+
+	private void discard(PrefetchedChunk chunk) {
+		// Releases the buffers once the fetch completes, or right away if it already has.
+		chunk.data.subscribe(buffers -> buffers.forEach(DataBufferUtils::release), e -> {});
+		bufferedBytes.addAndGet(-chunk.reservedBytes);
+		wastedBytes.add(chunk.reservedBytes);
+	}
+
+	/**
+	 * @return the number of {@code loadContent} calls served from prefetched chunks
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of {@code loadContent} calls passed to the delegate
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the share of {@code loadContent} calls served from prefetched chunks, between 0 and 1
+	 */
+	public double getHitRate() {
+		long hitCount = hits.sum();
+		long total = hitCount + misses.sum();
+		return total == 0 ? 0.0 : (double) hitCount / total;
+	}
+
+	/**
+	 * @return the total number of bytes fetched ahead of clients
+	 */
+	public long getPrefetchedBytes() {
+		return prefetchedBytes.sum();
+	}
+
+	/**
+	 * @return the number of prefetched bytes that were evicted without being served
+	 */
+	public long getWastedBytes() {
+		return wastedBytes.sum();
+	}
+
+	/**
+	 * @return the number of bytes currently reserved by prefetched chunks
+	 */
+	public long getBufferedBytes() {
+		return bufferedBytes.get();
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		return delegate.getContentMetadata(key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return delegate.streamContentMetadata(prefix);
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return delegate.listContentMetadata(prefix, continuationToken, maxKeys);
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	@Override
+	public void close() {
+		idleEviction.dispose();
+		chunks.values().forEach(chunk -> {
+			if (chunks.remove(chunk.key, chunk)) {
+				discard(chunk);
+			}
+		});
+		playbackStates.clear();
+	}
+
+	private record ChunkKey(String key, long start) {
+	}
+
+	private record StreamKey(String key, String clientId) {
+		private StreamKey {
+			Objects.requireNonNull(key);
+		}
+	}
+
+	private static final class PlaybackState {
+		private long lastEnd = -1;
+		private long lastAccessNanos = System.nanoTime();
+	}
+
+	private static final class PrefetchedChunk {
+		private final ChunkKey key;
+		private final StreamedContentMetadata metadata;
+		private final Range range;
+		private final long reservedBytes;
+		private final long createdNanos = System.nanoTime();
+
+		private volatile Mono<List<DataBuffer>> data;
+
+		private PrefetchedChunk(ChunkKey key, StreamedContentMetadata metadata, Range range, long reservedBytes) {
+			this.key = key;
+			this.metadata = metadata;
+			this.range = range;
+			this.reservedBytes = reservedBytes;
+		}
+	}
+}
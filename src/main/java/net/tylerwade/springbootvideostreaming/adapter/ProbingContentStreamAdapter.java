@@ -0,0 +1,302 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.media.MediaProbe;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.MediaInfo;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code ProbingContentStreamAdapter} decorates another {@code ContentStreamAdapter} so the metadata of a
+ * video carries its {@link MediaInfo}: container, duration, bitrate, resolution and codecs.
+ * <p>
+ * Every content is probed once with {@link MediaProbe}, in the background on its first {@code loadContent} or
+ * {@code getContentMetadata}, and the result is cached per key until the content's ETag or size changes. The
+ * content is served without waiting for the probe, so the media info is included from a later request on.
+ * From then on, the metadata returned by this adapter includes the media info without any further I/O, and its
+ * content type is the one detected from the content's magic bytes rather than its extension. Listings include
+ * the media info of content that has been probed, but never probe.
+ * <p>
+ * The ETag is the delegate's and does not change with the probe, so the first responses for a version of the
+ * content may carry the content type of its extension and later ones the detected type under the same ETag.
+ * Clients and caches that revalidate keep the content type of their first response until the content changes.
+ * <p>
+ * The cached durations make bitrate-aware chunking possible:
+ * <pre>{@code
+ * ProbingContentStreamAdapter adapter = new ProbingContentStreamAdapter(delegate);
+ * delegate.setChunkSizePolicy(new BitrateAwareChunkSizePolicy(adapter::getDuration));
+ * }</pre>
+ */
+@Slf4j
+public class ProbingContentStreamAdapter implements ContentStreamAdapter {
+
+	public static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+	private final ContentStreamAdapter delegate;
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final int maxEntries;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	private final LongAdder probes = new LongAdder();
+
+	/**
+	 * @param delegate   the adapter the content is loaded and probed from
+	 * @param maxEntries the maximum number of cached probe results
+	 */
+	public ProbingContentStreamAdapter(ContentStreamAdapter delegate, int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be at least 1.");
+		}
+		this.delegate = delegate;
+		this.maxEntries = maxEntries;
+	}
+
+	public ProbingContentStreamAdapter(ContentStreamAdapter delegate) {
+		this(delegate, DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Loads the content from the delegate with the cached media info. Content that has not been probed in its
+	 * current version is probed in the background, with the metadata the delegate returned alongside the
+	 * content, so neither the response nor the metadata lookup waits for the probe.
+	 */
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		return delegate.loadContent(contentRequest)
+				.doOnNext(content -> {
+					StreamedContentMetadata metadata = content.getMetadata();
+					if (metadata == null || metadata.getKey() == null || metadata.getFileSize() == null) {
+						return;
+					}
+					probeInBackground(metadata.getKey(), metadata);
+					content.setMetadata(withMediaInfo(metadata));
+				});
+	}
+
+	/**
+	 * Returns the media info of the content with the given key, probing it if it has not been probed since its
+	 * last change.
+	 *
+	 * @param key the key of the content
+	 * @return the media info, or an empty {@code Mono} if the format is not recognized
+	 */
+	public Mono<MediaInfo> loadMediaInfo(String key) {
+		return Mono.fromCallable(() -> delegate.getContentMetadata(key))
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMap(metadata -> probe(key, metadata))
+				.flatMap(Mono::justOrEmpty);
+	}
+
+	/**
+	 * Returns the cached probe result of the content, starting the probe if it has not been probed since its
+	 * last change.
+	 */
+	private Mono<Optional<MediaInfo>> probe(String key, StreamedContentMetadata metadata) {
+		String version = version(metadata);
+		Entry entry = entries.get(key);
+		if (entry == null || !entry.version.equals(version)) {
+			probes.increment();
+			entry = new Entry(version, MediaProbe.probe(delegate, key, metadata.getFileSize()));
+			if (entries.put(key, entry) == null) {
+				insertionOrder.add(key);
+				evictOverflow();
+			}
+		}
+
+		Entry probed = entry;
+		// Errors reading the content are not cached, the next request probes again.
+		return probed.probe.doOnError(e -> {
+			if (entries.remove(key, probed)) {
+				insertionOrder.remove(key);
+			}
+		});
+	}
+
+	/**
+	 * Returns the metadata with the cached media info and detected content type, if the content has been
+	 * probed in its current version. The ETag is kept, see the class documentation.
+	 */
+	private StreamedContentMetadata withMediaInfo(StreamedContentMetadata metadata) {
+		Entry entry = metadata == null || metadata.getKey() == null ? null : entries.get(metadata.getKey());
+		if (entry == null || entry.result == null || entry.result.isEmpty() || !entry.version.equals(version(metadata))) {
+			return metadata;
+		}
+
+		MediaInfo mediaInfo = entry.result.get();
+		return StreamedContentMetadata.builder()
+				.key(metadata.getKey())
+				.contentType(mediaInfo.getContentType() != null ? mediaInfo.getContentType() : metadata.getContentType())
+				.fileSize(metadata.getFileSize())
+				.eTag(metadata.getETag())
+				.lastModified(metadata.getLastModified())
+				.mediaInfo(mediaInfo)
+				.build();
+	}
+
+	private void evictOverflow() {
+		while (entries.size() > maxEntries) {
+			String eldest = insertionOrder.poll();
+			if (eldest == null) {
+				return;
+			}
+			entries.remove(eldest);
+		}
+	}
+
+	private static String version(StreamedContentMetadata metadata) {
+		return metadata.getETag() + "/" + metadata.getFileSize();
+	}
+
+	/**
+	 * Returns the cached media info of the content with the given key, without any I/O.
+	 *
+	 * @return the media info, or {@code null} if the content has not been probed or its format is not recognized
+	 */
+	public MediaInfo getMediaInfo(String key) {
+		Entry entry = entries.get(key);
+		return entry == null || entry.result == null ? null : entry.result.orElse(null);
+	}
+
+	/**
+	 * Returns the cached duration of the content with the given key, without any I/O, e.g. for a
+	 * {@link net.tylerwade.springbootvideostreaming.chunk.BitrateAwareChunkSizePolicy}.
+	 *
+	 * @return the duration, or {@code null} if it is not known
+	 */
+	public Duration getDuration(String key) {
+		MediaInfo mediaInfo = getMediaInfo(key);
+		return mediaInfo == null ? null : mediaInfo.getDuration();
+	}
+
+	/**
+	 * Removes the cached probe result for the given key, e.g. after the content has been replaced.
+	 */
+	public void invalidate(String key) {
+		if (entries.remove(key) != null) {
+			insertionOrder.remove(key);
+		}
+	}
+
+	/**
+	 * @return the number of probes started
+	 */
+	public long getProbeCount() {
+		return probes.sum();
+	}
+
+	/**
+	 * Returns the delegate's metadata with the cached media info. Content that has not been probed in its
+	 * current version is probed in the background, so the media info is included from a later call on.
+	 */
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		StreamedContentMetadata metadata = delegate.getContentMetadata(key);
+		probeInBackground(key, metadata);
+		return withMediaInfo(metadata);
+	}
+
+	/**
+	 * Starts the probe of the content if it has not been probed in the version the metadata describes. Content
+	 * of unknown size is not probed.
+	 */
+	private void probeInBackground(String key, StreamedContentMetadata metadata) {
+		if (metadata == null || metadata.getFileSize() == null) {
+			return;
+		}
+		Entry entry = entries.get(key);
+		if (entry == null || !entry.version.equals(version(metadata))) {
+			probe(key, metadata).subscribe(null, e -> log.debug("Could not probe {}: {}", key, e.toString()));
+		}
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata().stream()
+				.map(this::withMediaInfo)
+				.toList();
+	}
+
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		return delegate.streamContentMetadata(prefix).map(this::withMediaInfo);
+	}
+
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		return delegate.listContentMetadata(prefix, continuationToken, maxKeys)
+				.map(page -> new ContentMetadataPage(page.getContents().stream().map(this::withMediaInfo).toList(),
+						page.getNextContinuationToken()));
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Range createValidRange(StreamContentRequest contentRequest, Long fileSize) {
+		return delegate.createValidRange(contentRequest, fileSize);
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return delegate.getChunkSizePolicy();
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return delegate.getMaxChunkSize();
+	}
+
+	public ContentStreamAdapter getDelegate() {
+		return delegate;
+	}
+
+	/**
+	 * A probe of a version of a content. The result is set once the probe completes, so it can be read without
+	 * subscribing.
+	 */
+	private static final class Entry {
+
+		private final String version;
+		private final Mono<Optional<MediaInfo>> probe;
+		private volatile Optional<MediaInfo> result;
+
+		private Entry(String version, Mono<MediaInfo> probe) {
+			this.version = version;
+			this.probe = probe
+					.map(Optional::of)
+					.defaultIfEmpty(Optional.empty())
+					.doOnNext(result -> this.result = result)
+					.cache();
+		}
+
+	}
+
+}
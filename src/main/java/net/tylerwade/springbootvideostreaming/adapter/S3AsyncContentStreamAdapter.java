@@ -0,0 +1,276 @@
+package net.tylerwade.springbootvideostreaming.adapter;
+
+import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import java.util.List;
+import java.util.MissingResourceException;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The {@code S3AsyncContentStreamAdapter} class implements the {@code ContentStreamAdapter} interface on top of
+ * the non-blocking {@code S3AsyncClient}.
+ * <p>
+ * Unlike the {@link S3ContentStreamAdapter}, no thread is blocked while a chunk is downloaded: the SDK's
+ * {@code ByteBuffer} publisher is mapped directly into the {@code Flux<DataBuffer>} of the
+ * {@code StreamedContent}. Demand from the response is passed on to the SDK and cancelling the content aborts
+ * the S3 download, so concurrency is limited by the HTTP client's connections rather than by threads.
+ * <p>
+ * The synchronous metadata methods of {@code ContentStreamAdapter} block on the asynchronous client and must not
+ * be called from an event loop thread; {@link #loadContent(StreamContentRequest)} and
+ * {@link #loadMultipartContent(StreamContentRequest)} never block. The buffers received from the SDK are wrapped
+ * with the {@linkplain #setDataBufferFactory(DataBufferFactory) buffer factory} without copying, so the buffer
+ * size does not apply.
+ */
+@Slf4j
+public class S3AsyncContentStreamAdapter extends AbstractBufferingContentStreamAdapter {
+
+	private final S3AsyncClient s3AsyncClient;
+	private final String bucket;
+	private final ContentMetadataCache metadataCache;
+
+	private ChunkSizePolicy chunkSizePolicy = ChunkSizePolicy.DEFAULT;
+
+	public S3AsyncContentStreamAdapter(S3AsyncClient s3AsyncClient, String bucket) {
+		this(s3AsyncClient, bucket, null);
+	}
+
+	public S3AsyncContentStreamAdapter(S3AsyncClient s3AsyncClient, String bucket, ContentMetadataCache metadataCache) {
+		this.s3AsyncClient = s3AsyncClient;
+		this.bucket = bucket;
+		this.metadataCache = metadataCache;
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		if (contentRequest.isMultiRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
+		return loadContentMetadata(contentRequest.getKey())
+				.map(metadata -> {
+					// Answer preconditions before anything is read
+					if (isNotModified(contentRequest, metadata)) {
+						return StreamedContent.notModified(metadata);
+					}
+					if (isRangeNotSatisfiable(contentRequest, metadata)) {
+						return StreamedContent.rangeNotSatisfiable(metadata);
+					}
+
+					// Validate range
+					Range validRange = createValidRange(contentRequest, metadata);
+					Long contentLength = validRange.getEnd() - validRange.getStart() + 1;
+
+					// Stream Content
+					Flux<DataBuffer> content = streamContent(contentRequest.getKey(), validRange);
+
+					return StreamedContent.builder()
+							.key(contentRequest.getKey())
+							.metadata(metadata)
+							.content(content)
+							.contentLength(contentLength)
+							.range(validRange)
+							.build();
+				})
+				.doOnError(e -> log.error("Failed to load S3 content for key {}.", contentRequest.getKey(), e));
+	}
+
+	/**
+	 * Loads the metadata without blocking before resolving the ranges, rather than on a bounded elastic thread
+	 * as the default does.
+	 */
+	@Override
+	public Mono<StreamedContent> loadMultipartContent(StreamContentRequest contentRequest) {
+		return loadContentMetadata(contentRequest.getKey())
+				.flatMap(metadata -> loadMultipartContent(contentRequest, metadata));
+	}
+
+	private Flux<DataBuffer> streamContent(String objectKey, Range range) {
+		String rangeHeader = "bytes=" + range.getStart() + "-" + range.getEnd();
+
+		GetObjectRequest getObjectRequest = GetObjectRequest.builder()
+				.bucket(bucket)
+				.key(objectKey)
+				.range(rangeHeader)
+				.build();
+
+		// Nothing is requested from S3 until the content is subscribed to. Cancelling the subscription cancels
+		// the SDK future or the body publisher, which aborts the download.
+		return Mono.fromFuture(() -> s3AsyncClient.getObject(getObjectRequest, AsyncResponseTransformer.toPublisher()), false)
+				.doOnSubscribe(subscription -> log.debug("Streaming S3 Object {}/{}. {}", bucket, objectKey, rangeHeader))
+				.flatMapMany(Flux::from)
+				.map(getDataBufferFactory()::wrap)
+				.onErrorMap(CompletionException.class, e -> e.getCause() != null ? e.getCause() : e)
+				.onErrorMap(e -> mapNotFound(objectKey, e))
+				.doOnError(e -> log.error("Error streaming S3 Object {}/{}. {}", bucket, objectKey, rangeHeader, e));
+	}
+
+	/**
+	 * Loads the metadata for the given key without blocking, from the metadata cache if one is configured.
+	 *
+	 * @param key the key of the S3 object
+	 * @return the metadata of the object
+	 */
+	public Mono<StreamedContentMetadata> loadContentMetadata(String key) {
+		Mono<StreamedContentMetadata> metadata = metadataCache == null
+				? headContentMetadata(key, null).map(ContentMetadataCache.LoadedMetadata::metadata)
+				: metadataCache.getAsync(key, this::headContentMetadata);
+
+		return metadata.doOnError(e -> log.error("Failed to get S3 content metadata for key {}.", key, e));
+	}
+
+	@Override
+	public Long getContentSize(String key) {
+		return getContentMetadata(key).getFileSize();
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) {
+		return loadContentMetadata(key).block();
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() {
+		return streamContentMetadata(null)
+				.collectList()
+				.block();
+	}
+
+	/**
+	 * Lists the bucket with {@code ListObjectsV2}, requesting the next page of up to 1000 objects only once the
+	 * entries of the previous one have been consumed.
+	 */
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		ListObjectsV2Request request = ListObjectsV2Request.builder()
+				.bucket(bucket)
+				.prefix(prefix)
+				.build();
+
+		return Flux.defer(() -> Flux.from(s3AsyncClient.listObjectsV2Paginator(request).contents()))
+				.map(this::createMetadata)
+				.doOnError(e -> log.error("Failed to list S3 content.", e));
+	}
+
+	/**
+	 * Lists the page with a single {@code ListObjectsV2} request, starting after the continuation token.
+	 */
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		ListObjectsV2Request request = ListObjectsV2Request.builder()
+				.bucket(bucket)
+				.prefix(prefix)
+				.startAfter(continuationToken)
+				.maxKeys(ContentMetadataPage.pageSize(maxKeys))
+				.build();
+
+		return Mono.fromFuture(() -> s3AsyncClient.listObjectsV2(request))
+				.map(response -> createPage(response.contents(), response.isTruncated()))
+				.onErrorMap(CompletionException.class, e -> e.getCause() != null ? e.getCause() : e)
+				.doOnError(e -> log.error("Failed to list S3 content.", e));
+	}
+
+	/**
+	 * Removes the cached metadata for the given key. Has no effect if no metadata cache is configured.
+	 *
+	 * @param key the key of the S3 object whose metadata changed
+	 */
+	public void invalidateMetadata(String key) {
+		if (metadataCache != null) {
+			metadataCache.invalidate(key);
+		}
+	}
+
+	public ContentMetadataCache getMetadataCache() {
+		return metadataCache;
+	}
+
+	/**
+	 * Sets the policy deciding how large the chunks returned for open-ended range requests are.
+	 *
+	 * @param chunkSizePolicy the chunk size policy, e.g. a {@code FastStartChunkSizePolicy}
+	 */
+	public void setChunkSizePolicy(ChunkSizePolicy chunkSizePolicy) {
+		this.chunkSizePolicy = chunkSizePolicy;
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return chunkSizePolicy;
+	}
+
+	/**
+	 * Loads the metadata with a {@code HeadObject} request. If {@code currentETag} is given, the request is
+	 * conditional and the result is empty when S3 answers 304 Not Modified.
+	 */
+	private Mono<ContentMetadataCache.LoadedMetadata> headContentMetadata(String key, String currentETag) {
+		HeadObjectRequest request = HeadObjectRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.ifNoneMatch(currentETag)
+				.build();
+
+		return Mono.fromFuture(() -> s3AsyncClient.headObject(request))
+				.map(response -> new ContentMetadataCache.LoadedMetadata(StreamedContentMetadata.builder()
+						.key(key)
+						.contentType(response.contentType())
+						.fileSize(response.contentLength())
+						.eTag(response.eTag())
+						.lastModified(response.lastModified())
+						.build(), response.eTag()))
+				.onErrorMap(CompletionException.class, e -> e.getCause() != null ? e.getCause() : e)
+				.onErrorResume(S3Exception.class, e -> currentETag != null && e.statusCode() == 304
+						? Mono.empty()
+						: Mono.error(mapNotFound(key, e)));
+	}
+
+	/**
+	 * Maps the error of a request for a missing object to the {@link MissingResourceException} all adapters throw
+	 * for missing content, so callers need not know about S3.
+	 */
+	private Throwable mapNotFound(String key, Throwable e) {
+		if (e instanceof S3Exception s3Exception && s3Exception.statusCode() == 404) {
+			MissingResourceException missingResource = new MissingResourceException(
+					String.format("Resource with key '%s' does not exist.", key), this.getClass().toString(), key);
+			missingResource.initCause(e);
+			return missingResource;
+		}
+		return e;
+	}
+
+	private ContentMetadataPage createPage(List<S3Object> objects, Boolean truncated) {
+		List<StreamedContentMetadata> contents = objects.stream()
+				.map(this::createMetadata)
+				.toList();
+		String nextContinuationToken = Boolean.TRUE.equals(truncated) && !contents.isEmpty()
+				? contents.get(contents.size() - 1).getKey()
+				: null;
+		return new ContentMetadataPage(contents, nextContinuationToken);
+	}
+
+	private StreamedContentMetadata createMetadata(S3Object object) {
+		return StreamedContentMetadata.builder()
+				.key(object.key())
+				.contentType(extractContentType(object.key()))
+				.fileSize(object.size())
+				.eTag(object.eTag())
+				.lastModified(object.lastModified())
+				.build();
+	}
+}
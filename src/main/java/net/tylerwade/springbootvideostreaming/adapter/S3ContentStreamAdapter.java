@@ -1,13 +1,14 @@
 package net.tylerwade.springbootvideostreaming.adapter;
 
 import lombok.extern.slf4j.Slf4j;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
 import net.tylerwade.springbootvideostreaming.model.Range;
 import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
 import net.tylerwade.springbootvideostreaming.model.StreamedContent;
 import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
 import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.buffer.DataBufferUtils;
-import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
@@ -16,28 +17,59 @@ import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
 import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 import java.util.List;
+import java.util.MissingResourceException;
 
+/**
+ * The {@code S3ContentStreamAdapter} class implements the {@code ContentStreamAdapter} interface and streams
+ * content from an Amazon S3 bucket with ranged {@code GetObject} requests.
+ * <p>
+ * Metadata is loaded with {@code HeadObject}. If a {@link ContentMetadataCache} is provided, metadata lookups
+ * (including the one made before every range request) are served from the cache, so steady-state playback
+ * costs one S3 request per chunk instead of two.
+ */
 @Slf4j
-public class S3ContentStreamAdapter implements ContentStreamAdapter {
+public class S3ContentStreamAdapter extends AbstractBufferingContentStreamAdapter {
 
 	private final S3Client s3Client;
 	private final String bucket;
+	private final ContentMetadataCache metadataCache;
+
+	private ChunkSizePolicy chunkSizePolicy = ChunkSizePolicy.DEFAULT;
 
 	public S3ContentStreamAdapter(S3Client s3Client, String bucket) {
+		this(s3Client, bucket, null);
+	}
+
+	public S3ContentStreamAdapter(S3Client s3Client, String bucket, ContentMetadataCache metadataCache) {
 		this.s3Client = s3Client;
 		this.bucket = bucket;
+		this.metadataCache = metadataCache;
 	}
 
 	@Override
 	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		if (contentRequest.isMultiRange()) {
+			return loadMultipartContent(contentRequest);
+		}
+
 		return Mono.fromCallable(() -> getContentMetadata(contentRequest.getKey()))
 				.subscribeOn(Schedulers.boundedElastic())
 				.flatMap(metadata -> {
+					// Answer preconditions before anything is read
+					if (isNotModified(contentRequest, metadata)) {
+						return Mono.just(StreamedContent.notModified(metadata));
+					}
+					if (isRangeNotSatisfiable(contentRequest, metadata)) {
+						return Mono.just(StreamedContent.rangeNotSatisfiable(metadata));
+					}
+
 					// Validate range
-					Range validRange = createValidRange(contentRequest.getRange(), metadata.getFileSize());
+					Range validRange = createValidRange(contentRequest, metadata);
 					Long contentLength = validRange.getEnd() - validRange.getStart() + 1;
 
 					// Stream Content
@@ -67,9 +99,9 @@ public class S3ContentStreamAdapter implements ContentStreamAdapter {
 
 		return DataBufferUtils.readInputStream(
 				() -> s3Client.getObject(getObjectRequest),
-				new DefaultDataBufferFactory(),
-				8192 // 8 KB
-		).doOnError(e -> log.error("Error streaming S3 Object {}/{}. {}", bucket, objectKey, rangeHeader, e));
+				getDataBufferFactory(),
+				getBufferSize()
+		).onErrorMap(e -> mapNotFound(objectKey, e)).doOnError(e -> log.error("Error streaming S3 Object {}/{}. {}", bucket, objectKey, rangeHeader, e));
 	}
 
 	@Override
@@ -81,23 +113,92 @@ public class S3ContentStreamAdapter implements ContentStreamAdapter {
 	@Override
 	public StreamedContentMetadata getContentMetadata(String key) {
 		try {
+			if (metadataCache == null) {
+				return headContentMetadata(key, null).metadata();
+			}
+			return metadataCache.get(key, this::headContentMetadata);
+		} catch (Exception e) {
+			log.error("Failed to get S3 content metadata for key {}.", key, e);
+			throw e;
+		}
+	}
 
-			HeadObjectRequest request = HeadObjectRequest.builder()
-					.bucket(bucket)
-					.key(key)
-					.build();
+	/**
+	 * Removes the cached metadata for the given key. Has no effect if no metadata cache is configured.
+	 *
+	 * @param key the key of the S3 object whose metadata changed
+	 */
+	public void invalidateMetadata(String key) {
+		if (metadataCache != null) {
+			metadataCache.invalidate(key);
+		}
+	}
 
-			HeadObjectResponse response = s3Client.headObject(request);
+	public ContentMetadataCache getMetadataCache() {
+		return metadataCache;
+	}
 
-			return StreamedContentMetadata.builder()
-					.key(key)
-					.contentType(response.contentType())
-					.fileSize(response.contentLength())
-					.build();
-		} catch (Exception e) {
-			log.error("Failed to get S3 content metadata for key {}.", key, e);
+	/**
+	 * Sets the policy deciding how large the chunks returned for open-ended range requests are.
+	 *
+	 * @param chunkSizePolicy the chunk size policy, e.g. a {@code FastStartChunkSizePolicy}
+	 */
+	public void setChunkSizePolicy(ChunkSizePolicy chunkSizePolicy) {
+		this.chunkSizePolicy = chunkSizePolicy;
+	}
+
+	@Override
+	public ChunkSizePolicy getChunkSizePolicy() {
+		return chunkSizePolicy;
+	}
+
+	/**
+	 * Loads the metadata with a {@code HeadObject} request. If {@code currentETag} is given, the request is
+	 * conditional and {@code null} is returned when S3 answers 304 Not Modified.
+	 */
+	private ContentMetadataCache.LoadedMetadata headContentMetadata(String key, String currentETag) {
+		HeadObjectRequest request = HeadObjectRequest.builder()
+				.bucket(bucket)
+				.key(key)
+				.ifNoneMatch(currentETag)
+				.build();
+
+		HeadObjectResponse response;
+		try {
+			response = s3Client.headObject(request);
+		} catch (S3Exception e) {
+			if (currentETag != null && e.statusCode() == 304) {
+				return null;
+			}
+			if (mapNotFound(key, e) instanceof MissingResourceException missingResource) {
+				throw missingResource;
+			}
 			throw e;
 		}
+
+		StreamedContentMetadata metadata = StreamedContentMetadata.builder()
+				.key(key)
+				.contentType(response.contentType())
+				.fileSize(response.contentLength())
+				.eTag(response.eTag())
+				.lastModified(response.lastModified())
+				.build();
+
+		return new ContentMetadataCache.LoadedMetadata(metadata, response.eTag());
+	}
+
+	/**
+	 * Maps the error of a request for a missing object to the {@link MissingResourceException} all adapters throw
+	 * for missing content, so callers need not know about S3.
+	 */
+	private Throwable mapNotFound(String key, Throwable e) {
+		if (e instanceof S3Exception s3Exception && s3Exception.statusCode() == 404) {
+			MissingResourceException missingResource = new MissingResourceException(
+					String.format("Resource with key '%s' does not exist.", key), this.getClass().toString(), key);
+			missingResource.initCause(e);
+			return missingResource;
+		}
+		return e;
 	}
 
 	@Override
@@ -110,15 +211,66 @@ public class S3ContentStreamAdapter implements ContentStreamAdapter {
 			ListObjectsV2Iterable response = s3Client.listObjectsV2Paginator(request);
 
 			return response.contents().stream()
-					.map(object -> StreamedContentMetadata.builder()
-							.key(object.key())
-							.contentType(extractContentType(object.key()))
-							.fileSize(object.size())
-							.build()
-					).toList();
+					.map(this::createMetadata)
+					.toList();
 		} catch (Exception e) {
 			log.error("Failed to list S3 content.", e);
 			throw e;
 		}
 	}
+
+	/**
+	 * Lists the bucket with {@code ListObjectsV2}, requesting the next page of up to 1000 objects only once the
+	 * entries of the previous one have been consumed.
+	 */
+	@Override
+	public Flux<StreamedContentMetadata> streamContentMetadata(String prefix) {
+		ListObjectsV2Request request = ListObjectsV2Request.builder()
+				.bucket(bucket)
+				.prefix(prefix)
+				.build();
+
+		return Flux.defer(() -> Flux.fromIterable(s3Client.listObjectsV2Paginator(request).contents()))
+				.map(this::createMetadata)
+				.subscribeOn(Schedulers.boundedElastic())
+				.doOnError(e -> log.error("Failed to list S3 content.", e));
+	}
+
+	/**
+	 * Lists the page with a single {@code ListObjectsV2} request, starting after the continuation token.
+	 */
+	@Override
+	public Mono<ContentMetadataPage> listContentMetadata(String prefix, String continuationToken, int maxKeys) {
+		ListObjectsV2Request request = ListObjectsV2Request.builder()
+				.bucket(bucket)
+				.prefix(prefix)
+				.startAfter(continuationToken)
+				.maxKeys(ContentMetadataPage.pageSize(maxKeys))
+				.build();
+
+		return Mono.fromCallable(() -> s3Client.listObjectsV2(request))
+				.subscribeOn(Schedulers.boundedElastic())
+				.map(response -> createPage(response.contents(), response.isTruncated()))
+				.doOnError(e -> log.error("Failed to list S3 content.", e));
+	}
+
+	private ContentMetadataPage createPage(List<S3Object> objects, Boolean truncated) {
+		List<StreamedContentMetadata> contents = objects.stream()
+				.map(this::createMetadata)
+				.toList();
+		String nextContinuationToken = Boolean.TRUE.equals(truncated) && !contents.isEmpty()
+				? contents.get(contents.size() - 1).getKey()
+				: null;
+		return new ContentMetadataPage(contents, nextContinuationToken);
+	}
+
+	private StreamedContentMetadata createMetadata(S3Object object) {
+		return StreamedContentMetadata.builder()
+				.key(object.key())
+				.contentType(extractContentType(object.key()))
+				.fileSize(object.size())
+				.eTag(object.eTag())
+				.lastModified(object.lastModified())
+				.build();
+	}
 }
\ No newline at end of file
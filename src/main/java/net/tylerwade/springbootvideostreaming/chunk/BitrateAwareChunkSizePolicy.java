@@ -0,0 +1,62 @@
+package net.tylerwade.springbootvideostreaming.chunk;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * A {@code ChunkSizePolicy} sizing chunks by playback time instead of bytes.
+ * <p>
+ * The average bitrate of a content is estimated from its file size and duration, and every chunk covers
+ * {@code chunkDuration} of playback, bounded by the minimum and maximum chunk size. High-bitrate content
+ * therefore gets larger chunks and needs fewer requests per second of video, while low-bitrate content is not
+ * over-fetched. Content whose duration is unknown gets the maximum chunk size.
+ */
+public class BitrateAwareChunkSizePolicy implements ChunkSizePolicy {
+
+	public static final Duration DEFAULT_CHUNK_DURATION = Duration.ofSeconds(4);
+	public static final long DEFAULT_MIN_CHUNK_SIZE = 256 * 1024L; // 256KB
+	public static final long DEFAULT_MAX_CHUNK_SIZE = 8 * 1024 * 1024L; // 8MB
+
+	private final Function<String, Duration> durationLookup;
+	private final Duration chunkDuration;
+	private final long minChunkSize;
+	private final long maxChunkSize;
+
+	/**
+	 * @param durationLookup returns the duration of the content with the given key, or {@code null} if unknown,
+	 *                       e.g. {@code ProbingContentStreamAdapter::getDuration}
+	 * @param chunkDuration  the playback time a chunk should cover
+	 * @param minChunkSize   the smallest chunk returned
+	 * @param maxChunkSize   the largest chunk returned
+	 */
+	public BitrateAwareChunkSizePolicy(Function<String, Duration> durationLookup, Duration chunkDuration, long minChunkSize, long maxChunkSize) {
+		if (minChunkSize < 1 || maxChunkSize < minChunkSize) {
+			throw new IllegalArgumentException("Chunk sizes must satisfy 1 <= minChunkSize <= maxChunkSize.");
+		}
+		this.durationLookup = durationLookup;
+		this.chunkDuration = chunkDuration;
+		this.minChunkSize = minChunkSize;
+		this.maxChunkSize = maxChunkSize;
+	}
+
+	public BitrateAwareChunkSizePolicy(Function<String, Duration> durationLookup) {
+		this(durationLookup, DEFAULT_CHUNK_DURATION, DEFAULT_MIN_CHUNK_SIZE, DEFAULT_MAX_CHUNK_SIZE);
+	}
+
+	@Override
+	public long chunkSize(ChunkRequest request) {
+		Duration duration = request.key() == null ? null : durationLookup.apply(request.key());
+		if (duration == null || duration.isZero() || duration.isNegative()) {
+			return maxChunkSize;
+		}
+
+		double bytesPerSecond = request.fileSize() / (duration.toMillis() / 1000.0);
+		long chunkSize = (long) Math.ceil(bytesPerSecond * (chunkDuration.toMillis() / 1000.0));
+		return Math.max(minChunkSize, Math.min(maxChunkSize, chunkSize));
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return maxChunkSize;
+	}
+}
@@ -0,0 +1,12 @@
+package net.tylerwade.springbootvideostreaming.chunk;
+
+/**
+ * Describes the chunk a {@link ChunkSizePolicy} is asked to size.
+ *
+ * @param key      the key of the content, may be {@code null} if the caller did not provide it
+ * @param clientId the client streaming the content, may be {@code null}
+ * @param start    the first byte of the chunk
+ * @param fileSize the size of the content in bytes
+ */
+public record ChunkRequest(String key, String clientId, long start, long fileSize) {
+}
@@ -0,0 +1,85 @@
+package net.tylerwade.springbootvideostreaming.chunk;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+
+/**
+ * The {@code ChunkSizePolicy} interface decides how many bytes are returned for an open-ended range request
+ * such as {@code bytes=0-}, which browsers send for every chunk of a video.
+ * <p>
+ * It is used by {@link ContentStreamAdapter#createValidRange(net.tylerwade.springbootvideostreaming.model.StreamContentRequest, Long)}.
+ * Requests with an explicit end are honored up to {@link #getMaxChunkSize()}.
+ * <p>
+ * Sizing a chunk never changes a policy's state, since decorators, multi-range resolution, read-ahead and MP4
+ * or probe reads all size chunks that are not served to the client. Policies that adapt to a client's playback
+ * are told about every chunk actually served with {@link #chunkServed(ChunkRequest, long)}, see
+ * {@link ContentStreamAdapter#chunkServed(net.tylerwade.springbootvideostreaming.model.StreamContentRequest, net.tylerwade.springbootvideostreaming.model.StreamedContent)}.
+ * <p>
+ * Built-in policies:
+ * <ul>
+ *     <li>{@link FixedChunkSizePolicy} - the same size for every chunk (the default, 1 MB)</li>
+ *     <li>{@link FastStartChunkSizePolicy} - a small first chunk that grows while a client plays sequentially</li>
+ *     <li>{@link BitrateAwareChunkSizePolicy} - chunks covering a fixed playback duration</li>
+ *     <li>{@link KeyPatternChunkSizePolicy} - a different policy per key pattern</li>
+ * </ul>
+ */
+@FunctionalInterface
+public interface ChunkSizePolicy {
+
+	/**
+	 * The default policy, fixed chunks of {@link ContentStreamAdapter#MAX_CHUNK_SIZE}.
+	 */
+	ChunkSizePolicy DEFAULT = new FixedChunkSizePolicy(ContentStreamAdapter.MAX_CHUNK_SIZE);
+
+	/**
+	 * Returns the number of bytes to return for an open-ended request, without changing any state of the policy.
+	 *
+	 * @param request the key, client and start of the requested chunk
+	 * @return the chunk size in bytes, at least 1
+	 */
+	long chunkSize(ChunkRequest request);
+
+	/**
+	 * Returns the number of bytes the stream will be given for the chunk directly following a chunk of
+	 * {@code previousChunkSize} bytes, without changing any state of the policy. Used to size read-ahead, see
+	 * {@link net.tylerwade.springbootvideostreaming.adapter.PrefetchingContentStreamAdapter}.
+	 * <p>
+	 * The default implementation returns {@link #chunkSize(ChunkRequest)}, which suits policies without
+	 * per-stream state.
+	 *
+	 * @param request           the key, client and start of the following chunk
+	 * @param previousChunkSize the size of the preceding chunk in bytes
+	 * @return the chunk size in bytes, at least 1
+	 */
+	default long nextChunkSize(ChunkRequest request, long previousChunkSize) {
+		return chunkSize(request);
+	}
+
+	/**
+	 * Records that a chunk of {@code chunkSize} bytes was served for an open-ended request, so the next chunk of
+	 * the stream can be sized from it. Called once per response, after the chunk was sized.
+	 * <p>
+	 * The default implementation does nothing, which suits policies without per-stream state.
+	 *
+	 * @param request   the key, client and start of the served chunk
+	 * @param chunkSize the number of bytes served
+	 */
+	default void chunkServed(ChunkRequest request, long chunkSize) {
+	}
+
+	/**
+	 * Returns the largest chunk this policy returns, which also limits requests with an explicit end.
+	 *
+	 * @return the maximum chunk size in bytes
+	 */
+	default long getMaxChunkSize() {
+		return ContentStreamAdapter.MAX_CHUNK_SIZE;
+	}
+
+	/**
+	 * @param chunkSize the size of every chunk in bytes
+	 * @return a policy returning chunks of the given size
+	 */
+	static ChunkSizePolicy fixed(long chunkSize) {
+		return new FixedChunkSizePolicy(chunkSize);
+	}
+}
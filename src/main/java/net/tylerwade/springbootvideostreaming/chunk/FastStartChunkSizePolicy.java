@@ -0,0 +1,115 @@
+package net.tylerwade.springbootvideostreaming.chunk;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@code ChunkSizePolicy} optimizing the time to first frame.
+ * <p>
+ * The first chunk of a stream, and the first chunk after a seek, is small so playback can start as soon as
+ * possible. While a client keeps requesting the chunk directly following its previous one, every chunk is
+ * {@code growthFactor} times larger than the previous one, up to the maximum chunk size, so steady playback
+ * needs few requests.
+ * <p>
+ * Streams are told apart by key and {@link ChunkRequest#clientId()}. A stream's progression only advances when
+ * a chunk is served, see {@link #chunkServed(ChunkRequest, long)}; sizing a chunk has no effect on it, and
+ * repeating a request for the same start returns the same size again. The state of the least recently active streams is dropped once more than
+ * {@code maxStreams} are tracked.
+ */
+public class FastStartChunkSizePolicy implements ChunkSizePolicy {
+
+	public static final long DEFAULT_INITIAL_CHUNK_SIZE = 256 * 1024L; // 256KB
+	public static final double DEFAULT_GROWTH_FACTOR = 2.0;
+	public static final long DEFAULT_MAX_CHUNK_SIZE = 4 * 1024 * 1024L; // 4MB
+	public static final int DEFAULT_MAX_STREAMS = 10_000;
+
+	private final long initialChunkSize;
+	private final double growthFactor;
+	private final long maxChunkSize;
+	private final int maxStreams;
+
+	// Insertion order, refreshed when a chunk is served, so looking up a stream's state does not modify the map.
+	private final Map<StreamKey, StreamState> streams = new LinkedHashMap<>() {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<StreamKey, StreamState> eldest) {
+			return size() > maxStreams;
+		}
+	};
+
+	/**
+	 * @param initialChunkSize the size of the first chunk of a stream
+	 * @param growthFactor     the factor each sequential chunk grows by, at least 1
+	 * @param maxChunkSize     the size chunks stop growing at
+	 * @param maxStreams       the number of streams whose state is tracked
+	 */
+	public FastStartChunkSizePolicy(long initialChunkSize, double growthFactor, long maxChunkSize, int maxStreams) {
+		if (initialChunkSize < 1 || maxChunkSize < initialChunkSize) {
+			throw new IllegalArgumentException("Chunk sizes must satisfy 1 <= initialChunkSize <= maxChunkSize.");
+		}
+		if (growthFactor < 1) {
+			throw new IllegalArgumentException("growthFactor must be at least 1.");
+		}
+		this.initialChunkSize = initialChunkSize;
+		this.growthFactor = growthFactor;
+		this.maxChunkSize = maxChunkSize;
+		this.maxStreams = maxStreams;
+	}
+
+	public FastStartChunkSizePolicy(long initialChunkSize, double growthFactor, long maxChunkSize) {
+		this(initialChunkSize, growthFactor, maxChunkSize, DEFAULT_MAX_STREAMS);
+	}
+
+	public FastStartChunkSizePolicy() {
+		this(DEFAULT_INITIAL_CHUNK_SIZE, DEFAULT_GROWTH_FACTOR, DEFAULT_MAX_CHUNK_SIZE);
+	}
+
+	@Override
+	public synchronized long chunkSize(ChunkRequest request) {
+		StreamKey streamKey = new StreamKey(request.key(), request.clientId());
+		StreamState state = streams.get(streamKey);
+
+		long chunkSize;
+		if (state != null && request.start() == state.lastStart) {
+			chunkSize = state.lastChunkSize;
+		} else if (state != null && request.start() == state.lastStart + state.lastChunkSize) {
+			chunkSize = grow(state.lastChunkSize);
+		} else {
+			chunkSize = initialChunkSize;
+		}
+		return chunkSize;
+	}
+
+	@Override
+	public synchronized void chunkServed(ChunkRequest request, long chunkSize) {
+		StreamKey streamKey = new StreamKey(request.key(), request.clientId());
+		streams.remove(streamKey);
+		streams.put(streamKey, new StreamState(request.start(), chunkSize));
+	}
+
+	@Override
+	public long nextChunkSize(ChunkRequest request, long previousChunkSize) {
+		return grow(previousChunkSize);
+	}
+
+	private long grow(long chunkSize) {
+		return (long) Math.min(maxChunkSize, Math.ceil(chunkSize * growthFactor));
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return maxChunkSize;
+	}
+
+	/**
+	 * @return the number of streams whose state is currently tracked
+	 */
+	public synchronized int getTrackedStreamCount() {
+		return streams.size();
+	}
+
+	private record StreamKey(String key, String clientId) {
+	}
+
+	private record StreamState(long lastStart, long lastChunkSize) {
+	}
+}
@@ -0,0 +1,34 @@
+package net.tylerwade.springbootvideostreaming.chunk;
+
+/**
+ * A {@code ChunkSizePolicy} returning chunks of the same size for every request.
+ */
+public class FixedChunkSizePolicy implements ChunkSizePolicy {
+
+	private final long chunkSize;
+
+	/**
+	 * @param chunkSize the size of every chunk in bytes
+	 */
+	public FixedChunkSizePolicy(long chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException("chunkSize must be at least 1.");
+		}
+		this.chunkSize = chunkSize;
+	}
+
+	@Override
+	public long chunkSize(ChunkRequest request) {
+		return chunkSize;
+	}
+
+	@Override
+	public long getMaxChunkSize() {
+		return chunkSize;
+	}
+
+	@Override
+	public String toString() {
+		return "FixedChunkSizePolicy(chunkSize=" + chunkSize + ")";
+	}
+}
@@ -0,0 +1,89 @@
+package net.tylerwade.springbootvideostreaming.chunk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A {@code ChunkSizePolicy} choosing another policy by the key of the content, e.g. fast-start for trailers
+ * and bitrate-aware chunks for feature films.
+ * <p>
+ * Patterns are regular expressions matched against the whole key and are tried in the order they were added;
+ * keys matching none of them use the default policy.
+ * <pre>{@code
+ * new KeyPatternChunkSizePolicy(ChunkSizePolicy.DEFAULT)
+ *         .with("trailers/.*", new FastStartChunkSizePolicy())
+ *         .with(".*\\.mkv", ChunkSizePolicy.fixed(4 * 1024 * 1024));
+ * }</pre>
+ */
+public class KeyPatternChunkSizePolicy implements ChunkSizePolicy {
+
+	private final ChunkSizePolicy defaultPolicy;
+	private final List<Route> routes = new ArrayList<>();
+
+	/**
+	 * @param defaultPolicy the policy for keys matching no pattern
+	 */
+	public KeyPatternChunkSizePolicy(ChunkSizePolicy defaultPolicy) {
+		this.defaultPolicy = defaultPolicy;
+	}
+
+	/**
+	 * Uses the given policy for keys matching the regular expression.
+	 *
+	 * @param keyPattern the regular expression matched against the whole key
+	 * @param policy     the policy for matching keys
+	 * @return this policy
+	 */
+	public KeyPatternChunkSizePolicy with(String keyPattern, ChunkSizePolicy policy) {
+		routes.add(new Route(Pattern.compile(keyPattern), policy));
+		return this;
+	}
+
+	/**
+	 * Returns the policy responsible for the given key.
+	 *
+	 * @param key the key of the content, may be {@code null}
+	 * @return the policy of the first matching pattern, or the default policy
+	 */
+	public ChunkSizePolicy policyFor(String key) {
+		if (key != null) {
+			for (Route route : routes) {
+				if (route.keyPattern().matcher(key).matches()) {
+					return route.policy();
+				}
+			}
+		}
+		return defaultPolicy;
+	}
+
+	@Override
+	public long chunkSize(ChunkRequest request) {
+		return policyFor(request.key()).chunkSize(request);
+	}
+
+	@Override
+	public long nextChunkSize(ChunkRequest request, long previousChunkSize) {
+		return policyFor(request.key()).nextChunkSize(request, previousChunkSize);
+	}
+
+	@Override
+	public void chunkServed(ChunkRequest request, long chunkSize) {
+		policyFor(request.key()).chunkServed(request, chunkSize);
+	}
+
+	/**
+	 * Returns the largest maximum chunk size of all policies, since explicit ranges are not checked per key.
+	 */
+	@Override
+	public long getMaxChunkSize() {
+		long maxChunkSize = defaultPolicy.getMaxChunkSize();
+		for (Route route : routes) {
+			maxChunkSize = Math.max(maxChunkSize, route.policy().getMaxChunkSize());
+		}
+		return maxChunkSize;
+	}
+
+	private record Route(Pattern keyPattern, ChunkSizePolicy policy) {
+	}
+}
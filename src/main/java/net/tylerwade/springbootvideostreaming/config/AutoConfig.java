@@ -1,23 +1,119 @@
 package net.tylerwade.springbootvideostreaming.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import io.netty.buffer.ByteBufAllocator;
 import lombok.RequiredArgsConstructor;
 import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
 import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.web.ContentStreamHandler;
+import net.tylerwade.springbootvideostreaming.web.FileRegionHttpMessageWriter;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.web.reactive.config.WebFluxConfigurer;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
 
 @AutoConfiguration
+@EnableConfigurationProperties(StreamingEndpointProperties.class)
 @RequiredArgsConstructor
 public class AutoConfig {
 
 	private final ResourceLoader resourceLoader;
 
+	/**
+	 * Creates a {@link LocalContentStreamAdapter} reading content into the application's {@code DataBufferFactory}.
+	 */
 	@Bean
 	@ConditionalOnMissingBean
-	public ContentStreamAdapter contentStreamAdapter() {
-		return new LocalContentStreamAdapter(resourceLoader);
+	public ContentStreamAdapter contentStreamAdapter(ObjectProvider<DataBufferFactory> dataBufferFactory) {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(resourceLoader);
+		dataBufferFactory.ifUnique(contentStreamAdapter::setDataBufferFactory);
+		return contentStreamAdapter;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Provides the {@code DataBufferFactory} of the Reactor Netty server, pooled direct buffers from Netty's default
+	 * allocator, unless the application defines its own. Adapters read content into it, so the buffers are the kind
+	 * the server writes responses with and are never copied.
+	 */
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(name = "reactor.netty.http.server.HttpServer")
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	static class NettyDataBufferFactoryConfiguration {
+
+		@Bean
+		@ConditionalOnMissingBean
+		public DataBufferFactory contentStreamDataBufferFactory() {
+			return new NettyDataBufferFactory(ByteBufAllocator.DEFAULT);
+		}
+
+	}
+
+	/**
+	 * Registers the {@link FileRegionHttpMessageWriter} so file-backed content is written with zero-copy.
+	 */
+	@Bean
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	public WebFluxConfigurer fileRegionWebFluxConfigurer() {
+		return new WebFluxConfigurer() {
+			@Override
+			public void configureHttpMessageCodecs(ServerCodecConfigurer configurer) {
+				configurer.customCodecs().register(new FileRegionHttpMessageWriter());
+			}
+		};
+	}
+
+	/**
+	 * Instruments the {@link ContentStreamAdapter} beans with Micrometer observations and meters if the
+	 * application has an {@code ObservationRegistry} or a {@code MeterRegistry}, e.g. from Spring Boot Actuator.
+	 * {@code micrometer-core} is an optional dependency, so this is only configured when it is on the classpath.
+	 */
+	@Configuration(proxyBeanMethods = false)
+	@ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+	@ConditionalOnProperty(prefix = "video-streaming.observation", name = "enabled", havingValue = "true", matchIfMissing = true)
+	static class ObservationConfiguration {
+
+		@Bean
+		public static ObservedContentStreamAdapterPostProcessor observedContentStreamAdapterPostProcessor(
+				ObjectProvider<ObservationRegistry> observationRegistry, ObjectProvider<MeterRegistry> meterRegistry) {
+			return new ObservedContentStreamAdapterPostProcessor(observationRegistry, meterRegistry);
+		}
+
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	@ConditionalOnProperty(prefix = "video-streaming.endpoint", name = "enabled", havingValue = "true")
+	public ContentStreamHandler contentStreamHandler(ContentStreamAdapter contentStreamAdapter,
+													 StreamingEndpointProperties properties) {
+		if (properties.getClientIdHeader() == null || properties.getClientIdHeader().isBlank()) {
+			return new ContentStreamHandler(contentStreamAdapter);
+		}
+		return new ContentStreamHandler(contentStreamAdapter, ContentStreamHandler.clientIdFromHeader(properties.getClientIdHeader()));
+	}
+
+	/**
+	 * Serves the content of the {@link ContentStreamAdapter} under {@code video-streaming.endpoint.path}.
+	 */
+	@Bean
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+	@ConditionalOnProperty(prefix = "video-streaming.endpoint", name = "enabled", havingValue = "true")
+	public RouterFunction<ServerResponse> contentStreamRouterFunction(ContentStreamHandler contentStreamHandler,
+																	   StreamingEndpointProperties properties) {
+		return contentStreamHandler.routerFunction(properties.getPath());
+	}
+
+}
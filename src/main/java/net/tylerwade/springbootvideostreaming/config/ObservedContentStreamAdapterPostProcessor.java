@@ -0,0 +1,83 @@
+package net.tylerwade.springbootvideostreaming.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ObservedContentStreamAdapter;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+
+/**
+ * Wraps the {@link ContentStreamAdapter} beans in an {@link ObservedContentStreamAdapter} if the application has
+ * an {@code ObservationRegistry} that is not a no-op or a {@code MeterRegistry}, and registers the wrapper's meters
+ * with the {@code MeterRegistry}, if there is one. Without a usable {@code ObservationRegistry}, the observations
+ * are recorded as timers of the {@code MeterRegistry} directly. Applications with neither get their adapters
+ * unchanged, so the instrumentation costs nothing.
+ * <p>
+ * Only beans declared as {@code ContentStreamAdapter}, like the default adapter of {@link AutoConfig}, are
+ * wrapped, since the wrapper can be injected wherever they can. Beans declared with a concrete adapter class are
+ * left as they are, so injecting them by that class keeps working; wrap them in an
+ * {@code ObservedContentStreamAdapter} yourself to observe them. Only the outermost adapter is wrapped: when it
+ * decorates a storage adapter, e.g. with a cache, the storage adapter's own requests to S3 are not measured
+ * separately. Wrap the storage adapter by hand and decorate the wrapper to measure them. Set
+ * {@code video-streaming.observation.enabled=false} to turn this off.
+ */
+public class ObservedContentStreamAdapterPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+	private final ObjectProvider<ObservationRegistry> observationRegistry;
+	private final ObjectProvider<MeterRegistry> meterRegistry;
+
+	private ConfigurableListableBeanFactory beanFactory;
+
+	public ObservedContentStreamAdapterPostProcessor(ObjectProvider<ObservationRegistry> observationRegistry,
+													 ObjectProvider<MeterRegistry> meterRegistry) {
+		this.observationRegistry = observationRegistry;
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		if (beanFactory instanceof ConfigurableListableBeanFactory listableBeanFactory) {
+			this.beanFactory = listableBeanFactory;
+		}
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (!(bean instanceof ContentStreamAdapter contentStreamAdapter) || bean instanceof ObservedContentStreamAdapter
+				|| !isDeclaredAsContentStreamAdapter(beanName)) {
+			return bean;
+		}
+
+		ObservationRegistry registry = observationRegistry.getIfUnique();
+		MeterRegistry meters = meterRegistry.getIfUnique();
+		if (registry == null || registry.isNoop()) {
+			if (meters == null) {
+				return bean;
+			}
+			registry = ObservationRegistry.create();
+			registry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meters));
+		}
+		ObservedContentStreamAdapter observed = new ObservedContentStreamAdapter(contentStreamAdapter, registry);
+		if (meters != null) {
+			observed.bindTo(meters);
+		}
+		return observed;
+	}
+
+	/**
+	 * @return {@code true} if the bean's type, e.g. the return type of its {@code @Bean} method, is the
+	 * {@code ContentStreamAdapter} interface rather than one of its implementations
+	 */
+	private boolean isDeclaredAsContentStreamAdapter(String beanName) {
+		if (beanFactory == null || !beanFactory.containsBeanDefinition(beanName)) {
+			return false;
+		}
+		return beanFactory.getMergedBeanDefinition(beanName).getResolvableType().resolve() == ContentStreamAdapter.class;
+	}
+
+}
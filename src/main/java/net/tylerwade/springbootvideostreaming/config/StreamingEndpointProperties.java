@@ -0,0 +1,33 @@
+package net.tylerwade.springbootvideostreaming.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Configures the streaming endpoint registered by {@link AutoConfig} when
+ * {@code video-streaming.endpoint.enabled=true}.
+ */
+@Data
+@ConfigurationProperties(prefix = "video-streaming.endpoint")
+public class StreamingEndpointProperties {
+
+	/**
+	 * Whether to register the streaming endpoint. Applications with their own controller leave it disabled.
+	 */
+	private boolean enabled = false;
+
+	/**
+	 * The path the content is served under. A request for {@code <path>/movies/park.mp4} streams the content with
+	 * the key {@code movies/park.mp4}.
+	 */
+	private String path = "/videos";
+
+	/**
+	 * The request header identifying the client together with its remote address, e.g.
+	 * {@code X-Playback-Session-Id}. Requests without it, and all requests if it is not set, are identified by
+	 * their remote address alone, which viewers behind one NAT share. Clients can send any value, so only use a
+	 * header that a trusted proxy sets or verifies.
+	 */
+	private String clientIdHeader;
+
+}
@@ -0,0 +1,230 @@
+package net.tylerwade.springbootvideostreaming.media;
+
+import net.tylerwade.springbootvideostreaming.model.MediaInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the duration, resolution and codecs of a Matroska or WebM file from the EBML elements at its start.
+ * <p>
+ * The {@code Info} and {@code Tracks} elements precede the first {@code Cluster} in files written for
+ * streaming, so only the first bytes of the file are read. Properties found after them are not looked for.
+ */
+final class MatroskaProbe {
+
+	static final int EBML = 0x1A45DFA3;
+	private static final int DOC_TYPE = 0x4282;
+	private static final int SEGMENT = 0x18538067;
+	private static final int INFO = 0x1549A966;
+	private static final int TIMECODE_SCALE = 0x2AD7B1;
+	private static final int DURATION = 0x4489;
+	private static final int TRACKS = 0x1654AE6B;
+	private static final int TRACK_ENTRY = 0xAE;
+	private static final int CODEC_ID = 0x86;
+	private static final int VIDEO = 0xE0;
+	private static final int PIXEL_WIDTH = 0xB0;
+	private static final int PIXEL_HEIGHT = 0xBA;
+	private static final int CLUSTER = 0x1F43B675;
+
+	private static final long DEFAULT_TIMECODE_SCALE = 1_000_000L;
+
+	/**
+	 * Matroska codec IDs and their RFC 6381 names, as far as they are known by browsers.
+	 */
+	private static final Map<String, String> CODECS = Map.ofEntries(
+			Map.entry("V_MPEG4/ISO/AVC", "avc1"),
+			Map.entry("V_MPEGH/ISO/HEVC", "hev1"),
+			Map.entry("V_VP8", "vp8"),
+			Map.entry("V_VP9", "vp9"),
+			Map.entry("V_AV1", "av01"),
+			Map.entry("A_AAC", "mp4a.40.2"),
+			Map.entry("A_OPUS", "opus"),
+			Map.entry("A_VORBIS", "vorbis"),
+			Map.entry("A_AC3", "ac-3"),
+			Map.entry("A_EAC3", "ec-3"),
+			Map.entry("A_FLAC", "flac"),
+			Map.entry("A_MPEG/L3", "mp3"));
+
+	private MatroskaProbe() {
+	}
+
+	/**
+	 * @param head the first bytes of the file, starting with the EBML header
+	 * @return the doc type of the file, e.g. {@code webm} or {@code matroska}, or {@code null} if it has none
+	 */
+	static String docType(ByteBuffer head) {
+		try {
+			Element ebml = element(head, 0, head.limit());
+			for (int position = ebml.dataStart(); position < ebml.end(); ) {
+				Element child = element(head, position, ebml.end());
+				if (child.id() == DOC_TYPE) {
+					return string(head, child);
+				}
+				position = child.end();
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// The header is truncated.
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the properties found in the first bytes of the file into the given info. A truncated or invalid
+	 * element ends the search, keeping what has been found.
+	 *
+	 * @param head the first bytes of the file, starting with the EBML header
+	 * @param info the info to complete
+	 */
+	static void describe(ByteBuffer head, MediaInfo info) {
+		List<String> codecs = new ArrayList<>();
+		try {
+			Element ebml = element(head, 0, head.limit());
+			Element segment = element(head, ebml.end(), head.limit());
+			if (segment.id() != SEGMENT) {
+				return;
+			}
+			int segmentEnd = Math.min(segment.end(), head.limit());
+			for (int position = segment.dataStart(); position < segmentEnd; ) {
+				Element child = element(head, position, segmentEnd);
+				if (child.id() == CLUSTER) {
+					break;
+				} else if (child.id() == INFO) {
+					readInfo(head, child, info);
+				} else if (child.id() == TRACKS) {
+					readTracks(head, child, info, codecs);
+				}
+				position = child.end();
+			}
+		} catch (IndexOutOfBoundsException e) {
+			// The element continues after the head.
+		} finally {
+			info.setCodecs(List.copyOf(codecs));
+		}
+	}
+
+	private static void readInfo(ByteBuffer head, Element infoElement, MediaInfo info) {
+		long timecodeScale = DEFAULT_TIMECODE_SCALE;
+		double duration = -1;
+		for (int position = infoElement.dataStart(); position < infoElement.end(); ) {
+			Element child = element(head, position, infoElement.end());
+			if (child.id() == TIMECODE_SCALE) {
+				timecodeScale = unsigned(head, child);
+			} else if (child.id() == DURATION) {
+				duration = child.size() == 4 ? head.getFloat(child.dataStart()) : head.getDouble(child.dataStart());
+			}
+			position = child.end();
+		}
+		if (duration > 0) {
+			info.setDuration(Duration.ofNanos((long) (duration * timecodeScale)));
+		}
+	}
+
+	private static void readTracks(ByteBuffer head, Element tracks, MediaInfo info, List<String> codecs) {
+		int tracksEnd = Math.min(tracks.end(), head.limit());
+		for (int position = tracks.dataStart(); position < tracksEnd; ) {
+			Element entry = element(head, position, tracksEnd);
+			position = entry.end();
+			if (entry.id() != TRACK_ENTRY) {
+				continue;
+			}
+
+			for (int child = entry.dataStart(); child < entry.end(); ) {
+				Element element = element(head, child, entry.end());
+				if (element.id() == CODEC_ID) {
+					String codecId = string(head, element);
+					codecs.add(CODECS.getOrDefault(codecId, codecId));
+				} else if (element.id() == VIDEO && info.getWidth() == null) {
+					readVideo(head, element, info);
+				}
+				child = element.end();
+			}
+		}
+	}
+
+	private static void readVideo(ByteBuffer head, Element video, MediaInfo info) {
+		for (int position = video.dataStart(); position < video.end(); ) {
+			Element child = element(head, position, video.end());
+			if (child.id() == PIXEL_WIDTH) {
+				info.setWidth((int) unsigned(head, child));
+			} else if (child.id() == PIXEL_HEIGHT) {
+				info.setHeight((int) unsigned(head, child));
+			}
+			position = child.end();
+		}
+	}
+
+	/**
+	 * Reads the header of the element at the given position: its ID, including the length marker, and its
+	 * size. Elements of unknown size extend to the end of their parent. Reading the data of an element that
+	 * continues after the head throws an {@code IndexOutOfBoundsException}.
+	 */
+	private static Element element(ByteBuffer head, int position, int parentEnd) {
+		int first = head.get(position) & 0xFF;
+		int idLength = Integer.numberOfLeadingZeros(first) - 23;
+		if (first == 0 || idLength > 4) {
+			throw new IndexOutOfBoundsException("Invalid element ID at " + position + ".");
+		}
+		int id = 0;
+		for (int i = 0; i < idLength; i++) {
+			id = (id << 8) | (head.get(position + i) & 0xFF);
+		}
+
+		int sizeStart = position + idLength;
+		int sizeFirst = head.get(sizeStart) & 0xFF;
+		int sizeLength = Integer.numberOfLeadingZeros(sizeFirst) - 23;
+		if (sizeFirst == 0) {
+			throw new IndexOutOfBoundsException("Invalid element size at " + sizeStart + ".");
+		}
+		long size = sizeFirst & (0xFF >> sizeLength);
+		boolean unknown = size == (0xFF >> sizeLength);
+		for (int i = 1; i < sizeLength; i++) {
+			int b = head.get(sizeStart + i) & 0xFF;
+			size = (size << 8) | b;
+			unknown &= b == 0xFF;
+		}
+
+		int dataStart = sizeStart + sizeLength;
+		long end = unknown ? parentEnd : dataStart + size;
+		return new Element(id, dataStart, (int) Math.min(end, Integer.MAX_VALUE));
+	}
+
+	private static long unsigned(ByteBuffer head, Element element) {
+		long value = 0;
+		for (int i = element.dataStart(); i < element.end(); i++) {
+			value = (value << 8) | (head.get(i) & 0xFF);
+		}
+		return value;
+	}
+
+	private static String string(ByteBuffer head, Element element) {
+		if (element.end() > head.limit()) {
+			throw new IndexOutOfBoundsException("The element at " + element.dataStart() + " continues after the head.");
+		}
+		byte[] bytes = new byte[element.size()];
+		head.get(element.dataStart(), bytes);
+		int length = bytes.length;
+		while (length > 0 && bytes[length - 1] == 0) {
+			length--;
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param id        the element ID, including its length marker
+	 * @param dataStart the position of the element's data
+	 * @param end       the position following the element
+	 */
+	private record Element(int id, int dataStart, int end) {
+
+		int size() {
+			return end - dataStart;
+		}
+
+	}
+
+}
@@ -0,0 +1,144 @@
+package net.tylerwade.springbootvideostreaming.media;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.MediaInfo;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4FormatException;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Parser;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Probe;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Detects the container format of a video from its magic bytes, and reads its duration, resolution and codecs
+ * where the container allows.
+ * <p>
+ * The first {@value #HEAD_SIZE} bytes of the content are read with a single range request. MP4 and QuickTime
+ * files are described from their {@code moov} box, which costs further range requests only if it does not
+ * fit the head (see {@link Mp4Probe}). Matroska and WebM files are described from the head alone. Of the
+ * other recognized formats, only the container is reported. The media data itself is never read.
+ */
+public final class MediaProbe {
+
+	/**
+	 * The number of bytes read from the start of the content.
+	 */
+	public static final int HEAD_SIZE = Mp4Parser.HEAD_SIZE;
+
+	/**
+	 * Top-level boxes that QuickTime files written before the {@code ftyp} box was introduced start with.
+	 */
+	private static final Set<Integer> QUICKTIME_BOX_TYPES = Set.of(fourCc("moov"), fourCc("mdat"), fourCc("wide"), fourCc("free"), fourCc("skip"));
+
+	private MediaProbe() {
+	}
+
+	/**
+	 * Probes the content with the given key.
+	 *
+	 * @param adapter  the adapter the content is read through
+	 * @param key      the key of the content
+	 * @param fileSize the size of the content in bytes
+	 * @return the properties of the video, or an empty {@code Mono} if the format is not recognized
+	 */
+	public static Mono<MediaInfo> probe(ContentStreamAdapter adapter, String key, long fileSize) {
+		if (fileSize < 16) {
+			return Mono.empty();
+		}
+
+		return Mp4Parser.read(adapter, key, 0, (int) Math.min(HEAD_SIZE, fileSize))
+				.flatMap(head -> {
+					MediaInfo info = detect(head);
+					if (info == null) {
+						return Mono.empty();
+					}
+
+					Mono<MediaInfo> described = switch (info.getContainer()) {
+						case "mp4", "quicktime", "3gp" -> Mp4Probe.probe(adapter, key, fileSize, head)
+								.map(mp4 -> {
+									info.setDuration(mp4.getDuration());
+									info.setWidth(mp4.getWidth());
+									info.setHeight(mp4.getHeight());
+									info.setCodecs(mp4.getCodecs());
+									return info;
+								})
+								// The container is known even if its tracks cannot be read.
+								.onErrorResume(Mp4FormatException.class, e -> Mono.just(info));
+						case "matroska", "webm" -> Mono.fromSupplier(() -> {
+							MatroskaProbe.describe(head, info);
+							return info;
+						});
+						default -> Mono.just(info);
+					};
+					return described.doOnNext(probed -> setBitrate(probed, fileSize));
+				});
+	}
+
+	/**
+	 * Detects the container format from the first bytes of a file.
+	 *
+	 * @param head the first bytes, at least 16
+	 * @return the container and its MIME type, or {@code null} if the format is not recognized
+	 */
+	static MediaInfo detect(ByteBuffer head) {
+		int magic = head.getInt(0);
+		int boxType = head.getInt(4);
+		if (boxType == fourCc("ftyp")) {
+			int brand = head.getInt(8);
+			if (brand == fourCc("qt  ")) {
+				return container("quicktime", "video/quicktime");
+			} else if (brand == fourCc("M4V ") || brand == fourCc("M4VH") || brand == fourCc("M4VP")) {
+				return container("mp4", "video/x-m4v");
+			} else if ((brand >>> 8) == (fourCc("3gp ") >>> 8) || (brand >>> 8) == (fourCc("3g2 ") >>> 8)) {
+				return container("3gp", "video/3gpp");
+			}
+			return container("mp4", "video/mp4");
+		}
+		if (QUICKTIME_BOX_TYPES.contains(boxType)) {
+			return container("quicktime", "video/quicktime");
+		}
+		if (magic == MatroskaProbe.EBML) {
+			return "webm".equals(MatroskaProbe.docType(head))
+					? container("webm", "video/webm")
+					: container("matroska", "video/x-matroska");
+		}
+		if (magic == fourCc("RIFF") && head.getInt(8) == fourCc("AVI ")) {
+			return container("avi", "video/x-msvideo");
+		}
+		if (magic == fourCc("OggS")) {
+			return container("ogg", "video/ogg");
+		}
+		if ((magic >>> 8) == (fourCc("FLV ") >>> 8)) {
+			return container("flv", "video/x-flv");
+		}
+		if (magic == 0x000001BA) {
+			return container("mpeg-ps", "video/mpeg");
+		}
+		// MPEG transport streams have a sync byte every 188 bytes.
+		if (head.get(0) == 0x47 && head.limit() > 188 && head.get(188) == 0x47) {
+			return container("mpeg-ts", "video/mp2t");
+		}
+		return null;
+	}
+
+	private static void setBitrate(MediaInfo info, long fileSize) {
+		Duration duration = info.getDuration();
+		if (duration != null && !duration.isZero() && !duration.isNegative()) {
+			info.setBitrate(Math.round(fileSize * 8 / (duration.toNanos() / 1e9)));
+		}
+	}
+
+	private static MediaInfo container(String container, String contentType) {
+		return MediaInfo.builder()
+				.container(container)
+				.contentType(contentType)
+				.build();
+	}
+
+	private static int fourCc(String fourCc) {
+		return (fourCc.charAt(0) << 24) | (fourCc.charAt(1) << 16) | (fourCc.charAt(2) << 8) | fourCc.charAt(3);
+	}
+
+}
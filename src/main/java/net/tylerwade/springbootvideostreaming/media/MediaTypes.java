@@ -0,0 +1,51 @@
+package net.tylerwade.springbootvideostreaming.media;
+
+/**
+ * MIME types of video files by their file extension.
+ */
+public final class MediaTypes {
+
+	public static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+	/**
+	 * File extensions and their MIME types. Looked up with {@code regionMatches}, so a lookup allocates nothing.
+	 */
+	private static final String[][] EXTENSIONS = {
+			{".mp4", "video/mp4"},
+			{".m4v", "video/x-m4v"},
+			{".mov", "video/quicktime"},
+			{".mkv", "video/x-matroska"},
+			{".webm", "video/webm"},
+			{".avi", "video/x-msvideo"},
+			{".ts", "video/mp2t"},
+			{".m2ts", "video/mp2t"},
+			{".mpg", "video/mpeg"},
+			{".mpeg", "video/mpeg"},
+			{".ogv", "video/ogg"},
+			{".flv", "video/x-flv"},
+			{".wmv", "video/x-ms-wmv"},
+			{".3gp", "video/3gpp"},
+			{".m3u8", "application/vnd.apple.mpegurl"},
+			{".mpd", "application/dash+xml"},
+	};
+
+	private MediaTypes() {
+	}
+
+	/**
+	 * Returns the MIME type of a file by its extension, ignoring case.
+	 *
+	 * @param fileName the name or key of the file
+	 * @return the MIME type, or {@value #DEFAULT_CONTENT_TYPE} if the extension is unknown
+	 */
+	public static String forFileName(String fileName) {
+		for (String[] extension : EXTENSIONS) {
+			String suffix = extension[0];
+			if (fileName.regionMatches(true, fileName.length() - suffix.length(), suffix, 0, suffix.length())) {
+				return extension[1];
+			}
+		}
+		return DEFAULT_CONTENT_TYPE;
+	}
+
+}
@@ -0,0 +1,61 @@
+package net.tylerwade.springbootvideostreaming.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A page of the content catalog, as returned by
+ * {@link net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter#listContentMetadata(String, String, int)}.
+ */
+@Data @AllArgsConstructor @NoArgsConstructor @Builder
+public class ContentMetadataPage {
+
+	/**
+	 * The largest page size, the same as S3 lists at once.
+	 */
+	public static final int MAX_KEYS = 1000;
+
+	/**
+	 * The metadata on this page, in ascending key order.
+	 */
+	private List<StreamedContentMetadata> contents;
+
+	/**
+	 * The token to list the next page with, or {@code null} if this is the last page. It is the key of the last
+	 * entry on this page; the next page starts after it.
+	 */
+	private String nextContinuationToken;
+
+	/**
+	 * @param maxKeys the requested page size
+	 * @return the page size, at most {@link #MAX_KEYS}
+	 * @throws IllegalArgumentException if {@code maxKeys} is less than 1
+	 */
+	public static int pageSize(int maxKeys) {
+		if (maxKeys < 1) {
+			throw new IllegalArgumentException("maxKeys must be at least 1.");
+		}
+		return Math.min(maxKeys, MAX_KEYS);
+	}
+
+	/**
+	 * Creates a page from up to {@code maxKeys + 1} entries in key order. The entry beyond {@code maxKeys} only
+	 * tells that there is a next page and is not part of this one.
+	 *
+	 * @param entries the entries of this page and, if there is a next page, the first entry of it
+	 * @param maxKeys the size of a full page
+	 * @return the page
+	 */
+	public static ContentMetadataPage of(List<StreamedContentMetadata> entries, int maxKeys) {
+		if (entries.size() <= maxKeys) {
+			return new ContentMetadataPage(entries, null);
+		}
+		List<StreamedContentMetadata> contents = entries.subList(0, maxKeys);
+		return new ContentMetadataPage(contents, contents.get(maxKeys - 1).getKey());
+	}
+
+}
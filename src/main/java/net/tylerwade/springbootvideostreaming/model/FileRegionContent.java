@@ -0,0 +1,90 @@
+package net.tylerwade.springbootvideostreaming.model;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * The {@code FileRegionContent} class is a {@code Flux<DataBuffer>} that additionally describes the region
+ * of a file on disk it was read from. This allows the content of a {@link StreamedContent} to be written
+ * directly from the file to the socket (e.g. with Reactor Netty's {@code sendFile}) without copying the
+ * bytes through user space.
+ * <p>
+ * When subscribed to, the {@code FileRegionContent} emits the bytes of the fallback {@code Flux}, so it can
+ * be consumed like any other content. The zero-copy path is only taken when the content is written by
+ * the {@link net.tylerwade.springbootvideostreaming.web.FileRegionHttpMessageWriter} to a response that
+ * supports {@link org.springframework.http.ZeroCopyHttpOutputMessage}.
+ */
+public class FileRegionContent extends Flux<DataBuffer> {
+
+	private final Path file;
+	private final long position;
+	private final long count;
+	private final Flux<DataBuffer> fallback;
+	private final Function<Mono<Void>, Mono<Void>> writeTransformer;
+
+	/**
+	 * @param file     the file the region belongs to
+	 * @param position the position of the first byte of the region within the file
+	 * @param count    the number of bytes in the region
+	 * @param fallback the buffered content of the region, used when the region cannot be sent as a file
+	 */
+	public FileRegionContent(Path file, long position, long count, Flux<DataBuffer> fallback) {
+		this(file, position, count, fallback, Function.identity());
+	}
+
+	private FileRegionContent(Path file, long position, long count, Flux<DataBuffer> fallback,
+							  Function<Mono<Void>, Mono<Void>> writeTransformer) {
+		this.file = file;
+		this.position = position;
+		this.count = count;
+		this.fallback = fallback;
+		this.writeTransformer = writeTransformer;
+	}
+
+	/**
+	 * Returns a copy of this region whose fallback content is {@code fallback} and whose zero-copy write is
+	 * decorated by {@code writeTransformer}, e.g. to observe content that never passes through a {@code Flux}.
+	 *
+	 * @param fallback         the fallback content of the copy
+	 * @param writeTransformer applied to the {@code Mono} writing the region to the response
+	 * @return the decorated copy
+	 */
+	public FileRegionContent transform(Flux<DataBuffer> fallback, Function<Mono<Void>, Mono<Void>> writeTransformer) {
+		return new FileRegionContent(file, position, count, fallback, this.writeTransformer.andThen(writeTransformer));
+	}
+
+	/**
+	 * Applies the write transformers of this region to the {@code Mono} writing it to the response. Called by
+	 * {@link net.tylerwade.springbootvideostreaming.web.FileRegionHttpMessageWriter}.
+	 */
+	public Mono<Void> transformWrite(Mono<Void> write) {
+		return writeTransformer.apply(write);
+	}
+
+	@Override
+	public void subscribe(CoreSubscriber<? super DataBuffer> actual) {
+		fallback.subscribe(actual);
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public String toString() {
+		return "FileRegionContent(file=" + file + ", position=" + position + ", count=" + count + ")";
+	}
+}
@@ -0,0 +1,45 @@
+package net.tylerwade.springbootvideostreaming.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The properties of a video read from its container, e.g. by a {@code ProbingContentStreamAdapter}. Properties
+ * the container does not reveal in its first bytes, or its index, are {@code null}.
+ */
+@Data @AllArgsConstructor @NoArgsConstructor @Builder
+public class MediaInfo {
+
+	/**
+	 * The container format detected from the content's magic bytes, e.g. {@code mp4}, {@code quicktime},
+	 * {@code matroska} or {@code webm}.
+	 */
+	private String container;
+
+	/**
+	 * The MIME type of the container, e.g. {@code video/x-matroska}.
+	 */
+	private String contentType;
+
+	private Duration duration;
+
+	/**
+	 * The average bitrate in bits per second, estimated from the file size and duration.
+	 */
+	private Long bitrate;
+
+	private Integer width;
+	private Integer height;
+
+	/**
+	 * The codecs of the tracks as used in the {@code codecs} parameter of a MIME type (RFC 6381), e.g.
+	 * {@code avc1.4d401e} and {@code mp4a.40.2}.
+	 */
+	private List<String> codecs;
+
+}
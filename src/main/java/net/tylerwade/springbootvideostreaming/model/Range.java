@@ -16,4 +16,27 @@ import lombok.ToString;
 public class Range {
 	private Long start;
 	private Long end;
-}
\ No newline at end of file
+
+	/**
+	 * Set for a suffix range such as {@code bytes=-65536}, which requests the last {@code suffixLength} bytes of
+	 * the content. {@code start} and {@code end} are ignored if it is set.
+	 */
+	private Long suffixLength;
+
+	public Range(Long start, Long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @param suffixLength the number of bytes at the end of the content
+	 * @return a range requesting the last {@code suffixLength} bytes of the content
+	 */
+	public static Range suffix(long suffixLength) {
+		return new Range(null, null, suffixLength);
+	}
+
+	public boolean isSuffix() {
+		return suffixLength != null;
+	}
+}
@@ -7,6 +7,9 @@ import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
 
+import java.time.Instant;
+import java.util.List;
+
 @AllArgsConstructor
 @NoArgsConstructor
 @Data
@@ -18,4 +21,61 @@ public class StreamContentRequest {
 	private String key;
 	private Range range;
 
-}
\ No newline at end of file
+	/**
+	 * Optional list of ranges for a request such as {@code bytes=0-1023,-65536}. If it holds more than one range,
+	 * the content is loaded as a single {@code multipart/byteranges} response and {@code range} is ignored; a
+	 * single range is used as {@code range}.
+	 */
+	private List<Range> ranges;
+
+	/**
+	 * Optional identifier of the client (e.g. a session id or remote address) the content is streamed to.
+	 * Used to recognize sequential playback of the same content by the same client.
+	 */
+	private String clientId;
+
+	/**
+	 * Optional value of the {@code If-None-Match} header, one or more entity tags or {@code *}. If one of them
+	 * matches the content's ETag, the content is not read and a 304 Not Modified response is returned.
+	 */
+	private String ifNoneMatch;
+
+	/**
+	 * Optional value of the {@code If-Modified-Since} header. Ignored if {@code ifNoneMatch} is set.
+	 */
+	private Instant ifModifiedSince;
+
+	/**
+	 * Optional value of the {@code If-Range} header, an entity tag or an HTTP date. If it does not match the
+	 * content's current version, the range is ignored and the content is returned from the start.
+	 */
+	private String ifRange;
+
+	public StreamContentRequest(String key, Range range) {
+		this.key = key;
+		this.range = range;
+	}
+
+	public Range getRange() {
+		if (range == null && ranges != null && ranges.size() == 1) {
+			return ranges.get(0);
+		}
+		return range;
+	}
+
+	/**
+	 * @return {@code true} if the request is for more than one range
+	 */
+	public boolean isMultiRange() {
+		return ranges != null && ranges.size() > 1;
+	}
+
+	/**
+	 * @return {@code true} if the request is for a single suffix range, which can only be resolved once the
+	 * size of the content is known
+	 */
+	public boolean isSuffixRange() {
+		return !isMultiRange() && getRange() != null && getRange().isSuffix();
+	}
+
+}
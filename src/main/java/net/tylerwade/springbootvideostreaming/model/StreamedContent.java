@@ -11,6 +11,8 @@ import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.ResponseEntity;
 import reactor.core.publisher.Flux;
 
+import java.util.List;
+
 
 @AllArgsConstructor
 @NoArgsConstructor
@@ -30,20 +32,123 @@ public class StreamedContent {
 
 	private Range range;
 
+	/**
+	 * {@code true} if the request's preconditions showed that the client's copy is current. The content is then
+	 * empty and {@link #toResponseEntity()} returns 304 Not Modified.
+	 */
+	private boolean notModified;
+
+	/**
+	 * {@code true} if none of the requested ranges lies within the content. The content is then empty and
+	 * {@link #toResponseEntity()} returns 416 Range Not Satisfiable.
+	 */
+	private boolean rangeNotSatisfiable;
+
+	/**
+	 * The boundary separating the parts of a {@code multipart/byteranges} response, or {@code null} for a
+	 * single range. The content then contains the parts with their headers.
+	 */
+	private String multipartBoundary;
+
+	/**
+	 * The ranges of the parts of a {@code multipart/byteranges} response, in the order they are sent.
+	 */
+	private List<Range> ranges;
+
+	/**
+	 * Creates the result of a conditional request whose client already has the current version of the content.
+	 *
+	 * @param metadata the metadata of the content
+	 * @return empty content answered with 304 Not Modified
+	 */
+	public static StreamedContent notModified(StreamedContentMetadata metadata) {
+		return StreamedContent.builder()
+				.key(metadata.getKey())
+				.metadata(metadata)
+				.content(Flux.empty())
+				.contentLength(0L)
+				.notModified(true)
+				.build();
+	}
+
+	/**
+	 * Creates the result of a request whose ranges all lie beyond the end of the content.
+	 *
+	 * @param metadata the metadata of the content
+	 * @return empty content answered with 416 Range Not Satisfiable
+	 */
+	public static StreamedContent rangeNotSatisfiable(StreamedContentMetadata metadata) {
+		return StreamedContent.builder()
+				.key(metadata.getKey())
+				.metadata(metadata)
+				.content(Flux.empty())
+				.contentLength(0L)
+				.rangeNotSatisfiable(true)
+				.build();
+	}
+
+	/**
+	 * Returns {@code true} if the content is a region of a file on disk that can be sent with zero-copy.
+	 */
+	@JsonIgnore
+	public boolean isFileRegion() {
+		return content instanceof FileRegionContent;
+	}
+
+	/**
+	 * Returns {@code true} if the content is a {@code multipart/byteranges} body with one part per range.
+	 */
+	@JsonIgnore
+	public boolean isMultipart() {
+		return multipartBoundary != null;
+	}
+
 	/**
 	 * Converts the {@code StreamedContent} object into a {@code ResponseEntity} object.
+	 * <p>
+	 * If the content is a {@link FileRegionContent}, the body is written with zero-copy when the
+	 * server supports it. Multipart content is sent as 206 Partial Content with a {@code multipart/byteranges}
+	 * content type. The content's {@code ETag} and {@code Last-Modified} are sent with every response.
 	 */
 	@JsonIgnore
 	public ResponseEntity<Flux<DataBuffer>> toResponseEntity() {
+		if (notModified) {
+			return withValidators(ResponseEntity.status(304)).build();
+		}
+
+		if (rangeNotSatisfiable) {
+			return ResponseEntity.status(416)
+					.header("Accept-Ranges", "bytes")
+					.header("Content-Range", "bytes */" + metadata.getFileSize())
+					.build();
+		}
+
+		if (isMultipart()) {
+			return withValidators(ResponseEntity.status(206))
+					.header("Content-Type", "multipart/byteranges; boundary=" + multipartBoundary)
+					.header("Accept-Ranges", "bytes")
+					.header("Content-Length", String.valueOf(contentLength))
+					.body(content);
+		}
+
 		boolean isCompleteContent = range.getStart() == 0 && range.getEnd() == metadata.getFileSize() - 1;
 
-		return ResponseEntity.status(isCompleteContent ? 200 : 206)
+		return withValidators(ResponseEntity.status(isCompleteContent ? 200 : 206))
 				.header("Content-Type", metadata.getContentType())
 				.header("Accept-Ranges", "bytes")
 				.header("Content-Length", String.valueOf(contentLength))
-				.header("Content-Range", String.format("bytes %s-%s/%s",
-						range.getStart(), range.getEnd(), metadata.getFileSize()))
+				.header("Content-Range", "bytes " + range.getStart() + '-' + range.getEnd() + '/' + metadata.getFileSize())
 				.body(content);
 	}
 
+	private ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder response) {
+		if (metadata.getETag() != null) {
+			response.eTag(metadata.getETag());
+		}
+		if (metadata.getLastModified() != null) {
+			response.lastModified(metadata.getLastModified());
+		}
+		return response;
+	}
+
 }
\ No newline at end of file
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
+
 @Data @AllArgsConstructor @NoArgsConstructor @Builder
 public class StreamedContentMetadata {
 
@@ -12,4 +14,19 @@ public class StreamedContentMetadata {
 	private String contentType;
 	private Long fileSize;
 
+	/**
+	 * The entity tag of the content's current version, including its quotes, or {@code null} if unknown.
+	 */
+	private String eTag;
+
+	/**
+	 * When the content was last modified, or {@code null} if unknown.
+	 */
+	private Instant lastModified;
+
+	/**
+	 * The probed properties of the video, or {@code null} if it has not been probed.
+	 */
+	private MediaInfo mediaInfo;
+
 }
\ No newline at end of file
@@ -0,0 +1,200 @@
+package net.tylerwade.springbootvideostreaming.mp4;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.tylerwade.springbootvideostreaming.mp4.Mp4Boxes.*;
+
+/**
+ * The layout of the "fast start" view of an MP4 file whose {@code moov} box follows its media data.
+ * <p>
+ * The view has the same size as the file. Its {@code moov} box is moved in front of the first {@code mdat} box,
+ * and the chunk offsets in its {@code stco} and {@code co64} boxes are shifted by the size of the {@code moov}
+ * box, so they point at the media data in its new position:
+ * <pre>
+ * file: [ftyp][mdat ..........][moov]
+ * view: [ftyp][moov'][mdat ..........]
+ * </pre>
+ * The rewritten {@code moov} box is held in memory; every other byte of the view is a byte of the file,
+ * see {@link #pieces(long, long)}.
+ */
+public final class FastStartLayout {
+
+	private final long fileSize;
+	private final long mdatOffset;
+	private final long moovOffset;
+	private final ByteBuffer moov;
+
+	private FastStartLayout(long fileSize, long mdatOffset, long moovOffset, ByteBuffer moov) {
+		this.fileSize = fileSize;
+		this.mdatOffset = mdatOffset;
+		this.moovOffset = moovOffset;
+		this.moov = moov;
+	}
+
+	/**
+	 * Probes the layout of the MP4 file with the given key with range requests, and builds its fast start view if
+	 * the {@code moov} box follows the media data.
+	 *
+	 * @param adapter  the adapter the file is read through
+	 * @param key      the key of the file
+	 * @param fileSize the size of the file in bytes
+	 * @return the layout, or an empty {@code Mono} if the file already starts with its {@code moov} box or its
+	 * offsets cannot be shifted; an {@link Mp4FormatException} if it is not an MP4 file
+	 */
+	public static Mono<FastStartLayout> detect(ContentStreamAdapter adapter, String key, long fileSize) {
+		return Mp4Parser.findMoov(adapter, key, fileSize)
+				.flatMap(moov -> Mono.fromCallable(() -> create(moov, fileSize)));
+	}
+
+	/**
+	 * @return the layout, or {@code null} if the {@code moov} box precedes the media data or a shifted offset
+	 * does not fit an {@code stco} box
+	 */
+	static FastStartLayout create(Mp4Parser.Moov moov, long fileSize) throws Mp4FormatException {
+		if (moov.firstMdatOffset() < 0) {
+			return null;
+		}
+
+		ByteBuffer relocated = ByteBuffer.allocate(moov.box().remaining());
+		relocated.put(moov.box().duplicate()).flip();
+		try {
+			if (!shiftChunkOffsets(relocated, moov.firstMdatOffset(), moov.offset())) {
+				return null;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new Mp4FormatException("Truncated box in the moov box.", e);
+		}
+		return new FastStartLayout(fileSize, moov.firstMdatOffset(), moov.offset(), relocated.asReadOnlyBuffer());
+	}
+
+	/**
+	 * Shifts the chunk offsets pointing between the first {@code mdat} box and the {@code moov} box by the size
+	 * of the {@code moov} box. Offsets pointing behind the {@code moov} box keep their position.
+	 *
+	 * @return {@code false} if a shifted offset does not fit 32 bits
+	 */
+	private static boolean shiftChunkOffsets(ByteBuffer moov, long mdatOffset, long moovOffset) throws Mp4FormatException {
+		long shift = moov.limit();
+		Box moovBox = Mp4Boxes.read(moov, 0, moov.limit());
+		int position = moovBox.bodyStart();
+		while (position + 8 <= moovBox.end()) {
+			Box trak = Mp4Boxes.read(moov, position, moovBox.end());
+			position = trak.end();
+			if (trak.type() != TRAK) {
+				continue;
+			}
+
+			Box stbl = findPath(moov, trak, MDIA, MINF, STBL);
+			if (stbl == null) {
+				continue;
+			}
+			Box stco = find(moov, stbl.bodyStart(), stbl.end(), STCO);
+			if (stco != null) {
+				int entries = moov.getInt(stco.bodyStart() + 4);
+				for (int i = 0; i < entries; i++) {
+					int entry = stco.bodyStart() + 8 + i * 4;
+					long offset = Integer.toUnsignedLong(moov.getInt(entry));
+					if (offset >= mdatOffset && offset < moovOffset) {
+						if (offset + shift > 0xFFFFFFFFL) {
+							return false;
+						}
+						moov.putInt(entry, (int) (offset + shift));
+					}
+				}
+			}
+			Box co64 = find(moov, stbl.bodyStart(), stbl.end(), CO64);
+			if (co64 != null) {
+				int entries = moov.getInt(co64.bodyStart() + 4);
+				for (int i = 0; i < entries; i++) {
+					int entry = co64.bodyStart() + 8 + i * 8;
+					long offset = moov.getLong(entry);
+					if (offset >= mdatOffset && offset < moovOffset) {
+						moov.putLong(entry, offset + shift);
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	private static Box findPath(ByteBuffer moov, Box parent, int... types) throws Mp4FormatException {
+		Box box = parent;
+		for (int type : types) {
+			box = find(moov, box.bodyStart(), box.end(), type);
+			if (box == null) {
+				return null;
+			}
+		}
+		return box;
+	}
+
+	/**
+	 * Maps a range of the view onto the file. The range is split into pieces that are either a range of the
+	 * file or a part of the relocated {@code moov} box, in the order they make up the range.
+	 *
+	 * @param start the first byte of the view
+	 * @param end   the last byte of the view, inclusive
+	 * @return the pieces of the range
+	 */
+	public List<Piece> pieces(long start, long end) {
+		long moovSize = moov.limit();
+		List<Piece> pieces = new ArrayList<>(3);
+		// Before the first mdat box, the view and the file are the same.
+		addFilePiece(pieces, start, end, 0, mdatOffset, 0);
+		if (start < mdatOffset + moovSize && end >= mdatOffset) {
+			int from = (int) (Math.max(start, mdatOffset) - mdatOffset);
+			int to = (int) (Math.min(end + 1, mdatOffset + moovSize) - mdatOffset);
+			pieces.add(new Piece(null, moov.slice(from, to - from)));
+		}
+		// The media data follows the moov box; what follows the moov box in the file keeps its position.
+		addFilePiece(pieces, start, end, mdatOffset + moovSize, moovOffset + moovSize, -moovSize);
+		addFilePiece(pieces, start, end, moovOffset + moovSize, fileSize, 0);
+		return pieces;
+	}
+
+	private static void addFilePiece(List<Piece> pieces, long start, long end, long viewStart, long viewEnd, long shift) {
+		long from = Math.max(start, viewStart);
+		long to = Math.min(end + 1, viewEnd);
+		if (from < to) {
+			pieces.add(new Piece(new Range(from + shift, to - 1 + shift), null));
+		}
+	}
+
+	public long getFileSize() {
+		return fileSize;
+	}
+
+	/**
+	 * @return the file offset of the {@code moov} box
+	 */
+	public long getMoovOffset() {
+		return moovOffset;
+	}
+
+	/**
+	 * @return the offset of the {@code moov} box in the view, which is the file offset of the first {@code mdat} box
+	 */
+	public long getRelocatedMoovOffset() {
+		return mdatOffset;
+	}
+
+	public int getMoovSize() {
+		return moov.limit();
+	}
+
+	/**
+	 * A piece of a range of the view.
+	 *
+	 * @param fileRange the range of the file, or {@code null} if the piece is part of the {@code moov} box
+	 * @param bytes     the read-only bytes of the {@code moov} box, or {@code null} if the piece is in the file
+	 */
+	public record Piece(Range fileRange, ByteBuffer bytes) {
+	}
+
+}
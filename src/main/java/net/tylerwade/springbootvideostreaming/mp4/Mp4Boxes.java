@@ -0,0 +1,109 @@
+package net.tylerwade.springbootvideostreaming.mp4;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for reading ISO base media file format boxes from a buffer. A box starts with its 32-bit size and
+ * four character type; a size of 1 means a 64-bit size follows the type, a size of 0 that the box extends to
+ * the end of the enclosing box or file.
+ */
+final class Mp4Boxes {
+
+	static final int MOOV = type("moov");
+	static final int MDAT = type("mdat");
+	static final int TRAK = type("trak");
+	static final int MDIA = type("mdia");
+	static final int MDHD = type("mdhd");
+	static final int HDLR = type("hdlr");
+	static final int MINF = type("minf");
+	static final int STBL = type("stbl");
+	static final int STTS = type("stts");
+	static final int STSS = type("stss");
+	static final int STSZ = type("stsz");
+	static final int STZ2 = type("stz2");
+	static final int STSC = type("stsc");
+	static final int STCO = type("stco");
+	static final int CO64 = type("co64");
+	static final int VIDE = type("vide");
+	static final int SOUN = type("soun");
+	static final int MVHD = type("mvhd");
+	static final int STSD = type("stsd");
+	static final int AVC1 = type("avc1");
+	static final int AVC3 = type("avc3");
+	static final int AVCC = type("avcC");
+	static final int MP4A = type("mp4a");
+	static final int ESDS = type("esds");
+
+	/**
+	 * The size of the largest box header: 32-bit size, type and 64-bit size.
+	 */
+	static final int MAX_HEADER_SIZE = 16;
+
+	private Mp4Boxes() {
+	}
+
+	static int type(String fourCc) {
+		return ByteBuffer.wrap(fourCc.getBytes(StandardCharsets.US_ASCII)).getInt();
+	}
+
+	static String typeName(int type) {
+		return new String(ByteBuffer.allocate(4).putInt(type).array(), StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * Finds the first child box of the given type.
+	 *
+	 * @param buffer the buffer holding the boxes
+	 * @param start  the position of the first box
+	 * @param end    the position following the last box
+	 * @param type   the type of the box
+	 * @return the box, or {@code null} if there is none
+	 */
+	static Box find(ByteBuffer buffer, int start, int end, int type) throws Mp4FormatException {
+		int position = start;
+		while (position + 8 <= end) {
+			Box box = read(buffer, position, end);
+			if (box.type() == type) {
+				return box;
+			}
+			position = box.end();
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the header of the box at the given position.
+	 *
+	 * @param buffer   the buffer holding the box
+	 * @param position the position of the box
+	 * @param end      the end of the enclosing box, for boxes of size 0
+	 * @return the box
+	 */
+	static Box read(ByteBuffer buffer, int position, int end) throws Mp4FormatException {
+		long size = Integer.toUnsignedLong(buffer.getInt(position));
+		int type = buffer.getInt(position + 4);
+		int headerSize = 8;
+		if (size == 1) {
+			size = buffer.getLong(position + 8);
+			headerSize = 16;
+		} else if (size == 0) {
+			size = end - position;
+		}
+
+		if (size < headerSize || position + size > end) {
+			throw new Mp4FormatException("Invalid size " + size + " of box '" + typeName(type) + "' at " + position + ".");
+		}
+		return new Box(type, position, position + headerSize, (int) (position + size));
+	}
+
+	/**
+	 * @param type      the four character type
+	 * @param start     the position of the box header
+	 * @param bodyStart the position of the box body
+	 * @param end       the position following the box
+	 */
+	record Box(int type, int start, int bodyStart, int end) {
+	}
+
+}
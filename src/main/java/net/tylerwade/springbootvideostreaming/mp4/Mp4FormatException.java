@@ -0,0 +1,19 @@
+package net.tylerwade.springbootvideostreaming.mp4;
+
+import java.io.IOException;
+
+/**
+ * Thrown when content is not an MP4 file the {@link Mp4Parser} can index, e.g. because it has no {@code moov}
+ * box, no video track or a malformed sample table.
+ */
+public class Mp4FormatException extends IOException {
+
+	public Mp4FormatException(String message) {
+		super(message);
+	}
+
+	public Mp4FormatException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,130 @@
+package net.tylerwade.springbootvideostreaming.mp4;
+
+import net.tylerwade.springbootvideostreaming.model.Range;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * The keyframe index of the video track of an MP4 file, built by the {@link Mp4Parser} from the track's sample
+ * table.
+ * <p>
+ * Only the keyframes (sync samples) are kept, as two parallel primitive arrays of decode times and file
+ * offsets, so an index costs 16 bytes per keyframe regardless of the number of samples. Times are in the
+ * track's timescale and ignore edit lists.
+ */
+public final class Mp4Index {
+
+	private final long timescale;
+	private final long duration;
+	private final int sampleCount;
+	private final long[] keyframeTimes;
+	private final long[] keyframeOffsets;
+	private final long mediaEnd;
+
+	/**
+	 * @param timescale       the number of time units per second of the video track
+	 * @param duration        the duration of the video track in its timescale
+	 * @param sampleCount     the number of samples of the video track
+	 * @param keyframeTimes   the decode times of the keyframes in the track's timescale, ascending
+	 * @param keyframeOffsets the file offsets of the keyframes, in the same order
+	 * @param mediaEnd        the offset following the last byte of media data
+	 */
+	Mp4Index(long timescale, long duration, int sampleCount, long[] keyframeTimes, long[] keyframeOffsets, long mediaEnd) {
+		this.timescale = timescale;
+		this.duration = duration;
+		this.sampleCount = sampleCount;
+		this.keyframeTimes = keyframeTimes;
+		this.keyframeOffsets = keyframeOffsets;
+		this.mediaEnd = mediaEnd;
+	}
+
+	public long getTimescale() {
+		return timescale;
+	}
+
+	/**
+	 * @return the duration of the video track
+	 */
+	public Duration getDuration() {
+		return toDuration(duration);
+	}
+
+	public int getSampleCount() {
+		return sampleCount;
+	}
+
+	public int getKeyframeCount() {
+		return keyframeTimes.length;
+	}
+
+	/**
+	 * @param keyframe the number of the keyframe, starting at 0
+	 * @return the decode time of the keyframe
+	 */
+	public Duration getKeyframeTime(int keyframe) {
+		return toDuration(keyframeTimes[keyframe]);
+	}
+
+	/**
+	 * @param keyframe the number of the keyframe, starting at 0
+	 * @return the file offset of the keyframe's first byte
+	 */
+	public long getKeyframeOffset(int keyframe) {
+		return keyframeOffsets[keyframe];
+	}
+
+	/**
+	 * Finds the keyframe playback from the given position has to start decoding at: the last keyframe at or
+	 * before the position. Positions before the first keyframe map to the first, positions beyond the end to
+	 * the last.
+	 *
+	 * @param position the playback position
+	 * @return the number of the keyframe, starting at 0
+	 */
+	public int keyframeAt(Duration position) {
+		long time = toTime(position);
+		int index = Arrays.binarySearch(keyframeTimes, time);
+		if (index < 0) {
+			// The insertion point is the first keyframe after the position.
+			index = -index - 2;
+		}
+		return Math.max(0, index);
+	}
+
+	/**
+	 * Returns the bytes from the keyframe at or before the given position up to the next keyframe, i.e. the
+	 * group of pictures containing the position together with any audio interleaved with it.
+	 *
+	 * @param position the playback position
+	 * @return the range of the group of pictures
+	 */
+	public Range keyframeRange(Duration position) {
+		int keyframe = keyframeAt(position);
+		long start = keyframeOffsets[keyframe];
+		long end = keyframe + 1 < keyframeOffsets.length ? keyframeOffsets[keyframe + 1] : mediaEnd;
+		if (end <= start) {
+			// Keyframes not stored in decode order, the group ends with the media data.
+			end = mediaEnd;
+		}
+		return new Range(start, end - 1);
+	}
+
+	private Duration toDuration(long time) {
+		return Duration.ofSeconds(time / timescale, (time % timescale) * 1_000_000_000L / timescale);
+	}
+
+	private long toTime(Duration position) {
+		if (position.isNegative()) {
+			return 0;
+		}
+		// Rounded up, so the time of a keyframe as returned by getKeyframeTime maps back to that keyframe.
+		return position.getSeconds() * timescale + (position.getNano() * timescale + 999_999_999L) / 1_000_000_000L;
+	}
+
+	@Override
+	public String toString() {
+		return "Mp4Index{duration=" + getDuration() + ", samples=" + sampleCount + ", keyframes=" + keyframeTimes.length + '}';
+	}
+
+}
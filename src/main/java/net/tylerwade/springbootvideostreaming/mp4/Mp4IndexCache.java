@@ -0,0 +1,150 @@
+package net.tylerwade.springbootvideostreaming.mp4;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code Mp4IndexCache} class is a bounded, concurrent cache of {@link Mp4Index}es, so the {@code moov}
+ * box of a file is read once rather than for every seek.
+ * <p>
+ * Entries are keyed by the content's key and validated against its current ETag and size, so an index is built
+ * again once the content changes. Concurrent requests for an index that is being built wait for the same
+ * build. Failed builds are not cached. When the cache is full, the oldest entries are evicted first.
+ */
+public class Mp4IndexCache {
+
+	public static final int DEFAULT_MAX_ENTRIES = 1_000;
+
+	private final int maxEntries;
+
+	private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param maxEntries the maximum number of cached indexes
+	 */
+	public Mp4IndexCache(int maxEntries) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be at least 1.");
+		}
+		this.maxEntries = maxEntries;
+	}
+
+	public Mp4IndexCache() {
+		this(DEFAULT_MAX_ENTRIES);
+	}
+
+	/**
+	 * Returns the index of the content with the given key, building it with the {@link Mp4Parser} if it is not
+	 * cached or the content has changed since.
+	 * <p>
+	 * The cached index is validated against the content's current metadata, which is read through the adapter on
+	 * every lookup. For S3 that is a {@code HEAD} request per seek, unless the adapter caches metadata. Use
+	 * {@link #get(ContentStreamAdapter, StreamedContentMetadata)} when the metadata is already at hand.
+	 *
+	 * @param adapter the adapter the content is read through
+	 * @param key     the key of the content
+	 * @return the index, or an {@link Mp4FormatException} if the content cannot be indexed
+	 */
+	public Mono<Mp4Index> get(ContentStreamAdapter adapter, String key) {
+		return Mono.fromCallable(() -> adapter.getContentMetadata(key))
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMap(metadata -> get(adapter, metadata));
+	}
+
+	/**
+	 * Returns the index of the given content, building it with the {@link Mp4Parser} if it is not cached or was
+	 * built for another version of the content. Concurrent misses for the same version share a single build.
+	 *
+	 * @param adapter  the adapter the content is read through
+	 * @param metadata the current metadata of the content
+	 * @return the index, or an {@link Mp4FormatException} if the content cannot be indexed
+	 */
+	public Mono<Mp4Index> get(ContentStreamAdapter adapter, StreamedContentMetadata metadata) {
+		String key = metadata.getKey();
+		String version = version(metadata);
+		Entry[] created = new Entry[1];
+		Entry entry = entries.compute(key, (k, existing) -> {
+			if (existing != null && existing.version().equals(version)) {
+				return existing;
+			}
+			created[0] = new Entry(version, Mono.defer(() -> Mp4Parser.parse(adapter, key, metadata.getFileSize())).cache());
+			if (existing == null) {
+				insertionOrder.add(key);
+			}
+			return created[0];
+		});
+
+		if (entry != created[0]) {
+			hits.increment();
+		} else {
+			misses.increment();
+			evictOverflow();
+		}
+		return index(key, entry);
+	}
+
+	/**
+	 * Removes the cached index for the given key.
+	 */
+	public void invalidate(String key) {
+		if (entries.remove(key) != null) {
+			insertionOrder.remove(key);
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of lookups served from the cache, including lookups that waited for a build
+	 */
+	public long getHitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that started building an index
+	 */
+	public long getMissCount() {
+		return misses.sum();
+	}
+
+	private Mono<Mp4Index> index(String key, Entry entry) {
+		return entry.index().doOnError(e -> {
+			if (entries.remove(key, entry)) {
+				insertionOrder.remove(key);
+			}
+		});
+	}
+
+	private void evictOverflow() {
+		while (entries.size() > maxEntries) {
+			String eldest = insertionOrder.poll();
+			if (eldest == null) {
+				return;
+			}
+			entries.remove(eldest);
+		}
+	}
+
+	private static String version(StreamedContentMetadata metadata) {
+		return metadata.getETag() + "/" + metadata.getFileSize();
+	}
+
+	private record Entry(String version, Mono<Mp4Index> index) {
+	}
+
+}
@@ -0,0 +1,434 @@
+package net.tylerwade.springbootvideostreaming.mp4;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static net.tylerwade.springbootvideostreaming.mp4.Mp4Boxes.*;
+
+/**
+ * The {@code Mp4Parser} builds the {@link Mp4Index} of an MP4 file from its {@code moov} box, reading the file
+ * through a {@link ContentStreamAdapter} with range requests.
+ * <p>
+ * The first {@value #HEAD_SIZE} bytes are read in one request, which holds the whole {@code moov} box of most
+ * files optimized for streaming ("fast start"). Otherwise the top-level boxes are skipped header by header,
+ * one small request each, until the {@code moov} box is found and read. The media data itself is never read.
+ * <p>
+ * The index is built from the sample table of the first video track. Fragmented MP4 files, whose samples are
+ * described in {@code moof} boxes, are not supported.
+ */
+public final class Mp4Parser {
+
+	/**
+	 * The number of bytes read from the start of the file in the first request.
+	 */
+	public static final int HEAD_SIZE = 64 * 1024; // 64KB
+
+	/**
+	 * The largest {@code moov} box read, to not buffer arbitrary content that merely looks like a box.
+	 */
+	public static final int MAX_MOOV_SIZE = 64 * 1024 * 1024; // 64MB
+
+	private static final int INITIAL_KEYFRAMES = 1024;
+
+	private Mp4Parser() {
+	}
+
+	/**
+	 * Builds the keyframe index of the MP4 file with the given key.
+	 *
+	 * @param adapter the adapter the file is read through
+	 * @param key     the key of the file
+	 * @return the index, or an {@link Mp4FormatException} if the file cannot be indexed
+	 */
+	public static Mono<Mp4Index> parse(ContentStreamAdapter adapter, String key) {
+		return Mono.fromCallable(() -> adapter.getContentSize(key))
+				.subscribeOn(Schedulers.boundedElastic())
+				.flatMap(fileSize -> parse(adapter, key, fileSize));
+	}
+
+	/**
+	 * Builds the keyframe index of the MP4 file with the given key and size.
+	 *
+	 * @param adapter  the adapter the file is read through
+	 * @param key      the key of the file
+	 * @param fileSize the size of the file in bytes
+	 * @return the index, or an {@link Mp4FormatException} if the file cannot be indexed
+	 */
+	public static Mono<Mp4Index> parse(ContentStreamAdapter adapter, String key, long fileSize) {
+		return findMoov(adapter, key, fileSize)
+				.flatMap(moov -> Mono.fromCallable(() -> index(moov.box(), moov.offset(), fileSize)));
+	}
+
+	/**
+	 * Finds and reads the {@code moov} box of the MP4 file with the given key and size.
+	 *
+	 * @param adapter  the adapter the file is read through
+	 * @param key      the key of the file
+	 * @param fileSize the size of the file in bytes
+	 * @return the {@code moov} box, or an {@link Mp4FormatException} if the file has none
+	 */
+	static Mono<Moov> findMoov(ContentStreamAdapter adapter, String key, long fileSize) {
+		if (fileSize < 8) {
+			return Mono.error(new Mp4FormatException(key + " is too small to be an MP4 file."));
+		}
+		return read(adapter, key, 0, (int) Math.min(HEAD_SIZE, fileSize))
+				.flatMap(head -> findMoov(adapter, key, fileSize, head));
+	}
+
+	/**
+	 * Finds and reads the {@code moov} box of the MP4 file with the given key and size, starting with the
+	 * already read first bytes of the file.
+	 *
+	 * @param head the first bytes of the file
+	 */
+	static Mono<Moov> findMoov(ContentStreamAdapter adapter, String key, long fileSize, ByteBuffer head) {
+		return findMoov(adapter, key, fileSize, head, 0, 0, -1);
+	}
+
+	/**
+	 * Reads the given bytes of a content, with as many range requests as the adapter's chunk size requires.
+	 *
+	 * @param adapter the adapter the content is read through
+	 * @param key     the key of the content
+	 * @param start   the offset of the first byte
+	 * @param length  the number of bytes
+	 * @return a buffer holding exactly the bytes, or an {@link Mp4FormatException} if the content ends early
+	 */
+	public static Mono<ByteBuffer> read(ContentStreamAdapter adapter, String key, long start, int length) {
+		byte[] bytes = new byte[length];
+		return readInto(adapter, key, bytes, start, 0).then(Mono.fromSupplier(() -> ByteBuffer.wrap(bytes)));
+	}
+
+	private static Mono<Void> readInto(ContentStreamAdapter adapter, String key, byte[] bytes, long start, int filled) {
+		if (filled == bytes.length) {
+			return Mono.empty();
+		}
+
+		Range range = new Range(start + filled, start + bytes.length - 1);
+		return adapter.loadContent(new StreamContentRequest(key, range))
+				.flatMap(content -> {
+					int[] position = {filled};
+					return content.getContent()
+							.doOnNext(buffer -> {
+								try {
+									int count = Math.min(buffer.readableByteCount(), bytes.length - position[0]);
+									buffer.read(bytes, position[0], count);
+									position[0] += count;
+								} finally {
+									DataBufferUtils.release(buffer);
+								}
+							})
+							.then(Mono.defer(() -> position[0] == filled
+									? Mono.error(new Mp4FormatException(key + " ended at " + (start + filled) + ", before the end of the box."))
+									: readInto(adapter, key, bytes, start, position[0])));
+				});
+	}
+
+	/**
+	 * Walks the top-level boxes starting at {@code offset}, using the buffered bytes where they cover a box
+	 * header and reading the header otherwise.
+	 */
+	private static Mono<Moov> findMoov(ContentStreamAdapter adapter, String key, long fileSize,
+									   ByteBuffer buffered, long bufferStart, long offset, long firstMdatOffset) {
+		try {
+			while (offset + 8 <= fileSize) {
+				long bufferEnd = bufferStart + buffered.limit();
+				int headerSize = (int) Math.min(MAX_HEADER_SIZE, fileSize - offset);
+				if (offset < bufferStart || offset + headerSize > bufferEnd) {
+					long headerOffset = offset;
+					long mdatOffset = firstMdatOffset;
+					return read(adapter, key, offset, headerSize)
+							.flatMap(header -> findMoov(adapter, key, fileSize, header, headerOffset, headerOffset, mdatOffset));
+				}
+
+				int position = (int) (offset - bufferStart);
+				long size = Integer.toUnsignedLong(buffered.getInt(position));
+				int type = buffered.getInt(position + 4);
+				if (size == 1) {
+					if (headerSize < 16) {
+						throw new Mp4FormatException("Truncated header of box '" + typeName(type) + "' at " + offset + ".");
+					}
+					size = buffered.getLong(position + 8);
+				} else if (size == 0) {
+					size = fileSize - offset;
+				}
+				if (size < 8 || offset + size > fileSize) {
+					throw new Mp4FormatException(key + " is not an MP4 file, box '" + typeName(type) + "' at " + offset + " has an invalid size.");
+				}
+
+				if (type == MOOV) {
+					return readMoov(adapter, key, buffered, bufferStart, offset, size, firstMdatOffset);
+				}
+				if (type == MDAT && firstMdatOffset < 0) {
+					firstMdatOffset = offset;
+				}
+				offset += size;
+			}
+		} catch (Mp4FormatException e) {
+			return Mono.error(e);
+		}
+		return Mono.error(new Mp4FormatException(key + " has no moov box."));
+	}
+
+	private static Mono<Moov> readMoov(ContentStreamAdapter adapter, String key, ByteBuffer buffered, long bufferStart,
+									   long offset, long size, long firstMdatOffset) {
+		if (size > MAX_MOOV_SIZE) {
+			return Mono.error(new Mp4FormatException("The moov box of " + key + " is larger than " + MAX_MOOV_SIZE + " bytes."));
+		}
+
+		Mono<ByteBuffer> moov;
+		if (offset + size <= bufferStart + buffered.limit()) {
+			moov = Mono.just(buffered.slice((int) (offset - bufferStart), (int) size));
+		} else {
+			moov = read(adapter, key, offset, (int) size);
+		}
+		return moov.map(box -> new Moov(offset, box, firstMdatOffset));
+	}
+
+	/**
+	 * Builds the index from the {@code moov} box in the given buffer.
+	 *
+	 * @param moov       the {@code moov} box, including its header
+	 * @param moovOffset the file offset of the {@code moov} box
+	 * @param fileSize   the size of the file
+	 */
+	static Mp4Index index(ByteBuffer moov, long moovOffset, long fileSize) throws Mp4FormatException {
+		try {
+			Box moovBox = Mp4Boxes.read(moov, 0, moov.limit());
+			int position = moovBox.bodyStart();
+			while (position + 8 <= moovBox.end()) {
+				Box trak = Mp4Boxes.read(moov, position, moovBox.end());
+				position = trak.end();
+				if (trak.type() != TRAK) {
+					continue;
+				}
+
+				Box mdia = find(moov, trak.bodyStart(), trak.end(), MDIA);
+				Box hdlr = mdia == null ? null : find(moov, mdia.bodyStart(), mdia.end(), HDLR);
+				// Version and flags, pre_defined, then the handler type.
+				if (hdlr != null && moov.getInt(hdlr.bodyStart() + 8) == VIDE) {
+					return indexTrack(moov, mdia, moovOffset, moovBox.end(), fileSize);
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new Mp4FormatException("Truncated box in the moov box.", e);
+		}
+		throw new Mp4FormatException("The moov box has no video track.");
+	}
+
+	private static Mp4Index indexTrack(ByteBuffer moov, Box mdia, long moovOffset, int moovEnd, long fileSize) throws Mp4FormatException {
+		Box mdhd = require(moov, mdia, MDHD);
+		long timescale;
+		long duration;
+		if (moov.get(mdhd.bodyStart()) == 1) {
+			// Version, flags, 64-bit creation and modification times.
+			timescale = Integer.toUnsignedLong(moov.getInt(mdhd.bodyStart() + 20));
+			duration = moov.getLong(mdhd.bodyStart() + 24);
+		} else {
+			timescale = Integer.toUnsignedLong(moov.getInt(mdhd.bodyStart() + 12));
+			duration = Integer.toUnsignedLong(moov.getInt(mdhd.bodyStart() + 16));
+		}
+		if (timescale == 0) {
+			throw new Mp4FormatException("The video track has a timescale of 0.");
+		}
+
+		Box minf = require(moov, mdia, MINF);
+		Box stbl = require(moov, minf, STBL);
+		SampleSizes sizes = sampleSizes(moov, stbl, fileSize);
+		if (sizes.count() == 0) {
+			throw new Mp4FormatException("The video track has no samples, fragmented MP4 files are not supported.");
+		}
+
+		Box stts = require(moov, stbl, STTS);
+		Box stsc = require(moov, stbl, STSC);
+		Box stss = find(moov, stbl.bodyStart(), stbl.end(), STSS);
+		Box stco = find(moov, stbl.bodyStart(), stbl.end(), STCO);
+		boolean largeOffsets = stco == null;
+		if (largeOffsets) {
+			stco = require(moov, stbl, CO64);
+		}
+
+		// Every count is checked against the size of its table, so a crafted box cannot make the arrays below
+		// larger than the moov box it was read from.
+		int syncCount = stss == null ? sizes.count() : entryCount(moov, stss, 4);
+		if (syncCount > sizes.count()) {
+			throw new Mp4FormatException("The stss box lists " + syncCount + " sync samples for " + sizes.count() + " samples.");
+		}
+		// Without an stss box every sample is a keyframe, and a constant sample size does not bound the number of
+		// samples by the size of the moov box, so the arrays grow with the keyframes actually found.
+		long[] keyframeTimes = new long[Math.min(syncCount, INITIAL_KEYFRAMES)];
+		long[] keyframeOffsets = new long[keyframeTimes.length];
+		int keyframes = 0;
+		int nextSync = 0;
+
+		int sttsEntries = entryCount(moov, stts, 8);
+		int sttsEntry = 0;
+		long sttsRemaining = 0;
+		long sampleDelta = 0;
+
+		int stscEntries = entryCount(moov, stsc, 12);
+		int stscEntry = 0;
+		long samplesPerChunk = 0;
+
+		int chunkCount = entryCount(moov, stco, largeOffsets ? 8 : 4);
+		int sample = 0;
+		long time = 0;
+		for (int chunk = 0; chunk < chunkCount && sample < sizes.count(); chunk++) {
+			// stsc entries apply from their first chunk (1-based) until the next entry's first chunk.
+			while (stscEntry < stscEntries && moov.getInt(stsc.bodyStart() + 8 + stscEntry * 12) <= chunk + 1) {
+				samplesPerChunk = Integer.toUnsignedLong(moov.getInt(stsc.bodyStart() + 8 + stscEntry * 12 + 4));
+				stscEntry++;
+			}
+
+			long offset = largeOffsets
+					? moov.getLong(stco.bodyStart() + 8 + chunk * 8)
+					: Integer.toUnsignedLong(moov.getInt(stco.bodyStart() + 8 + chunk * 4));
+			for (long i = 0; i < samplesPerChunk && sample < sizes.count(); i++) {
+				while (sttsRemaining == 0 && sttsEntry < sttsEntries) {
+					sttsRemaining = Integer.toUnsignedLong(moov.getInt(stts.bodyStart() + 8 + sttsEntry * 8));
+					sampleDelta = Integer.toUnsignedLong(moov.getInt(stts.bodyStart() + 8 + sttsEntry * 8 + 4));
+					sttsEntry++;
+				}
+
+				boolean sync;
+				if (stss == null) {
+					sync = true;
+				} else {
+					// stss lists the 1-based numbers of the sync samples in ascending order.
+					while (nextSync < syncCount && moov.getInt(stss.bodyStart() + 8 + nextSync * 4) < sample + 1) {
+						nextSync++;
+					}
+					sync = nextSync < syncCount && moov.getInt(stss.bodyStart() + 8 + nextSync * 4) == sample + 1;
+					if (sync) {
+						nextSync++;
+					}
+				}
+				if (sync) {
+					if (keyframes == keyframeTimes.length) {
+						keyframeTimes = Arrays.copyOf(keyframeTimes, Math.max(1, keyframes * 2));
+						keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeTimes.length);
+					}
+					keyframeTimes[keyframes] = time;
+					keyframeOffsets[keyframes] = offset;
+					keyframes++;
+				}
+
+				offset += sizes.size(moov, sample);
+				time += sampleDelta;
+				if (sttsRemaining > 0) {
+					sttsRemaining--;
+				}
+				sample++;
+			}
+		}
+
+		if (keyframes == 0) {
+			throw new Mp4FormatException("The video track has no keyframes.");
+		}
+		if (keyframes < keyframeTimes.length) {
+			keyframeTimes = Arrays.copyOf(keyframeTimes, keyframes);
+			keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframes);
+		}
+
+		// The media data of a file whose moov box follows it ends where the moov box starts.
+		long lastOffset = keyframeOffsets[keyframes - 1];
+		long mediaEnd = moovOffset > lastOffset ? moovOffset : fileSize;
+		return new Mp4Index(timescale, duration, sample, keyframeTimes, keyframeOffsets, mediaEnd);
+	}
+
+	private static SampleSizes sampleSizes(ByteBuffer moov, Box stbl, long fileSize) throws Mp4FormatException {
+		Box stsz = find(moov, stbl.bodyStart(), stbl.end(), STSZ);
+		if (stsz != null) {
+			int sampleSize = moov.getInt(stsz.bodyStart() + 4);
+			int count = moov.getInt(stsz.bodyStart() + 8);
+			if (sampleSize != 0) {
+				// The samples of a constant size are not listed, but they have to fit in the file, and there are no
+				// more of them than a listed stsz box of the largest accepted moov box could hold.
+				if (count < 0 || count > MAX_MOOV_SIZE / 4 || count > fileSize / Integer.toUnsignedLong(sampleSize)) {
+					throw new Mp4FormatException("The stsz box lists " + Integer.toUnsignedString(count) + " samples of "
+							+ Integer.toUnsignedString(sampleSize) + " bytes for a file of " + fileSize + " bytes.");
+				}
+				return new SampleSizes(stsz.bodyStart() + 12, count, sampleSize, 32);
+			}
+			checkTableSize(stsz, count, stsz.bodyStart() + 12, 32);
+			return new SampleSizes(stsz.bodyStart() + 12, count, 0, 32);
+		}
+
+		Box stz2 = require(moov, stbl, STZ2);
+		int fieldSize = moov.get(stz2.bodyStart() + 7) & 0xFF;
+		if (fieldSize != 4 && fieldSize != 8 && fieldSize != 16) {
+			throw new Mp4FormatException("Invalid field size " + fieldSize + " of the stz2 box.");
+		}
+		int count = moov.getInt(stz2.bodyStart() + 8);
+		checkTableSize(stz2, count, stz2.bodyStart() + 12, fieldSize);
+		return new SampleSizes(stz2.bodyStart() + 12, count, 0, fieldSize);
+	}
+
+	/**
+	 * Reads the entry count of a table box: version and flags, the count, then the entries.
+	 *
+	 * @param entrySize the size of an entry in bytes
+	 * @return the number of entries, checked to fit in the box
+	 */
+	private static int entryCount(ByteBuffer moov, Box box, int entrySize) throws Mp4FormatException {
+		int count = moov.getInt(box.bodyStart() + 4);
+		checkTableSize(box, count, box.bodyStart() + 8, entrySize * 8);
+		return count;
+	}
+
+	private static void checkTableSize(Box box, int count, int tableStart, int entryBits) throws Mp4FormatException {
+		long tableBits = (long) (box.end() - tableStart) * 8;
+		if (count < 0 || Integer.toUnsignedLong(count) * entryBits > tableBits) {
+			throw new Mp4FormatException("The " + typeName(box.type()) + " box lists " + Integer.toUnsignedString(count)
+					+ " entries, more than it holds.");
+		}
+	}
+
+	private static Box require(ByteBuffer moov, Box parent, int type) throws Mp4FormatException {
+		Box box = find(moov, parent.bodyStart(), parent.end(), type);
+		if (box == null) {
+			throw new Mp4FormatException("The " + typeName(parent.type()) + " box has no " + typeName(type) + " box.");
+		}
+		return box;
+	}
+
+	/**
+	 * @param offset          the file offset of the {@code moov} box
+	 * @param box             the {@code moov} box, including its header
+	 * @param firstMdatOffset the file offset of the first {@code mdat} box preceding the {@code moov} box, or -1
+	 *                        if the {@code moov} box comes first
+	 */
+	record Moov(long offset, ByteBuffer box, long firstMdatOffset) {
+	}
+
+	/**
+	 * The sample sizes of an {@code stsz} or {@code stz2} box.
+	 *
+	 * @param tableStart the position of the first entry
+	 * @param count      the number of samples
+	 * @param sampleSize the size of every sample, or 0 if the sizes are listed
+	 * @param fieldSize  the number of bits per listed size
+	 */
+	private record SampleSizes(int tableStart, int count, int sampleSize, int fieldSize) {
+
+		long size(ByteBuffer moov, int sample) {
+			if (sampleSize != 0) {
+				return Integer.toUnsignedLong(sampleSize);
+			}
+			return switch (fieldSize) {
+				case 4 -> (moov.get(tableStart + sample / 2) >> (sample % 2 == 0 ? 4 : 0)) & 0x0F;
+				case 8 -> moov.get(tableStart + sample) & 0xFF;
+				case 16 -> moov.getShort(tableStart + sample * 2) & 0xFFFF;
+				default -> Integer.toUnsignedLong(moov.getInt(tableStart + sample * 4));
+			};
+		}
+	}
+
+}
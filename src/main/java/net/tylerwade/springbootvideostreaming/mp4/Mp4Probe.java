@@ -0,0 +1,205 @@
+package net.tylerwade.springbootvideostreaming.mp4;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.MediaInfo;
+import reactor.core.publisher.Mono;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import static net.tylerwade.springbootvideostreaming.mp4.Mp4Boxes.*;
+
+/**
+ * Reads the duration, resolution and codecs of an MP4 file from its {@code moov} box, which is found the same
+ * way as by the {@link Mp4Parser}.
+ */
+public final class Mp4Probe {
+
+	/**
+	 * The size of a visual sample entry before its child boxes.
+	 */
+	private static final int VISUAL_SAMPLE_ENTRY_SIZE = 78;
+
+	/**
+	 * The size of a version 0 audio sample entry before its child boxes.
+	 */
+	private static final int AUDIO_SAMPLE_ENTRY_SIZE = 28;
+
+	private Mp4Probe() {
+	}
+
+	/**
+	 * Describes the MP4 file with the given key.
+	 *
+	 * @param adapter  the adapter the file is read through
+	 * @param key      the key of the file
+	 * @param fileSize the size of the file in bytes
+	 * @param head     the first bytes of the file, which are not read again
+	 * @return the duration, resolution and codecs of the file, or an {@link Mp4FormatException} if it has no
+	 * {@code moov} box
+	 */
+	public static Mono<MediaInfo> probe(ContentStreamAdapter adapter, String key, long fileSize, ByteBuffer head) {
+		return Mp4Parser.findMoov(adapter, key, fileSize, head)
+				.flatMap(moov -> Mono.fromCallable(() -> describe(moov.box())));
+	}
+
+	/**
+	 * @param moov the {@code moov} box, including its header
+	 */
+	static MediaInfo describe(ByteBuffer moov) throws Mp4FormatException {
+		MediaInfo info = new MediaInfo();
+		List<String> codecs = new ArrayList<>();
+		try {
+			Box moovBox = Mp4Boxes.read(moov, 0, moov.limit());
+			Box mvhd = find(moov, moovBox.bodyStart(), moovBox.end(), MVHD);
+			if (mvhd != null) {
+				info.setDuration(duration(moov, mvhd));
+			}
+
+			int position = moovBox.bodyStart();
+			while (position + 8 <= moovBox.end()) {
+				Box trak = Mp4Boxes.read(moov, position, moovBox.end());
+				position = trak.end();
+				Box mdia = trak.type() == TRAK ? find(moov, trak.bodyStart(), trak.end(), MDIA) : null;
+				Box hdlr = mdia == null ? null : find(moov, mdia.bodyStart(), mdia.end(), HDLR);
+				Box minf = mdia == null ? null : find(moov, mdia.bodyStart(), mdia.end(), MINF);
+				Box stbl = minf == null ? null : find(moov, minf.bodyStart(), minf.end(), STBL);
+				Box stsd = stbl == null ? null : find(moov, stbl.bodyStart(), stbl.end(), STSD);
+				if (hdlr == null || stsd == null || moov.getInt(stsd.bodyStart() + 4) == 0) {
+					continue;
+				}
+
+				// Version and flags, entry count, then the first sample entry.
+				Box entry = Mp4Boxes.read(moov, stsd.bodyStart() + 8, stsd.end());
+				int handler = moov.getInt(hdlr.bodyStart() + 8);
+				if (handler == VIDE) {
+					if (info.getWidth() == null) {
+						// Reserved, data reference index and pre-defined fields, then width and height.
+						info.setWidth(moov.getShort(entry.bodyStart() + 24) & 0xFFFF);
+						info.setHeight(moov.getShort(entry.bodyStart() + 26) & 0xFFFF);
+					}
+					codecs.add(videoCodec(moov, entry));
+				} else if (handler == SOUN) {
+					codecs.add(audioCodec(moov, entry));
+				}
+			}
+		} catch (IndexOutOfBoundsException e) {
+			throw new Mp4FormatException("Truncated box in the moov box.", e);
+		}
+		info.setCodecs(List.copyOf(codecs));
+		return info;
+	}
+
+	private static Duration duration(ByteBuffer moov, Box mvhd) {
+		long timescale;
+		long duration;
+		if (moov.get(mvhd.bodyStart()) == 1) {
+			timescale = Integer.toUnsignedLong(moov.getInt(mvhd.bodyStart() + 20));
+			duration = moov.getLong(mvhd.bodyStart() + 24);
+		} else {
+			timescale = Integer.toUnsignedLong(moov.getInt(mvhd.bodyStart() + 12));
+			duration = Integer.toUnsignedLong(moov.getInt(mvhd.bodyStart() + 16));
+			if (duration == 0xFFFFFFFFL) {
+				duration = -1;
+			}
+		}
+		if (timescale == 0 || duration <= 0) {
+			return null;
+		}
+		return Duration.ofSeconds(duration / timescale, (duration % timescale) * 1_000_000_000L / timescale);
+	}
+
+	/**
+	 * Returns the codec of a visual sample entry, with the profile and level of H.264 streams.
+	 */
+	private static String videoCodec(ByteBuffer moov, Box entry) throws Mp4FormatException {
+		String codec = codecName(entry.type());
+		if (entry.type() == AVC1 || entry.type() == AVC3) {
+			Box avcC = find(moov, entry.bodyStart() + VISUAL_SAMPLE_ENTRY_SIZE, entry.end(), AVCC);
+			if (avcC != null) {
+				// Configuration version, then profile, profile compatibility and level.
+				return String.format(Locale.ROOT, "%s.%02x%02x%02x", codec, moov.get(avcC.bodyStart() + 1),
+						moov.get(avcC.bodyStart() + 2), moov.get(avcC.bodyStart() + 3));
+			}
+		}
+		return codec;
+	}
+
+	/**
+	 * Returns the codec of an audio sample entry, with the object type of MPEG-4 audio streams.
+	 */
+	private static String audioCodec(ByteBuffer moov, Box entry) throws Mp4FormatException {
+		String codec = codecName(entry.type());
+		if (entry.type() != MP4A) {
+			return codec;
+		}
+
+		// QuickTime sound sample descriptions of version 1 and 2 have additional fields.
+		int version = moov.getShort(entry.bodyStart() + 8);
+		int childStart = entry.bodyStart() + AUDIO_SAMPLE_ENTRY_SIZE + (version == 1 ? 16 : version == 2 ? 36 : 0);
+		Box esds = find(moov, childStart, entry.end(), ESDS);
+		if (esds == null) {
+			return codec;
+		}
+
+		// Version and flags, then the ES descriptor.
+		int position = esds.bodyStart() + 4;
+		if (moov.get(position) != 0x03) {
+			return codec;
+		}
+		position = descriptorBody(moov, position);
+		int flags = moov.get(position + 2) & 0xFF;
+		position += 3;
+		if ((flags & 0x80) != 0) {
+			position += 2;
+		}
+		if ((flags & 0x40) != 0) {
+			position += 1 + (moov.get(position) & 0xFF);
+		}
+		if ((flags & 0x20) != 0) {
+			position += 2;
+		}
+
+		if (moov.get(position) != 0x04) {
+			return codec;
+		}
+		position = descriptorBody(moov, position);
+		int objectType = moov.get(position) & 0xFF;
+		codec = String.format(Locale.ROOT, "%s.%02x", codec, objectType);
+
+		// Object type, stream type, buffer size and bitrates, then the decoder specific info.
+		position += 13;
+		if (objectType == 0x40 && position < esds.end() && moov.get(position) == 0x05) {
+			position = descriptorBody(moov, position);
+			int audioObjectType = (moov.get(position) & 0xFF) >> 3;
+			if (audioObjectType == 31) {
+				audioObjectType = 32 + (((moov.get(position) & 0x07) << 3) | ((moov.get(position + 1) & 0xFF) >> 5));
+			}
+			codec += "." + audioObjectType;
+		}
+		return codec;
+	}
+
+	/**
+	 * Skips the tag and the variable-length size of an MPEG-4 descriptor.
+	 *
+	 * @return the position of the descriptor's body
+	 */
+	private static int descriptorBody(ByteBuffer moov, int position) {
+		position++;
+		for (int i = 0; i < 4; i++) {
+			if ((moov.get(position++) & 0x80) == 0) {
+				break;
+			}
+		}
+		return position;
+	}
+
+	private static String codecName(int type) {
+		return typeName(type).trim();
+	}
+
+}
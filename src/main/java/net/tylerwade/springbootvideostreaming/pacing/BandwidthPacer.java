@@ -0,0 +1,205 @@
+package net.tylerwade.springbootvideostreaming.pacing;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code BandwidthPacer} paces content to the rate of a per-stream {@link TokenBucket} and an optional
+ * global egress budget shared by all streams.
+ * <p>
+ * Every buffer reserves its bytes from the stream's bucket, waits until the stream's rate allows it, and only
+ * then reserves them from the global bucket, so a throttled stream never holds a place in the global budget
+ * that other streams could use. The global bucket grants reservations in order, and a stream reserves its
+ * next buffer only after the previous one was emitted, so streams competing for the global budget take turns
+ * buffer by buffer and share it fairly. Buffers that have to wait are released by a single ticker shared by all
+ * streams, every {@code tick}; there is no timer per stream or per buffer. The ticker is started when the first
+ * buffer has to wait, so a pacer whose streams never wait costs nothing.
+ * <p>
+ * Bytes reserved for a buffer whose stream is cancelled while it waits are given back to the buckets they were
+ * reserved from, so cancelled streams do not hold on to the global budget.
+ */
+public class BandwidthPacer implements Closeable {
+
+	public static final Duration DEFAULT_TICK = Duration.ofMillis(5);
+
+	private static final Mono<Void> NO_WAIT = Mono.empty();
+
+	private final TokenBucket globalBucket;
+	private final long tickNanos;
+
+	private final PriorityBlockingQueue<Waiter> waiters = new PriorityBlockingQueue<>(64,
+			Comparator.comparingLong(Waiter::releaseNanos).thenComparingLong(Waiter::sequence));
+	private final AtomicLong sequence = new AtomicLong();
+	private Disposable ticker;
+	private boolean closed;
+
+	private final LongAdder delayed = new LongAdder();
+
+	/**
+	 * @param globalBucket the egress budget shared by all streams, or {@code null} for none
+	 * @param tick         how often waiting buffers are released
+	 */
+	public BandwidthPacer(TokenBucket globalBucket, Duration tick) {
+		this.globalBucket = globalBucket;
+		this.tickNanos = tick.toNanos();
+	}
+
+	public BandwidthPacer(TokenBucket globalBucket) {
+		this(globalBucket, DEFAULT_TICK);
+	}
+
+	/**
+	 * Paces the given content.
+	 *
+	 * @param content      the content
+	 * @param streamBucket the bucket of the stream, or {@code null} if only the global budget applies
+	 * @return the paced content
+	 */
+	public Flux<DataBuffer> pace(Flux<DataBuffer> content, TokenBucket streamBucket) {
+		if (streamBucket == null && globalBucket == null) {
+			return content;
+		}
+		return content.concatMap(buffer -> {
+			Mono<Void> wait = acquire(streamBucket, buffer.readableByteCount());
+			return wait == NO_WAIT
+					? Mono.just(buffer)
+					: wait.then(Mono.just(buffer)).doOnCancel(() -> DataBufferUtils.release(buffer));
+		});
+	}
+
+	/**
+	 * Reserves the given number of bytes from the stream's bucket and the global bucket.
+	 *
+	 * @param streamBucket the bucket of the stream, or {@code null} if only the global budget applies
+	 * @param bytes        the number of bytes to send
+	 * @return a {@code Mono} completing when the bytes may be sent
+	 */
+	public Mono<Void> acquire(TokenBucket streamBucket, long bytes) {
+		long now = System.nanoTime();
+		if (streamBucket != null) {
+			long release = streamBucket.reserve(bytes, now);
+			if (release - now > tickNanos / 2) {
+				delayed.increment();
+				return await(release, streamBucket, bytes).then(Mono.defer(() -> acquireGlobal(bytes)));
+			}
+		}
+
+		Mono<Void> wait = acquireGlobal(bytes);
+		if (wait != NO_WAIT) {
+			delayed.increment();
+		}
+		return wait;
+	}
+
+	/**
+	 * Reserves the given number of bytes from the global bucket, from now on.
+	 */
+	private Mono<Void> acquireGlobal(long bytes) {
+		if (globalBucket == null) {
+			return NO_WAIT;
+		}
+		long now = System.nanoTime();
+		long release = globalBucket.reserve(bytes, now);
+		// Waits shorter than half a tick are not worth a trip through the ticker.
+		return release - now <= tickNanos / 2 ? NO_WAIT : await(release, globalBucket, bytes);
+	}
+
+	/**
+	 * Waits until the given time, giving the reserved bytes back to the bucket if the wait is cancelled.
+	 */
+	private Mono<Void> await(long releaseNanos, TokenBucket bucket, long bytes) {
+		return Mono.create(sink -> {
+			Waiter waiter = new Waiter(releaseNanos, sequence.getAndIncrement(), sink);
+			sink.onCancel(() -> {
+				// A waiter that is no longer queued has been released, its bytes are being sent.
+				if (waiters.remove(waiter)) {
+					bucket.refund(bytes);
+				}
+			});
+			waiters.add(waiter);
+			// A closed pacer releases all buffers at once.
+			if (!startTicker() && waiters.remove(waiter)) {
+				sink.success();
+			}
+		});
+	}
+
+	/**
+	 * Starts the ticker unless it is running.
+	 *
+	 * @return {@code false} if the pacer has been closed
+	 */
+	private synchronized boolean startTicker() {
+		if (closed) {
+			return false;
+		}
+		if (ticker == null) {
+			ticker = Schedulers.parallel().schedulePeriodically(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+		}
+		return true;
+	}
+
+	private void tick() {
+		long now = System.nanoTime();
+		Waiter waiter;
+		while ((waiter = waiters.poll()) != null) {
+			if (waiter.releaseNanos() - now > tickNanos / 2) {
+				waiters.add(waiter);
+				return;
+			}
+			waiter.sink().success();
+		}
+	}
+
+	/**
+	 * @return the number of buffers or regions that had to wait
+	 */
+	public long getDelayedCount() {
+		return delayed.sum();
+	}
+
+	/**
+	 * @return the number of buffers or regions currently waiting
+	 */
+	public int getWaitingCount() {
+		return waiters.size();
+	}
+
+	public TokenBucket getGlobalBucket() {
+		return globalBucket;
+	}
+
+	/**
+	 * Stops the ticker and releases all waiting buffers.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+			if (ticker != null) {
+				ticker.dispose();
+			}
+		}
+		Waiter waiter;
+		while ((waiter = waiters.poll()) != null) {
+			waiter.sink().success();
+		}
+	}
+
+	private record Waiter(long releaseNanos, long sequence, MonoSink<Void> sink) {
+	}
+
+}
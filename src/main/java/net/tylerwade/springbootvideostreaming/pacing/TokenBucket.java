@@ -0,0 +1,83 @@
+package net.tylerwade.springbootvideostreaming.pacing;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket limiting a byte rate, with a burst of up to {@code burstBytes} sent at once.
+ * <p>
+ * The bucket does not refill on a timer. It keeps a single virtual time instead: the time at which all bytes
+ * reserved so far have been paid for at the configured rate ("generic cell rate algorithm"). Reserving bytes
+ * advances the virtual time by their cost, and the bytes may be sent once the clock has reached it. The virtual
+ * time never lags more than a burst behind the clock, so an idle bucket fills up to its burst. A reservation
+ * costs a single compare-and-set.
+ */
+public final class TokenBucket {
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+	private final long bytesPerSecond;
+	private final long burstBytes;
+	private final long burstNanos;
+
+	private final AtomicLong virtualTime = new AtomicLong(Long.MIN_VALUE / 2);
+
+	/**
+	 * @param bytesPerSecond the sustained rate
+	 * @param burstBytes     the number of bytes that can be sent at once after the bucket has been idle
+	 */
+	public TokenBucket(long bytesPerSecond, long burstBytes) {
+		if (bytesPerSecond < 1) {
+			throw new IllegalArgumentException("bytesPerSecond must be at least 1.");
+		}
+		if (burstBytes < 0) {
+			throw new IllegalArgumentException("burstBytes must not be negative.");
+		}
+		this.bytesPerSecond = bytesPerSecond;
+		this.burstBytes = burstBytes;
+		this.burstNanos = costNanos(burstBytes);
+	}
+
+	/**
+	 * Reserves the given number of bytes, to be sent at or after {@code earliestNanos}. Reservations are
+	 * granted in the order they are made, so concurrent streams sharing a bucket take turns.
+	 *
+	 * @param bytes         the number of bytes to send
+	 * @param earliestNanos the {@link System#nanoTime()} at which the bytes could be sent at the earliest
+	 * @return the {@link System#nanoTime()} at which the bytes may be sent, at least {@code earliestNanos}
+	 */
+	public long reserve(long bytes, long earliestNanos) {
+		long cost = costNanos(bytes);
+		while (true) {
+			long current = virtualTime.get();
+			// An idle bucket holds at most a burst of tokens.
+			long start = Math.max(current, earliestNanos - burstNanos);
+			long next = start + cost;
+			if (virtualTime.compareAndSet(current, next)) {
+				return Math.max(earliestNanos, next);
+			}
+		}
+	}
+
+	/**
+	 * Gives back the given number of reserved bytes that will not be sent, e.g. because the stream was cancelled
+	 * while it waited for them. Later reservations are granted earlier, though never more than a burst at once.
+	 *
+	 * @param bytes the number of bytes to give back
+	 */
+	public void refund(long bytes) {
+		virtualTime.addAndGet(-costNanos(bytes));
+	}
+
+	public long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	public long getBurstBytes() {
+		return burstBytes;
+	}
+
+	private long costNanos(long bytes) {
+		return (long) ((double) bytes * NANOS_PER_SECOND / bytesPerSecond);
+	}
+
+}
@@ -0,0 +1,182 @@
+package net.tylerwade.springbootvideostreaming.web;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Instant;
+import java.util.MissingResourceException;
+import java.util.function.Function;
+
+/**
+ * The {@code ContentStreamHandler} streams content from a {@link ContentStreamAdapter} over HTTP, so applications
+ * do not need to write their own controller. It reads the {@code Range}, {@code If-None-Match},
+ * {@code If-Modified-Since} and {@code If-Range} headers of the request and answers with
+ * {@link StreamedContent#toResponseEntity()}'s status and headers. The catalog is listed page by page under the
+ * same path.
+ * <p>
+ * The client ID of every request, see {@link StreamContentRequest#getClientId()}, is the remote address by
+ * default. Viewers behind one NAT or proxy share an address, and so share a stream's chunk sizes and pacing
+ * budget; use {@link #clientIdFromHeader(String)} to tell them apart by a header their player sends.
+ * <p>
+ * Registered by {@link net.tylerwade.springbootvideostreaming.config.AutoConfig} when
+ * {@code video-streaming.endpoint.enabled=true}.
+ */
+public class ContentStreamHandler {
+
+	/**
+	 * The page size of catalog listings without a {@code maxKeys} parameter.
+	 */
+	public static final int DEFAULT_MAX_KEYS = 100;
+
+	/**
+	 * Identifies the client of a request by its remote address.
+	 */
+	public static final Function<ServerRequest, String> REMOTE_ADDRESS =
+			request -> request.remoteAddress().map(InetSocketAddress::getHostString).orElse(null);
+
+	private final ContentStreamAdapter contentStreamAdapter;
+	private final Function<ServerRequest, String> clientIdResolver;
+
+	/**
+	 * @param contentStreamAdapter the adapter the content is loaded from
+	 * @param clientIdResolver     returns the client ID of a request, or {@code null} if it is not known
+	 */
+	public ContentStreamHandler(ContentStreamAdapter contentStreamAdapter, Function<ServerRequest, String> clientIdResolver) {
+		this.contentStreamAdapter = contentStreamAdapter;
+		this.clientIdResolver = clientIdResolver;
+	}
+
+	public ContentStreamHandler(ContentStreamAdapter contentStreamAdapter) {
+		this(contentStreamAdapter, REMOTE_ADDRESS);
+	}
+
+	/**
+	 * Identifies the client of a request by the given header, e.g. a playback session ID sent by the player,
+	 * together with its remote address, and by its remote address alone if the header is missing.
+	 * <p>
+	 * The header is set by the client, so it is combined with the remote address: a client cannot share the
+	 * chunk sizes and pacing buckets of a client at another address. A client that sends a new value with every
+	 * request still gets a new stream, and its initial burst, every time, and pushes the streams of other
+	 * clients out of the adapters' bounded caches. Only use a header that a trusted proxy sets or verifies.
+	 *
+	 * @param headerName the name of the header
+	 * @return the client ID resolver
+	 */
+	public static Function<ServerRequest, String> clientIdFromHeader(String headerName) {
+		return request -> {
+			String clientId = request.headers().firstHeader(headerName);
+			String remoteAddress = REMOTE_ADDRESS.apply(request);
+			if (clientId == null || clientId.isBlank()) {
+				return remoteAddress;
+			}
+			return remoteAddress == null ? clientId : remoteAddress + "/" + clientId;
+		};
+	}
+
+	/**
+	 * Creates a router sending {@code GET <path>/<key>} requests to this handler. The key may contain slashes.
+	 * {@code GET <path>} lists the catalog page by page.
+	 *
+	 * @param path the path the content is served under, e.g. {@code /videos}
+	 * @return the router function
+	 */
+	public RouterFunction<ServerResponse> routerFunction(String path) {
+		String prefix = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+		// The listing goes first, "{*key}" also matches the path itself.
+		return RouterFunctions.route(RequestPredicates.GET(prefix), this::listContent)
+				.andRoute(RequestPredicates.GET(prefix + "/{*key}"), this::streamContent);
+	}
+
+	/**
+	 * Lists a page of the catalog as JSON. The optional {@code prefix}, {@code continuationToken} and
+	 * {@code maxKeys} query parameters are passed to
+	 * {@link ContentStreamAdapter#listContentMetadata(String, String, int)}.
+	 */
+	public Mono<ServerResponse> listContent(ServerRequest request) {
+		int maxKeys;
+		try {
+			maxKeys = request.queryParam("maxKeys").map(Integer::parseInt).orElse(DEFAULT_MAX_KEYS);
+		} catch (NumberFormatException e) {
+			return ServerResponse.badRequest().build();
+		}
+		if (maxKeys < 1) {
+			return ServerResponse.badRequest().build();
+		}
+
+		return contentStreamAdapter.listContentMetadata(request.queryParam("prefix").orElse(null),
+						request.queryParam("continuationToken").orElse(null), maxKeys)
+				.flatMap(page -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON).bodyValue(page));
+	}
+
+	/**
+	 * Streams the content with the key in the {@code key} path variable.
+	 */
+	public Mono<ServerResponse> streamContent(ServerRequest request) {
+		String key = request.pathVariable("key");
+		if (key.startsWith("/")) {
+			key = key.substring(1);
+		}
+		if (!isValidKey(key)) {
+			return ServerResponse.notFound().build();
+		}
+
+		HttpHeaders headers = request.headers().asHttpHeaders();
+		long ifModifiedSince = headers.getIfModifiedSince();
+		StreamContentRequest contentRequest = StreamContentRequest.builder()
+				.key(key)
+				.ranges(RangeHeaderParser.parse(headers.getFirst(HttpHeaders.RANGE)))
+				.clientId(clientIdResolver.apply(request))
+				.ifNoneMatch(headers.getFirst(HttpHeaders.IF_NONE_MATCH))
+				.ifModifiedSince(ifModifiedSince < 0 ? null : Instant.ofEpochMilli(ifModifiedSince))
+				.ifRange(headers.getFirst(HttpHeaders.IF_RANGE))
+				.build();
+
+		return contentStreamAdapter.loadContent(contentRequest)
+				.doOnNext(content -> contentStreamAdapter.chunkServed(contentRequest, content))
+				.flatMap(content -> toServerResponse(content.toResponseEntity()))
+				.onErrorResume(MissingResourceException.class, e -> ServerResponse.notFound().build());
+	}
+
+	/**
+	 * Rejects empty keys and keys with empty, {@code .} or {@code ..} segments. The key is decoded from the path,
+	 * so {@code ..%2F} arrives as {@code ../}, and would otherwise let a request read outside the content's
+	 * directory from adapters that resolve keys as paths.
+	 */
+	private static boolean isValidKey(String key) {
+		if (key.isEmpty()) {
+			return false;
+		}
+		for (String segment : key.split("[/\\\\]", -1)) {
+			if (segment.isEmpty() || segment.equals(".") || segment.equals("..")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Mono<ServerResponse> toServerResponse(ResponseEntity<Flux<DataBuffer>> responseEntity) {
+		ServerResponse.BodyBuilder response = ServerResponse.status(responseEntity.getStatusCode())
+				.headers(headers -> headers.addAll(responseEntity.getHeaders()));
+		Flux<DataBuffer> body = responseEntity.getBody();
+		if (body == null) {
+			return response.build();
+		}
+		// Written through the message writers, so file regions are sent with zero-copy.
+		return response.body(BodyInserters.fromPublisher(body, DataBuffer.class));
+	}
+
+}
@@ -0,0 +1,66 @@
+package net.tylerwade.springbootvideostreaming.web;
+
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DataBufferEncoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+import org.springframework.http.ReactiveHttpOutputMessage;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.codec.EncoderHttpMessageWriter;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@code FileRegionHttpMessageWriter} writes {@code DataBuffer} publishers to the response. If the
+ * publisher is a {@link FileRegionContent} and the response supports {@link ZeroCopyHttpOutputMessage},
+ * the file region is sent directly from the file to the socket. Every other publisher is written by the
+ * default {@code DataBuffer} writer.
+ * <p>
+ * This writer is registered automatically by {@link net.tylerwade.springbootvideostreaming.config.AutoConfig}
+ * so controllers returning {@code StreamedContent.toResponseEntity()} get the zero-copy path without changes.
+ */
+public class FileRegionHttpMessageWriter implements HttpMessageWriter<DataBuffer> {
+
+	private final EncoderHttpMessageWriter<DataBuffer> delegate = new EncoderHttpMessageWriter<>(new DataBufferEncoder());
+
+	@Override
+	public List<MediaType> getWritableMediaTypes() {
+		return delegate.getWritableMediaTypes();
+	}
+
+	@Override
+	public boolean canWrite(ResolvableType elementType, MediaType mediaType) {
+		return delegate.canWrite(elementType, mediaType);
+	}
+
+	@Override
+	public Mono<Void> write(Publisher<? extends DataBuffer> inputStream, ResolvableType elementType, MediaType mediaType,
+							ReactiveHttpOutputMessage message, Map<String, Object> hints) {
+		if (inputStream instanceof FileRegionContent region && message instanceof ZeroCopyHttpOutputMessage zeroCopyMessage) {
+			if (message.getHeaders().getContentType() == null && mediaType != null && mediaType.isConcrete()) {
+				message.getHeaders().setContentType(mediaType);
+			}
+			message.getHeaders().setContentLength(region.getCount());
+			return region.transformWrite(zeroCopyMessage.writeWith(region.getFile(), region.getPosition(), region.getCount()));
+		}
+
+		return delegate.write(inputStream, elementType, mediaType, message, hints);
+	}
+
+	@Override
+	public Mono<Void> write(Publisher<? extends DataBuffer> inputStream, ResolvableType actualType, ResolvableType elementType,
+							MediaType mediaType, ServerHttpRequest request, ServerHttpResponse response, Map<String, Object> hints) {
+		if (inputStream instanceof FileRegionContent) {
+			return write(inputStream, elementType, mediaType, response, hints);
+		}
+
+		return delegate.write(inputStream, actualType, elementType, mediaType, request, response, hints);
+	}
+}
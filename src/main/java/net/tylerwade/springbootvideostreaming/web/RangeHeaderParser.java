@@ -0,0 +1,155 @@
+package net.tylerwade.springbootvideostreaming.web;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the value of an HTTP {@code Range} header as defined by RFC 9110, e.g. {@code bytes=0-1023},
+ * {@code bytes=1024-} or {@code bytes=0-99,-500}.
+ * <p>
+ * The header is scanned in place without splitting it into substrings, so the only objects allocated are the
+ * returned ranges and their list. Headers that cannot be parsed are ignored as RFC 9110 allows: {@link #parse}
+ * returns {@code null} and the content is served as if no range had been requested. Whether the ranges can be
+ * satisfied depends on the size of the content and is decided by the adapter, which answers with 416 Range Not
+ * Satisfiable if none of them can.
+ */
+public final class RangeHeaderParser {
+
+	/**
+	 * Headers with more ranges than this are ignored, like requests with more ranges are by the adapters.
+	 */
+	public static final int MAX_RANGES = ContentStreamAdapter.MAX_RANGES;
+
+	private static final String BYTES_UNIT = "bytes";
+
+	private RangeHeaderParser() {
+	}
+
+	/**
+	 * @param header the value of the {@code Range} header, may be {@code null}
+	 * @return the requested ranges in the order they appear in the header, or {@code null} if the header is
+	 * absent, uses another unit than {@code bytes}, or is not a valid range set
+	 */
+	public static List<Range> parse(String header) {
+		if (header == null) {
+			return null;
+		}
+
+		int length = header.length();
+		int position = skipWhitespace(header, 0, length);
+		if (!header.regionMatches(true, position, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+			return null;
+		}
+		position = skipWhitespace(header, position + BYTES_UNIT.length(), length);
+		if (position >= length || header.charAt(position) != '=') {
+			return null;
+		}
+		position++;
+
+		Range first = null;
+		List<Range> ranges = null;
+		while (true) {
+			position = skipWhitespace(header, position, length);
+			// Empty list elements are allowed by the list syntax, e.g. "bytes=0-1,,2-3".
+			if (position < length && header.charAt(position) == ',') {
+				position++;
+				continue;
+			}
+			if (position >= length) {
+				break;
+			}
+
+			long start = -1;
+			int digitsEnd = scanDigits(header, position, length);
+			if (digitsEnd > position) {
+				start = parseLong(header, position, digitsEnd);
+				position = digitsEnd;
+			}
+			if (position >= length || header.charAt(position) != '-') {
+				return null;
+			}
+			position++;
+
+			long end = -1;
+			digitsEnd = scanDigits(header, position, length);
+			if (digitsEnd > position) {
+				end = parseLong(header, position, digitsEnd);
+				position = digitsEnd;
+			}
+
+			Range range;
+			if (start < 0) {
+				// "-" alone is not a range, "-500" is the last 500 bytes.
+				if (end < 0) {
+					return null;
+				}
+				range = Range.suffix(end);
+			} else {
+				if (end >= 0 && end < start) {
+					return null;
+				}
+				range = new Range(start, end < 0 ? null : end);
+			}
+
+			if (first == null) {
+				first = range;
+			} else {
+				if (ranges == null) {
+					ranges = new ArrayList<>(4);
+					ranges.add(first);
+				}
+				if (ranges.size() == MAX_RANGES) {
+					return null;
+				}
+				ranges.add(range);
+			}
+
+			position = skipWhitespace(header, position, length);
+			if (position < length) {
+				if (header.charAt(position) != ',') {
+					return null;
+				}
+				position++;
+			}
+		}
+
+		if (first == null) {
+			return null;
+		}
+		return ranges != null ? ranges : List.of(first);
+	}
+
+	private static int skipWhitespace(String header, int position, int length) {
+		while (position < length && (header.charAt(position) == ' ' || header.charAt(position) == '\t')) {
+			position++;
+		}
+		return position;
+	}
+
+	private static int scanDigits(String header, int position, int length) {
+		while (position < length && header.charAt(position) >= '0' && header.charAt(position) <= '9') {
+			position++;
+		}
+		return position;
+	}
+
+	/**
+	 * @return the value of the digits from {@code from} to {@code to}, or {@code Long.MAX_VALUE} if it does not
+	 * fit into a long, which lies beyond the end of any content
+	 */
+	private static long parseLong(String header, int from, int to) {
+		long value = 0;
+		for (int i = from; i < to; i++) {
+			int digit = header.charAt(i) - '0';
+			if (value > (Long.MAX_VALUE - digit) / 10) {
+				return Long.MAX_VALUE;
+			}
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+}
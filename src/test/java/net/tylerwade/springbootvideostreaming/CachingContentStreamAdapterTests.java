@@ -0,0 +1,215 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.CachingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingContentStreamAdapterTests {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	private RecordingContentStreamAdapter delegate;
+
+	private CachingContentStreamAdapter contentStreamAdapter;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+
+		delegate = new RecordingContentStreamAdapter(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		contentStreamAdapter = new CachingContentStreamAdapter(delegate, BLOCK_SIZE, 64L * BLOCK_SIZE);
+	}
+
+	@Test
+	void loadContent_unalignedRange_returnsExactBytes() {
+		Range range = new Range(1000L, 3L * BLOCK_SIZE + 500);
+
+		StreamedContent content = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block();
+
+		assertNotNull(content);
+		assertEquals(range, content.getRange());
+		assertThat(content.getMetadata()).usingRecursiveComparison().ignoringFields("eTag", "lastModified").isEqualTo(EARTH_SPINNING_METADATA);
+		assertArrayEquals(expectedBytes(range), join(content));
+	}
+
+	@Test
+	void loadContent_cachedRange_doesNotHitDelegate() {
+		Range range = new Range(1000L, 3L * BLOCK_SIZE + 500);
+		loadBytes(range);
+		int delegateRequests = delegate.getRequestedRanges().size();
+
+		assertArrayEquals(expectedBytes(range), loadBytes(range));
+		assertEquals(delegateRequests, delegate.getRequestedRanges().size());
+		assertEquals(4, contentStreamAdapter.getHitCount());
+	}
+
+	@Test
+	void loadContent_partiallyCachedRange_fetchesOnlyMissingBlocks() {
+		loadBytes(new Range(0L, 2L * BLOCK_SIZE - 1));
+		delegate.getRequestedRanges().clear();
+
+		Range range = new Range((long) BLOCK_SIZE, 4L * BLOCK_SIZE - 1);
+		assertArrayEquals(expectedBytes(range), loadBytes(range));
+
+		assertThat(delegate.getRequestedRanges())
+				.containsExactly(new Range(2L * BLOCK_SIZE, 4L * BLOCK_SIZE - 1));
+	}
+
+	@Test
+	void loadContent_lastBlock_isShorterThanBlockSize() {
+		Range range = new Range(EARTH_SPINNING_FILE_SIZE - 10, null);
+
+		assertArrayEquals(expectedBytes(new Range(EARTH_SPINNING_FILE_SIZE - 10, EARTH_SPINNING_FILE_SIZE - 1)), loadBytes(range));
+		assertArrayEquals(expectedBytes(new Range(EARTH_SPINNING_FILE_SIZE - 10, EARTH_SPINNING_FILE_SIZE - 1)), loadBytes(range));
+		assertEquals(1, delegate.getRequestedRanges().size());
+	}
+
+	@Test
+	void loadContent_scan_doesNotEvictPopularBlocks() {
+		CachingContentStreamAdapter smallCache = new CachingContentStreamAdapter(delegate, 1024, 16L * 1024);
+
+		for (int i = 0; i < 4; i++) {
+			for (long block = 0; block < 8; block++) {
+				loadBytes(smallCache, new Range(block * 1024, block * 1024 + 1023));
+			}
+		}
+
+		// A one-off scan over other content.
+		for (long block = 100; block < 400; block++) {
+			loadBytes(smallCache, new Range(block * 1024, block * 1024 + 1023));
+		}
+
+		delegate.getRequestedRanges().clear();
+		for (long block = 0; block < 8; block++) {
+			loadBytes(smallCache, new Range(block * 1024, block * 1024 + 1023));
+		}
+
+		assertThat(delegate.getRequestedRanges()).isEmpty();
+		assertThat(smallCache.getRejectionCount()).isPositive();
+		assertThat(smallCache.getCachedBytes()).isLessThanOrEqualTo(16L * 1024);
+	}
+
+	@Test
+	void loadContent_rejectedBlock_doesNotEvictAnything() {
+		// Room for the short last block and 15 full blocks in the main region.
+		CachingContentStreamAdapter smallCache = new CachingContentStreamAdapter(delegate, 1024, 16L * 1024 + 512);
+		Range lastBlock = new Range(853L * 1024, EARTH_SPINNING_FILE_SIZE - 1);
+		loadBytes(smallCache, lastBlock);
+		loadBytes(smallCache, lastBlock);
+		for (int i = 0; i < 4; i++) {
+			for (long block = 0; block < 15; block++) {
+				loadBytes(smallCache, new Range(block * 1024, block * 1024 + 1023));
+			}
+		}
+		loadBytes(smallCache, new Range(600L * 1024, 600L * 1024 + 1023));
+
+		// More popular than the last block but not than the others, so admitting it would need two victims.
+		for (int i = 0; i < 3; i++) {
+			loadBytes(smallCache, new Range(500L * 1024, 500L * 1024 + 1023));
+		}
+		loadBytes(smallCache, new Range(501L * 1024, 501L * 1024 + 1023));
+
+		delegate.getRequestedRanges().clear();
+		loadBytes(smallCache, lastBlock);
+		assertThat(delegate.getRequestedRanges()).isEmpty();
+	}
+
+	@Test
+	void invalidate_removesCachedBlocks() {
+		Range range = new Range(0L, BLOCK_SIZE - 1L);
+		loadBytes(range);
+
+		contentStreamAdapter.invalidate(EARTH_SPINNING_VIDEO_KEY);
+
+		assertEquals(0, contentStreamAdapter.getCachedBlockCount());
+		loadBytes(range);
+		assertEquals(2, delegate.getRequestedRanges().size());
+	}
+
+	@Test
+	void loadContent_expiredMetadata_refetchesReplacedContent(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve(EARTH_SPINNING_VIDEO_KEY);
+		Files.write(file, Arrays.copyOf(videoBytes, 1000));
+		Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-01T00:00:00Z")));
+
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			fileSystemAdapter.setRevalidateInterval(Duration.ZERO);
+			CachingContentStreamAdapter expiringCache = new CachingContentStreamAdapter(fileSystemAdapter, BLOCK_SIZE, 64L * BLOCK_SIZE, Duration.ZERO);
+			Range range = new Range(0L, 99L);
+
+			assertArrayEquals(Arrays.copyOf(videoBytes, 100), loadBytes(expiringCache, range));
+			assertArrayEquals(Arrays.copyOf(videoBytes, 100), loadBytes(expiringCache, range));
+
+			byte[] replaced = Arrays.copyOfRange(videoBytes, 5000, 7000);
+			Files.write(file, replaced);
+			Files.setLastModifiedTime(file, FileTime.from(Instant.parse("2024-01-02T00:00:00Z")));
+
+			assertArrayEquals(Arrays.copyOf(replaced, 100), loadBytes(expiringCache, range));
+		}
+	}
+
+	@Test
+	void loadContent_uncachedConditionalRequest_fetchesNoBlocks() throws IOException {
+		String eTag = delegate.getContentMetadata(EARTH_SPINNING_VIDEO_KEY).getETag();
+
+		StreamedContent content = contentStreamAdapter.loadContent(StreamContentRequest.builder()
+				.key(EARTH_SPINNING_VIDEO_KEY)
+				.range(new Range(0L, null))
+				.ifNoneMatch(eTag)
+				.build()).block();
+
+		assertNotNull(content);
+		assertTrue(content.isNotModified());
+		assertEquals(0, contentStreamAdapter.getMissCount());
+		assertEquals(0, contentStreamAdapter.getCachedBlockCount());
+	}
+
+	private byte[] expectedBytes(Range range) {
+		return Arrays.copyOfRange(videoBytes, range.getStart().intValue(), range.getEnd().intValue() + 1);
+	}
+
+	private byte[] loadBytes(Range range) {
+		return loadBytes(contentStreamAdapter, range);
+	}
+
+	private static byte[] loadBytes(ContentStreamAdapter adapter, Range range) {
+		return join(adapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block());
+	}
+
+	private static byte[] join(StreamedContent content) {
+		DataBuffer joined = DataBufferUtils.join(content.getContent()).block();
+		byte[] bytes = new byte[joined.readableByteCount()];
+		joined.read(bytes);
+		DataBufferUtils.release(joined);
+		return bytes;
+	}
+
+}
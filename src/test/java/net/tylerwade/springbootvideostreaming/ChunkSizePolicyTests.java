@@ -0,0 +1,177 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.chunk.BitrateAwareChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkRequest;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.chunk.FastStartChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.chunk.KeyPatternChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkSizePolicyTests {
+
+	private static final long FILE_SIZE = 100L * 1024 * 1024;
+
+	@Test
+	void defaultPolicy_returnsMaxChunkSize() {
+		assertEquals(ContentStreamAdapter.MAX_CHUNK_SIZE, ChunkSizePolicy.DEFAULT.chunkSize(new ChunkRequest("key", null, 0, FILE_SIZE)));
+		assertEquals(ContentStreamAdapter.MAX_CHUNK_SIZE, ChunkSizePolicy.DEFAULT.getMaxChunkSize());
+	}
+
+	@Test
+	void fastStart_sequentialChunks_grow() {
+		FastStartChunkSizePolicy policy = new FastStartChunkSizePolicy(100, 2.0, 500);
+
+		assertEquals(100, serve(policy, "client", 0));
+		assertEquals(200, serve(policy, "client", 100));
+		assertEquals(400, serve(policy, "client", 300));
+		assertEquals(500, serve(policy, "client", 700));
+		assertEquals(500, serve(policy, "client", 1200));
+	}
+
+	@Test
+	void fastStart_seek_resetsToInitialChunkSize() {
+		FastStartChunkSizePolicy policy = new FastStartChunkSizePolicy(100, 2.0, 500);
+		serve(policy, "client", 0);
+		serve(policy, "client", 100);
+
+		assertEquals(100, serve(policy, "client", 5000));
+		assertEquals(200, serve(policy, "client", 5100));
+	}
+
+	@Test
+	void fastStart_repeatedRequest_returnsSameChunkSize() {
+		FastStartChunkSizePolicy policy = new FastStartChunkSizePolicy(100, 2.0, 500);
+		serve(policy, "client", 0);
+
+		assertEquals(200, serve(policy, "client", 100));
+		assertEquals(200, serve(policy, "client", 100));
+	}
+
+	@Test
+	void fastStart_chunkSize_doesNotChangeState() {
+		FastStartChunkSizePolicy policy = new FastStartChunkSizePolicy(100, 2.0, 500);
+		serve(policy, "client", 0);
+
+		// Sized by decorators, range resolution or read-ahead, but never served.
+		assertEquals(200, policy.chunkSize(new ChunkRequest("key", "client", 100, FILE_SIZE)));
+		assertEquals(100, policy.chunkSize(new ChunkRequest("key", "client", 300, FILE_SIZE)));
+		assertEquals(100, policy.chunkSize(new ChunkRequest("key", "client", 5000, FILE_SIZE)));
+
+		assertEquals(200, serve(policy, "client", 100));
+	}
+
+	@Test
+	void fastStart_nextChunkSize_doesNotChangeState() {
+		FastStartChunkSizePolicy policy = new FastStartChunkSizePolicy(100, 2.0, 500);
+		serve(policy, "client", 0);
+
+		assertEquals(400, policy.nextChunkSize(new ChunkRequest("key", "client", 300, FILE_SIZE), 200));
+		assertEquals(500, policy.nextChunkSize(new ChunkRequest("key", "client", 700, FILE_SIZE), 400));
+		assertEquals(200, policy.chunkSize(new ChunkRequest("key", "client", 100, FILE_SIZE)));
+	}
+
+	@Test
+	void fastStart_clients_areTrackedSeparately() {
+		FastStartChunkSizePolicy policy = new FastStartChunkSizePolicy(100, 2.0, 500, 1);
+		serve(policy, "client-1", 0);
+
+		assertEquals(100, serve(policy, "client-2", 100));
+		assertEquals(1, policy.getTrackedStreamCount());
+	}
+
+	@Test
+	void bitrateAware_sizesChunksByDuration() {
+		Map<String, Duration> durations = Map.of("movie.mp4", Duration.ofSeconds(100), "short.mp4", Duration.ofSeconds(10_000));
+		BitrateAwareChunkSizePolicy policy = new BitrateAwareChunkSizePolicy(durations::get, Duration.ofSeconds(4), 1024, 8L * 1024 * 1024);
+
+		// 100MB over 100 seconds is 1MB per second.
+		assertEquals(4L * 1024 * 1024, policy.chunkSize(new ChunkRequest("movie.mp4", null, 0, FILE_SIZE)));
+		assertEquals(41944, policy.chunkSize(new ChunkRequest("short.mp4", null, 0, FILE_SIZE)));
+		assertEquals(8L * 1024 * 1024, policy.chunkSize(new ChunkRequest("unknown.mp4", null, 0, FILE_SIZE)));
+	}
+
+	@Test
+	void keyPattern_choosesPolicyByKey() {
+		KeyPatternChunkSizePolicy policy = new KeyPatternChunkSizePolicy(ChunkSizePolicy.fixed(1000))
+				.with("trailers/.*", ChunkSizePolicy.fixed(100))
+				.with(".*\\.mkv", ChunkSizePolicy.fixed(5000));
+
+		assertEquals(100, policy.chunkSize(new ChunkRequest("trailers/intro.mp4", null, 0, FILE_SIZE)));
+		assertEquals(5000, policy.chunkSize(new ChunkRequest("movie.mkv", null, 0, FILE_SIZE)));
+		assertEquals(1000, policy.chunkSize(new ChunkRequest("movie.mp4", null, 0, FILE_SIZE)));
+		assertEquals(5000, policy.getMaxChunkSize());
+	}
+
+	@Test
+	void createValidRange_usesChunkSizePolicy() {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		contentStreamAdapter.setChunkSizePolicy(new FastStartChunkSizePolicy(1000, 2.0, 3000));
+
+		assertEquals(new Range(0L, 999L), contentStreamAdapter.createValidRange(request(new Range(0L, null)), 10_000L));
+		assertEquals(new Range(1000L, 1999L), contentStreamAdapter.createValidRange(request(new Range(1000L, null)), 10_000L));
+		assertEquals(new Range(3000L, 5999L), contentStreamAdapter.createValidRange(request(new Range(3000L, 9999L)), 10_000L));
+		assertEquals(new Range(9000L, 9999L), contentStreamAdapter.createValidRange(request(new Range(9000L, null)), 10_000L));
+		assertEquals(3000, contentStreamAdapter.getMaxChunkSize());
+	}
+
+	@Test
+	void loadContent_usesChunkSizePolicy() {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		contentStreamAdapter.setChunkSizePolicy(ChunkSizePolicy.fixed(64 * 1024));
+
+		StreamedContent content = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, null))).block();
+
+		assertNotNull(content);
+		assertEquals(new Range(0L, 64L * 1024 - 1), content.getRange());
+		assertEquals(64L * 1024, content.getContentLength());
+	}
+
+	@Test
+	void chunkServed_advancesPolicyOnlyForOpenEndedRequests() {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		contentStreamAdapter.setChunkSizePolicy(new FastStartChunkSizePolicy(1000, 2.0, 3000));
+
+		StreamContentRequest first = request(new Range(0L, null));
+		StreamedContent content = contentStreamAdapter.loadContent(first).block();
+		assertNotNull(content);
+		content.getContent().subscribe(DataBufferUtils::release);
+		// Loading alone does not advance the policy, the chunk has not been served yet.
+		assertEquals(new Range(1000L, 1999L), contentStreamAdapter.createValidRange(request(new Range(1000L, null)), 10_000L));
+
+		contentStreamAdapter.chunkServed(first, content);
+		assertEquals(new Range(1000L, 2999L), contentStreamAdapter.createValidRange(request(new Range(1000L, null)), 10_000L));
+
+		// An explicit range is not part of the client's progression.
+		contentStreamAdapter.chunkServed(request(new Range(5000L, 5999L)), content);
+		assertEquals(new Range(1000L, 2999L), contentStreamAdapter.createValidRange(request(new Range(1000L, null)), 10_000L));
+	}
+
+	private static long serve(FastStartChunkSizePolicy policy, String clientId, long start) {
+		ChunkRequest request = new ChunkRequest("key", clientId, start, FILE_SIZE);
+		long chunkSize = policy.chunkSize(request);
+		policy.chunkServed(request, chunkSize);
+		return chunkSize;
+	}
+
+	private static StreamContentRequest request(Range range) {
+		return StreamContentRequest.builder()
+				.key(EARTH_SPINNING_VIDEO_KEY)
+				.clientId("client")
+				.range(range)
+				.build();
+	}
+
+}
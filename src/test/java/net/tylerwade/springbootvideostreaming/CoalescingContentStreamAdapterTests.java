@@ -0,0 +1,263 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.CoalescingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3AsyncContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CoalescingContentStreamAdapterTests {
+
+	private static final String BUCKET = "test-bucket";
+
+	private StubS3Server stubS3Server;
+
+	private S3AsyncClient s3AsyncClient;
+
+	private CoalescingContentStreamAdapter contentStreamAdapter;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+
+		stubS3Server = new StubS3Server(BUCKET);
+		stubS3Server.putObject(EARTH_SPINNING_VIDEO_KEY, videoBytes, EARTH_SPINNING_CONTENT_TYPE);
+
+		s3AsyncClient = S3AsyncClient.builder()
+				.endpointOverride(stubS3Server.getEndpoint())
+				.forcePathStyle(true)
+				.region(Region.US_EAST_1)
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+				.build();
+
+		contentStreamAdapter = new CoalescingContentStreamAdapter(new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET));
+	}
+
+	@AfterEach
+	void tearDown() {
+		contentStreamAdapter.close();
+		s3AsyncClient.close();
+		stubS3Server.close();
+	}
+
+	@Test
+	void loadContent_concurrentRequests_shareOneFetch() {
+		Range range = new Range(0L, 400_000L);
+
+		List<byte[]> results = Flux.range(0, 20)
+				.flatMap(i -> contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range))
+						.flatMap(content -> DataBufferUtils.join(content.getContent()))
+						.map(CoalescingContentStreamAdapterTests::toBytes))
+				.collectList()
+				.block(Duration.ofSeconds(30));
+
+		assertThat(results)
+				.hasSize(20)
+				.allSatisfy(bytes -> assertArrayEquals(Arrays.copyOfRange(videoBytes, 0, 400_001), bytes));
+		assertEquals(1, contentStreamAdapter.getFetchCount());
+		assertEquals(19, contentStreamAdapter.getCoalescedCount());
+		assertEquals(1, stubS3Server.getHeadRequests());
+		assertEquals(1, stubS3Server.getGetRequests());
+	}
+
+	@Test
+	void loadContent_sharesPooledBuffersWithoutCopying() throws InterruptedException {
+		LeakTrackingDataBufferFactory dataBufferFactory = new LeakTrackingDataBufferFactory();
+		S3AsyncContentStreamAdapter s3Adapter = new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET);
+		s3Adapter.setDataBufferFactory(dataBufferFactory);
+		CoalescingContentStreamAdapter adapter = new CoalescingContentStreamAdapter(s3Adapter);
+		Range range = new Range(0L, 400_000L);
+
+		try {
+			List<byte[]> results = Flux.range(0, 5)
+					.flatMap(i -> adapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range))
+							.flatMap(content -> DataBufferUtils.join(content.getContent()
+									.doOnNext(buffer -> assertInstanceOf(NettyDataBuffer.class, buffer)))))
+					.map(CoalescingContentStreamAdapterTests::toBytes)
+					.collectList()
+					.block(Duration.ofSeconds(30));
+
+			assertThat(results).hasSize(5).allSatisfy(bytes -> assertArrayEquals(Arrays.copyOfRange(videoBytes, 0, 400_001), bytes));
+			assertEquals(1, adapter.getFetchCount());
+			dataBufferFactory.assertNoLeaks();
+		} finally {
+			adapter.close();
+		}
+	}
+
+	@Test
+	void loadContent_differentRanges_areFetchedSeparately() {
+		loadBytes(new Range(0L, 999L));
+		loadBytes(new Range(1000L, 1999L));
+
+		assertEquals(2, contentStreamAdapter.getFetchCount());
+		assertEquals(0, contentStreamAdapter.getCoalescedCount());
+	}
+
+	@Test
+	void loadContent_afterCompletion_fetchesAgain() {
+		Range range = new Range(0L, 999L);
+
+		assertArrayEquals(Arrays.copyOfRange(videoBytes, 0, 1000), loadBytes(range));
+		assertArrayEquals(Arrays.copyOfRange(videoBytes, 0, 1000), loadBytes(range));
+
+		assertEquals(2, contentStreamAdapter.getFetchCount());
+		assertEquals(0, contentStreamAdapter.getInFlightCount());
+	}
+
+	@Test
+	void loadContent_lateSubscriber_receivesAllBytes() {
+		ControlledContentStreamAdapter delegate = new ControlledContentStreamAdapter();
+		CoalescingContentStreamAdapter adapter = new CoalescingContentStreamAdapter(delegate);
+		StreamContentRequest request = new StreamContentRequest("video.mp4", new Range(0L, 9L));
+
+		try {
+			StepVerifier.create(adapter.loadContent(request).flatMapMany(StreamedContent::getContent).map(CoalescingContentStreamAdapterTests::toString))
+					.then(() -> delegate.emit("01234"))
+					.expectNext("01234")
+					.then(() -> StepVerifier.create(adapter.loadContent(request).flatMapMany(StreamedContent::getContent).map(CoalescingContentStreamAdapterTests::toString))
+							.expectNext("01234")
+							.then(() -> delegate.emit("56789"))
+							.expectNext("56789")
+							.then(delegate::complete)
+							.verifyComplete())
+					.expectNext("56789")
+					.verifyComplete();
+
+			assertEquals(1, delegate.subscriptions.get());
+		} finally {
+			adapter.close();
+		}
+	}
+
+	@Test
+	void loadContent_upstreamCancelledOnlyWhenLastSubscriberCancels() {
+		ControlledContentStreamAdapter delegate = new ControlledContentStreamAdapter();
+		CoalescingContentStreamAdapter adapter = new CoalescingContentStreamAdapter(delegate);
+		StreamContentRequest request = new StreamContentRequest("video.mp4", new Range(0L, 9L));
+
+		try {
+			StreamedContent first = adapter.loadContent(request).block();
+			StreamedContent second = adapter.loadContent(request).block();
+
+			var firstSubscription = first.getContent().subscribe(DataBufferUtils::release);
+			var secondSubscription = second.getContent().subscribe(DataBufferUtils::release);
+
+			firstSubscription.dispose();
+			assertFalse(delegate.cancelled.get());
+
+			secondSubscription.dispose();
+			assertTrue(delegate.cancelled.get());
+			assertEquals(1, delegate.subscriptions.get());
+			assertEquals(0, adapter.getInFlightCount());
+		} finally {
+			adapter.close();
+		}
+	}
+
+	private byte[] loadBytes(Range range) {
+		return contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range))
+				.flatMap(content -> DataBufferUtils.join(content.getContent()))
+				.map(CoalescingContentStreamAdapterTests::toBytes)
+				.block(Duration.ofSeconds(30));
+	}
+
+	private static byte[] toBytes(DataBuffer buffer) {
+		byte[] bytes = new byte[buffer.readableByteCount()];
+		buffer.read(bytes);
+		DataBufferUtils.release(buffer);
+		return bytes;
+	}
+
+	private static String toString(DataBuffer buffer) {
+		return new String(toBytes(buffer), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Serves content whose buffers are emitted by the test.
+	 */
+	private static class ControlledContentStreamAdapter implements ContentStreamAdapter {
+
+		private final Sinks.Many<DataBuffer> sink = Sinks.many().multicast().onBackpressureBuffer();
+		private final AtomicInteger subscriptions = new AtomicInteger();
+		private final AtomicBoolean cancelled = new AtomicBoolean();
+
+		private final StreamedContentMetadata metadata = StreamedContentMetadata.builder()
+				.key("video.mp4")
+				.contentType("video/mp4")
+				.fileSize(10L)
+				.build();
+
+		void emit(String data) {
+			sink.tryEmitNext(DefaultDataBufferFactory.sharedInstance.wrap(data.getBytes(StandardCharsets.UTF_8)));
+		}
+
+		void complete() {
+			sink.tryEmitComplete();
+		}
+
+		@Override
+		public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+			return Mono.just(StreamedContent.builder()
+					.key(contentRequest.getKey())
+					.metadata(metadata)
+					.content(sink.asFlux()
+							.doOnSubscribe(subscription -> subscriptions.incrementAndGet())
+							.doOnCancel(() -> cancelled.set(true)))
+					.contentLength(10L)
+					.range(contentRequest.getRange())
+					.build());
+		}
+
+		@Override
+		public Long getContentSize(String key) {
+			return metadata.getFileSize();
+		}
+
+		@Override
+		public StreamedContentMetadata getContentMetadata(String key) {
+			return metadata;
+		}
+
+		@Override
+		public List<StreamedContentMetadata> getAllContentMetadata() {
+			return List.of(metadata);
+		}
+	}
+
+}
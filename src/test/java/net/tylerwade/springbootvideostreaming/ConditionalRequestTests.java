@@ -0,0 +1,144 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3AsyncContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConditionalRequestTests {
+
+	private static final Range RANGE = new Range(1000L, 1999L);
+
+	private LocalContentStreamAdapter contentStreamAdapter;
+
+	private StreamedContentMetadata metadata;
+
+	@BeforeEach
+	void setup() throws IOException {
+		contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		metadata = contentStreamAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+	}
+
+	@Test
+	void getContentMetadata_hasValidators() {
+		assertNotNull(metadata.getLastModified());
+		assertThat(metadata.getETag()).startsWith("\"").endsWith("\"");
+	}
+
+	@Test
+	void toResponseEntity_sendsValidators() {
+		ResponseEntity<Flux<DataBuffer>> response = load(request().build()).toResponseEntity();
+
+		assertEquals(206, response.getStatusCode().value());
+		assertEquals(metadata.getETag(), response.getHeaders().getETag());
+		assertEquals(metadata.getLastModified().getEpochSecond() * 1000, response.getHeaders().getLastModified());
+	}
+
+	@Test
+	void ifNoneMatch_matchingETag_returnsNotModified() {
+		StreamedContent content = load(request().ifNoneMatch("\"other\", " + metadata.getETag()).build());
+
+		assertTrue(content.isNotModified());
+		ResponseEntity<Flux<DataBuffer>> response = content.toResponseEntity();
+		assertEquals(304, response.getStatusCode().value());
+		assertEquals(metadata.getETag(), response.getHeaders().getETag());
+		assertNull(response.getBody());
+	}
+
+	@Test
+	void ifNoneMatch_weakETagOrWildcard_returnsNotModified() {
+		assertTrue(load(request().ifNoneMatch("W/" + metadata.getETag()).build()).isNotModified());
+		assertTrue(load(request().ifNoneMatch("*").build()).isNotModified());
+	}
+
+	@Test
+	void ifNoneMatch_otherETag_returnsContent() {
+		StreamedContent content = load(request().ifNoneMatch("\"other\"").ifModifiedSince(Instant.now()).build());
+
+		assertFalse(content.isNotModified());
+		assertEquals(RANGE, content.getRange());
+	}
+
+	@Test
+	void ifModifiedSince_returnsNotModifiedUnlessModifiedLater() {
+		assertTrue(load(request().ifModifiedSince(metadata.getLastModified()).build()).isNotModified());
+		assertFalse(load(request().ifModifiedSince(metadata.getLastModified().minusSeconds(1)).build()).isNotModified());
+	}
+
+	@Test
+	void ifRange_matchingETagOrDate_returnsRange() {
+		String lastModified = DateTimeFormatter.RFC_1123_DATE_TIME.format(metadata.getLastModified().atOffset(ZoneOffset.UTC));
+
+		assertEquals(RANGE, load(request().ifRange(metadata.getETag()).build()).getRange());
+		assertEquals(RANGE, load(request().ifRange(lastModified).build()).getRange());
+	}
+
+	@Test
+	void ifRange_changedContent_returnsContentFromStart() {
+		assertEquals(0L, load(request().ifRange("\"other\"").build()).getRange().getStart());
+		assertEquals(0L, load(request().ifRange("W/" + metadata.getETag()).build()).getRange().getStart());
+		assertEquals(0L, load(request().ifRange("Wed, 21 Oct 2015 07:28:00 GMT").build()).getRange().getStart());
+	}
+
+	@Test
+	void s3ContentStreamAdapter_notModified_doesNotReadContent() throws IOException {
+		try (StubS3Server stubS3Server = new StubS3Server("test-bucket");
+			 S3AsyncClient s3AsyncClient = S3AsyncClient.builder()
+					 .endpointOverride(stubS3Server.getEndpoint())
+					 .forcePathStyle(true)
+					 .region(Region.US_EAST_1)
+					 .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+					 .build()) {
+			stubS3Server.putObject(EARTH_SPINNING_VIDEO_KEY, new byte[4096], EARTH_SPINNING_CONTENT_TYPE);
+			S3AsyncContentStreamAdapter s3Adapter = new S3AsyncContentStreamAdapter(s3AsyncClient, "test-bucket");
+
+			StreamedContentMetadata s3Metadata = s3Adapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+			assertNotNull(s3Metadata.getETag());
+			assertEquals(Instant.parse("2015-10-21T07:28:00Z"), s3Metadata.getLastModified());
+
+			StreamedContent content = s3Adapter.loadContent(StreamContentRequest.builder()
+					.key(EARTH_SPINNING_VIDEO_KEY)
+					.ifNoneMatch(s3Metadata.getETag())
+					.build()).block();
+
+			assertNotNull(content);
+			assertEquals(304, content.toResponseEntity().getStatusCode().value());
+			assertEquals(0, stubS3Server.getGetRequests());
+		}
+	}
+
+	private StreamedContent load(StreamContentRequest contentRequest) {
+		StreamedContent content = contentStreamAdapter.loadContent(contentRequest).block();
+		assertNotNull(content);
+		return content;
+	}
+
+	private static StreamContentRequest.StreamContentRequestBuilder request() {
+		return StreamContentRequest.builder()
+				.key(EARTH_SPINNING_VIDEO_KEY)
+				.range(RANGE);
+	}
+
+}
@@ -0,0 +1,205 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3AsyncContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.web.ContentStreamHandler;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.test.StepVerifier;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentMetadataListingTests {
+
+	private static final String BUCKET = "test-bucket";
+
+	private static final List<String> KEYS = List.of("movies/a.mp4", "movies/b.mp4", "movies/c.mp4", "shows/a.mp4", "trailer.mp4");
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void fileSystemAdapter_streamsMatchingFilesInKeyOrder() throws IOException {
+		Files.write(directory.resolve("b.mp4"), new byte[20]);
+		Files.write(directory.resolve("a.mp4"), new byte[10]);
+		Files.write(directory.resolve("trailer.mp4"), new byte[5]);
+		Files.createDirectory(directory.resolve("a-directory"));
+
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory)) {
+			StepVerifier.create(adapter.streamContentMetadata(null).map(StreamedContentMetadata::getKey))
+					.expectNext("a.mp4", "b.mp4", "trailer.mp4")
+					.verifyComplete();
+			StepVerifier.create(adapter.streamContentMetadata("a"))
+					.assertNext(metadata -> {
+						assertEquals("a.mp4", metadata.getKey());
+						assertEquals(10L, metadata.getFileSize());
+						assertNotNull(metadata.getETag());
+					})
+					.verifyComplete();
+
+			assertEquals(List.of("a.mp4", "b.mp4", "trailer.mp4"), listAllPages(adapter, null, 2));
+		}
+	}
+
+	@Test
+	void fileSystemAdapter_readsAttributesOnlyOfFilesOnThePage() throws IOException {
+		Path loop = directory.resolve("0-loop.mp4");
+		Files.createSymbolicLink(loop, loop);
+		Files.write(directory.resolve("a.mp4"), new byte[10]);
+		Files.write(directory.resolve("b.mp4"), new byte[20]);
+
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory)) {
+			// Reading the attributes of the symbolic link loop fails, so it must be skipped without them.
+			assertEquals(List.of("a.mp4", "b.mp4"), listAllPages(adapter, null, "0-loop.mp4", 1));
+			assertThatThrownBy(() -> adapter.listContentMetadata(null, null, 1).block()).hasRootCauseInstanceOf(IOException.class);
+		}
+	}
+
+	@Test
+	void localAdapter_listsPages() {
+		LocalContentStreamAdapter adapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+
+		ContentMetadataPage firstPage = adapter.listContentMetadata(null, null, 2).block();
+		assertNotNull(firstPage);
+		assertThat(firstPage.getContents()).extracting(StreamedContentMetadata::getKey)
+				.containsExactly(EARTH_SPINNING_VIDEO_KEY, PARK_VIDEO_KEY);
+		assertEquals(PARK_FILE_SIZE, firstPage.getContents().get(1).getFileSize());
+		assertEquals(PARK_VIDEO_KEY, firstPage.getNextContinuationToken());
+
+		ContentMetadataPage lastPage = adapter.listContentMetadata(null, firstPage.getNextContinuationToken(), 2).block();
+		assertNotNull(lastPage);
+		assertThat(lastPage.getContents()).extracting(StreamedContentMetadata::getKey).containsExactly(SCIENCE_VIDEO_KEY);
+		assertNull(lastPage.getNextContinuationToken());
+
+		assertThat(adapter.listContentMetadata("park", null, 10).block().getContents())
+				.extracting(StreamedContentMetadata::getKey).containsExactly(PARK_VIDEO_KEY);
+	}
+
+	@Test
+	void s3Adapter_listsOnlyTheRequestedPage() throws IOException {
+		try (StubS3Server stubS3Server = new StubS3Server(BUCKET);
+			 S3Client s3Client = S3Client.builder()
+					 .endpointOverride(stubS3Server.getEndpoint())
+					 .forcePathStyle(true)
+					 .region(Region.US_EAST_1)
+					 .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+					 .build()) {
+			KEYS.forEach(key -> stubS3Server.putObject(key, new byte[16], EARTH_SPINNING_CONTENT_TYPE));
+			S3ContentStreamAdapter adapter = new S3ContentStreamAdapter(s3Client, BUCKET);
+
+			ContentMetadataPage page = adapter.listContentMetadata("movies/", null, 2).block();
+			assertNotNull(page);
+			assertThat(page.getContents()).extracting(StreamedContentMetadata::getKey).containsExactly("movies/a.mp4", "movies/b.mp4");
+			assertEquals("movies/b.mp4", page.getNextContinuationToken());
+			assertEquals(1, stubS3Server.getListRequests());
+
+			assertEquals(List.of("movies/a.mp4", "movies/b.mp4", "movies/c.mp4"), listAllPages(adapter, "movies/", 2));
+			StepVerifier.create(adapter.streamContentMetadata(null).map(StreamedContentMetadata::getKey))
+					.expectNextSequence(KEYS)
+					.verifyComplete();
+		}
+	}
+
+	@Test
+	void s3AsyncAdapter_streamsAndListsPages() throws IOException {
+		try (StubS3Server stubS3Server = new StubS3Server(BUCKET);
+			 S3AsyncClient s3AsyncClient = S3AsyncClient.builder()
+					 .endpointOverride(stubS3Server.getEndpoint())
+					 .forcePathStyle(true)
+					 .region(Region.US_EAST_1)
+					 .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+					 .build()) {
+			KEYS.forEach(key -> stubS3Server.putObject(key, new byte[16], EARTH_SPINNING_CONTENT_TYPE));
+			S3AsyncContentStreamAdapter adapter = new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET);
+
+			StepVerifier.create(adapter.streamContentMetadata("shows/"))
+					.assertNext(metadata -> {
+						assertEquals("shows/a.mp4", metadata.getKey());
+						assertEquals(16L, metadata.getFileSize());
+					})
+					.verifyComplete();
+
+			assertEquals(KEYS, listAllPages(adapter, null, 2));
+			assertEquals(KEYS.size(), adapter.getAllContentMetadata().size());
+		}
+	}
+
+	@Test
+	void defaultImplementation_filtersSortsAndPages() throws IOException {
+		Files.write(directory.resolve("b.mp4"), new byte[1]);
+		Files.write(directory.resolve("a.mp4"), new byte[1]);
+		Files.write(directory.resolve("c.mp4"), new byte[1]);
+
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			// Only implements getAllContentMetadata, which returns the files unordered.
+			ContentStreamAdapter adapter = new RecordingContentStreamAdapter(fileSystemAdapter);
+
+			assertEquals(List.of("a.mp4", "b.mp4", "c.mp4"), listAllPages(adapter, null, 2));
+			assertEquals(List.of("b.mp4"), listAllPages(adapter, "b", 2));
+			assertThrows(IllegalArgumentException.class, () -> adapter.listContentMetadata(null, null, 0));
+		}
+	}
+
+	@Test
+	void handler_listsCatalogAsJson() {
+		ContentStreamHandler handler = new ContentStreamHandler(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		WebTestClient webTestClient = WebTestClient.bindToRouterFunction(handler.routerFunction("/videos")).build();
+
+		webTestClient.get().uri("/videos?maxKeys=2")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.contents.length()").isEqualTo(2)
+				.jsonPath("$.contents[0].key").isEqualTo(EARTH_SPINNING_VIDEO_KEY)
+				.jsonPath("$.nextContinuationToken").isEqualTo(PARK_VIDEO_KEY);
+
+		webTestClient.get().uri("/videos?prefix=sci")
+				.exchange()
+				.expectStatus().isOk()
+				.expectBody()
+				.jsonPath("$.contents[0].key").isEqualTo(SCIENCE_VIDEO_KEY)
+				.jsonPath("$.nextContinuationToken").doesNotExist();
+
+		webTestClient.get().uri("/videos?maxKeys=zero")
+				.exchange()
+				.expectStatus().isBadRequest();
+	}
+
+	private static List<String> listAllPages(ContentStreamAdapter adapter, String prefix, int maxKeys) {
+		return listAllPages(adapter, prefix, null, maxKeys);
+	}
+
+	private static List<String> listAllPages(ContentStreamAdapter adapter, String prefix, String startAfter, int maxKeys) {
+		List<String> keys = new ArrayList<>();
+		String continuationToken = startAfter;
+		do {
+			ContentMetadataPage page = adapter.listContentMetadata(prefix, continuationToken, maxKeys).block();
+			assertNotNull(page);
+			assertThat(page.getContents().size()).isLessThanOrEqualTo(maxKeys);
+			page.getContents().forEach(metadata -> keys.add(metadata.getKey()));
+			continuationToken = page.getNextContinuationToken();
+		} while (continuationToken != null);
+		return keys;
+	}
+
+}
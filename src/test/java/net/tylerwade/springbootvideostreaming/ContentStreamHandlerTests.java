@@ -0,0 +1,202 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.chunk.FastStartChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.config.AutoConfig;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.web.ContentStreamHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.mock.web.reactive.function.server.MockServerRequest;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentStreamHandlerTests {
+
+	private WebTestClient webTestClient;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+		ContentStreamHandler handler = new ContentStreamHandler(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		webTestClient = WebTestClient.bindToRouterFunction(handler.routerFunction("/videos")).build();
+	}
+
+	@Test
+	void streamContent_range_returnsPartialContent() {
+		byte[] body = webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=100-199")
+				.exchange()
+				.expectStatus().isEqualTo(206)
+				.expectHeader().valueEquals("Content-Range", "bytes 100-199/" + EARTH_SPINNING_FILE_SIZE)
+				.expectHeader().valueEquals("Content-Type", EARTH_SPINNING_CONTENT_TYPE)
+				.expectHeader().exists("ETag")
+				.expectBody(byte[].class).returnResult().getResponseBody();
+
+		assertArrayEquals(Arrays.copyOfRange(videoBytes, 100, 200), body);
+	}
+
+	@Test
+	void streamContent_suffixRange_returnsEndOfContent() {
+		webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=-100")
+				.exchange()
+				.expectStatus().isEqualTo(206)
+				.expectHeader().valueEquals("Content-Range",
+						"bytes " + (EARTH_SPINNING_FILE_SIZE - 100) + "-" + (EARTH_SPINNING_FILE_SIZE - 1) + "/" + EARTH_SPINNING_FILE_SIZE);
+	}
+
+	@Test
+	void streamContent_rangeBeyondContent_returns416() {
+		webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=" + EARTH_SPINNING_FILE_SIZE + "-")
+				.exchange()
+				.expectStatus().isEqualTo(416)
+				.expectHeader().valueEquals("Content-Range", "bytes */" + EARTH_SPINNING_FILE_SIZE);
+
+		webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=" + EARTH_SPINNING_FILE_SIZE + "-,-0")
+				.exchange()
+				.expectStatus().isEqualTo(416);
+	}
+
+	@Test
+	void streamContent_invalidRange_isIgnored() {
+		webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=garbage")
+				.exchange()
+				.expectStatus().isOk()
+				.expectHeader().contentLength(EARTH_SPINNING_FILE_SIZE);
+	}
+
+	@Test
+	void streamContent_sequentialChunks_growWithFastStartPolicy() {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		contentStreamAdapter.setChunkSizePolicy(new FastStartChunkSizePolicy(1000, 2.0, 8000));
+		WebTestClient client = WebTestClient.bindToRouterFunction(new ContentStreamHandler(contentStreamAdapter).routerFunction("/videos")).build();
+
+		for (String contentRange : List.of("bytes 0-999/", "bytes 1000-2999/", "bytes 3000-6999/")) {
+			String start = contentRange.substring(6, contentRange.indexOf('-'));
+			client.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+					.header("Range", "bytes=" + start + "-")
+					.exchange()
+					.expectStatus().isEqualTo(206)
+					.expectHeader().valueEquals("Content-Range", contentRange + EARTH_SPINNING_FILE_SIZE);
+		}
+	}
+
+	@Test
+	void streamContent_multipleRanges_returnsMultipart() {
+		webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=0-99,1000-1099")
+				.exchange()
+				.expectStatus().isEqualTo(206)
+				.expectHeader().value("Content-Type", contentType -> assertThat(contentType).startsWith("multipart/byteranges; boundary="));
+	}
+
+	@Test
+	void streamContent_notModified_returns304() {
+		String eTag = webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.exchange()
+				.returnResult(byte[].class).getResponseHeaders().getETag();
+
+		webTestClient.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("If-None-Match", eTag)
+				.exchange()
+				.expectStatus().isNotModified();
+	}
+
+	@Test
+	void streamContent_missingContent_returns404() {
+		webTestClient.get().uri("/videos/missing-video.mp4")
+				.exchange()
+				.expectStatus().isNotFound();
+	}
+
+	@Test
+	void streamContent_encodedParentSegment_returns404() {
+		webTestClient.get().uri(URI.create("/videos/..%2Fnet%2Ftylerwade%2Fspringbootvideostreaming%2FTestApplication.class"))
+				.exchange()
+				.expectStatus().isNotFound();
+
+		// Rejected even when the key would resolve back into the directory.
+		webTestClient.get().uri(URI.create("/videos/..%2Fvideos%2F" + EARTH_SPINNING_VIDEO_KEY))
+				.exchange()
+				.expectStatus().isNotFound();
+	}
+
+	@Test
+	void streamContent_clientIdFromHeader_fallsBackToRemoteAddress() {
+		List<String> clientIds = new CopyOnWriteArrayList<>();
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos") {
+			@Override
+			public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+				clientIds.add(contentRequest.getClientId());
+				return super.loadContent(contentRequest);
+			}
+		};
+		ContentStreamHandler handler = new ContentStreamHandler(contentStreamAdapter,
+				ContentStreamHandler.clientIdFromHeader("X-Playback-Session-Id"));
+		WebTestClient client = WebTestClient.bindToRouterFunction(handler.routerFunction("/videos")).build();
+
+		client.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=0-99")
+				.header("X-Playback-Session-Id", "session-1")
+				.exchange()
+				.expectStatus().isEqualTo(206);
+		client.get().uri("/videos/" + EARTH_SPINNING_VIDEO_KEY)
+				.header("Range", "bytes=0-99")
+				.exchange()
+				.expectStatus().isEqualTo(206);
+
+		assertEquals(2, clientIds.size());
+		assertThat(clientIds.get(0)).endsWith("session-1");
+		assertNotEquals(clientIds.get(0), clientIds.get(1));
+	}
+
+	@Test
+	void clientIdFromHeader_combinesHeaderWithRemoteAddress() {
+		Function<ServerRequest, String> clientIdResolver = ContentStreamHandler.clientIdFromHeader("X-Playback-Session-Id");
+		InetSocketAddress remoteAddress = new InetSocketAddress("192.0.2.1", 40000);
+
+		assertEquals("192.0.2.1/session-1", clientIdResolver.apply(MockServerRequest.builder()
+				.remoteAddress(remoteAddress)
+				.header("X-Playback-Session-Id", "session-1")
+				.build()));
+		assertEquals("192.0.2.1", clientIdResolver.apply(MockServerRequest.builder().remoteAddress(remoteAddress).build()));
+	}
+
+	@Test
+	void autoConfig_registersEndpointOnlyWhenEnabled() {
+		ReactiveWebApplicationContextRunner contextRunner = new ReactiveWebApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(AutoConfig.class));
+
+		contextRunner.run(context -> assertThat(context).doesNotHaveBean(ContentStreamHandler.class));
+		contextRunner.withPropertyValues("video-streaming.endpoint.enabled=true")
+				.run(context -> assertThat(context).hasSingleBean(ContentStreamHandler.class).hasBean("contentStreamRouterFunction"));
+	}
+
+}
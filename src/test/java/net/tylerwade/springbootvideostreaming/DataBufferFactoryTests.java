@@ -0,0 +1,202 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.DiskCachingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.config.AutoConfig;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.runner.ReactiveWebApplicationContextRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DataBufferFactoryTests {
+
+	private static final Range RANGE = new Range(1000L, 300_000L);
+
+	@TempDir
+	private Path tempDirectory;
+
+	private LeakTrackingDataBufferFactory dataBufferFactory;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+		dataBufferFactory = new LeakTrackingDataBufferFactory();
+	}
+
+	@Test
+	void defaultDataBufferFactory_doesNotDependOnNetty() {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+
+		assertSame(DefaultDataBufferFactory.sharedInstance, contentStreamAdapter.getDataBufferFactory());
+		assertEquals(ContentStreamAdapter.DEFAULT_BUFFER_SIZE, contentStreamAdapter.getBufferSize());
+	}
+
+	@Test
+	void autoConfig_readsIntoPooledDirectBuffersOfTheServer() {
+		ReactiveWebApplicationContextRunner contextRunner = new ReactiveWebApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(AutoConfig.class));
+
+		contextRunner.run(context -> {
+			LocalContentStreamAdapter contentStreamAdapter = context.getBean(LocalContentStreamAdapter.class);
+			assertSame(context.getBean(DataBufferFactory.class), contentStreamAdapter.getDataBufferFactory());
+
+			DataBuffer buffer = contentStreamAdapter.getDataBufferFactory().allocateBuffer(ContentStreamAdapter.DEFAULT_BUFFER_SIZE);
+			try {
+				assertThat(buffer).isInstanceOf(NettyDataBuffer.class);
+				assertTrue(((NettyDataBuffer) buffer).getNativeBuffer().isDirect());
+			} finally {
+				DataBufferUtils.release(buffer);
+			}
+		});
+
+		// A factory of the application replaces the default.
+		contextRunner.withBean(DataBufferFactory.class, () -> dataBufferFactory)
+				.run(context -> assertSame(dataBufferFactory, context.getBean(LocalContentStreamAdapter.class).getDataBufferFactory()));
+	}
+
+	@Test
+	void localContentStreamAdapter_readsIntoInjectedFactory_withoutLeaks() throws InterruptedException {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		contentStreamAdapter.setZeroCopyEnabled(false);
+		contentStreamAdapter.setDataBufferFactory(dataBufferFactory);
+		contentStreamAdapter.setBufferSize(64 * 1024);
+
+		List<DataBuffer> buffers = load(contentStreamAdapter).getContent().collectList().block();
+
+		assertNotNull(buffers);
+		assertThat(buffers).allSatisfy(buffer -> assertThat(buffer.readableByteCount()).isLessThanOrEqualTo(64 * 1024));
+		assertArrayEquals(expectedBytes(), readAndRelease(buffers));
+		assertThat(dataBufferFactory.getAllocatedBuffers()).isNotEmpty();
+		dataBufferFactory.assertNoLeaks();
+	}
+
+	@Test
+	void localContentStreamAdapter_cancelledRead_releasesBuffers() throws InterruptedException {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		contentStreamAdapter.setZeroCopyEnabled(false);
+		contentStreamAdapter.setDataBufferFactory(dataBufferFactory);
+
+		DataBuffer first = load(contentStreamAdapter).getContent().blockFirst();
+		DataBufferUtils.release(first);
+
+		assertThat(dataBufferFactory.getAllocatedBuffers()).isNotEmpty();
+		dataBufferFactory.assertNoLeaks();
+	}
+
+	@Test
+	void fileSystemContentStreamAdapter_readsIntoInjectedFactory_withoutLeaks() throws InterruptedException {
+		try (FileSystemContentStreamAdapter contentStreamAdapter = new FileSystemContentStreamAdapter(Path.of("src/test/resources/videos"))) {
+			contentStreamAdapter.setZeroCopyEnabled(false);
+			contentStreamAdapter.setDataBufferFactory(dataBufferFactory);
+
+			assertArrayEquals(expectedBytes(), join(load(contentStreamAdapter)));
+			assertThat(dataBufferFactory.getAllocatedBuffers()).isNotEmpty();
+			dataBufferFactory.assertNoLeaks();
+		}
+	}
+
+	@Test
+	void s3ContentStreamAdapter_readsIntoInjectedFactory_withoutLeaks() throws Exception {
+		try (StubS3Server stubS3Server = new StubS3Server("test-bucket");
+			 S3Client s3Client = S3Client.builder()
+					 .endpointOverride(stubS3Server.getEndpoint())
+					 .forcePathStyle(true)
+					 .region(Region.US_EAST_1)
+					 .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+					 .build()) {
+			stubS3Server.putObject(EARTH_SPINNING_VIDEO_KEY, videoBytes, EARTH_SPINNING_CONTENT_TYPE);
+
+			S3ContentStreamAdapter contentStreamAdapter = new S3ContentStreamAdapter(s3Client, "test-bucket");
+			contentStreamAdapter.setDataBufferFactory(dataBufferFactory);
+
+			assertArrayEquals(expectedBytes(), join(load(contentStreamAdapter)));
+			assertThat(dataBufferFactory.getAllocatedBuffers()).isNotEmpty();
+			dataBufferFactory.assertNoLeaks();
+		}
+	}
+
+	@Test
+	void diskCachingContentStreamAdapter_readsCachedContentIntoInjectedFactory_withoutLeaks() throws Exception {
+		DiskCachingContentStreamAdapter contentStreamAdapter = new DiskCachingContentStreamAdapter(
+				new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"), tempDirectory, 16L * 1024 * 1024);
+		contentStreamAdapter.setZeroCopyEnabled(false);
+		contentStreamAdapter.setDataBufferFactory(dataBufferFactory);
+
+		try {
+			// Caches the whole blocks overlapping the range.
+			join(contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 2L * DiskCachingContentStreamAdapter.DEFAULT_BLOCK_SIZE - 1))).block());
+			assertArrayEquals(expectedBytes(), join(load(contentStreamAdapter)));
+
+			assertEquals(1, contentStreamAdapter.getHitCount());
+			assertThat(dataBufferFactory.getAllocatedBuffers()).isNotEmpty();
+			dataBufferFactory.assertNoLeaks();
+		} finally {
+			contentStreamAdapter.close();
+		}
+	}
+
+	@Test
+	void setBufferSize_rejectsInvalidSize() {
+		LocalContentStreamAdapter contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+
+		assertThrows(IllegalArgumentException.class, () -> contentStreamAdapter.setBufferSize(0));
+	}
+
+	private byte[] expectedBytes() {
+		return Arrays.copyOfRange(videoBytes, RANGE.getStart().intValue(), RANGE.getEnd().intValue() + 1);
+	}
+
+	private static StreamedContent load(ContentStreamAdapter contentStreamAdapter) {
+		return contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, RANGE)).block();
+	}
+
+	private static byte[] join(StreamedContent content) {
+		return readAndRelease(content.getContent().collectList().block());
+	}
+
+	private static byte[] readAndRelease(List<DataBuffer> buffers) {
+		int length = buffers.stream().mapToInt(DataBuffer::readableByteCount).sum();
+		byte[] bytes = new byte[length];
+		int offset = 0;
+		for (DataBuffer buffer : buffers) {
+			int count = buffer.readableByteCount();
+			buffer.read(bytes, offset, count);
+			offset += count;
+			DataBufferUtils.release(buffer);
+		}
+		return bytes;
+	}
+
+}
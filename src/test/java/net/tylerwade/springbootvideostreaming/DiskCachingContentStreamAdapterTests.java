@@ -0,0 +1,245 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.DiskCachingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DiskCachingContentStreamAdapterTests {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+
+	@TempDir
+	private Path cacheDirectory;
+
+	private RecordingContentStreamAdapter delegate;
+
+	private DiskCachingContentStreamAdapter contentStreamAdapter;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+
+		delegate = new RecordingContentStreamAdapter(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		contentStreamAdapter = new DiskCachingContentStreamAdapter(delegate, cacheDirectory, 64L * BLOCK_SIZE, BLOCK_SIZE);
+	}
+
+	@AfterEach
+	void tearDown() {
+		contentStreamAdapter.close();
+	}
+
+	@Test
+	void loadContent_cachedRange_isServedFromDisk() {
+		Range range = new Range(0L, 4L * BLOCK_SIZE - 1);
+
+		assertArrayEquals(expectedBytes(range), loadBytes(range));
+		StreamedContent cached = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block();
+
+		assertNotNull(cached);
+		assertThat(cached.getContent()).isInstanceOf(FileRegionContent.class);
+		assertThat(cached.getMetadata()).usingRecursiveComparison().ignoringFields("eTag", "lastModified").isEqualTo(EARTH_SPINNING_METADATA);
+		assertArrayEquals(expectedBytes(range), join(cached));
+		assertEquals(1, delegate.getRequestedRanges().size());
+		assertEquals(1, contentStreamAdapter.getHitCount());
+		assertEquals(4L * BLOCK_SIZE, contentStreamAdapter.getCachedBytes());
+	}
+
+	@Test
+	void loadContent_subRangeOfCachedBlocks_isServedFromDisk() {
+		loadBytes(new Range(0L, 4L * BLOCK_SIZE - 1));
+
+		Range range = new Range(1000L, 3L * BLOCK_SIZE + 17);
+		assertArrayEquals(expectedBytes(range), loadBytes(range));
+		assertEquals(1, delegate.getRequestedRanges().size());
+	}
+
+	@Test
+	void loadContent_partiallyWrittenBlock_isNotServedFromDisk() {
+		loadBytes(new Range(0L, BLOCK_SIZE + 100L));
+
+		assertArrayEquals(expectedBytes(new Range(0L, BLOCK_SIZE - 1L)), loadBytes(new Range(0L, BLOCK_SIZE - 1L)));
+		assertEquals(1, delegate.getRequestedRanges().size());
+
+		loadBytes(new Range(0L, BLOCK_SIZE + 100L));
+		assertEquals(2, delegate.getRequestedRanges().size());
+	}
+
+	@Test
+	void loadContent_lastBlock_isCachedAtEndOfFile() {
+		Range range = new Range(EARTH_SPINNING_FILE_SIZE - 100, EARTH_SPINNING_FILE_SIZE - 1);
+		long lastBlockStart = (EARTH_SPINNING_FILE_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+
+		loadBytes(new Range(lastBlockStart, null));
+
+		assertArrayEquals(expectedBytes(range), loadBytes(range));
+		assertEquals(1, delegate.getRequestedRanges().size());
+	}
+
+	@Test
+	void loadContent_afterRestart_isServedFromDisk() throws IOException {
+		Range range = new Range(0L, 2L * BLOCK_SIZE - 1);
+		loadBytes(range);
+		contentStreamAdapter.close();
+
+		RecordingContentStreamAdapter restartedDelegate = new RecordingContentStreamAdapter(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		DiskCachingContentStreamAdapter restarted = new DiskCachingContentStreamAdapter(restartedDelegate, cacheDirectory, 64L * BLOCK_SIZE, BLOCK_SIZE);
+
+		assertEquals(1, restarted.getCachedContentCount());
+		assertEquals(2L * BLOCK_SIZE, restarted.getCachedBytes());
+		assertArrayEquals(expectedBytes(range), join(restarted.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block()));
+		assertThat(restartedDelegate.getRequestedRanges()).isEmpty();
+		restarted.close();
+	}
+
+	@Test
+	void loadContent_overBudget_evictsLeastRecentlyUsedContent() throws IOException {
+		DiskCachingContentStreamAdapter smallCache = new DiskCachingContentStreamAdapter(delegate, cacheDirectory.resolve("small"), 2L * BLOCK_SIZE, BLOCK_SIZE);
+		Range range = new Range(0L, 2L * BLOCK_SIZE - 1);
+
+		try {
+			join(smallCache.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block());
+			join(smallCache.loadContent(new StreamContentRequest(PARK_VIDEO_KEY, range)).block());
+
+			assertEquals(1, smallCache.getCachedContentCount());
+			assertEquals(2L * BLOCK_SIZE, smallCache.getCachedBytes());
+
+			join(smallCache.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block());
+			assertEquals(3, delegate.getRequestedRanges().size());
+		} finally {
+			smallCache.close();
+		}
+	}
+
+	@Test
+	void loadContent_notModified_isAnsweredFromIndex() {
+		Range range = new Range(0L, BLOCK_SIZE - 1L);
+		loadBytes(range);
+		String eTag = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block().getMetadata().getETag();
+
+		StreamedContent content = contentStreamAdapter.loadContent(StreamContentRequest.builder()
+				.key(EARTH_SPINNING_VIDEO_KEY)
+				.range(new Range(5L * BLOCK_SIZE, null))
+				.ifNoneMatch(eTag)
+				.build()).block();
+
+		assertNotNull(content);
+		assertTrue(content.isNotModified());
+		assertEquals(1, delegate.getRequestedRanges().size());
+	}
+
+	@Test
+	void invalidate_deletesCachedContent() {
+		Range range = new Range(0L, BLOCK_SIZE - 1L);
+		loadBytes(range);
+
+		contentStreamAdapter.invalidate(EARTH_SPINNING_VIDEO_KEY);
+
+		assertEquals(0, contentStreamAdapter.getCachedContentCount());
+		assertEquals(0, contentStreamAdapter.getCachedBytes());
+		loadBytes(range);
+		assertEquals(2, delegate.getRequestedRanges().size());
+	}
+
+	@Test
+	void invalidate_keepsDataFileWhileCachedContentIsRead() throws Exception {
+		Range range = new Range(0L, 2L * BLOCK_SIZE - 1);
+		loadBytes(range);
+		contentStreamAdapter.setZeroCopyEnabled(false);
+		StreamedContent cached = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block();
+		assertNotNull(cached);
+		Path dataFile = dataFile();
+
+		// The content is being read when it is invalidated, so its file is kept until the read completes.
+		StepVerifier.create(cached.getContent(), 1)
+				.consumeNextWith(DataBufferUtils::release)
+				.then(() -> contentStreamAdapter.invalidate(EARTH_SPINNING_VIDEO_KEY))
+				.then(() -> assertTrue(Files.exists(dataFile)))
+				.thenRequest(Long.MAX_VALUE)
+				.thenConsumeWhile(buffer -> true, DataBufferUtils::release)
+				.verifyComplete();
+
+		awaitEmpty(cacheDirectory);
+	}
+
+	@Test
+	void invalidate_deletesFilesOfUnsubscribedContent() throws Exception {
+		Range range = new Range(0L, 2L * BLOCK_SIZE - 1);
+		loadBytes(range);
+		StreamedContent cached = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block();
+		assertNotNull(cached);
+		assertInstanceOf(FileRegionContent.class, cached.getContent());
+
+		// Content that was never written, e.g. for a HEAD request, holds no lease.
+		contentStreamAdapter.invalidate(EARTH_SPINNING_VIDEO_KEY);
+		awaitEmpty(cacheDirectory);
+
+		// Subscribed after its files were deleted, the content is read from the delegate.
+		assertArrayEquals(expectedBytes(range), join(cached));
+	}
+
+	private Path dataFile() throws IOException {
+		try (Stream<Path> files = Files.list(cacheDirectory)) {
+			return files.filter(file -> file.toString().endsWith(".data")).findFirst().orElseThrow();
+		}
+	}
+
+	private static void awaitEmpty(Path directory) throws Exception {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (System.nanoTime() < deadline) {
+			try (Stream<Path> files = Files.list(directory)) {
+				if (files.findAny().isEmpty()) {
+					break;
+				}
+			}
+			Thread.sleep(20);
+		}
+		try (Stream<Path> files = Files.list(directory)) {
+			assertThat(files).isEmpty();
+		}
+	}
+
+	private byte[] expectedBytes(Range range) {
+		return Arrays.copyOfRange(videoBytes, range.getStart().intValue(), range.getEnd().intValue() + 1);
+	}
+
+	private byte[] loadBytes(Range range) {
+		return join(contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range)).block());
+	}
+
+	private static byte[] join(StreamedContent content) {
+		DataBuffer joined = DataBufferUtils.join(content.getContent()).block();
+		byte[] bytes = new byte[joined.readableByteCount()];
+		joined.read(bytes);
+		DataBufferUtils.release(joined);
+		return bytes;
+	}
+
+}
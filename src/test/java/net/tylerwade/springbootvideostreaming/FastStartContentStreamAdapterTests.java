@@ -0,0 +1,203 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.FastStartContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Parser;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FastStartContentStreamAdapterTests {
+
+	private static final String MOOV_LAST_KEY = "moov-last.mp4";
+
+	@TempDir
+	Path directory;
+
+	private byte[] fastStartFile;
+
+	@BeforeEach
+	void setup() throws IOException {
+		fastStartFile = readEarthSpinning();
+		Files.write(directory.resolve(MOOV_LAST_KEY), moveMoovToEnd(fastStartFile));
+		Files.write(directory.resolve(EARTH_SPINNING_VIDEO_KEY), fastStartFile);
+	}
+
+	@Test
+	void moovLastFile_isServedAsFastStartView() throws IOException {
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			FastStartContentStreamAdapter adapter = new FastStartContentStreamAdapter(fileSystemAdapter);
+
+			// Moving the moov box back to the front restores the original fast start file.
+			assertArrayEquals(fastStartFile, read(adapter, MOOV_LAST_KEY, new Range(0L, EARTH_SPINNING_FILE_SIZE - 1)));
+
+			// Ranges within, across and after the relocated moov box.
+			for (Range range : List.of(new Range(0L, 99L), new Range(100L, 20_000L), new Range(14_000L, 14_500L),
+					new Range(500_000L, 600_000L), new Range(EARTH_SPINNING_FILE_SIZE - 100, EARTH_SPINNING_FILE_SIZE - 1))) {
+				assertArrayEquals(Arrays.copyOfRange(fastStartFile, range.getStart().intValue(), range.getEnd().intValue() + 1),
+						read(adapter, MOOV_LAST_KEY, range), range.toString());
+			}
+			assertEquals(6, adapter.getRelocatedRequestCount());
+		}
+	}
+
+	@Test
+	void rangesAreMappedOntoTheOriginalBytes() throws IOException {
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			RecordingContentStreamAdapter recordingAdapter = new RecordingContentStreamAdapter(fileSystemAdapter);
+			FastStartContentStreamAdapter adapter = new FastStartContentStreamAdapter(recordingAdapter);
+
+			read(adapter, MOOV_LAST_KEY, new Range(0L, 1023L));
+			// Probed with the head, the header of the box following mdat and the moov box. Then only the ftyp box is
+			// read from the file, the relocated moov box is served from memory.
+			assertEquals(4, recordingAdapter.getRequestedRanges().size());
+			assertEquals(new Range(0L, 23L), recordingAdapter.getRequestedRanges().get(3));
+
+			recordingAdapter.getRequestedRanges().clear();
+			read(adapter, MOOV_LAST_KEY, new Range(100_000L, 199_999L));
+			assertEquals(List.of(new Range(100_000L - EARTH_SPINNING_MOOV_SIZE, 199_999L - EARTH_SPINNING_MOOV_SIZE)),
+					recordingAdapter.getRequestedRanges());
+
+			// A player finds the moov box in the first bytes and reads the offsets of the view.
+			recordingAdapter.getRequestedRanges().clear();
+			Mp4Index index = Mp4Parser.parse(adapter, MOOV_LAST_KEY).block();
+			assertNotNull(index);
+			for (int i = 0; i < EARTH_SPINNING_KEYFRAME_OFFSETS.length; i++) {
+				assertEquals(EARTH_SPINNING_KEYFRAME_OFFSETS[i], index.getKeyframeOffset(i));
+			}
+		}
+	}
+
+	@Test
+	void suffixAndMultipleRanges_areServedFromTheView() throws IOException {
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			FastStartContentStreamAdapter adapter = new FastStartContentStreamAdapter(fileSystemAdapter);
+
+			StreamedContent suffix = adapter.loadContent(StreamContentRequest.builder()
+					.key(MOOV_LAST_KEY)
+					.range(Range.suffix(16))
+					.build()).block();
+			assertNotNull(suffix);
+			assertArrayEquals(Arrays.copyOfRange(fastStartFile, fastStartFile.length - 16, fastStartFile.length), join(suffix));
+
+			StreamedContent multipart = adapter.loadContent(StreamContentRequest.builder()
+					.key(MOOV_LAST_KEY)
+					.ranges(List.of(new Range(0L, 99L), new Range(800_000L, 800_099L)))
+					.build()).block();
+			assertNotNull(multipart);
+			assertTrue(multipart.isMultipart());
+			String body = new String(join(multipart), StandardCharsets.ISO_8859_1);
+			assertTrue(body.contains(new String(Arrays.copyOfRange(fastStartFile, 0, 100), StandardCharsets.ISO_8859_1)));
+		}
+	}
+
+	@Test
+	void fastStartAndOtherContent_isPassedThrough() throws IOException {
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			fileSystemAdapter.setZeroCopyEnabled(true);
+			FastStartContentStreamAdapter adapter = new FastStartContentStreamAdapter(fileSystemAdapter);
+
+			StreamedContent content = adapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 1023L))).block();
+			assertNotNull(content);
+			assertTrue(content.isFileRegion());
+			assertEquals(0, adapter.getRelocatedRequestCount());
+		}
+
+		FastStartContentStreamAdapter adapter = new FastStartContentStreamAdapter(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		// park.mp4 is not a valid MP4 file, science-video is not MP4 by its content type.
+		assertArrayEquals(Arrays.copyOf(readResource(PARK_VIDEO_KEY), 1024), read(adapter, PARK_VIDEO_KEY, new Range(0L, 1023L)));
+		assertArrayEquals(Arrays.copyOf(readResource(SCIENCE_VIDEO_KEY), 1024), read(adapter, SCIENCE_VIDEO_KEY, new Range(0L, 1023L)));
+		assertEquals(0, adapter.getRelocatedRequestCount());
+	}
+
+	@Test
+	void view_hasItsOwnValidators() throws IOException {
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			FastStartContentStreamAdapter adapter = new FastStartContentStreamAdapter(fileSystemAdapter);
+			String fileETag = fileSystemAdapter.getContentMetadata(MOOV_LAST_KEY).getETag();
+
+			StreamedContent content = adapter.loadContent(new StreamContentRequest(MOOV_LAST_KEY, new Range(0L, 99L))).block();
+			assertNotNull(content);
+			DataBufferUtils.join(content.getContent()).doOnNext(DataBufferUtils::release).block();
+			String viewETag = content.getMetadata().getETag();
+			assertEquals(FastStartContentStreamAdapter.viewETag(fileETag), viewETag);
+			assertNotEquals(fileETag, viewETag);
+			assertNull(content.getMetadata().getLastModified());
+			assertEquals(viewETag, adapter.getContentMetadata(MOOV_LAST_KEY).getETag());
+
+			StreamedContent notModified = adapter.loadContent(StreamContentRequest.builder()
+					.key(MOOV_LAST_KEY)
+					.ifNoneMatch(viewETag)
+					.build()).block();
+			assertNotNull(notModified);
+			assertTrue(notModified.isNotModified());
+
+			// Bytes of the stored file cannot be continued with bytes of the view.
+			StreamedContent fromStart = adapter.loadContent(StreamContentRequest.builder()
+					.key(MOOV_LAST_KEY)
+					.range(new Range(100L, 199L))
+					.ifRange(fileETag)
+					.build()).block();
+			assertNotNull(fromStart);
+			assertEquals(0L, fromStart.getRange().getStart());
+			DataBufferUtils.join(fromStart.getContent()).doOnNext(DataBufferUtils::release).block();
+		}
+	}
+
+	@Test
+	void passedThroughContent_isLoadedWithoutExtraMetadataLookup() throws IOException {
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			RecordingContentStreamAdapter recordingAdapter = new RecordingContentStreamAdapter(fileSystemAdapter);
+			FastStartContentStreamAdapter adapter = new FastStartContentStreamAdapter(recordingAdapter);
+			read(adapter, EARTH_SPINNING_VIDEO_KEY, new Range(0L, 1023L));
+
+			int lookups = recordingAdapter.getMetadataLookups();
+			StreamedContent content = adapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 1023L))).block();
+			assertNotNull(content);
+			assertEquals(fileSystemAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY).getETag(), content.getMetadata().getETag());
+			DataBufferUtils.join(content.getContent()).doOnNext(DataBufferUtils::release).block();
+			assertEquals(lookups, recordingAdapter.getMetadataLookups());
+		}
+	}
+
+	private static byte[] read(FastStartContentStreamAdapter adapter, String key, Range range) {
+		StreamedContent content = adapter.loadContent(new StreamContentRequest(key, range)).block();
+		assertNotNull(content);
+		assertEquals(range, content.getRange());
+		return join(content);
+	}
+
+	private static byte[] join(StreamedContent content) {
+		return DataBufferUtils.join(content.getContent()).map(buffer -> {
+			byte[] bytes = new byte[buffer.readableByteCount()];
+			buffer.read(bytes);
+			DataBufferUtils.release(buffer);
+			return bytes;
+		}).block();
+	}
+
+	private static byte[] readResource(String key) throws IOException {
+		try (InputStream inputStream = new DefaultResourceLoader().getResource("videos/" + key).getInputStream()) {
+			return inputStream.readAllBytes();
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import net.tylerwade.springbootvideostreaming.web.FileRegionHttpMessageWriter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.codec.HttpMessageWriter;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@SpringBootTest
+public class FileRegionHttpMessageWriterTests {
+
+	@Autowired
+	private ServerCodecConfigurer serverCodecConfigurer;
+
+	private final FileRegionHttpMessageWriter writer = new FileRegionHttpMessageWriter();
+
+	@Test
+	void writer_isRegisteredBeforeDefaultDataBufferWriter() {
+		HttpMessageWriter<?> firstDataBufferWriter = serverCodecConfigurer.getWriters().stream()
+				.filter(w -> w.canWrite(ResolvableType.forClass(DataBuffer.class), MediaType.APPLICATION_OCTET_STREAM))
+				.findFirst()
+				.orElseThrow();
+
+		assertInstanceOf(FileRegionHttpMessageWriter.class, firstDataBufferWriter);
+	}
+
+	@Test
+	void write_sendsFileRegionWithZeroCopy() {
+		Path file = Path.of("video.mp4");
+		FileRegionContent content = new FileRegionContent(file, 100L, 50L, Flux.empty());
+
+		ZeroCopyHttpOutputMessage message = mock(ZeroCopyHttpOutputMessage.class);
+		when(message.getHeaders()).thenReturn(new HttpHeaders());
+		when(message.writeWith(file, 100L, 50L)).thenReturn(Mono.empty());
+
+		StepVerifier.create(writer.write(content, ResolvableType.forClass(DataBuffer.class),
+						MediaType.valueOf("video/mp4"), message, Map.of()))
+				.verifyComplete();
+
+		verify(message).writeWith(file, 100L, 50L);
+		assertEquals(50L, message.getHeaders().getContentLength());
+		assertEquals(MediaType.valueOf("video/mp4"), message.getHeaders().getContentType());
+	}
+
+	@Test
+	void write_fallsBackToBufferedContent() {
+		DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap("hello".getBytes(StandardCharsets.UTF_8));
+		FileRegionContent content = new FileRegionContent(Path.of("video.mp4"), 0L, 5L, Flux.just(buffer));
+
+		// MockServerHttpResponse does not support zero-copy.
+		MockServerHttpResponse response = new MockServerHttpResponse();
+
+		StepVerifier.create(writer.write(content, ResolvableType.forClass(DataBuffer.class),
+						MediaType.APPLICATION_OCTET_STREAM, response, Map.of()))
+				.verifyComplete();
+
+		StepVerifier.create(response.getBodyAsString())
+				.expectNext("hello")
+				.verifyComplete();
+	}
+
+}
@@ -0,0 +1,296 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.MissingResourceException;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileSystemContentStreamAdapterTests {
+
+	@TempDir
+	Path directory;
+
+	private byte[] videoBytes;
+
+	private FileSystemContentStreamAdapter contentStreamAdapter;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+		Files.write(directory.resolve(EARTH_SPINNING_VIDEO_KEY), videoBytes);
+		Files.write(directory.resolve("copy.mp4"), videoBytes);
+		Files.createDirectory(directory.resolve("nested"));
+
+		contentStreamAdapter = new FileSystemContentStreamAdapter(directory);
+	}
+
+	@AfterEach
+	void tearDown() {
+		contentStreamAdapter.close();
+	}
+
+	@Test
+	void getAllContentMetadata_returnsRegularFiles() throws IOException {
+		List<StreamedContentMetadata> metadataList = contentStreamAdapter.getAllContentMetadata();
+
+		assertThat(metadataList)
+				.hasSize(2)
+				.anySatisfy(metadata -> {
+					assertThat(metadata.getKey()).isEqualTo(EARTH_SPINNING_VIDEO_KEY);
+					assertThat(metadata.getContentType()).isEqualTo(EARTH_SPINNING_CONTENT_TYPE);
+					assertThat(metadata.getFileSize()).isEqualTo(EARTH_SPINNING_FILE_SIZE);
+				});
+	}
+
+	@Test
+	void getContentMetadata_returnsMetadata() throws IOException {
+		StreamedContentMetadata metadata = contentStreamAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+
+		assertEquals(EARTH_SPINNING_VIDEO_KEY, metadata.getKey());
+		assertEquals(EARTH_SPINNING_CONTENT_TYPE, metadata.getContentType());
+		assertEquals(EARTH_SPINNING_FILE_SIZE, metadata.getFileSize());
+	}
+
+	@Test
+	void getContentMetadata_throwsMissingResourceException() {
+		assertThrows(MissingResourceException.class, () -> contentStreamAdapter.getContentMetadata("missing-video.mp4"));
+		assertThrows(MissingResourceException.class, () -> contentStreamAdapter.getContentMetadata("nested"));
+	}
+
+	@Test
+	void getContentMetadata_rejectsKeysOutsideDirectory() {
+		assertThrows(MissingResourceException.class, () -> contentStreamAdapter.getContentMetadata("../" + EARTH_SPINNING_VIDEO_KEY));
+		assertThrows(MissingResourceException.class, () -> contentStreamAdapter.getContentMetadata("/etc/passwd"));
+	}
+
+	@Test
+	void loadContent_readsExactRange() {
+		Range range = new Range(1000L, 1000L + 300_000L);
+		StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range);
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request)
+						.flatMap(content -> DataBufferUtils.join(content.getContent()))
+						.map(joined -> {
+							byte[] bytes = new byte[joined.readableByteCount()];
+							joined.read(bytes);
+							DataBufferUtils.release(joined);
+							return bytes;
+						}))
+				.assertNext(bytes -> assertArrayEquals(Arrays.copyOfRange(videoBytes, 1000, 301_001), bytes))
+				.verifyComplete();
+	}
+
+	@Test
+	void loadContent_throwsMissingResourceException() {
+		StreamContentRequest request = StreamContentRequest.builder().key("missing-video.mp4").build();
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request))
+				.expectError(MissingResourceException.class)
+				.verify();
+	}
+
+	@Test
+	void loadContent_reusesOpenFileAcrossRangeRequests() {
+		for (long start = 0; start < 5 * 8192; start += 8192) {
+			StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(start, start + 8191));
+			// Zero-copy is off by default, a file region would be reopened by path.
+			StepVerifier.create(contentStreamAdapter.loadContent(request)
+							.doOnNext(content -> assertFalse(content.getContent() instanceof FileRegionContent))
+							.flatMapMany(StreamedContent::getContent))
+					.thenConsumeWhile(buffer -> DataBufferUtils.release(buffer) || true)
+					.verifyComplete();
+		}
+
+		assertEquals(1, contentStreamAdapter.getOpenFileCount());
+	}
+
+	@Test
+	void openFiles_areBoundedByLru() throws IOException {
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory, 1, Duration.ofMinutes(1))) {
+			adapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+			adapter.getContentMetadata("copy.mp4");
+
+			assertEquals(1, adapter.getOpenFileCount());
+		}
+	}
+
+	@Test
+	void openFiles_areClosedAfterIdleTimeout() throws Exception {
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory, 16, Duration.ofMillis(50))) {
+			adapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+			assertEquals(1, adapter.getOpenFileCount());
+
+			Thread.sleep(100);
+			adapter.evictIdleFiles();
+
+			assertEquals(0, adapter.getOpenFileCount());
+		}
+	}
+
+	@Test
+	void replacedFile_isReopenedWithNewValidators() throws IOException {
+		contentStreamAdapter.setRevalidateInterval(Duration.ZERO);
+		StreamedContentMetadata original = contentStreamAdapter.getContentMetadata("copy.mp4");
+
+		Path replacement = directory.resolve("copy.mp4.tmp");
+		Files.write(replacement, new byte[10]);
+		Files.move(replacement, directory.resolve("copy.mp4"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		StreamedContentMetadata replaced = contentStreamAdapter.getContentMetadata("copy.mp4");
+		assertEquals(10L, replaced.getFileSize());
+		assertNotEquals(original.getETag(), replaced.getETag());
+		assertEquals(1, contentStreamAdapter.getOpenFileCount());
+
+		Files.delete(directory.resolve("copy.mp4"));
+		assertThrows(MissingResourceException.class, () -> contentStreamAdapter.getContentMetadata("copy.mp4"));
+		assertEquals(0, contentStreamAdapter.getOpenFileCount());
+	}
+
+	@Test
+	void evictedFile_staysReadableWhileLeased() throws IOException {
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory, 1, Duration.ofMinutes(1))) {
+			adapter.setZeroCopyEnabled(false);
+			StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 65535L));
+
+			// Evict the channel of the in-flight read by opening another file between reads.
+			Flux<Integer> byteCounts = adapter.loadContent(request)
+					.flatMapMany(StreamedContent::getContent)
+					.limitRate(1)
+					.index()
+					.map(indexed -> {
+						if (indexed.getT1() == 0) {
+							assertDoesNotThrow(() -> adapter.getContentMetadata("copy.mp4"));
+						}
+						int count = indexed.getT2().readableByteCount();
+						DataBufferUtils.release(indexed.getT2());
+						return count;
+					});
+
+			StepVerifier.create(byteCounts.reduce(0, Integer::sum))
+					.expectNext(65536)
+					.verifyComplete();
+		}
+	}
+
+	@Test
+	void loadContent_mappedKey_readsExactRangeAcrossWindows() {
+		// 64 KB windows so the range spans several windows.
+		contentStreamAdapter.enableMemoryMapping(EARTH_SPINNING_VIDEO_KEY::equals, 1024 * 1024, 64 * 1024);
+		Range range = new Range(60_000L, 60_000L + 200_000L);
+		StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range);
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request)
+						.doOnNext(content -> assertFalse(content.isFileRegion()))
+						// Windows are mapped off the subscribing thread.
+						.flatMap(content -> DataBufferUtils.join(content.getContent()
+								.doOnNext(buffer -> assertThat(Thread.currentThread().getName()).startsWith("boundedElastic"))))
+						.map(joined -> {
+							byte[] bytes = new byte[joined.readableByteCount()];
+							joined.read(bytes);
+							DataBufferUtils.release(joined);
+							return bytes;
+						}))
+				.assertNext(bytes -> assertArrayEquals(Arrays.copyOfRange(videoBytes, 60_000, 260_001), bytes))
+				.verifyComplete();
+
+		assertEquals(4 * 64 * 1024, contentStreamAdapter.getMappedBytes());
+	}
+
+	@Test
+	void loadContent_mappedBytesStayWithinBudget() {
+		contentStreamAdapter.enableMemoryMapping(key -> true, 128 * 1024, 64 * 1024);
+
+		for (long start = 0; start < EARTH_SPINNING_FILE_SIZE; start += 100_000) {
+			StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(start, null));
+			StepVerifier.create(contentStreamAdapter.loadContent(request).flatMapMany(StreamedContent::getContent))
+					.thenConsumeWhile(buffer -> DataBufferUtils.release(buffer) || true)
+					.verifyComplete();
+
+			assertThat(contentStreamAdapter.getMappedBytes()).isLessThanOrEqualTo(128 * 1024);
+		}
+	}
+
+	@Test
+	void droppedWindow_isUnmappingUntilCollected() throws InterruptedException {
+		contentStreamAdapter.enableMemoryMapping(key -> true, 64 * 1024, 64 * 1024);
+
+		// The buffers of the first window are still referenced, as by a response that is being written.
+		List<DataBuffer> firstWindow = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 1023L)))
+				.flatMapMany(StreamedContent::getContent)
+				.collectList()
+				.block();
+		assertNotNull(firstWindow);
+		assertEquals(0L, contentStreamAdapter.getUnmappingBytes());
+
+		StepVerifier.create(contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(64 * 1024L, 65 * 1024L - 1)))
+						.flatMapMany(StreamedContent::getContent))
+				.thenConsumeWhile(buffer -> DataBufferUtils.release(buffer) || true)
+				.verifyComplete();
+		assertEquals(64 * 1024, contentStreamAdapter.getMappedBytes());
+		assertEquals(64 * 1024, contentStreamAdapter.getUnmappingBytes());
+
+		firstWindow.forEach(DataBufferUtils::release);
+		firstWindow = null;
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (contentStreamAdapter.getUnmappingBytes() != 0 && System.nanoTime() < deadline) {
+			System.gc();
+			Thread.sleep(20);
+		}
+		assertEquals(0L, contentStreamAdapter.getUnmappingBytes());
+	}
+
+	@Test
+	void loadContent_unmappedKey_isNotMapped() {
+		contentStreamAdapter.enableMemoryMapping(EARTH_SPINNING_VIDEO_KEY::equals, 1024 * 1024, 64 * 1024);
+		StreamContentRequest request = new StreamContentRequest("copy.mp4", new Range(0L, 1023L));
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request).flatMapMany(StreamedContent::getContent))
+				.thenConsumeWhile(buffer -> DataBufferUtils.release(buffer) || true)
+				.verifyComplete();
+
+		assertEquals(0L, contentStreamAdapter.getMappedBytes());
+	}
+
+	@Test
+	void invalidate_releasesMappedWindows() {
+		contentStreamAdapter.enableMemoryMapping(key -> true, 1024 * 1024, 64 * 1024);
+		StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 1023L));
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request).flatMapMany(StreamedContent::getContent))
+				.thenConsumeWhile(buffer -> DataBufferUtils.release(buffer) || true)
+				.verifyComplete();
+		assertEquals(64 * 1024, contentStreamAdapter.getMappedBytes());
+
+		contentStreamAdapter.invalidate(EARTH_SPINNING_VIDEO_KEY);
+
+		assertEquals(0L, contentStreamAdapter.getMappedBytes());
+	}
+
+}
@@ -0,0 +1,197 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.IndexedContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3AsyncContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.ContentMetadataPage;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.test.StepVerifier;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.MissingResourceException;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IndexedContentStreamAdapterTests {
+
+	private static final String BUCKET = "test-bucket";
+
+	@TempDir
+	Path directory;
+
+	private StubS3Server stubS3Server;
+	private S3AsyncClient s3AsyncClient;
+
+	@BeforeEach
+	void setup() throws IOException {
+		stubS3Server = new StubS3Server(BUCKET);
+		s3AsyncClient = S3AsyncClient.builder()
+				.endpointOverride(stubS3Server.getEndpoint())
+				.forcePathStyle(true)
+				.region(Region.US_EAST_1)
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+				.build();
+		stubS3Server.putObject("movies/a.mp4", new byte[10], EARTH_SPINNING_CONTENT_TYPE);
+		stubS3Server.putObject("movies/b.mp4", new byte[20], EARTH_SPINNING_CONTENT_TYPE);
+		stubS3Server.putObject("shows/a.mp4", new byte[30], EARTH_SPINNING_CONTENT_TYPE);
+	}
+
+	@AfterEach
+	void tearDown() {
+		s3AsyncClient.close();
+		stubS3Server.close();
+	}
+
+	@Test
+	void metadata_isServedFromIndex() throws IOException {
+		try (IndexedContentStreamAdapter adapter = new IndexedContentStreamAdapter(
+				new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET), Duration.ZERO)) {
+			adapter.ready().block(Duration.ofSeconds(10));
+			int listRequests = stubS3Server.getListRequests();
+
+			assertEquals(20L, adapter.getContentSize("movies/b.mp4"));
+			assertEquals(30L, adapter.getContentMetadata("shows/a.mp4").getFileSize());
+			assertThat(adapter.getAllContentMetadata()).extracting(StreamedContentMetadata::getKey)
+					.containsExactly("movies/a.mp4", "movies/b.mp4", "shows/a.mp4");
+			StepVerifier.create(adapter.streamContentMetadata("movies/").map(StreamedContentMetadata::getKey))
+					.expectNext("movies/a.mp4", "movies/b.mp4")
+					.verifyComplete();
+
+			ContentMetadataPage page = adapter.listContentMetadata(null, null, 2).block();
+			assertNotNull(page);
+			assertEquals("movies/b.mp4", page.getNextContinuationToken());
+			page = adapter.listContentMetadata(null, page.getNextContinuationToken(), 2).block();
+			assertNotNull(page);
+			assertThat(page.getContents()).extracting(StreamedContentMetadata::getKey).containsExactly("shows/a.mp4");
+			assertNull(page.getNextContinuationToken());
+
+			assertEquals(0, stubS3Server.getHeadRequests());
+			assertEquals(listRequests, stubS3Server.getListRequests());
+		}
+	}
+
+	@Test
+	void missingKey_isLoadedFromDelegateAndIndexed() throws IOException {
+		try (IndexedContentStreamAdapter adapter = new IndexedContentStreamAdapter(
+				new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET), Duration.ZERO)) {
+			adapter.ready().block(Duration.ofSeconds(10));
+			stubS3Server.putObject("movies/c.mp4", new byte[40], EARTH_SPINNING_CONTENT_TYPE);
+
+			assertEquals(40L, adapter.getContentSize("movies/c.mp4"));
+			assertEquals(40L, adapter.getContentSize("movies/c.mp4"));
+			assertEquals(1, stubS3Server.getHeadRequests());
+			assertEquals(4, adapter.getIndexedKeyCount());
+		}
+	}
+
+	@Test
+	void missingKey_isRememberedUntilRefresh() throws IOException {
+		try (IndexedContentStreamAdapter adapter = new IndexedContentStreamAdapter(
+				new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET), Duration.ZERO, Duration.ofMinutes(1))) {
+			adapter.ready().block(Duration.ofSeconds(10));
+
+			assertThrows(MissingResourceException.class, () -> adapter.getContentSize("movies/c.mp4"));
+			assertThrows(MissingResourceException.class, () -> adapter.getContentSize("movies/c.mp4"));
+			assertEquals(1, stubS3Server.getHeadRequests());
+
+			stubS3Server.putObject("movies/c.mp4", new byte[40], EARTH_SPINNING_CONTENT_TYPE);
+			adapter.refresh().block(Duration.ofSeconds(10));
+			assertEquals(40L, adapter.getContentSize("movies/c.mp4"));
+		}
+	}
+
+	@Test
+	void missingKey_isLookedUpAgainAfterTtl() throws Exception {
+		try (IndexedContentStreamAdapter adapter = new IndexedContentStreamAdapter(
+				new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET), Duration.ZERO, Duration.ofMillis(50))) {
+			adapter.ready().block(Duration.ofSeconds(10));
+
+			assertThrows(MissingResourceException.class, () -> adapter.getContentSize("movies/c.mp4"));
+			stubS3Server.putObject("movies/c.mp4", new byte[40], EARTH_SPINNING_CONTENT_TYPE);
+			Thread.sleep(100);
+
+			assertEquals(40L, adapter.getContentSize("movies/c.mp4"));
+			assertEquals(2, stubS3Server.getHeadRequests());
+		}
+	}
+
+	@Test
+	void refresh_appliesChangesAndRemovals() throws IOException {
+		try (IndexedContentStreamAdapter adapter = new IndexedContentStreamAdapter(
+				new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET), Duration.ZERO)) {
+			adapter.ready().block(Duration.ofSeconds(10));
+
+			stubS3Server.putObject("movies/a.mp4", new byte[11], EARTH_SPINNING_CONTENT_TYPE);
+			stubS3Server.removeObject("shows/a.mp4");
+			stubS3Server.putObject("trailer.mp4", new byte[5], EARTH_SPINNING_CONTENT_TYPE);
+			adapter.refresh().block(Duration.ofSeconds(10));
+
+			assertEquals(11L, adapter.getContentSize("movies/a.mp4"));
+			assertThat(adapter.getAllContentMetadata()).extracting(StreamedContentMetadata::getKey)
+					.containsExactly("movies/a.mp4", "movies/b.mp4", "trailer.mp4");
+		}
+	}
+
+	@Test
+	void refresh_runsPeriodically() throws Exception {
+		try (IndexedContentStreamAdapter adapter = new IndexedContentStreamAdapter(
+				new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET), Duration.ofMillis(100))) {
+			adapter.ready().block(Duration.ofSeconds(10));
+			stubS3Server.putObject("trailer.mp4", new byte[5], EARTH_SPINNING_CONTENT_TYPE);
+
+			awaitTrue(() -> adapter.getIndexedKeyCount() == 4);
+		}
+	}
+
+	@Test
+	void fileSystemAdapter_isWatched() throws Exception {
+		Files.write(directory.resolve("a.mp4"), new byte[10]);
+
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory);
+			 IndexedContentStreamAdapter adapter = new IndexedContentStreamAdapter(fileSystemAdapter, Duration.ZERO)) {
+			adapter.ready().block(Duration.ofSeconds(10));
+			assertEquals(10L, adapter.getContentSize("a.mp4"));
+
+			Files.write(directory.resolve("b.mp4"), new byte[20]);
+			// The file may be indexed when it is created, before it is written.
+			awaitTrue(() -> adapter.getAllContentMetadata().size() == 2);
+			awaitTrue(() -> adapter.getContentSize("b.mp4") == 20L);
+
+			Files.write(directory.resolve("a.mp4"), new byte[15]);
+			awaitTrue(() -> adapter.getContentSize("a.mp4") == 15L);
+			// The delegate's cached file was invalidated as well.
+			assertEquals(15L, fileSystemAdapter.getContentSize("a.mp4"));
+
+			Files.delete(directory.resolve("b.mp4"));
+			awaitTrue(() -> adapter.getIndexedKeyCount() == 1);
+		}
+	}
+
+	private static void awaitTrue(CheckedBooleanSupplier condition) throws Exception {
+		long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("Condition not met within 10 seconds.");
+			}
+			Thread.sleep(20);
+		}
+	}
+
+	private interface CheckedBooleanSupplier {
+		boolean getAsBoolean() throws Exception;
+	}
+
+}
@@ -0,0 +1,66 @@
+package net.tylerwade.springbootvideostreaming;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A pooled Netty {@code DataBufferFactory} remembering every buffer it allocates, so tests can assert that all of
+ * them have been released.
+ */
+public class LeakTrackingDataBufferFactory extends NettyDataBufferFactory {
+
+	private final List<NettyDataBuffer> allocated = new CopyOnWriteArrayList<>();
+
+	public LeakTrackingDataBufferFactory() {
+		super(new PooledByteBufAllocator(true));
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public NettyDataBuffer allocateBuffer() {
+		return track(super.allocateBuffer());
+	}
+
+	@Override
+	public NettyDataBuffer allocateBuffer(int initialCapacity) {
+		return track(super.allocateBuffer(initialCapacity));
+	}
+
+	private NettyDataBuffer track(NettyDataBuffer buffer) {
+		allocated.add(buffer);
+		return buffer;
+	}
+
+	public List<NettyDataBuffer> getAllocatedBuffers() {
+		return allocated;
+	}
+
+	/**
+	 * Fails if a buffer allocated by this factory is still unreleased after the timeout. Buffers of a cancelled
+	 * read may be released asynchronously, so they are given some time.
+	 */
+	public void assertNoLeaks(Duration timeout) throws InterruptedException {
+		long deadline = System.nanoTime() + timeout.toNanos();
+		while (leakCount() > 0 && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, leakCount(), "Buffers allocated but not released.");
+	}
+
+	public void assertNoLeaks() throws InterruptedException {
+		assertNoLeaks(Duration.ofSeconds(5));
+	}
+
+	private long leakCount() {
+		return allocated.stream()
+				.filter(buffer -> buffer.getNativeBuffer().refCnt() > 0)
+				.count();
+	}
+}
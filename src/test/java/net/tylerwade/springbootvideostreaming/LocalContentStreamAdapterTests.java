@@ -2,17 +2,23 @@ package net.tylerwade.springbootvideostreaming;
 
 import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
 import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.FileRegionContent;
 import net.tylerwade.springbootvideostreaming.model.Range;
 import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
 import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import reactor.test.StepVerifier;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
 import java.util.MissingResourceException;
 
@@ -116,6 +122,18 @@ public class LocalContentStreamAdapterTests {
 				.verify();
 	}
 
+	@Test
+	void loadContent_keyOutsideDirectory_throwsMissingResourceException() {
+		// The class exists on the classpath, but outside the videos directory.
+		StreamContentRequest request = StreamContentRequest.builder()
+				.key("../net/tylerwade/springbootvideostreaming/TestApplication.class")
+				.build();
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request))
+				.expectError(MissingResourceException.class)
+				.verify();
+	}
+
 	@Test
 	void loadContent_returnsMaxChunkSize() {
 		StreamContentRequest contentRequest = new StreamContentRequest(PARK_VIDEO_KEY, new Range(0L, null));
@@ -127,4 +145,95 @@ public class LocalContentStreamAdapterTests {
 				}).verifyComplete();
 	}
 
-}
\ No newline at end of file
+	@Test
+	void loadContent_returnsFileRegionForFiles() {
+		Range range = new Range(100L, 1099L);
+		StreamContentRequest contentRequest = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range);
+
+		StepVerifier.create(contentStreamAdapter.loadContent(contentRequest))
+				.assertNext(content -> {
+					assertTrue(content.isFileRegion());
+					FileRegionContent region = (FileRegionContent) content.getContent();
+					assertEquals(100L, region.getPosition());
+					assertEquals(1000L, region.getCount());
+					assertThat(region.getFile()).hasFileName(EARTH_SPINNING_VIDEO_KEY);
+				}).verifyComplete();
+	}
+
+	@Test
+	void loadContent_zeroCopyDisabled_returnsBufferedContent() {
+		LocalContentStreamAdapter adapter = new LocalContentStreamAdapter(resourceLoader, VIDEOS_DIRECTORY);
+		adapter.setZeroCopyEnabled(false);
+		StreamContentRequest contentRequest = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 999L));
+
+		StepVerifier.create(adapter.loadContent(contentRequest))
+				.assertNext(content -> assertFalse(content.isFileRegion()))
+				.verifyComplete();
+	}
+
+	@Test
+	void loadContent_readsExactlyContentLengthBytes() throws IOException {
+		// Deliberately not aligned to the 8 KB read buffer.
+		Range range = new Range(12345L, 12345L + 100_000L);
+		StreamContentRequest contentRequest = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range);
+		byte[] expected = readVideoBytes(range.getStart(), range.getEnd());
+
+		StepVerifier.create(contentStreamAdapter.loadContent(contentRequest)
+						.flatMap(content -> DataBufferUtils.join(content.getContent())
+								.map(joined -> {
+									assertEquals(content.getContentLength(), joined.readableByteCount());
+									return toBytes(joined);
+								})))
+				.assertNext(bytes -> assertArrayEquals(expected, bytes))
+				.verifyComplete();
+	}
+
+	@Test
+	void loadContent_readsExactlyContentLengthBytesAtEndOfFile() throws IOException {
+		Range range = new Range(EARTH_SPINNING_FILE_SIZE - 10_000L, EARTH_SPINNING_FILE_SIZE - 1);
+		StreamContentRequest contentRequest = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range);
+		byte[] expected = readVideoBytes(range.getStart(), range.getEnd());
+
+		StepVerifier.create(contentStreamAdapter.loadContent(contentRequest)
+						.flatMap(content -> DataBufferUtils.join(content.getContent())
+								.map(joined -> {
+									assertEquals(content.getContentLength(), joined.readableByteCount());
+									return toBytes(joined);
+								})))
+				.assertNext(bytes -> assertArrayEquals(expected, bytes))
+				.verifyComplete();
+	}
+
+	@Test
+	void loadContent_emitsNoBuffersPastRangeEnd() {
+		// A range smaller than a single read buffer.
+		Range range = new Range(0L, 99L);
+		StreamContentRequest contentRequest = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, range);
+
+		StepVerifier.create(contentStreamAdapter.loadContent(contentRequest)
+						.flatMapMany(StreamedContent::getContent)
+						.map(buffer -> {
+							int count = buffer.readableByteCount();
+							DataBufferUtils.release(buffer);
+							return count;
+						})
+						.reduce(0, Integer::sum))
+				.expectNext(100)
+				.verifyComplete();
+	}
+
+	private byte[] readVideoBytes(long start, long end) throws IOException {
+		try (InputStream inputStream = resourceLoader.getResource("classpath:" + VIDEOS_DIRECTORY + "/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			byte[] all = inputStream.readAllBytes();
+			return Arrays.copyOfRange(all, (int) start, (int) end + 1);
+		}
+	}
+
+	private static byte[] toBytes(DataBuffer buffer) {
+		byte[] bytes = new byte[buffer.readableByteCount()];
+		buffer.read(bytes);
+		DataBufferUtils.release(buffer);
+		return bytes;
+	}
+
+}
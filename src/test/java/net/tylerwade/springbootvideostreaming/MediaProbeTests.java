@@ -0,0 +1,216 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ProbingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.chunk.BitrateAwareChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.media.MediaProbe;
+import net.tylerwade.springbootvideostreaming.model.MediaInfo;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.test.StepVerifier;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MediaProbeTests {
+
+	@TempDir
+	Path directory;
+
+	private final LocalContentStreamAdapter localAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+
+	@Test
+	void extractContentType_mapsKnownExtensions() {
+		assertEquals("video/mp4", localAdapter.extractContentType("movie.mp4"));
+		assertEquals("video/x-matroska", localAdapter.extractContentType("movie.mkv"));
+		assertEquals("video/quicktime", localAdapter.extractContentType("clips/Movie.MOV"));
+		assertEquals("video/mp2t", localAdapter.extractContentType("segment.ts"));
+		assertEquals("application/octet-stream", localAdapter.extractContentType("movie.xyz"));
+		assertEquals("application/octet-stream", localAdapter.extractContentType(SCIENCE_VIDEO_KEY));
+	}
+
+	@Test
+	void probe_readsMp4Tracks() {
+		RecordingContentStreamAdapter adapter = new RecordingContentStreamAdapter(localAdapter);
+
+		MediaInfo info = MediaProbe.probe(adapter, EARTH_SPINNING_VIDEO_KEY, EARTH_SPINNING_FILE_SIZE).block();
+
+		assertNotNull(info);
+		assertEquals("mp4", info.getContainer());
+		assertEquals("video/mp4", info.getContentType());
+		assertEquals(640, info.getWidth());
+		assertEquals(360, info.getHeight());
+		assertEquals(List.of("avc1.4d401e", "mp4a.40.2"), info.getCodecs());
+		assertEquals(30_069, info.getDuration().toMillis());
+		assertEquals(232_441, info.getBitrate());
+		// The moov box is part of the head.
+		assertEquals(1, adapter.getRequestedRanges().size());
+	}
+
+	@Test
+	void probe_readsMatroskaHeader() throws IOException {
+		Files.write(directory.resolve("movie.mp4"), matroska("matroska"));
+		Files.write(directory.resolve("clip.mkv"), matroska("webm"));
+
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory)) {
+			// The magic bytes win over the extension.
+			MediaInfo info = MediaProbe.probe(adapter, "movie.mp4", adapter.getContentSize("movie.mp4")).block();
+			assertNotNull(info);
+			assertEquals("matroska", info.getContainer());
+			assertEquals("video/x-matroska", info.getContentType());
+			assertEquals(Duration.ofMillis(12_345), info.getDuration());
+			assertEquals(1920, info.getWidth());
+			assertEquals(1080, info.getHeight());
+			assertEquals(List.of("avc1", "opus"), info.getCodecs());
+			assertNotNull(info.getBitrate());
+
+			MediaInfo webm = MediaProbe.probe(adapter, "clip.mkv", adapter.getContentSize("clip.mkv")).block();
+			assertNotNull(webm);
+			assertEquals("video/webm", webm.getContentType());
+		}
+	}
+
+	@Test
+	void probe_unknownFormat_isEmpty() {
+		StepVerifier.create(MediaProbe.probe(localAdapter, SCIENCE_VIDEO_KEY, SCIENCE_FILE_SIZE))
+				.verifyComplete();
+	}
+
+	@Test
+	void probingAdapter_cachesMediaInfoWithTheMetadata() throws IOException {
+		RecordingContentStreamAdapter recordingAdapter = new RecordingContentStreamAdapter(localAdapter);
+		ProbingContentStreamAdapter adapter = new ProbingContentStreamAdapter(recordingAdapter);
+
+		MediaInfo info = adapter.loadMediaInfo(EARTH_SPINNING_VIDEO_KEY).block();
+		assertNotNull(info);
+
+		recordingAdapter.getRequestedRanges().clear();
+		StreamedContentMetadata metadata = adapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+		assertSame(info, metadata.getMediaInfo());
+		assertEquals(EARTH_SPINNING_FILE_SIZE, metadata.getFileSize());
+		assertTrue(recordingAdapter.getRequestedRanges().isEmpty());
+		assertEquals(1, adapter.getProbeCount());
+
+		// Unrecognized content keeps the delegate's metadata.
+		assertNull(adapter.loadMediaInfo(SCIENCE_VIDEO_KEY).block());
+		assertEquals(SCIENCE_CONTENT_TYPE, adapter.getContentMetadata(SCIENCE_VIDEO_KEY).getContentType());
+		assertNull(adapter.getContentMetadata(SCIENCE_VIDEO_KEY).getMediaInfo());
+	}
+
+	@Test
+	void probingAdapter_feedsBitrateAwareChunks() {
+		ProbingContentStreamAdapter adapter = new ProbingContentStreamAdapter(localAdapter);
+		localAdapter.setChunkSizePolicy(new BitrateAwareChunkSizePolicy(adapter::getDuration,
+				Duration.ofSeconds(4), 1024, 8L * 1024 * 1024));
+
+		// The first request is served at once, in a chunk of the maximum size, and probed in the background.
+		StreamedContent first = adapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, null))).block();
+		assertNotNull(first);
+		assertEquals(new Range(0L, EARTH_SPINNING_FILE_SIZE - 1), first.getRange());
+		first.getContent().subscribe(DataBufferUtils::release);
+		assertNotNull(adapter.loadMediaInfo(EARTH_SPINNING_VIDEO_KEY).block());
+
+		// Later requests get about 4 seconds of the 30 second video.
+		StreamedContent content = adapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, null))).block();
+		assertNotNull(content);
+		assertEquals(new Range(0L, 116_223L), content.getRange());
+		assertNotNull(content.getMetadata().getMediaInfo());
+		assertEquals(30_069, adapter.getDuration(EARTH_SPINNING_VIDEO_KEY).toMillis());
+		assertEquals(1, adapter.getProbeCount());
+		content.getContent().subscribe(DataBufferUtils::release);
+	}
+
+	@Test
+	void probingAdapter_probesLoadedContentWithItsMetadata() {
+		RecordingContentStreamAdapter recordingAdapter = new RecordingContentStreamAdapter(localAdapter);
+		ProbingContentStreamAdapter adapter = new ProbingContentStreamAdapter(recordingAdapter);
+
+		StreamedContent content = adapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 999L))).block();
+		assertNotNull(content);
+		content.getContent().subscribe(DataBufferUtils::release);
+		// The probe was started with the metadata loaded with the content instead of looking it up again.
+		assertEquals(0, recordingAdapter.getMetadataLookups());
+		assertEquals(1, adapter.getProbeCount());
+
+		assertNotNull(adapter.loadMediaInfo(EARTH_SPINNING_VIDEO_KEY).block());
+		assertEquals(1, adapter.getProbeCount());
+	}
+
+	@Test
+	void probingAdapter_doesNotProbeContentOfUnknownSize() throws IOException {
+		ProbingContentStreamAdapter adapter = new ProbingContentStreamAdapter(new RecordingContentStreamAdapter(localAdapter) {
+			@Override
+			public StreamedContentMetadata getContentMetadata(String key) {
+				return StreamedContentMetadata.builder().key(key).contentType(EARTH_SPINNING_CONTENT_TYPE).build();
+			}
+		});
+
+		StreamedContentMetadata metadata = adapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+		assertEquals(EARTH_SPINNING_CONTENT_TYPE, metadata.getContentType());
+		assertNull(metadata.getMediaInfo());
+		assertEquals(0, adapter.getProbeCount());
+	}
+
+	/**
+	 * Builds a Matroska file with an H.264 video and an Opus audio track, followed by a cluster of unknown size.
+	 */
+	private static byte[] matroska(String docType) {
+		byte[] header = element(0x1A45DFA3, element(0x4282, docType.getBytes(StandardCharsets.US_ASCII)));
+		byte[] info = element(0x1549A966,
+				element(0x2AD7B1, new byte[]{0x0F, 0x42, 0x40}),
+				element(0x4489, ByteBuffer.allocate(8).putDouble(12_345.0).array()));
+		byte[] tracks = element(0x1654AE6B,
+				element(0xAE,
+						element(0x83, new byte[]{1}),
+						element(0x86, "V_MPEG4/ISO/AVC".getBytes(StandardCharsets.US_ASCII)),
+						element(0xE0,
+								element(0xB0, new byte[]{0x07, (byte) 0x80}),
+								element(0xBA, new byte[]{0x04, 0x38}))),
+				element(0xAE,
+						element(0x83, new byte[]{2}),
+						element(0x86, "A_OPUS".getBytes(StandardCharsets.US_ASCII))));
+
+		ByteArrayOutputStream cluster = new ByteArrayOutputStream();
+		cluster.writeBytes(new byte[]{0x1F, 0x43, (byte) 0xB6, 0x75, 0x01, -1, -1, -1, -1, -1, -1, -1});
+		cluster.writeBytes(new byte[100_000]);
+
+		ByteArrayOutputStream file = new ByteArrayOutputStream();
+		file.writeBytes(header);
+		file.writeBytes(element(0x18538067, info, tracks, cluster.toByteArray()));
+		return file.toByteArray();
+	}
+
+	private static byte[] element(int id, byte[]... children) {
+		ByteArrayOutputStream element = new ByteArrayOutputStream();
+		for (int shift = (3 - Integer.numberOfLeadingZeros(id) / 8) * 8; shift >= 0; shift -= 8) {
+			element.write(id >>> shift);
+		}
+		int size = 0;
+		for (byte[] child : children) {
+			size += child.length;
+		}
+		// An 8-byte size, as written by muxers that fill it in afterwards.
+		element.writeBytes(ByteBuffer.allocate(8).putLong(size).put(0, (byte) 0x01).array());
+		for (byte[] child : children) {
+			element.writeBytes(child);
+		}
+		return element.toByteArray();
+	}
+
+}
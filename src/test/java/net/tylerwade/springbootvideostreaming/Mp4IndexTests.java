@@ -0,0 +1,196 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.FileSystemContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4FormatException;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Parser;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class Mp4IndexTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void parse_readsMoovFromTheHeadOfAFastStartFile() {
+		RecordingContentStreamAdapter adapter = new RecordingContentStreamAdapter(
+				new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+
+		Mp4Index index = Mp4Parser.parse(adapter, EARTH_SPINNING_VIDEO_KEY).block();
+
+		assertNotNull(index);
+		assertEquals(902, index.getSampleCount());
+		assertEquals(Duration.ofNanos(30_066_666_666L), index.getDuration());
+		assertEquals(EARTH_SPINNING_KEYFRAME_OFFSETS.length, index.getKeyframeCount());
+		for (int i = 0; i < EARTH_SPINNING_KEYFRAME_OFFSETS.length; i++) {
+			assertEquals(EARTH_SPINNING_KEYFRAME_OFFSETS[i], index.getKeyframeOffset(i));
+		}
+		assertEquals(Duration.ofNanos(5_333_333_333L), index.getKeyframeTime(1));
+		assertEquals(1, adapter.getRequestedRanges().size());
+	}
+
+	@Test
+	void keyframeRange_coversTheGroupOfPicturesContainingThePosition() {
+		Mp4Index index = Mp4Parser.parse(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"), EARTH_SPINNING_VIDEO_KEY).block();
+		assertNotNull(index);
+
+		assertEquals(new Range(14404L, 177622L), index.keyframeRange(Duration.ZERO));
+		assertEquals(new Range(14404L, 177622L), index.keyframeRange(Duration.ofSeconds(-1)));
+		assertEquals(new Range(332506L, 483674L), index.keyframeRange(Duration.ofSeconds(12)));
+		assertEquals(1, index.keyframeAt(index.getKeyframeTime(1)));
+		assertEquals(0, index.keyframeAt(Duration.ofMillis(5300)));
+		assertEquals(new Range(768540L, EARTH_SPINNING_FILE_SIZE - 1), index.keyframeRange(Duration.ofHours(1)));
+	}
+
+	@Test
+	void loadContentAt_costsOneRangeRequestOnceIndexed() throws IOException {
+		RecordingContentStreamAdapter adapter = new RecordingContentStreamAdapter(
+				new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		adapter.loadMp4Index(EARTH_SPINNING_VIDEO_KEY).block();
+		adapter.getRequestedRanges().clear();
+
+		StreamedContent content = adapter.loadContentAt(EARTH_SPINNING_VIDEO_KEY, Duration.ofSeconds(12)).block();
+
+		assertNotNull(content);
+		assertEquals(new Range(332506L, 483674L), content.getRange());
+		assertEquals(1, adapter.getRequestedRanges().size());
+		byte[] bytes = DataBufferUtils.join(content.getContent()).map(buffer -> {
+			byte[] read = new byte[buffer.readableByteCount()];
+			buffer.read(read);
+			DataBufferUtils.release(buffer);
+			return read;
+		}).block();
+		assertArrayEquals(Arrays.copyOfRange(readEarthSpinning(), 332506, 483675), bytes);
+	}
+
+	@Test
+	void parse_findsMoovAfterMediaData() throws IOException {
+		Files.write(directory.resolve("moov-last.mp4"), moveMoovToEnd(readEarthSpinning()));
+
+		try (FileSystemContentStreamAdapter fileSystemAdapter = new FileSystemContentStreamAdapter(directory)) {
+			RecordingContentStreamAdapter adapter = new RecordingContentStreamAdapter(fileSystemAdapter);
+			Mp4Index index = Mp4Parser.parse(adapter, "moov-last.mp4").block();
+
+			assertNotNull(index);
+			assertEquals(EARTH_SPINNING_KEYFRAME_OFFSETS.length, index.getKeyframeCount());
+			for (int i = 0; i < EARTH_SPINNING_KEYFRAME_OFFSETS.length; i++) {
+				assertEquals(EARTH_SPINNING_KEYFRAME_OFFSETS[i] - EARTH_SPINNING_MOOV_SIZE, index.getKeyframeOffset(i));
+			}
+			// The last group of pictures ends where the moov box starts.
+			assertEquals(EARTH_SPINNING_FILE_SIZE - EARTH_SPINNING_MOOV_SIZE - 1, index.keyframeRange(Duration.ofHours(1)).getEnd());
+			// The head, the header of the box following mdat, and the moov box.
+			assertThat(adapter.getRequestedRanges()).extracting(Range::getStart)
+					.containsExactly(0L, EARTH_SPINNING_FILE_SIZE - EARTH_SPINNING_MOOV_SIZE, EARTH_SPINNING_FILE_SIZE - EARTH_SPINNING_MOOV_SIZE);
+		}
+	}
+
+	@Test
+	void cache_buildsIndexOncePerVersion() throws IOException {
+		Files.write(directory.resolve("video.mp4"), readEarthSpinning());
+
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory)) {
+			Mp4IndexCache cache = new Mp4IndexCache();
+			Mp4Index first = cache.get(adapter, "video.mp4").block();
+			assertSame(first, cache.get(adapter, "video.mp4").block());
+			assertEquals(1, cache.getMissCount());
+			assertEquals(1, cache.getHitCount());
+
+			Files.write(directory.resolve("video.mp4"), moveMoovToEnd(readEarthSpinning()));
+			adapter.invalidate("video.mp4");
+			Files.setLastModifiedTime(directory.resolve("video.mp4"), FileTime.fromMillis(0));
+
+			Mp4Index rebuilt = cache.get(adapter, "video.mp4").block();
+			assertNotNull(rebuilt);
+			assertNotSame(first, rebuilt);
+			assertEquals(EARTH_SPINNING_KEYFRAME_OFFSETS[0] - EARTH_SPINNING_MOOV_SIZE, rebuilt.getKeyframeOffset(0));
+		}
+	}
+
+	@Test
+	void cache_concurrentMissesShareOneBuild() {
+		RecordingContentStreamAdapter adapter = new RecordingContentStreamAdapter(new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"));
+		Mp4IndexCache cache = new Mp4IndexCache();
+
+		List<Mp4Index> indexes = Flux.range(0, 16)
+				.flatMap(i -> cache.get(adapter, EARTH_SPINNING_VIDEO_KEY).subscribeOn(Schedulers.parallel()))
+				.collectList()
+				.block();
+
+		assertNotNull(indexes);
+		assertThat(indexes).hasSize(16).allSatisfy(index -> assertSame(indexes.get(0), index));
+		assertEquals(1, cache.getMissCount());
+		assertEquals(15, cache.getHitCount());
+		assertThat(adapter.getRequestedRanges()).extracting(Range::getStart).containsOnlyOnce(0L);
+	}
+
+	@Test
+	void parse_rejectsSampleCountsLargerThanTheirTables() throws IOException {
+		byte[] crafted = readEarthSpinning();
+		// The sample count of the stsz box and the sync sample count of the stss box.
+		ByteBuffer.wrap(crafted).putInt(indexOf(crafted, "stsz") + 12, Integer.MAX_VALUE);
+		ByteBuffer.wrap(crafted).putInt(indexOf(crafted, "stss") + 8, Integer.MAX_VALUE);
+		Files.write(directory.resolve("crafted.mp4"), crafted);
+
+		try (FileSystemContentStreamAdapter adapter = new FileSystemContentStreamAdapter(directory)) {
+			StepVerifier.create(Mp4Parser.parse(adapter, "crafted.mp4"))
+					.expectErrorSatisfies(e -> assertThat(e).isInstanceOf(Mp4FormatException.class).hasMessageContaining("stsz"))
+					.verify();
+		}
+	}
+
+	@Test
+	void loadMp4Index_isCachedPerAdapter() {
+		LocalContentStreamAdapter first = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		LocalContentStreamAdapter second = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+
+		Mp4Index index = first.loadMp4Index(EARTH_SPINNING_VIDEO_KEY).block();
+		assertSame(index, first.loadMp4Index(EARTH_SPINNING_VIDEO_KEY).block());
+		assertNotSame(index, second.loadMp4Index(EARTH_SPINNING_VIDEO_KEY).block());
+	}
+
+	@Test
+	void parse_rejectsContentThatIsNotMp4() {
+		LocalContentStreamAdapter adapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		Mp4IndexCache cache = new Mp4IndexCache();
+
+		StepVerifier.create(cache.get(adapter, PARK_VIDEO_KEY))
+				.expectError(Mp4FormatException.class)
+				.verify();
+		assertEquals(0, cache.size());
+	}
+
+	private static int indexOf(byte[] bytes, String type) {
+		byte[] pattern = type.getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i + pattern.length <= bytes.length; i++) {
+			if (Arrays.equals(bytes, i, i + pattern.length, pattern, 0, pattern.length)) {
+				return i;
+			}
+		}
+		throw new AssertionError("No " + type + " box.");
+	}
+
+}
@@ -0,0 +1,184 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.CachingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiRangeTests {
+
+	private LocalContentStreamAdapter contentStreamAdapter;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+		contentStreamAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+	}
+
+	@Test
+	void createValidRange_suffixRange_returnsEndOfContent() {
+		assertEquals(new Range(9500L, 9999L), contentStreamAdapter.createValidRange(request(List.of(Range.suffix(500))), 10_000L));
+		assertEquals(new Range(0L, 9999L), contentStreamAdapter.createValidRange(request(List.of(Range.suffix(20_000))), 10_000L));
+	}
+
+	@Test
+	void loadContent_multipleRanges_returnsMultipartBody() {
+		StreamedContent content = load(request(List.of(new Range(0L, 99L), new Range(1000L, 1099L), Range.suffix(100))));
+
+		assertTrue(content.isMultipart());
+		assertEquals(List.of(new Range(0L, 99L), new Range(1000L, 1099L),
+				new Range(EARTH_SPINNING_FILE_SIZE - 100, EARTH_SPINNING_FILE_SIZE - 1)), content.getRanges());
+
+		byte[] expected = expectedBody(content.getMultipartBoundary(), content.getRanges());
+		byte[] body = join(content);
+		assertArrayEquals(expected, body);
+		assertEquals(body.length, content.getContentLength());
+	}
+
+	@Test
+	void toResponseEntity_multipart_returns206WithBoundary() {
+		StreamedContent content = load(request(List.of(new Range(0L, 99L), new Range(1000L, 1099L))));
+		ResponseEntity<Flux<DataBuffer>> response = content.toResponseEntity();
+
+		assertEquals(206, response.getStatusCode().value());
+		assertEquals("multipart/byteranges; boundary=" + content.getMultipartBoundary(), response.getHeaders().getFirst("Content-Type"));
+		assertEquals(String.valueOf(content.getContentLength()), response.getHeaders().getFirst("Content-Length"));
+		assertNull(response.getHeaders().getFirst("Content-Range"));
+		join(content);
+	}
+
+	@Test
+	void loadContent_adjacentRanges_areMergedIntoSingleRange() {
+		StreamedContent content = load(request(List.of(new Range(150L, 199L), new Range(0L, 99L), new Range(90L, 120L))));
+
+		assertFalse(content.isMultipart());
+		assertEquals(new Range(0L, 199L), content.getRange());
+		assertArrayEquals(Arrays.copyOfRange(videoBytes, 0, 200), join(content));
+	}
+
+	@Test
+	void loadContent_mergedRangeOverMaxChunkSize_isNotMerged() {
+		contentStreamAdapter.setChunkSizePolicy(ChunkSizePolicy.fixed(1000));
+
+		StreamedContent content = load(request(List.of(new Range(0L, 899L), new Range(900L, 1799L))));
+
+		assertTrue(content.isMultipart());
+		assertEquals(List.of(new Range(0L, 899L), new Range(900L, 1799L)), content.getRanges());
+		join(content);
+	}
+
+	@Test
+	void loadMultipartContent_nearbyParts_areReadWithOneRequest() throws InterruptedException {
+		LeakTrackingDataBufferFactory dataBufferFactory = new LeakTrackingDataBufferFactory();
+		contentStreamAdapter.setZeroCopyEnabled(false);
+		contentStreamAdapter.setDataBufferFactory(dataBufferFactory);
+		contentStreamAdapter.setBufferSize(64);
+		RecordingContentStreamAdapter recordingAdapter = new RecordingContentStreamAdapter(contentStreamAdapter);
+		List<Range> ranges = List.of(new Range(0L, 99L), new Range(1000L, 1099L), new Range(500_000L, 500_099L));
+
+		StreamedContent content = recordingAdapter.loadMultipartContent(request(ranges)).block();
+
+		assertNotNull(content);
+		assertArrayEquals(expectedBody(content.getMultipartBoundary(), ranges), join(content));
+		// The first two parts are read together, the gap to the third is too large.
+		assertEquals(List.of(new Range(0L, 1099L), new Range(500_000L, 500_099L)), recordingAdapter.getRequestedRanges());
+		dataBufferFactory.assertNoLeaks();
+	}
+
+	@Test
+	void loadContent_tooManyRanges_areIgnored() {
+		List<Range> ranges = IntStream.rangeClosed(0, ContentStreamAdapter.MAX_RANGES)
+				.mapToObj(i -> new Range(i * 1000L, i * 1000L + 9))
+				.toList();
+
+		StreamedContent content = load(request(ranges));
+
+		assertFalse(content.isMultipart());
+		assertEquals(new Range(0L, Math.min(ContentStreamAdapter.MAX_CHUNK_SIZE, EARTH_SPINNING_FILE_SIZE) - 1), content.getRange());
+		join(content);
+	}
+
+	@Test
+	void loadContent_unsatisfiableRanges_areDropped() {
+		StreamedContent content = load(request(List.of(new Range(0L, 99L), new Range(EARTH_SPINNING_FILE_SIZE + 10, null))));
+
+		assertFalse(content.isMultipart());
+		assertEquals(new Range(0L, 99L), content.getRange());
+		join(content);
+	}
+
+	@Test
+	void cachingContentStreamAdapter_suffixRange_returnsEndOfContent() {
+		CachingContentStreamAdapter cachingAdapter = new CachingContentStreamAdapter(contentStreamAdapter);
+
+		StreamedContent content = cachingAdapter.loadContent(request(List.of(Range.suffix(100)))).block();
+
+		assertNotNull(content);
+		assertEquals(new Range(EARTH_SPINNING_FILE_SIZE - 100, EARTH_SPINNING_FILE_SIZE - 1), content.getRange());
+		assertArrayEquals(Arrays.copyOfRange(videoBytes, videoBytes.length - 100, videoBytes.length), join(content));
+	}
+
+	private byte[] expectedBody(String boundary, List<Range> ranges) {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		for (int i = 0; i < ranges.size(); i++) {
+			Range range = ranges.get(i);
+			String header = (i == 0 ? "" : "\r\n") + "--" + boundary + "\r\n"
+					+ "Content-Type: " + EARTH_SPINNING_CONTENT_TYPE + "\r\n"
+					+ "Content-Range: bytes " + range.getStart() + "-" + range.getEnd() + "/" + EARTH_SPINNING_FILE_SIZE + "\r\n\r\n";
+			body.writeBytes(header.getBytes(StandardCharsets.US_ASCII));
+			body.write(videoBytes, range.getStart().intValue(), (int) (range.getEnd() - range.getStart() + 1));
+		}
+		body.writeBytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+		return body.toByteArray();
+	}
+
+	private StreamedContent load(StreamContentRequest contentRequest) {
+		StreamedContent content = contentStreamAdapter.loadContent(contentRequest).block();
+		assertNotNull(content);
+		return content;
+	}
+
+	private static StreamContentRequest request(List<Range> ranges) {
+		return StreamContentRequest.builder()
+				.key(EARTH_SPINNING_VIDEO_KEY)
+				.ranges(ranges)
+				.build();
+	}
+
+	private static byte[] join(StreamedContent content) {
+		DataBuffer joined = DataBufferUtils.join(content.getContent()).block();
+		assertThat(joined).isNotNull();
+		byte[] bytes = new byte[joined.readableByteCount()];
+		joined.read(bytes);
+		DataBufferUtils.release(joined);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,248 @@
+package net.tylerwade.springbootvideostreaming;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ObservedContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.config.AutoConfig;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.FilteredClassLoader;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.test.StepVerifier;
+
+import java.util.List;
+import java.util.MissingResourceException;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObservedContentStreamAdapterTests {
+
+	private static final Range RANGE = new Range(0L, 99_999L);
+
+	private final List<Observation.Context> stopped = new CopyOnWriteArrayList<>();
+
+	private ObservedContentStreamAdapter contentStreamAdapter;
+
+	@BeforeEach
+	void setup() {
+		ObservationRegistry observationRegistry = ObservationRegistry.create();
+		observationRegistry.observationConfig().observationHandler(new ObservationHandler<>() {
+			@Override
+			public void onStop(Observation.Context context) {
+				stopped.add(context);
+			}
+
+			@Override
+			public boolean supportsContext(Observation.Context context) {
+				return true;
+			}
+		});
+
+		LocalContentStreamAdapter delegate = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		delegate.setZeroCopyEnabled(false);
+		contentStreamAdapter = new ObservedContentStreamAdapter(delegate, observationRegistry);
+	}
+
+	@Test
+	void loadContent_completedStream_isObserved() {
+		StreamedContent content = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, RANGE)).block();
+		assertNotNull(content);
+		assertEquals(ObservedContentStreamAdapter.OUTCOME_COMPLETED, tag(stopped(ObservedContentStreamAdapter.LOAD_OBSERVATION), ObservedContentStreamAdapter.OUTCOME));
+
+		StepVerifier.create(content.getContent(), 1)
+				.consumeNextWith(buffer -> {
+					DataBufferUtils.release(buffer);
+					assertEquals(1, contentStreamAdapter.getActiveStreamCount());
+				})
+				.thenRequest(Long.MAX_VALUE)
+				.thenConsumeWhile(buffer -> {
+					DataBufferUtils.release(buffer);
+					return true;
+				})
+				.verifyComplete();
+
+		assertEquals(100_000L, contentStreamAdapter.getBytesServed());
+		assertEquals(0, contentStreamAdapter.getActiveStreamCount());
+		assertEquals(ObservedContentStreamAdapter.OUTCOME_COMPLETED, tag(stopped(ObservedContentStreamAdapter.STREAM_OBSERVATION), ObservedContentStreamAdapter.OUTCOME));
+		assertEquals("256KiB", tag(stopped(ObservedContentStreamAdapter.STREAM_OBSERVATION), ObservedContentStreamAdapter.RANGE_SIZE));
+		assertEquals("LocalContentStreamAdapter", tag(stopped(ObservedContentStreamAdapter.FIRST_BYTE_OBSERVATION), ObservedContentStreamAdapter.ADAPTER));
+	}
+
+	@Test
+	void loadContent_cancelledStream_isCounted() {
+		StreamedContent content = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, RANGE)).block();
+		assertNotNull(content);
+
+		StepVerifier.create(content.getContent(), 1)
+				.consumeNextWith(DataBufferUtils::release)
+				.thenCancel()
+				.verify();
+
+		assertEquals(1, contentStreamAdapter.getCancelledStreamCount());
+		assertEquals(0, contentStreamAdapter.getActiveStreamCount());
+		assertEquals(ObservedContentStreamAdapter.OUTCOME_CANCELLED, tag(stopped(ObservedContentStreamAdapter.STREAM_OBSERVATION), ObservedContentStreamAdapter.OUTCOME));
+	}
+
+	@Test
+	void loadContent_notModified_endsStreamWithoutBody() throws Exception {
+		String eTag = contentStreamAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY).getETag();
+
+		StreamedContent content = contentStreamAdapter.loadContent(StreamContentRequest.builder()
+				.key(EARTH_SPINNING_VIDEO_KEY)
+				.ifNoneMatch(eTag)
+				.build()).block();
+
+		assertNotNull(content);
+		assertTrue(content.isNotModified());
+		assertEquals(0, contentStreamAdapter.getActiveStreamCount());
+		assertEquals(ObservedContentStreamAdapter.OUTCOME_NOT_MODIFIED, tag(stopped(ObservedContentStreamAdapter.LOAD_OBSERVATION), ObservedContentStreamAdapter.OUTCOME));
+		assertThat(stopped).noneMatch(context -> ObservedContentStreamAdapter.STREAM_OBSERVATION.equals(context.getName()));
+	}
+
+	@Test
+	void loadContent_bodyNeverSubscribed_leavesNoActiveStream() {
+		StreamedContent content = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, RANGE)).block();
+		assertNotNull(content);
+
+		// The body is dropped without being subscribed, e.g. because the client disconnected.
+		assertEquals(0, contentStreamAdapter.getActiveStreamCount());
+		assertThat(stopped).extracting(Observation.Context::getName).containsExactly(ObservedContentStreamAdapter.LOAD_OBSERVATION);
+	}
+
+	@Test
+	void loadContent_missingContent_isObservedAsError() {
+		StepVerifier.create(contentStreamAdapter.loadContent(new StreamContentRequest("missing-video.mp4", RANGE)))
+				.expectError(MissingResourceException.class)
+				.verify();
+
+		Observation.Context context = stopped(ObservedContentStreamAdapter.LOAD_OBSERVATION);
+		assertEquals(ObservedContentStreamAdapter.OUTCOME_ERROR, tag(context, ObservedContentStreamAdapter.OUTCOME));
+		assertThat(context.getError()).isInstanceOf(MissingResourceException.class);
+	}
+
+	@Test
+	void getContentMetadata_isObserved() throws Exception {
+		contentStreamAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+
+		assertEquals("getContentMetadata", tag(stopped(ObservedContentStreamAdapter.METADATA_OBSERVATION), ObservedContentStreamAdapter.OPERATION));
+	}
+
+	@Test
+	void bindTo_registersStreamMeters() {
+		MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		contentStreamAdapter.bindTo(meterRegistry);
+
+		StreamedContent content = contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, RANGE)).block();
+		assertNotNull(content);
+		StepVerifier.create(content.getContent(), 1)
+				.consumeNextWith(buffer -> {
+					DataBufferUtils.release(buffer);
+					assertEquals(1.0, meterRegistry.get(ObservedContentStreamAdapter.ACTIVE_STREAMS_METER).gauge().value());
+				})
+				.thenCancel()
+				.verify();
+
+		assertEquals(0.0, meterRegistry.get(ObservedContentStreamAdapter.ACTIVE_STREAMS_METER).gauge().value());
+		assertEquals(1.0, meterRegistry.get(ObservedContentStreamAdapter.CANCELLED_STREAMS_METER).functionCounter().count());
+		assertEquals((double) contentStreamAdapter.getBytesServed(),
+				meterRegistry.get(ObservedContentStreamAdapter.BYTES_SERVED_METER).tag(ObservedContentStreamAdapter.ADAPTER, "LocalContentStreamAdapter").functionCounter().count());
+		assertThat(contentStreamAdapter.getBytesServed()).isPositive();
+	}
+
+	@Test
+	void autoConfig_wrapsAdapterOnlyWithObservationOrMeterRegistry() {
+		ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(AutoConfig.class));
+
+		contextRunner.run(context -> assertThat(context.getBean(ContentStreamAdapter.class)).isInstanceOf(LocalContentStreamAdapter.class));
+		contextRunner.withBean(ObservationRegistry.class, ObservationRegistry::create)
+				.run(context -> assertThat(context.getBean(ContentStreamAdapter.class)).isInstanceOf(LocalContentStreamAdapter.class));
+		contextRunner.withBean(ObservationRegistry.class, () -> {
+					ObservationRegistry registry = ObservationRegistry.create();
+					registry.observationConfig().observationHandler(context -> true);
+					return registry;
+				})
+				.run(context -> assertThat(context.getBean(ContentStreamAdapter.class)).isInstanceOf(ObservedContentStreamAdapter.class));
+		contextRunner.withBean(ObservationRegistry.class, ObservationRegistry::create)
+				.withPropertyValues("video-streaming.observation.enabled=false")
+				.run(context -> assertThat(context.getBean(ContentStreamAdapter.class)).isInstanceOf(LocalContentStreamAdapter.class));
+		contextRunner.withBean(SimpleMeterRegistry.class, SimpleMeterRegistry::new)
+				.withClassLoader(new FilteredClassLoader(MeterRegistry.class))
+				.run(context -> assertThat(context.getBean(ContentStreamAdapter.class)).isInstanceOf(LocalContentStreamAdapter.class));
+	}
+
+	@Test
+	void autoConfig_recordsTimersWithOnlyMeterRegistry() {
+		new ApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(AutoConfig.class))
+				.withBean(SimpleMeterRegistry.class, SimpleMeterRegistry::new)
+				.run(context -> {
+					ContentStreamAdapter adapter = context.getBean(ContentStreamAdapter.class);
+					assertThat(adapter).isInstanceOf(ObservedContentStreamAdapter.class);
+
+					SimpleMeterRegistry meterRegistry = context.getBean(SimpleMeterRegistry.class);
+					assertThat(meterRegistry.find(ObservedContentStreamAdapter.ACTIVE_STREAMS_METER).gauge()).isNotNull();
+					assertThatThrownBy(() -> adapter.getContentMetadata("missing.mp4")).isInstanceOf(MissingResourceException.class);
+					assertThat(meterRegistry.find(ObservedContentStreamAdapter.METADATA_OBSERVATION).timer()).isNotNull();
+				});
+	}
+
+	@Test
+	void autoConfig_keepsAdaptersDeclaredWithConcreteClass() {
+		new ApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(AutoConfig.class))
+				.withBean(ObservationRegistry.class, () -> {
+					ObservationRegistry registry = ObservationRegistry.create();
+					registry.observationConfig().observationHandler(context -> true);
+					return registry;
+				})
+				.withBean(SimpleMeterRegistry.class, SimpleMeterRegistry::new)
+				.withBean(LocalContentStreamAdapter.class, () -> new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos"))
+				.run(context -> {
+					assertThat(context.getBean(LocalContentStreamAdapter.class)).isInstanceOf(LocalContentStreamAdapter.class);
+					assertThat(context.getBean(SimpleMeterRegistry.class).find(ObservedContentStreamAdapter.ACTIVE_STREAMS_METER).gauge()).isNull();
+				});
+	}
+
+	@Test
+	void autoConfig_registersMetersOfWrappedAdapter() {
+		new ApplicationContextRunner()
+				.withConfiguration(AutoConfigurations.of(AutoConfig.class))
+				.withBean(ObservationRegistry.class, () -> {
+					ObservationRegistry registry = ObservationRegistry.create();
+					registry.observationConfig().observationHandler(context -> true);
+					return registry;
+				})
+				.withBean(SimpleMeterRegistry.class, SimpleMeterRegistry::new)
+				.run(context -> {
+					assertThat(context.getBean(ContentStreamAdapter.class)).isInstanceOf(ObservedContentStreamAdapter.class);
+					assertThat(context.getBean(SimpleMeterRegistry.class).find(ObservedContentStreamAdapter.ACTIVE_STREAMS_METER).gauge()).isNotNull();
+				});
+	}
+
+	private Observation.Context stopped(String name) {
+		return stopped.stream()
+				.filter(context -> name.equals(context.getName()))
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private static String tag(Observation.Context context, String key) {
+		return context.getLowCardinalityKeyValue(key).getValue();
+	}
+
+}
@@ -0,0 +1,187 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.LocalContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.PacingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.ProbingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.pacing.BandwidthPacer;
+import net.tylerwade.springbootvideostreaming.pacing.TokenBucket;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PacingTests {
+
+	private static final long MILLIS = 1_000_000L;
+
+	@Test
+	void tokenBucket_allowsBurstThenRate() {
+		TokenBucket bucket = new TokenBucket(1000, 500);
+		long now = 1_000_000 * MILLIS;
+
+		// The burst is sent at once, then every byte costs a millisecond.
+		assertEquals(now, bucket.reserve(500, now));
+		assertEquals(now + 100 * MILLIS, bucket.reserve(100, now));
+		assertEquals(now + 300 * MILLIS, bucket.reserve(200, now));
+
+		// Idle time refills the bucket up to the burst only.
+		long later = now + 10_000 * MILLIS;
+		assertEquals(later, bucket.reserve(500, later));
+		assertEquals(later + 1 * MILLIS, bucket.reserve(1, later));
+	}
+
+	@Test
+	void tokenBucket_grantsReservationsInOrder() {
+		TokenBucket bucket = new TokenBucket(1000, 0);
+		long now = 1_000_000 * MILLIS;
+
+		assertEquals(now + 100 * MILLIS, bucket.reserve(100, now));
+		// A later reservation waits for the earlier one, even if it could start earlier.
+		assertEquals(now + 200 * MILLIS, bucket.reserve(100, now + 50 * MILLIS));
+	}
+
+	@Test
+	void tokenBucket_refundGivesBytesBack() {
+		TokenBucket bucket = new TokenBucket(1000, 0);
+		long now = 1_000_000 * MILLIS;
+
+		assertEquals(now + 100 * MILLIS, bucket.reserve(100, now));
+		bucket.refund(100);
+		assertEquals(now + 100 * MILLIS, bucket.reserve(100, now));
+	}
+
+	@Test
+	void pacer_refundsReservationsOfCancelledWaits() {
+		TokenBucket globalBucket = new TokenBucket(1000, 0);
+		try (BandwidthPacer pacer = new BandwidthPacer(globalBucket)) {
+			// Waits about a second for the global budget, then is cancelled.
+			pacer.acquire(null, 1000).subscribe().dispose();
+			assertEquals(0, pacer.getWaitingCount());
+
+			long now = System.nanoTime();
+			long release = globalBucket.reserve(1000, now);
+			assertTrue(release - now < 1500 * MILLIS, (release - now) / MILLIS + "ms");
+		}
+	}
+
+	@Test
+	void pacer_limitsStreamRate() {
+		try (BandwidthPacer pacer = new BandwidthPacer(null)) {
+			// 1000 bytes at once, then 4000 bytes at 10000 bytes per second.
+			TokenBucket bucket = new TokenBucket(10_000, 1000);
+
+			long start = System.nanoTime();
+			Long bytes = pacer.pace(buffers(5, 1000), bucket)
+					.map(PacingTests::release)
+					.reduce(0L, Long::sum)
+					.block();
+			long elapsedMillis = (System.nanoTime() - start) / MILLIS;
+
+			assertEquals(5000L, bytes);
+			assertTrue(elapsedMillis >= 350 && elapsedMillis < 2000, elapsedMillis + "ms");
+			assertEquals(4, pacer.getDelayedCount());
+			assertEquals(0, pacer.getWaitingCount());
+		}
+	}
+
+	@Test
+	void pacer_sharesGlobalBudgetFairly() {
+		try (BandwidthPacer pacer = new BandwidthPacer(new TokenBucket(20_000, 1000))) {
+			long start = System.nanoTime();
+			Mono<Long> first = finishMillis(pacer.pace(buffers(6, 1000), null), start);
+			Mono<Long> second = finishMillis(pacer.pace(buffers(6, 1000), null), start);
+
+			long[] finished = Mono.zip(first, second).map(both -> new long[]{both.getT1(), both.getT2()}).block();
+
+			// 12000 bytes at 20000 bytes per second, after a burst of 1000 bytes.
+			assertNotNull(finished);
+			assertTrue(Math.max(finished[0], finished[1]) >= 450, finished[0] + "ms, " + finished[1] + "ms");
+			// Neither stream finishes before the other has been served.
+			assertTrue(Math.abs(finished[0] - finished[1]) < 200, finished[0] + "ms, " + finished[1] + "ms");
+		}
+	}
+
+	@Test
+	void pacer_throttledStreamDoesNotDelayOthers() {
+		try (BandwidthPacer pacer = new BandwidthPacer(new TokenBucket(20_000, 1000))) {
+			long start = System.nanoTime();
+			// 3000 bytes at 2000 bytes per second, without a burst.
+			Mono<Long> throttled = finishMillis(pacer.pace(buffers(3, 1000), new TokenBucket(2000, 0)), start);
+			Mono<Long> unthrottled = finishMillis(pacer.pace(buffers(6, 1000), null), start);
+
+			long[] finished = Mono.zip(throttled, unthrottled).map(both -> new long[]{both.getT1(), both.getT2()}).block();
+
+			assertNotNull(finished);
+			assertTrue(finished[0] >= 1400, finished[0] + "ms");
+			// 5000 bytes after the burst at 20000 bytes per second, not held up by the throttled stream's waits.
+			assertTrue(finished[1] < 700, finished[1] + "ms");
+		}
+	}
+
+	@Test
+	void pacingAdapter_limitsStreamToMultipleOfBitrate() {
+		LocalContentStreamAdapter localAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		ProbingContentStreamAdapter probingAdapter = new ProbingContentStreamAdapter(localAdapter);
+		// The bitrate is known once the video has been probed.
+		assertNotNull(probingAdapter.loadMediaInfo(EARTH_SPINNING_VIDEO_KEY).block());
+		try (BandwidthPacer pacer = new BandwidthPacer(null)) {
+			// About 29000 bytes per second: a burst of 1 second, then 10 times the bitrate.
+			PacingContentStreamAdapter adapter = new PacingContentStreamAdapter(probingAdapter, pacer, 10,
+					Duration.ofSeconds(1), 0, 100);
+
+			long start = System.nanoTime();
+			StreamedContent content = adapter.loadContent(StreamContentRequest.builder()
+					.key(EARTH_SPINNING_VIDEO_KEY)
+					.range(new Range(0L, 116_999L))
+					.clientId("client-1")
+					.build()).block();
+			assertNotNull(content);
+			Long bytes = content.getContent().map(PacingTests::release).reduce(0L, Long::sum).block();
+			long elapsedMillis = (System.nanoTime() - start) / MILLIS;
+
+			assertEquals(117_000L, bytes);
+			assertTrue(elapsedMillis >= 200, elapsedMillis + "ms");
+			assertEquals(1, adapter.getTrackedStreamCount());
+			assertTrue(pacer.getDelayedCount() > 0);
+		}
+	}
+
+	@Test
+	void pacingAdapter_withoutLimits_passesContentThrough() {
+		ContentStreamAdapter localAdapter = new LocalContentStreamAdapter(new DefaultResourceLoader(), "videos");
+		try (PacingContentStreamAdapter adapter = new PacingContentStreamAdapter(localAdapter, 0)) {
+			StreamedContent content = adapter.loadContent(new StreamContentRequest(PARK_VIDEO_KEY, new Range(0L, 9999L))).block();
+			assertNotNull(content);
+			assertEquals(10_000L, content.getContent().map(PacingTests::release).reduce(0L, Long::sum).block());
+			assertEquals(0, adapter.getPacer().getDelayedCount());
+			assertEquals(0, adapter.getTrackedStreamCount());
+		}
+	}
+
+	private static Flux<DataBuffer> buffers(int count, int size) {
+		return Flux.range(0, count).map(i -> DefaultDataBufferFactory.sharedInstance.wrap(new byte[size]));
+	}
+
+	private static Mono<Long> finishMillis(Flux<DataBuffer> content, long start) {
+		return content.map(PacingTests::release).then(Mono.fromSupplier(() -> (System.nanoTime() - start) / MILLIS));
+	}
+
+	private static long release(DataBuffer buffer) {
+		long bytes = buffer.readableByteCount();
+		DataBufferUtils.release(buffer);
+		return bytes;
+	}
+
+}
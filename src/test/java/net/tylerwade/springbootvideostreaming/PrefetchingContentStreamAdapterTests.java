@@ -0,0 +1,240 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.PrefetchingContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.adapter.S3AsyncContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.chunk.ChunkRequest;
+import net.tylerwade.springbootvideostreaming.chunk.FastStartChunkSizePolicy;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PrefetchingContentStreamAdapterTests {
+
+	private static final String BUCKET = "test-bucket";
+	private static final String VIDEO_KEY = "movie.mp4";
+	private static final long CHUNK_SIZE = ContentStreamAdapter.MAX_CHUNK_SIZE;
+
+	private StubS3Server stubS3Server;
+
+	private S3AsyncClient s3AsyncClient;
+
+	private S3AsyncContentStreamAdapter s3Adapter;
+
+	private PrefetchingContentStreamAdapter contentStreamAdapter;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		videoBytes = new byte[(int) (6 * CHUNK_SIZE)];
+		new Random(42).nextBytes(videoBytes);
+
+		stubS3Server = new StubS3Server(BUCKET);
+		stubS3Server.putObject(VIDEO_KEY, videoBytes, "video/mp4");
+
+		s3AsyncClient = S3AsyncClient.builder()
+				.endpointOverride(stubS3Server.getEndpoint())
+				.forcePathStyle(true)
+				.region(Region.US_EAST_1)
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+				.build();
+
+		s3Adapter = new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET);
+		contentStreamAdapter = new PrefetchingContentStreamAdapter(s3Adapter, 2, 8 * CHUNK_SIZE, Duration.ofSeconds(30));
+	}
+
+	@AfterEach
+	void tearDown() {
+		contentStreamAdapter.close();
+		s3AsyncClient.close();
+		stubS3Server.close();
+	}
+
+	@Test
+	void loadContent_sequentialChunks_areServedFromPrefetch() {
+		for (int chunk = 0; chunk < 4; chunk++) {
+			assertArrayEquals(expectedChunk(chunk), loadChunk(contentStreamAdapter, chunk, "client-1"));
+		}
+
+		// The first two chunks establish sequential playback, the following ones were read ahead.
+		assertEquals(2, contentStreamAdapter.getMissCount());
+		assertEquals(2, contentStreamAdapter.getHitCount());
+		assertEquals(0.5, contentStreamAdapter.getHitRate());
+		assertEquals(0, contentStreamAdapter.getWastedBytes());
+	}
+
+	@Test
+	void loadContent_differentClients_doNotTriggerPrefetch() {
+		loadChunk(contentStreamAdapter, 0, "client-1");
+		loadChunk(contentStreamAdapter, 1, "client-2");
+		loadChunk(contentStreamAdapter, 2, "client-3");
+
+		assertEquals(0, contentStreamAdapter.getHitCount());
+		assertEquals(0, contentStreamAdapter.getBufferedBytes());
+		assertEquals(3, stubS3Server.getGetRequests());
+	}
+
+	@Test
+	void loadContent_nonSequentialRequest_isMiss() {
+		loadChunk(contentStreamAdapter, 0, "client-1");
+		loadChunk(contentStreamAdapter, 1, "client-1");
+
+		// Seeking past the prefetched chunks is served by the delegate.
+		assertArrayEquals(expectedChunk(5), loadChunk(contentStreamAdapter, 5, "client-1"));
+		assertEquals(0, contentStreamAdapter.getHitCount());
+		assertEquals(3, contentStreamAdapter.getMissCount());
+	}
+
+	@Test
+	void loadContent_shorterRange_isNotServedFromPrefetch() {
+		loadChunk(contentStreamAdapter, 0, "client-1");
+		loadChunk(contentStreamAdapter, 1, "client-1");
+
+		// The third chunk was read ahead, but a request ending before its end is answered by the delegate.
+		StreamContentRequest request = StreamContentRequest.builder()
+				.key(VIDEO_KEY)
+				.range(new Range(2 * CHUNK_SIZE, 2 * CHUNK_SIZE + 99))
+				.clientId("client-1")
+				.build();
+		StreamedContent content = contentStreamAdapter.loadContent(request).block(Duration.ofSeconds(30));
+		assertNotNull(content);
+		DataBuffer joined = DataBufferUtils.join(content.getContent()).block(Duration.ofSeconds(30));
+		assertNotNull(joined);
+		byte[] bytes = new byte[joined.readableByteCount()];
+		joined.read(bytes);
+		DataBufferUtils.release(joined);
+
+		assertArrayEquals(Arrays.copyOfRange(videoBytes, (int) (2 * CHUNK_SIZE), (int) (2 * CHUNK_SIZE + 100)), bytes);
+		assertEquals(0, contentStreamAdapter.getHitCount());
+	}
+
+	@Test
+	void loadContent_unsubscribedPrefetchedContent_isReleased() throws InterruptedException {
+		LeakTrackingDataBufferFactory dataBufferFactory = new LeakTrackingDataBufferFactory();
+		s3Adapter.setDataBufferFactory(dataBufferFactory);
+
+		loadChunk(contentStreamAdapter, 0, "client-1");
+		loadChunk(contentStreamAdapter, 1, "client-1");
+
+		// Served from the read-ahead, but the content is never written, as for a HEAD request.
+		StreamedContent content = contentStreamAdapter.loadContent(StreamContentRequest.builder()
+				.key(VIDEO_KEY)
+				.range(new Range(2 * CHUNK_SIZE, null))
+				.clientId("client-1")
+				.build()).block(Duration.ofSeconds(30));
+		assertNotNull(content);
+		assertEquals(1, contentStreamAdapter.getHitCount());
+		assertEquals(CHUNK_SIZE, content.getContentLength());
+
+		contentStreamAdapter.close();
+		dataBufferFactory.assertNoLeaks();
+	}
+
+	@Test
+	void loadContent_exhaustedBudget_skipsPrefetch() {
+		PrefetchingContentStreamAdapter budgetAdapter = new PrefetchingContentStreamAdapter(s3Adapter, 2, CHUNK_SIZE - 1, Duration.ofSeconds(30));
+		try {
+			for (int chunk = 0; chunk < 3; chunk++) {
+				assertArrayEquals(expectedChunk(chunk), loadChunk(budgetAdapter, chunk, "client-1"));
+			}
+
+			assertEquals(0, budgetAdapter.getHitCount());
+			assertEquals(0, budgetAdapter.getBufferedBytes());
+		} finally {
+			budgetAdapter.close();
+		}
+	}
+
+	@Test
+	void evictIdle_unusedChunks_countAsWasted() throws InterruptedException {
+		// Warm up the client, so the first chunks are not evicted before the second one is requested.
+		loadChunk(s3Adapter, 5, null);
+
+		PrefetchingContentStreamAdapter idleAdapter = new PrefetchingContentStreamAdapter(s3Adapter, 2, 8 * CHUNK_SIZE, Duration.ofMillis(500));
+		try {
+			loadChunk(idleAdapter, 0, "client-1");
+			loadChunk(idleAdapter, 1, "client-1");
+
+			long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+			while (idleAdapter.getWastedBytes() < 2 * CHUNK_SIZE && System.nanoTime() < deadline) {
+				Thread.sleep(50);
+				idleAdapter.evictIdle();
+			}
+
+			assertEquals(2 * CHUNK_SIZE, idleAdapter.getWastedBytes());
+			assertEquals(0, idleAdapter.getBufferedBytes());
+		} finally {
+			idleAdapter.close();
+		}
+	}
+
+	@Test
+	void prefetch_keepsChunkSizePolicyStateAndReleasesPooledBuffers() throws InterruptedException {
+		LeakTrackingDataBufferFactory dataBufferFactory = new LeakTrackingDataBufferFactory();
+		FastStartChunkSizePolicy policy = new FastStartChunkSizePolicy(256 * 1024, 2.0, 4 * CHUNK_SIZE);
+		s3Adapter.setDataBufferFactory(dataBufferFactory);
+		s3Adapter.setChunkSizePolicy(policy);
+
+		// 256KB and 512KB establish sequential playback, read-ahead fetches the following 1MB and 2MB.
+		loadChunk(contentStreamAdapter, 0, "client-1", 256 * 1024);
+		loadChunk(contentStreamAdapter, 256 * 1024, "client-1", 512 * 1024);
+		byte[] prefetched = loadChunk(contentStreamAdapter, 768 * 1024, "client-1", null);
+
+		assertEquals(1, contentStreamAdapter.getHitCount());
+		assertEquals(CHUNK_SIZE, prefetched.length);
+		// Sizing the read-ahead did not advance the client's chunk progression.
+		assertEquals(CHUNK_SIZE, policy.chunkSize(new ChunkRequest(VIDEO_KEY, "client-1", 768 * 1024, videoBytes.length)));
+
+		// The unserved 2MB chunk is released when the adapter is closed.
+		contentStreamAdapter.close();
+		dataBufferFactory.assertNoLeaks();
+	}
+
+	private byte[] expectedChunk(int chunk) {
+		int start = (int) (chunk * CHUNK_SIZE);
+		return Arrays.copyOfRange(videoBytes, start, (int) Math.min(videoBytes.length, start + CHUNK_SIZE));
+	}
+
+	private static byte[] loadChunk(ContentStreamAdapter adapter, int chunk, String clientId) {
+		return loadChunk(adapter, chunk * CHUNK_SIZE, clientId, null);
+	}
+
+	private static byte[] loadChunk(ContentStreamAdapter adapter, long start, String clientId, Integer expectedLength) {
+		StreamContentRequest request = StreamContentRequest.builder()
+				.key(VIDEO_KEY)
+				.range(new Range(start, null))
+				.clientId(clientId)
+				.build();
+
+		DataBuffer joined = adapter.loadContent(request)
+				.doOnNext(content -> adapter.chunkServed(request, content))
+				.flatMap(content -> DataBufferUtils.join(content.getContent()))
+				.block(Duration.ofSeconds(30));
+
+		byte[] bytes = new byte[joined.readableByteCount()];
+		joined.read(bytes);
+		DataBufferUtils.release(joined);
+		if (expectedLength != null) {
+			assertEquals(expectedLength, bytes.length);
+		}
+		return bytes;
+	}
+
+}
@@ -0,0 +1,45 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.web.RangeHeaderParser;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RangeHeaderParserTests {
+
+	@Test
+	void parse_singleRanges() {
+		assertEquals(List.of(new Range(0L, 1023L)), RangeHeaderParser.parse("bytes=0-1023"));
+		assertEquals(List.of(new Range(1024L, null)), RangeHeaderParser.parse("bytes=1024-"));
+		assertEquals(List.of(Range.suffix(500)), RangeHeaderParser.parse("bytes=-500"));
+		assertEquals(List.of(new Range(5L, 5L)), RangeHeaderParser.parse("Bytes = 5-5"));
+	}
+
+	@Test
+	void parse_multipleRanges() {
+		assertEquals(List.of(new Range(0L, 99L), new Range(200L, null), Range.suffix(10)),
+				RangeHeaderParser.parse("bytes=0-99, 200-,,-10"));
+	}
+
+	@Test
+	void parse_invalidHeader_returnsNull() {
+		assertNull(RangeHeaderParser.parse(null));
+		assertNull(RangeHeaderParser.parse(""));
+		assertNull(RangeHeaderParser.parse("bytes="));
+		assertNull(RangeHeaderParser.parse("bytes=-"));
+		assertNull(RangeHeaderParser.parse("bytes=abc"));
+		assertNull(RangeHeaderParser.parse("bytes=10-5"));
+		assertNull(RangeHeaderParser.parse("bytes=0-1;2-3"));
+		assertNull(RangeHeaderParser.parse("items=0-10"));
+		assertNull(RangeHeaderParser.parse("bytes=" + "0-1,".repeat(RangeHeaderParser.MAX_RANGES + 1)));
+	}
+
+	@Test
+	void parse_overflowingNumber_liesBeyondContent() {
+		assertEquals(List.of(new Range(Long.MAX_VALUE, null)), RangeHeaderParser.parse("bytes=99999999999999999999-"));
+	}
+
+}
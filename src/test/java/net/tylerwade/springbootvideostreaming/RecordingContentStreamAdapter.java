@@ -0,0 +1,68 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4Index;
+import net.tylerwade.springbootvideostreaming.mp4.Mp4IndexCache;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@code ContentStreamAdapter} for tests that records the ranges requested from the adapter it wraps.
+ */
+public class RecordingContentStreamAdapter implements ContentStreamAdapter {
+
+	private final ContentStreamAdapter delegate;
+	private final List<Range> requestedRanges = new CopyOnWriteArrayList<>();
+	private final Mp4IndexCache mp4IndexCache = new Mp4IndexCache();
+	private final AtomicInteger metadataLookups = new AtomicInteger();
+
+	public RecordingContentStreamAdapter(ContentStreamAdapter delegate) {
+		this.delegate = delegate;
+	}
+
+	public List<Range> getRequestedRanges() {
+		return requestedRanges;
+	}
+
+	/**
+	 * @return the number of {@code getContentMetadata} calls made on this adapter
+	 */
+	public int getMetadataLookups() {
+		return metadataLookups.get();
+	}
+
+	@Override
+	public Mono<Mp4Index> loadMp4Index(String key) {
+		return mp4IndexCache.get(this, key);
+	}
+
+	@Override
+	public Mono<StreamedContent> loadContent(StreamContentRequest contentRequest) {
+		requestedRanges.add(contentRequest.getRange());
+		return delegate.loadContent(contentRequest);
+	}
+
+	@Override
+	public Long getContentSize(String key) throws IOException {
+		return delegate.getContentSize(key);
+	}
+
+	@Override
+	public StreamedContentMetadata getContentMetadata(String key) throws IOException {
+		metadataLookups.incrementAndGet();
+		return delegate.getContentMetadata(key);
+	}
+
+	@Override
+	public List<StreamedContentMetadata> getAllContentMetadata() throws IOException {
+		return delegate.getAllContentMetadata();
+	}
+}
@@ -0,0 +1,216 @@
+package net.tylerwade.springbootvideostreaming;
+
+import net.tylerwade.springbootvideostreaming.adapter.ContentMetadataCache;
+import net.tylerwade.springbootvideostreaming.adapter.S3AsyncContentStreamAdapter;
+import net.tylerwade.springbootvideostreaming.model.Range;
+import net.tylerwade.springbootvideostreaming.model.StreamContentRequest;
+import net.tylerwade.springbootvideostreaming.model.StreamedContent;
+import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.MissingResourceException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static net.tylerwade.springbootvideostreaming.TestResources.*;
+import static org.assertj.core.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3AsyncContentStreamAdapterTests {
+
+	private static final String BUCKET = "test-bucket";
+
+	private StubS3Server stubS3Server;
+
+	private S3AsyncClient s3AsyncClient;
+
+	private S3AsyncContentStreamAdapter contentStreamAdapter;
+
+	private byte[] videoBytes;
+
+	@BeforeEach
+	void setup() throws IOException {
+		try (InputStream inputStream = new ClassPathResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			videoBytes = inputStream.readAllBytes();
+		}
+
+		stubS3Server = new StubS3Server(BUCKET);
+		stubS3Server.putObject(EARTH_SPINNING_VIDEO_KEY, videoBytes, EARTH_SPINNING_CONTENT_TYPE);
+		stubS3Server.putObject(PARK_VIDEO_KEY, Arrays.copyOf(videoBytes, 1000), PARK_CONTENT_TYPE);
+
+		s3AsyncClient = S3AsyncClient.builder()
+				.endpointOverride(stubS3Server.getEndpoint())
+				.forcePathStyle(true)
+				.region(Region.US_EAST_1)
+				.credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("access-key", "secret-key")))
+				.build();
+
+		contentStreamAdapter = new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET);
+	}
+
+	@AfterEach
+	void tearDown() {
+		s3AsyncClient.close();
+		stubS3Server.close();
+	}
+
+	@Test
+	void getContentMetadata_returnsMetadata() {
+		StreamedContentMetadata metadata = contentStreamAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+
+		assertEquals(EARTH_SPINNING_VIDEO_KEY, metadata.getKey());
+		assertEquals(EARTH_SPINNING_CONTENT_TYPE, metadata.getContentType());
+		assertEquals(EARTH_SPINNING_FILE_SIZE, metadata.getFileSize());
+	}
+
+	@Test
+	void getAllContentMetadata_returnsMetadata() {
+		List<StreamedContentMetadata> metadataList = contentStreamAdapter.getAllContentMetadata();
+
+		assertThat(metadataList)
+				.hasSize(2)
+				.anySatisfy(metadata -> {
+					assertThat(metadata.getKey()).isEqualTo(EARTH_SPINNING_VIDEO_KEY);
+					assertThat(metadata.getFileSize()).isEqualTo(EARTH_SPINNING_FILE_SIZE);
+				});
+	}
+
+	@Test
+	void loadContent_streamsExactRange() {
+		StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(500L, 500L + 400_000L));
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request)
+						.flatMap(content -> DataBufferUtils.join(content.getContent())
+								.map(joined -> {
+									assertEquals(content.getContentLength(), joined.readableByteCount());
+									return toBytes(joined);
+								})))
+				.assertNext(bytes -> assertArrayEquals(Arrays.copyOfRange(videoBytes, 500, 400_501), bytes))
+				.verifyComplete();
+	}
+
+	@Test
+	void loadContent_missingKey_throwsMissingResourceException() {
+		StreamContentRequest request = StreamContentRequest.builder().key("missing-video.mp4").build();
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request))
+				.expectErrorSatisfies(e -> assertThat(e).isInstanceOf(MissingResourceException.class).hasCauseInstanceOf(S3Exception.class))
+				.verify();
+	}
+
+	@Test
+	void loadContent_doesNotFetchUntilSubscribed() {
+		StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 999L));
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request))
+				.expectNextCount(1)
+				.verifyComplete();
+
+		assertEquals(0, stubS3Server.getGetRequests());
+	}
+
+	@Test
+	void loadContent_cancelledContentCompletes() {
+		StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, null));
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request)
+						.flatMapMany(StreamedContent::getContent)
+						.take(1)
+						.doOnNext(DataBufferUtils::release))
+				.expectNextCount(1)
+				.verifyComplete();
+	}
+
+	@Test
+	void loadContent_doesNotBlockThreads() {
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+
+		Flux<Integer> downloads = Flux.range(0, 50)
+				.flatMap(i -> contentStreamAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(i * 10_000L, i * 10_000L + 9_999L)))
+						.flatMapMany(StreamedContent::getContent)
+						.doOnNext(buffer -> threads.add(Thread.currentThread().getName()))
+						.map(buffer -> {
+							int count = buffer.readableByteCount();
+							DataBufferUtils.release(buffer);
+							return count;
+						})
+						.reduce(0, Integer::sum));
+
+		StepVerifier.create(downloads)
+				.thenConsumeWhile(count -> count == 10_000)
+				.expectComplete()
+				.verify(Duration.ofSeconds(30));
+
+		assertThat(threads).noneMatch(thread -> thread.startsWith("boundedElastic"));
+	}
+
+	@Test
+	void loadContent_multiRange_doesNotBlockThreads() {
+		StreamContentRequest request = StreamContentRequest.builder()
+				.key(EARTH_SPINNING_VIDEO_KEY)
+				.ranges(List.of(new Range(0L, 99L), new Range(800_000L, 800_099L)))
+				.build();
+		Set<String> threads = ConcurrentHashMap.newKeySet();
+
+		StepVerifier.create(contentStreamAdapter.loadContent(request)
+						.doOnNext(content -> threads.add(Thread.currentThread().getName())))
+				.assertNext(content -> assertEquals(2, content.getRanges().size()))
+				.expectComplete()
+				.verify(Duration.ofSeconds(10));
+
+		assertThat(threads).noneMatch(thread -> thread.startsWith("boundedElastic"));
+	}
+
+	@Test
+	void loadContent_withCache_headsOncePerKey() {
+		ContentMetadataCache metadataCache = new ContentMetadataCache(100, Duration.ofMinutes(5), true);
+		S3AsyncContentStreamAdapter cachingAdapter = new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET, metadataCache);
+
+		for (int i = 0; i < 3; i++) {
+			StepVerifier.create(cachingAdapter.loadContent(new StreamContentRequest(EARTH_SPINNING_VIDEO_KEY, new Range(0L, 99L))))
+					.expectNextCount(1)
+					.verifyComplete();
+		}
+
+		assertEquals(1, stubS3Server.getHeadRequests());
+		assertEquals(2, metadataCache.getHitCount());
+	}
+
+	@Test
+	void loadContent_withExpiredCache_revalidatesWithETag() {
+		ContentMetadataCache metadataCache = new ContentMetadataCache(100, Duration.ZERO, true);
+		S3AsyncContentStreamAdapter cachingAdapter = new S3AsyncContentStreamAdapter(s3AsyncClient, BUCKET, metadataCache);
+
+		StreamedContentMetadata first = cachingAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+		StreamedContentMetadata second = cachingAdapter.getContentMetadata(EARTH_SPINNING_VIDEO_KEY);
+
+		assertEquals(first, second);
+		assertEquals(1, metadataCache.getRevalidationCount());
+		assertEquals(1, metadataCache.getHitCount());
+	}
+
+	private static byte[] toBytes(DataBuffer buffer) {
+		byte[] bytes = new byte[buffer.readableByteCount()];
+		buffer.read(bytes);
+		DataBufferUtils.release(buffer);
+		return bytes;
+	}
+
+}
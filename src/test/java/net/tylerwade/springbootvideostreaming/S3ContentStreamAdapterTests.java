@@ -1,5 +1,6 @@
 package net.tylerwade.springbootvideostreaming;
 
+import net.tylerwade.springbootvideostreaming.adapter.ContentMetadataCache;
 import net.tylerwade.springbootvideostreaming.adapter.ContentStreamAdapter;
 import net.tylerwade.springbootvideostreaming.adapter.S3ContentStreamAdapter;
 import net.tylerwade.springbootvideostreaming.model.Range;
@@ -18,10 +19,21 @@ import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
 import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
 import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.paginators.ListObjectsV2Iterable;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.MissingResourceException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 import static net.tylerwade.springbootvideostreaming.TestResources.*;
 import static org.assertj.core.api.Assertions.*;
@@ -186,4 +198,222 @@ public class S3ContentStreamAdapterTests {
 				.verify();
 	}
 
-}
\ No newline at end of file
+	@Test
+	void loadContent_missingKey_throwsMissingResourceException() {
+		// Arrange
+		when(s3Client.headObject(any(HeadObjectRequest.class)))
+				.thenThrow(NoSuchKeyException.builder().statusCode(404).message("Not Found").build());
+
+		// Act & Assert
+		StreamContentRequest request = StreamContentRequest.builder().key("missing-video.mp4").build();
+		StepVerifier.create(contentStreamAdapter.loadContent(request))
+				.expectErrorSatisfies(e -> assertThat(e).isInstanceOf(MissingResourceException.class).hasCauseInstanceOf(NoSuchKeyException.class))
+				.verify();
+	}
+
+	@Test
+	void getContentMetadata_withCache_headsOncePerKey() {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(100, Duration.ofMinutes(5), true);
+		S3ContentStreamAdapter cachingAdapter = new S3ContentStreamAdapter(s3Client, "test-bucket", metadataCache);
+		when(s3Client.headObject(any(HeadObjectRequest.class)))
+				.thenReturn(HeadObjectResponse.builder()
+						.contentType(EARTH_SPINNING_CONTENT_TYPE)
+						.contentLength(EARTH_SPINNING_S3_OBJECT.size())
+						.eTag("\"etag-1\"")
+						.build());
+		when(s3Client.getObject(any(GetObjectRequest.class)))
+				.thenReturn(mock(ResponseInputStream.class));
+
+		// Act
+		for (int i = 0; i < 3; i++) {
+			StreamContentRequest request = new StreamContentRequest(EARTH_SPINNING_S3_OBJECT.key(), new Range(i * 1000L, i * 1000L + 999L));
+			StepVerifier.create(cachingAdapter.loadContent(request)).expectNextCount(1).verifyComplete();
+		}
+		Long size = cachingAdapter.getContentSize(EARTH_SPINNING_S3_OBJECT.key());
+
+		// Assert
+		assertEquals(EARTH_SPINNING_S3_OBJECT.size(), size);
+		verify(s3Client, times(1)).headObject(any(HeadObjectRequest.class));
+		assertEquals(1, metadataCache.getMissCount());
+		assertEquals(3, metadataCache.getHitCount());
+	}
+
+	@Test
+	void getContentMetadata_withExpiredCache_revalidatesWithETag() {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(100, Duration.ZERO, true);
+		S3ContentStreamAdapter cachingAdapter = new S3ContentStreamAdapter(s3Client, "test-bucket", metadataCache);
+		when(s3Client.headObject(any(HeadObjectRequest.class)))
+				.thenReturn(HeadObjectResponse.builder()
+						.contentType(EARTH_SPINNING_CONTENT_TYPE)
+						.contentLength(EARTH_SPINNING_S3_OBJECT.size())
+						.eTag("\"etag-1\"")
+						.build())
+				.thenThrow(S3Exception.builder().statusCode(304).message("Not Modified").build());
+
+		// Act
+		StreamedContentMetadata first = cachingAdapter.getContentMetadata(EARTH_SPINNING_S3_OBJECT.key());
+		StreamedContentMetadata second = cachingAdapter.getContentMetadata(EARTH_SPINNING_S3_OBJECT.key());
+
+		// Assert
+		assertEquals(first, second);
+		verify(s3Client).headObject(argThat((HeadObjectRequest request) -> "\"etag-1\"".equals(request.ifNoneMatch())));
+		assertEquals(1, metadataCache.getRevalidationCount());
+		assertEquals(1, metadataCache.getHitCount());
+		assertEquals(1, metadataCache.getMissCount());
+	}
+
+	@Test
+	void getContentMetadata_withExpiredCache_reloadsChangedObject() {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(100, Duration.ZERO, true);
+		S3ContentStreamAdapter cachingAdapter = new S3ContentStreamAdapter(s3Client, "test-bucket", metadataCache);
+		when(s3Client.headObject(any(HeadObjectRequest.class)))
+				.thenReturn(HeadObjectResponse.builder()
+						.contentType(EARTH_SPINNING_CONTENT_TYPE)
+						.contentLength(EARTH_SPINNING_S3_OBJECT.size())
+						.eTag("\"etag-1\"")
+						.build())
+				.thenReturn(HeadObjectResponse.builder()
+						.contentType(EARTH_SPINNING_CONTENT_TYPE)
+						.contentLength(EARTH_SPINNING_S3_OBJECT.size() + 1)
+						.eTag("\"etag-2\"")
+						.build());
+
+		// Act
+		cachingAdapter.getContentMetadata(EARTH_SPINNING_S3_OBJECT.key());
+		StreamedContentMetadata reloaded = cachingAdapter.getContentMetadata(EARTH_SPINNING_S3_OBJECT.key());
+
+		// Assert
+		assertEquals(EARTH_SPINNING_S3_OBJECT.size() + 1, reloaded.getFileSize());
+		assertEquals(2, metadataCache.getMissCount());
+	}
+
+	@Test
+	void invalidateMetadata_forcesReload() {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(100, Duration.ofMinutes(5), true);
+		S3ContentStreamAdapter cachingAdapter = new S3ContentStreamAdapter(s3Client, "test-bucket", metadataCache);
+		when(s3Client.headObject(any(HeadObjectRequest.class)))
+				.thenReturn(HeadObjectResponse.builder()
+						.contentType(EARTH_SPINNING_CONTENT_TYPE)
+						.contentLength(EARTH_SPINNING_S3_OBJECT.size())
+						.build());
+
+		// Act
+		cachingAdapter.getContentMetadata(EARTH_SPINNING_S3_OBJECT.key());
+		cachingAdapter.invalidateMetadata(EARTH_SPINNING_S3_OBJECT.key());
+		cachingAdapter.getContentMetadata(EARTH_SPINNING_S3_OBJECT.key());
+
+		// Assert
+		verify(s3Client, times(2)).headObject(any(HeadObjectRequest.class));
+		assertEquals(0, metadataCache.getHitCount());
+	}
+
+	@Test
+	void metadataCache_evictsOldestEntriesWhenFull() {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(2, Duration.ofMinutes(5), true);
+		S3ContentStreamAdapter cachingAdapter = new S3ContentStreamAdapter(s3Client, "test-bucket", metadataCache);
+		when(s3Client.headObject(any(HeadObjectRequest.class)))
+				.thenReturn(HeadObjectResponse.builder()
+						.contentType(EARTH_SPINNING_CONTENT_TYPE)
+						.contentLength(EARTH_SPINNING_S3_OBJECT.size())
+						.build());
+
+		// Act
+		MOCK_S3_OBJECTS.forEach(object -> cachingAdapter.getContentMetadata(object.key()));
+
+		// Assert
+		assertEquals(2, metadataCache.size());
+	}
+
+	@Test
+	void metadataCache_keepsRecentlyUsedEntries() {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(2, Duration.ofMinutes(5), true);
+		ContentMetadataCache.MetadataLoader loader = (key, currentETag) -> new ContentMetadataCache.LoadedMetadata(
+				StreamedContentMetadata.builder().key(key).fileSize(1L).build(), null);
+
+		// Act
+		metadataCache.get("a", loader);
+		metadataCache.get("b", loader);
+		metadataCache.get("c", loader);
+		metadataCache.get("b", loader);
+		metadataCache.get("d", loader);
+		long missCount = metadataCache.getMissCount();
+		metadataCache.get("b", loader);
+		metadataCache.get("d", loader);
+
+		// Assert
+		assertEquals(2, metadataCache.size());
+		assertEquals(missCount, metadataCache.getMissCount());
+	}
+
+	@Test
+	void metadataCache_sharesConcurrentLoadsOfOneKey() throws Exception {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(100, Duration.ofMinutes(5), true);
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+		ContentMetadataCache.MetadataLoader loader = (key, currentETag) -> {
+			loads.incrementAndGet();
+			loading.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new ContentMetadataCache.LoadedMetadata(StreamedContentMetadata.builder().key(key).fileSize(1L).build(), null);
+		};
+
+		// Act
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<StreamedContentMetadata>> lookups = IntStream.range(0, 4)
+					.mapToObj(i -> executor.submit(() -> metadataCache.get("video", loader)))
+					.toList();
+			assertTrue(loading.await(5, TimeUnit.SECONDS));
+			Thread.sleep(100);
+			release.countDown();
+
+			// Assert
+			for (Future<StreamedContentMetadata> lookup : lookups) {
+				assertEquals("video", lookup.get(5, TimeUnit.SECONDS).getKey());
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(1, loads.get());
+		assertEquals(1, metadataCache.getMissCount());
+	}
+
+	@Test
+	void metadataCache_staysConsistentWhenInvalidatedConcurrently() {
+		// Arrange
+		ContentMetadataCache metadataCache = new ContentMetadataCache(8, Duration.ofMinutes(5), true);
+		ContentMetadataCache.MetadataLoader loader = (key, currentETag) -> new ContentMetadataCache.LoadedMetadata(
+				StreamedContentMetadata.builder().key(key).fileSize(1L).build(), "\"" + key + "\"");
+
+		// Act
+		IntStream.range(0, 20_000).parallel().forEach(i -> {
+			String key = "video-" + (i % 32);
+			if (i % 3 == 0) {
+				metadataCache.invalidate(key);
+			} else {
+				metadataCache.get(key, loader);
+			}
+		});
+		List<String> latest = IntStream.range(0, 8).mapToObj(i -> "latest-" + i).toList();
+		latest.forEach(key -> metadataCache.get(key, loader));
+
+		// Assert
+		assertEquals(8, metadataCache.size());
+		long missCount = metadataCache.getMissCount();
+		latest.forEach(key -> metadataCache.get(key, loader));
+		assertEquals(missCount, metadataCache.getMissCount());
+	}
+
+}
@@ -0,0 +1,208 @@
+package net.tylerwade.springbootvideostreaming;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A minimal S3 compatible HTTP server for tests. It serves path-style {@code HeadObject}, ranged
+ * {@code GetObject} and {@code ListObjectsV2} requests for objects held in memory.
+ */
+public class StubS3Server implements AutoCloseable {
+
+	private final String bucket;
+	private final HttpServer server;
+	private final ConcurrentSkipListMap<String, StubObject> objects = new ConcurrentSkipListMap<>();
+
+	private final AtomicInteger headRequests = new AtomicInteger();
+	private final AtomicInteger getRequests = new AtomicInteger();
+	private final AtomicInteger listRequests = new AtomicInteger();
+
+	public StubS3Server(String bucket) throws IOException {
+		this.bucket = bucket;
+		this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		this.server.createContext("/", this::handle);
+		this.server.setExecutor(Executors.newCachedThreadPool());
+		this.server.start();
+	}
+
+	public void putObject(String key, byte[] content, String contentType) {
+		objects.put(key, new StubObject(content, contentType, "\"" + Integer.toHexString(Arrays.hashCode(content)) + "\""));
+	}
+
+	public void removeObject(String key) {
+		objects.remove(key);
+	}
+
+	public URI getEndpoint() {
+		return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+	}
+
+	public int getHeadRequests() {
+		return headRequests.get();
+	}
+
+	public int getGetRequests() {
+		return getRequests.get();
+	}
+
+	public int getListRequests() {
+		return listRequests.get();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		try (exchange) {
+			String path = exchange.getRequestURI().getPath();
+			String prefix = "/" + bucket;
+			if (!path.startsWith(prefix)) {
+				sendError(exchange, 404, "NoSuchBucket");
+				return;
+			}
+
+			String key = path.length() > prefix.length() + 1 ? path.substring(prefix.length() + 1) : "";
+			if (key.isEmpty()) {
+				listObjects(exchange);
+				return;
+			}
+
+			StubObject object = objects.get(key);
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				headRequests.incrementAndGet();
+			}
+			if (object == null) {
+				sendError(exchange, 404, "NoSuchKey");
+				return;
+			}
+
+			if ("HEAD".equals(exchange.getRequestMethod())) {
+				headObject(exchange, object);
+			} else {
+				getObject(exchange, object);
+			}
+		}
+	}
+
+	private void headObject(HttpExchange exchange, StubObject object) throws IOException {
+		if (object.eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+			exchange.getResponseHeaders().set("ETag", object.eTag);
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+		exchange.getResponseHeaders().set("Content-Type", object.contentType);
+		exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.content.length));
+		exchange.getResponseHeaders().set("ETag", object.eTag);
+		exchange.getResponseHeaders().set("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT");
+		exchange.sendResponseHeaders(200, -1);
+	}
+
+	private void getObject(HttpExchange exchange, StubObject object) throws IOException {
+		getRequests.incrementAndGet();
+		int start = 0;
+		int end = object.content.length - 1;
+		String range = exchange.getRequestHeaders().getFirst("Range");
+		if (range != null && range.startsWith("bytes=")) {
+			String[] bounds = range.substring("bytes=".length()).split("-", 2);
+			start = Integer.parseInt(bounds[0]);
+			if (!bounds[1].isEmpty()) {
+				end = Math.min(end, Integer.parseInt(bounds[1]));
+			}
+			exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + object.content.length);
+		}
+
+		int length = end - start + 1;
+		exchange.getResponseHeaders().set("Content-Type", object.contentType);
+		exchange.getResponseHeaders().set("ETag", object.eTag);
+		exchange.sendResponseHeaders(range != null ? 206 : 200, length);
+		try (OutputStream body = exchange.getResponseBody()) {
+			body.write(object.content, start, length);
+		} catch (IOException e) {
+			// The client cancelled the download.
+		}
+	}
+
+	private void listObjects(HttpExchange exchange) throws IOException {
+		listRequests.incrementAndGet();
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		String prefix = query.getOrDefault("prefix", "");
+		int maxKeys = Integer.parseInt(query.getOrDefault("max-keys", "1000"));
+		String after = query.getOrDefault("continuation-token", query.get("start-after"));
+
+		List<String> keys = (after == null ? objects.keySet() : objects.tailMap(after, false).keySet()).stream()
+				.filter(key -> key.startsWith(prefix))
+				.limit(maxKeys + 1L)
+				.toList();
+		boolean truncated = keys.size() > maxKeys;
+		List<String> page = truncated ? keys.subList(0, maxKeys) : keys;
+
+		StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+				.append("<ListBucketResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\">")
+				.append("<Name>").append(bucket).append("</Name>")
+				.append("<Prefix>").append(prefix).append("</Prefix>")
+				.append("<KeyCount>").append(page.size()).append("</KeyCount>")
+				.append("<MaxKeys>").append(maxKeys).append("</MaxKeys>")
+				.append("<IsTruncated>").append(truncated).append("</IsTruncated>");
+		if (truncated) {
+			xml.append("<NextContinuationToken>").append(page.get(page.size() - 1)).append("</NextContinuationToken>");
+		}
+		for (String key : page) {
+			StubObject object = objects.get(key);
+			xml.append("<Contents><Key>").append(key).append("</Key>")
+					.append("<Size>").append(object.content.length).append("</Size>")
+					.append("<ETag>").append(object.eTag.replace("\"", "&quot;")).append("</ETag>")
+					.append("<LastModified>2015-10-21T07:28:00.000Z</LastModified>")
+					.append("</Contents>");
+		}
+		xml.append("</ListBucketResult>");
+
+		byte[] body = xml.toString().getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(200, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	private static void sendError(HttpExchange exchange, int status, String code) throws IOException {
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(status, -1);
+			return;
+		}
+		byte[] body = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>")
+				.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "application/xml");
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	private static Map<String, String> parseQuery(String rawQuery) {
+		Map<String, String> query = new HashMap<>();
+		if (rawQuery == null) {
+			return query;
+		}
+		for (String parameter : rawQuery.split("&")) {
+			String[] pair = parameter.split("=", 2);
+			query.put(URLDecoder.decode(pair[0], StandardCharsets.UTF_8),
+					pair.length > 1 ? URLDecoder.decode(pair[1], StandardCharsets.UTF_8) : "");
+		}
+		return query;
+	}
+
+	private record StubObject(byte[] content, String contentType, String eTag) {
+	}
+}
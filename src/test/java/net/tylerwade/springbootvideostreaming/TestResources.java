@@ -1,8 +1,13 @@
 package net.tylerwade.springbootvideostreaming;
 
 import net.tylerwade.springbootvideostreaming.model.StreamedContentMetadata;
+import org.springframework.core.io.DefaultResourceLoader;
 import software.amazon.awssdk.services.s3.model.S3Object;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 
 public class TestResources {
@@ -11,6 +16,12 @@ public class TestResources {
 	public static final String EARTH_SPINNING_CONTENT_TYPE = "video/mp4";
 	public static final Long EARTH_SPINNING_FILE_SIZE = 873682L;
 
+	// earth-spinning.mp4 is a fast start file: ftyp, moov, mdat. Its video track has 902 samples at 30 fps and a
+	// keyframe every 160 samples.
+	public static final int EARTH_SPINNING_MOOV_OFFSET = 24;
+	public static final int EARTH_SPINNING_MOOV_SIZE = 14372;
+	public static final long[] EARTH_SPINNING_KEYFRAME_OFFSETS = {14404, 177623, 332506, 483675, 630003, 768540};
+
 	public static final String PARK_VIDEO_KEY = "park.mp4";
 	public static final String PARK_CONTENT_TYPE = "video/mp4";
 	public static final Long PARK_FILE_SIZE = 21657943L;
@@ -55,4 +66,33 @@ public class TestResources {
 	public static final List<S3Object> MOCK_S3_OBJECTS = List.of(
 			EARTH_SPINNING_S3_OBJECT, PARK_S3_OBJECT, SCIENCE_S3_OBJECT
 	);
-}
\ No newline at end of file
+
+	public static byte[] readEarthSpinning() throws IOException {
+		try (InputStream inputStream = new DefaultResourceLoader().getResource("videos/" + EARTH_SPINNING_VIDEO_KEY).getInputStream()) {
+			return inputStream.readAllBytes();
+		}
+	}
+
+	/**
+	 * Rewrites earth-spinning.mp4 as ftyp, mdat, moov, shifting the chunk offsets in its stco boxes accordingly.
+	 */
+	public static byte[] moveMoovToEnd(byte[] file) {
+		byte[] moov = Arrays.copyOfRange(file, EARTH_SPINNING_MOOV_OFFSET, EARTH_SPINNING_MOOV_OFFSET + EARTH_SPINNING_MOOV_SIZE);
+		ByteBuffer buffer = ByteBuffer.wrap(moov);
+		for (int i = 4; i + 8 <= moov.length; i++) {
+			if (moov[i] == 's' && moov[i + 1] == 't' && moov[i + 2] == 'c' && moov[i + 3] == 'o') {
+				int entries = buffer.getInt(i + 8);
+				for (int entry = 0; entry < entries; entry++) {
+					int position = i + 12 + entry * 4;
+					buffer.putInt(position, buffer.getInt(position) - EARTH_SPINNING_MOOV_SIZE);
+				}
+			}
+		}
+
+		ByteBuffer rewritten = ByteBuffer.allocate(file.length);
+		rewritten.put(file, 0, EARTH_SPINNING_MOOV_OFFSET);
+		rewritten.put(file, EARTH_SPINNING_MOOV_OFFSET + EARTH_SPINNING_MOOV_SIZE, file.length - EARTH_SPINNING_MOOV_OFFSET - EARTH_SPINNING_MOOV_SIZE);
+		rewritten.put(moov);
+		return rewritten.array();
+	}
+}